@@ -18,6 +18,7 @@ package org.arquillian.droidium.container.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Representation of Android Device
@@ -126,6 +127,21 @@ public interface AndroidDevice {
      */
     void installPackage(String packageFilePath, boolean reinstall, String... extraArgs) throws AndroidExecutionException;
 
+    /**
+     * Installs an Android application consisting of more APKs, e.g. a base APK and its splits, in one install session. APKs
+     * are streamed from the host to the package manager of the device so no temporary copy is made on the device and APKs
+     * of the session are written concurrently. On devices of API level 24 (7.0) and above, a single APK is installed by
+     * {@code cmd package install -S} directly. Devices below API level 21 (5.0) can install a single APK only, it is
+     * installed by {@link #installPackage(File, boolean, String...)} there.
+     *
+     * @param apks base APK followed by its splits
+     * @param reinstall set to {@code true} if re-install of app should be performed
+     * @param extraArgs optional extra arguments to pass. See 'adb shell pm install --help' for available options.
+     * @throws AndroidExecutionException if the installation fails
+     * @since 1.0.2.Final
+     */
+    void installPackages(List<File> apks, boolean reinstall, String... extraArgs) throws AndroidExecutionException;
+
     /**
      * Uninstalls an package from the device.
      *
@@ -177,11 +193,19 @@ public interface AndroidDevice {
 
     /**
      *
-     * @return screenshot of Android device
+     * @return screenshot of Android device taken by {@link ScreenshotBackend#FRAMEBUFFER}
      * @throws Exception
      */
     Screenshot getScreenshot() throws Exception;
 
+    /**
+     *
+     * @param backend way of taking the screenshot, {@link ScreenshotBackend#AUTO} picks the fastest one for this device
+     * @return screenshot of Android device
+     * @throws Exception
+     */
+    DeviceScreenshot getScreenshot(ScreenshotBackend backend) throws Exception;
+
     /**
      *
      * @param activityManager
@@ -242,6 +266,33 @@ public interface AndroidDevice {
      */
     void push(File localFile, File remoteFile) throws Exception;
 
+    /**
+     * Pushes a file or a whole directory tree from computer to mobile phone. Files are transferred concurrently, each over
+     * its own sync connection to the device.
+     *
+     * @param local local file or directory to push
+     * @param remotePath remote file or directory to save pushed file or files of the directory to
+     * @param options options of the transfer
+     * @return numbers of the transfer
+     * @throws Exception
+     * @since 1.0.2.Final
+     */
+    FileTransfer push(File local, String remotePath, FileTransferOptions options) throws Exception;
+
+    /**
+     * Pulls a file or a whole directory tree from mobile phone to computer. Files are transferred concurrently, each over
+     * its own sync connection to the device. A pull which was interrupted is resumed when it is asked for and the device
+     * is of API level 21 (5.0) and above, other devices pull the file again.
+     *
+     * @param remotePath remote file or directory to pull
+     * @param local local file or directory to save pulled file or files of the directory to
+     * @param options options of the transfer
+     * @return numbers of the transfer
+     * @throws Exception
+     * @since 1.0.2.Final
+     */
+    FileTransfer pull(String remotePath, File local, FileTransferOptions options) throws Exception;
+
     /**
      * Removes file on Android device.
      *
@@ -291,6 +342,20 @@ public interface AndroidDevice {
      */
     void startRecording(ScreenrecordOptions options) throws Exception;
 
+    /**
+     * Starts video recording streamed to the host computer as it is recorded, nothing is saved on the device and
+     * {@link #stopRecording(String)} has nothing to pull. The recording is not limited by the time limit of
+     * {@code screenrecord}.
+     *
+     * You have to use Android device of API level 21 (5.0) and above in order to use this with success.
+     *
+     * @param localFile file on the host computer to stream the video to
+     * @param options
+     * @throws Exception
+     * @since 1.0.2.Final
+     */
+    void startStreamedRecording(File localFile, ScreenrecordOptions options) throws Exception;
+
     /**
      * Checks if this Android device records some video.
      *
@@ -321,4 +386,15 @@ public interface AndroidDevice {
      * @since 1.0.0.Alpha6
      */
     Video stopRecording(File localFilePath) throws Exception;
+
+    /**
+     * Stops Android device from recording a video and leaves the recorded video on the device, it is up to the caller to
+     * pull and remove it. This lets a caller start the next recording right away and transfer the previous one meanwhile.
+     *
+     * @return path of the recorded video on Android device
+     * @throws IllegalStateException if the recording is streamed by {@link #startStreamedRecording(File, ScreenrecordOptions)}
+     * @throws Exception
+     * @since 1.0.2.Final
+     */
+    String stopRecordingOnDevice() throws Exception;
 }
@@ -0,0 +1,75 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscriptions to logcat of an Android device. Records are matched while logcat is being read by Droidium, no other
+ * {@code adb} process is started. Inject it into a test by {@code @ArquillianResource AndroidLogcat logcat}.<br>
+ * <br>
+ * A subscription matches records with the given tag, null for any tag, whose message contains a match of the given
+ * regular expression. Subscribe before the action which is expected to log, otherwise the record may be read before
+ * the subscription exists:
+ *
+ * <pre>
+ * LogcatSubscription started = logcat.expect("MyService", "started in (\\d+) ms");
+ * device.executeShellCommand("am startservice com.example/.MyService");
+ * LogcatMatch match = started.await(10, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public interface AndroidLogcat {
+
+    /**
+     * Subscribes to the first matching record.
+     *
+     * @param tag tag of records, null for any tag
+     * @param regex regular expression a message of records has to contain
+     * @return subscription which is cancelled as soon as the first record matches
+     * @throws IllegalArgumentException if {@code regex} is null or it is not a valid regular expression
+     */
+    LogcatSubscription expect(String tag, String regex);
+
+    /**
+     * Waits for the first matching record read after this method was called.
+     *
+     * @param tag tag of records, null for any tag
+     * @param regex regular expression a message of records has to contain
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     * @return matching record
+     * @throws IllegalArgumentException if {@code regex} is null or it is not a valid regular expression
+     * @throws AndroidExecutionException if no record matches in time
+     */
+    LogcatMatch awaitLog(String tag, String regex, long timeout, TimeUnit unit);
+
+    /**
+     * Subscribes {@code listener} to all matching records until the subscription is cancelled. The listener is called
+     * by the thread reading logcat so it has to return quickly.
+     *
+     * @param tag tag of records, null for any tag
+     * @param regex regular expression a message of records has to contain
+     * @param listener listener of matching records
+     * @return subscription
+     * @throws IllegalArgumentException if {@code regex} or {@code listener} is null or {@code regex} is not a valid
+     *         regular expression
+     */
+    LogcatSubscription subscribe(String tag, String regex, LogcatListener listener);
+}
@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+/**
+ * Screenshot taken by a {@link ScreenshotBackend}, which is either an uncompressed frame or a PNG image encoded by the
+ * device.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public interface DeviceScreenshot extends Screenshot {
+
+    /**
+     *
+     * @return PNG encoded by the device or {@code null} when the screenshot was taken uncompressed, {@link #getRawImage()}
+     *         decodes it on demand
+     */
+    byte[] getPng();
+
+    void setPng(byte[] png);
+
+    int getWidth();
+
+    int getHeight();
+}
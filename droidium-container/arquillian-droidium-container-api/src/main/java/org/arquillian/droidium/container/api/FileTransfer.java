@@ -0,0 +1,83 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+/**
+ * Result of a bulk transfer of files between the host computer and Android device.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class FileTransfer {
+
+    private final int files;
+
+    private final long bytes;
+
+    private final long resumedBytes;
+
+    private final long duration;
+
+    /**
+     *
+     * @param files number of transferred files
+     * @param bytes number of bytes transferred over the wire
+     * @param resumedBytes number of bytes which were already transferred before and were not transferred again
+     * @param duration duration of the transfer in milliseconds
+     */
+    public FileTransfer(int files, long bytes, long resumedBytes, long duration) {
+        this.files = files;
+        this.bytes = bytes;
+        this.resumedBytes = resumedBytes;
+        this.duration = duration;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getResumedBytes() {
+        return resumedBytes;
+    }
+
+    /**
+     *
+     * @return duration of the transfer in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     *
+     * @return transferred bytes per second
+     */
+    public long getThroughput() {
+        return duration > 0 ? bytes * 1000 / duration : bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d bytes (%d resumed) in %d ms, %d kB/s", files, bytes, resumedBytes, duration,
+            getThroughput() / 1024);
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+/**
+ * Options of bulk transfers of files between the host computer and Android device, see
+ * {@link AndroidDevice#push(java.io.File, String, FileTransferOptions)} and
+ * {@link AndroidDevice#pull(String, java.io.File, FileTransferOptions)}.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class FileTransferOptions {
+
+    /**
+     * Maximal size of one chunk of data in bytes adb sync protocol accepts.
+     */
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Time in milliseconds to wait for the device during a transfer, long enough for {@code md5sum} of a big file.
+     */
+    public static final int DEFAULT_TIMEOUT = 300000;
+
+    public final int concurrency;
+    public final int chunkSize;
+    public final boolean resume;
+    public final boolean verify;
+    public final int timeout;
+
+    private FileTransferOptions(Builder builder) {
+        this.concurrency = builder.concurrency;
+        this.chunkSize = builder.chunkSize;
+        this.resume = builder.resume;
+        this.verify = builder.verify;
+        this.timeout = builder.timeout;
+    }
+
+    public static class Builder {
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private int chunkSize = MAX_CHUNK_SIZE;
+        private boolean resume = true;
+        private boolean verify = false;
+        private int timeout = DEFAULT_TIMEOUT;
+
+        /**
+         *
+         * @param concurrency number of files transferred at once, each over its own sync connection, values lower than 1
+         *        fall back to 1
+         * @return this
+         */
+        public Builder setConcurrency(int concurrency) {
+            this.concurrency = Math.max(1, concurrency);
+            return this;
+        }
+
+        /**
+         *
+         * @param chunkSize size of one chunk of data in bytes, values out of range (0, {@value FileTransferOptions#MAX_CHUNK_SIZE}]
+         *        fall back to {@value FileTransferOptions#MAX_CHUNK_SIZE}
+         * @return this
+         */
+        public Builder setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize > 0 && chunkSize <= MAX_CHUNK_SIZE ? chunkSize : MAX_CHUNK_SIZE;
+            return this;
+        }
+
+        /**
+         *
+         * @param resume true if a pull interrupted before continues where it ended, defaults to true
+         * @return this
+         */
+        public Builder setResume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         *
+         * @param verify true if checksums of transferred files are compared, defaults to false
+         * @return this
+         */
+        public Builder setVerify(boolean verify) {
+            this.verify = verify;
+            return this;
+        }
+
+        /**
+         *
+         * @param timeout maximal time in milliseconds to wait for the next response of the device, e.g. for the checksum of
+         *        a verified file, 0 waits forever, negative values fall back to {@value FileTransferOptions#DEFAULT_TIMEOUT}
+         * @return this
+         */
+        public Builder setTimeout(int timeout) {
+            this.timeout = timeout >= 0 ? timeout : DEFAULT_TIMEOUT;
+            return this;
+        }
+
+        public FileTransferOptions build() {
+            return new FileTransferOptions(this);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+import java.util.Arrays;
+
+/**
+ * Logcat record which matched a subscription to {@link AndroidLogcat}.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class LogcatMatch {
+
+    private final char level;
+
+    private final String tag;
+
+    private final int pid;
+
+    private final long timestamp;
+
+    private final String message;
+
+    private final String[] groups;
+
+    /**
+     *
+     * @param level level of the record, e.g. {@code I}
+     * @param tag tag of the record
+     * @param pid pid of the process which logged the record
+     * @param timestamp time of the record in milliseconds since the epoch, time of reading when logcat does not provide
+     *        it
+     * @param message message of the record
+     * @param groups groups captured by the regular expression of the subscription, group 0 is the whole match
+     */
+    public LogcatMatch(char level, String tag, int pid, long timestamp, String message, String[] groups) {
+        this.level = level;
+        this.tag = tag;
+        this.pid = pid;
+        this.timestamp = timestamp;
+        this.message = message;
+        this.groups = groups;
+    }
+
+    public char getLevel() {
+        return level;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     *
+     * @param group index of a group of the regular expression of the subscription, 0 for the whole match
+     * @return captured group, null if the group did not participate in the match
+     * @throws IndexOutOfBoundsException if there is no such group
+     */
+    public String group(int group) {
+        return groups[group];
+    }
+
+    public int groupCount() {
+        return groups.length - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LogcatMatch [level=" + level + ", tag=" + tag + ", pid=" + pid + ", timestamp=" + timestamp + ", message="
+            + message + ", groups=" + Arrays.toString(groups) + "]";
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscription to logcat records created by {@link AndroidLogcat}.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public interface LogcatSubscription {
+
+    /**
+     * Waits for the first record matching this subscription. Returns immediately when some record has already matched.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     * @return the first matching record or null if no record matched in time or the waiting thread was interrupted
+     */
+    LogcatMatch await(long timeout, TimeUnit unit);
+
+    /**
+     *
+     * @return number of records matched so far
+     */
+    long getMatches();
+
+    /**
+     * Stops matching of records, it is safe to call this method repeatedly.
+     */
+    void cancel();
+}
@@ -22,20 +22,28 @@ package org.arquillian.droidium.container.api;
  */
 public class ScreenrecordOptions {
 
+    /**
+     * Maximal length of one recording in seconds {@code screenrecord} accepts.
+     */
+    public static final int MAX_TIME_LIMIT = 180;
+
     public final int width;
     public final int height;
     public final long bitrate;
+    public final int timeLimit;
 
     private ScreenrecordOptions(Builder builder) {
         this.width = builder.width;
         this.height = builder.height;
         this.bitrate = builder.bitrate;
+        this.timeLimit = builder.timeLimit;
     }
 
     public static class Builder {
         private int width;
         private int height;
         private long bitrate;
+        private int timeLimit = MAX_TIME_LIMIT;
 
         public Builder setSize(int width, int height) {
             this.width = width;
@@ -48,6 +56,18 @@ public class ScreenrecordOptions {
             return this;
         }
 
+        /**
+         *
+         * @param timeLimit length of the recording in seconds after which {@code screenrecord} stops by itself, values
+         *        out of range (0, {@value ScreenrecordOptions#MAX_TIME_LIMIT}] fall back to
+         *        {@value ScreenrecordOptions#MAX_TIME_LIMIT}
+         * @return this
+         */
+        public Builder setTimeLimit(int timeLimit) {
+            this.timeLimit = timeLimit;
+            return this;
+        }
+
         public ScreenrecordOptions build() {
             return new ScreenrecordOptions(this);
         }
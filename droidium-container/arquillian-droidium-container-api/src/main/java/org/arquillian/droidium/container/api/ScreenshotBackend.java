@@ -0,0 +1,64 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.api;
+
+/**
+ * Ways of taking a screenshot of an Android device.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public enum ScreenshotBackend {
+
+    /**
+     * The fastest of the other backends supported by the device, by the median time of the first screenshots taken by each.
+     */
+    AUTO,
+
+    /**
+     * Framebuffer service of adb, uncompressed frames, deprecated on newer images.
+     */
+    FRAMEBUFFER,
+
+    /**
+     * Uncompressed output of {@code screencap} streamed over {@code exec}, API level 21 and higher.
+     */
+    SCREENCAP_RAW,
+
+    /**
+     * PNG encoded by {@code screencap -p} on the device streamed over {@code exec}, API level 21 and higher.
+     */
+    SCREENCAP_PNG;
+
+    /**
+     *
+     * @param backend name of a backend, case insensitive, dashes are treated as underscores
+     * @return backend of the given name
+     * @throws IllegalArgumentException if there is not any backend of the given name
+     */
+    public static ScreenshotBackend fromString(String backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Screenshot backend can not be a null object.");
+        }
+        for (ScreenshotBackend value : values()) {
+            if (value.name().equalsIgnoreCase(backend.trim().replace('-', '_'))) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("There is not any screenshot backend of name " + backend);
+    }
+}
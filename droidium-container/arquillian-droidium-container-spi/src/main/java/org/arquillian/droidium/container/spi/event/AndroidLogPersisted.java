@@ -0,0 +1,61 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.spi.event;
+
+import java.io.File;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+
+/**
+ * Event representing that logcat of an Android device recorded during a failed test was written to a file.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class AndroidLogPersisted {
+
+    private final AndroidDevice device;
+
+    private final File file;
+
+    private final String testClassName;
+
+    private final String testMethodName;
+
+    public AndroidLogPersisted(AndroidDevice device, File file, String testClassName, String testMethodName) {
+        this.device = device;
+        this.file = file;
+        this.testClassName = testClassName;
+        this.testMethodName = testMethodName;
+    }
+
+    public AndroidDevice getDevice() {
+        return device;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getTestClassName() {
+        return testClassName;
+    }
+
+    public String getTestMethodName() {
+        return testMethodName;
+    }
+}
@@ -24,6 +24,7 @@ import org.arquillian.droidium.container.deployment.AndroidDeploymentInstaller;
 import org.arquillian.droidium.container.deployment.AndroidDeploymentUninstaller;
 import org.arquillian.droidium.container.deployment.AndroidDeviceContext;
 import org.arquillian.droidium.container.enrichment.AndroidDeviceResourceProvider;
+import org.arquillian.droidium.container.enrichment.AndroidLogcatResourceProvider;
 import org.arquillian.droidium.container.impl.AndroidBridgeConnector;
 import org.arquillian.droidium.container.impl.AndroidDeviceSelectorImpl;
 import org.arquillian.droidium.container.impl.AndroidEmulatorShutdown;
@@ -31,6 +32,10 @@ import org.arquillian.droidium.container.impl.AndroidEmulatorStartup;
 import org.arquillian.droidium.container.impl.AndroidSDCardManagerImpl;
 import org.arquillian.droidium.container.impl.AndroidVirtualDeviceManager;
 import org.arquillian.droidium.container.impl.DroidiumResourceManager;
+import org.arquillian.droidium.container.log.AndroidCrashWatchdog;
+import org.arquillian.droidium.container.log.AndroidLogInitializer;
+import org.arquillian.droidium.container.log.AndroidLogReporter;
+import org.arquillian.droidium.container.log.AndroidLogTestSegmenter;
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.core.spi.LoadableExtension;
 import org.jboss.arquillian.test.spi.enricher.resource.ResourceProvider;
@@ -50,6 +55,7 @@ public class DroidiumContainerExtension implements LoadableExtension {
     public void register(ExtensionBuilder builder) {
         builder.service(DeployableContainer.class, AndroidDeployableContainer.class);
         builder.service(ResourceProvider.class, AndroidDeviceResourceProvider.class);
+        builder.service(ResourceProvider.class, AndroidLogcatResourceProvider.class);
         builder.service(AndroidDeviceSelector.class, AndroidDeviceSelectorImpl.class);
         builder.observer(AndroidDeployableContainer.class);
         builder.observer(AndroidBridgeConnector.class);
@@ -64,6 +70,24 @@ public class DroidiumContainerExtension implements LoadableExtension {
         builder.observer(DroidiumExclusionDecider.class);
         builder.observer(DroidiumResourceManager.class);
         builder.observer(AndroidDeviceContext.class);
+        builder.observer(AndroidLogInitializer.class);
+        builder.observer(AndroidLogTestSegmenter.class);
+        builder.observer(AndroidCrashWatchdog.class);
+
+        if (isClassPresent(AndroidLogReporter.REPORTER_CLASS_NAME)) {
+            builder.observer(AndroidLogReporter.class);
+        }
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, DroidiumContainerExtension.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        } catch (LinkageError ex) {
+            return false;
+        }
     }
 
 }
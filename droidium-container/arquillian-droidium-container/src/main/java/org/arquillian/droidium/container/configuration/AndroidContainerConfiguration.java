@@ -19,6 +19,8 @@ package org.arquillian.droidium.container.configuration;
 
 import java.util.logging.Logger;
 
+import org.arquillian.droidium.container.impl.InstallPolicy;
+import org.arquillian.droidium.container.impl.StateResetStrategy;
 import org.arquillian.droidium.container.log.LogLevel;
 import org.arquillian.droidium.container.log.LogType;
 import org.jboss.arquillian.container.spi.client.container.ContainerConfiguration;
@@ -71,6 +73,14 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
 
     private String logFilePath = "target" + fileSeparator + "logcat.log";
 
+    private String logDir = "target" + fileSeparator + "logcat";
+
+    private int logRotationSizeInMegabytes = 64;
+
+    private int logRotationIntervalInMinutes = 60;
+
+    private int logRotationMaxSegments = 0;
+
     private String logPackageWhitelist;
 
     private String logPackageBlacklist;
@@ -78,8 +88,32 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
     // useful when more containers are being used, also affects log filename!
     private boolean logSerialId;
 
+    private int logQueueCapacity = 8192;
+
+    private long logFlushIntervalInMillis = 1000L;
+
+    private boolean logBinary;
+
+    private boolean logSubscriptionsEnabled;
+
+    private int logTestBufferSizeInKilobytes = 0;
+
+    private String logTestDir = "target" + fileSeparator + "logcat";
+
+    private boolean watchdogEnabled;
+
+    private String watchdogPackages;
+
+    private String watchdogDir = "target" + fileSeparator + "watchdog";
+
     private String target;
 
+    private String stateResetStrategy = StateResetStrategy.DEFAULT;
+
+    private int apkCacheSizeInMegabytes = 256;
+
+    private String installPolicy = InstallPolicy.DEFAULT;
+
     public String getAvdName() {
         return avdName;
     }
@@ -236,6 +270,38 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
         this.logFilePath = logFilePath;
     }
 
+    public String getLogDir() {
+        return logDir;
+    }
+
+    public void setLogDir(String logDir) {
+        this.logDir = logDir;
+    }
+
+    public int getLogRotationSizeInMegabytes() {
+        return logRotationSizeInMegabytes;
+    }
+
+    public void setLogRotationSizeInMegabytes(int logRotationSizeInMegabytes) {
+        this.logRotationSizeInMegabytes = logRotationSizeInMegabytes;
+    }
+
+    public int getLogRotationIntervalInMinutes() {
+        return logRotationIntervalInMinutes;
+    }
+
+    public void setLogRotationIntervalInMinutes(int logRotationIntervalInMinutes) {
+        this.logRotationIntervalInMinutes = logRotationIntervalInMinutes;
+    }
+
+    public int getLogRotationMaxSegments() {
+        return logRotationMaxSegments;
+    }
+
+    public void setLogRotationMaxSegments(int logRotationMaxSegments) {
+        this.logRotationMaxSegments = logRotationMaxSegments;
+    }
+
     public String getLogPackageWhitelist() {
         return logPackageWhitelist;
     }
@@ -266,6 +332,102 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
         this.logSerialId = logSerialId;
     }
 
+    public int getLogQueueCapacity() {
+        return logQueueCapacity;
+    }
+
+    public void setLogQueueCapacity(int logQueueCapacity) {
+        this.logQueueCapacity = logQueueCapacity;
+    }
+
+    public long getLogFlushIntervalInMillis() {
+        return logFlushIntervalInMillis;
+    }
+
+    public void setLogFlushIntervalInMillis(long logFlushIntervalInMillis) {
+        this.logFlushIntervalInMillis = logFlushIntervalInMillis;
+    }
+
+    public boolean isLogBinary() {
+        return logBinary;
+    }
+
+    public void setLogBinary(boolean logBinary) {
+        this.logBinary = logBinary;
+    }
+
+    public boolean isLogSubscriptionsEnabled() {
+        return logSubscriptionsEnabled;
+    }
+
+    public void setLogSubscriptionsEnabled(boolean logSubscriptionsEnabled) {
+        this.logSubscriptionsEnabled = logSubscriptionsEnabled;
+    }
+
+    public int getLogTestBufferSizeInKilobytes() {
+        return logTestBufferSizeInKilobytes;
+    }
+
+    public void setLogTestBufferSizeInKilobytes(int logTestBufferSizeInKilobytes) {
+        this.logTestBufferSizeInKilobytes = logTestBufferSizeInKilobytes;
+    }
+
+    public String getLogTestDir() {
+        return logTestDir;
+    }
+
+    public void setLogTestDir(String logTestDir) {
+        this.logTestDir = logTestDir;
+    }
+
+    public boolean isWatchdogEnabled() {
+        return watchdogEnabled;
+    }
+
+    public void setWatchdogEnabled(boolean watchdogEnabled) {
+        this.watchdogEnabled = watchdogEnabled;
+    }
+
+    public String getWatchdogPackages() {
+        return watchdogPackages;
+    }
+
+    public void setWatchdogPackages(String watchdogPackages) {
+        this.watchdogPackages = watchdogPackages;
+    }
+
+    public String getWatchdogDir() {
+        return watchdogDir;
+    }
+
+    public void setWatchdogDir(String watchdogDir) {
+        this.watchdogDir = watchdogDir;
+    }
+
+    public String getStateResetStrategy() {
+        return stateResetStrategy;
+    }
+
+    public void setStateResetStrategy(String stateResetStrategy) {
+        this.stateResetStrategy = stateResetStrategy;
+    }
+
+    public int getApkCacheSizeInMegabytes() {
+        return apkCacheSizeInMegabytes;
+    }
+
+    public void setApkCacheSizeInMegabytes(int apkCacheSizeInMegabytes) {
+        this.apkCacheSizeInMegabytes = apkCacheSizeInMegabytes;
+    }
+
+    public String getInstallPolicy() {
+        return installPolicy;
+    }
+
+    public void setInstallPolicy(String installPolicy) {
+        this.installPolicy = installPolicy;
+    }
+
     @Override
     public void validate() throws AndroidContainerConfigurationException {
 
@@ -318,6 +480,61 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
             throw new AndroidContainerConfigurationException(
                 "Emulator shutdown timeout has to be bigger then 0.");
         }
+
+        if (logQueueCapacity <= 0) {
+            throw new AndroidContainerConfigurationException(
+                "Capacity of logcat queue has to be bigger then 0.");
+        }
+
+        if (logFlushIntervalInMillis <= 0) {
+            throw new AndroidContainerConfigurationException(
+                "Logcat flush interval has to be bigger then 0.");
+        }
+
+        if (logRotationSizeInMegabytes <= 0) {
+            throw new AndroidContainerConfigurationException(
+                "Size of logcat segment has to be bigger then 0.");
+        }
+
+        if (logRotationIntervalInMinutes < 0) {
+            throw new AndroidContainerConfigurationException(
+                "Rotation interval of logcat segments can not be negative.");
+        }
+
+        if (logRotationMaxSegments < 0) {
+            throw new AndroidContainerConfigurationException(
+                "Maximal number of logcat segments can not be negative.");
+        }
+
+        if (logTestBufferSizeInKilobytes < 0) {
+            throw new AndroidContainerConfigurationException(
+                "Size of logcat test buffer can not be negative.");
+        }
+
+        if (logTestBufferSizeInKilobytes > 0 && (logTestDir == null || logTestDir.trim().isEmpty())) {
+            throw new AndroidContainerConfigurationException(
+                "Directory to store logcat of failed tests to can not be a null object nor an empty string.");
+        }
+
+        if (watchdogEnabled && (watchdogDir == null || watchdogDir.trim().isEmpty())) {
+            throw new AndroidContainerConfigurationException(
+                "Directory to store ANR traces and tombstones to can not be a null object nor an empty string.");
+        }
+
+        if (!StateResetStrategy.isValid(stateResetStrategy)) {
+            throw new AndroidContainerConfigurationException("State reset strategy '" + stateResetStrategy
+                + "' is not valid, use one of '" + StateResetStrategy.REINSTALL + "', '" + StateResetStrategy.SNAPSHOT
+                + "' or '" + StateResetStrategy.CLEAR + "'.");
+        }
+
+        if (apkCacheSizeInMegabytes < 0) {
+            throw new AndroidContainerConfigurationException("Size of the cache of APKs on the device can not be negative.");
+        }
+
+        if (!InstallPolicy.isValid(installPolicy)) {
+            throw new AndroidContainerConfigurationException("Install policy '" + installPolicy + "' is not valid, use either '"
+                + InstallPolicy.ALWAYS + "' or '" + InstallPolicy.SKIP_IDENTICAL + "'.");
+        }
     }
 
     @Override
@@ -338,8 +555,24 @@ public class AndroidContainerConfiguration implements ContainerConfiguration {
         sb.append(String.format("%-40s %s\n", "logLevel", logLevel));
         sb.append(String.format("%-40s %s\n", "logType", logType));
         sb.append(String.format("%-40s %s\n", "logFilePath", logFilePath));
+        sb.append(String.format("%-40s %s\n", "logDir", logDir));
+        sb.append(String.format("%-40s %s\n", "logRotationSizeInMegabytes", logRotationSizeInMegabytes));
+        sb.append(String.format("%-40s %s\n", "logRotationIntervalInMinutes", logRotationIntervalInMinutes));
+        sb.append(String.format("%-40s %s\n", "logRotationMaxSegments", logRotationMaxSegments));
         sb.append(String.format("%-40s %s\n", "logPackageWhitelist", logPackageWhitelist));
         sb.append(String.format("%-40s %s\n", "logPackageBlacklist", logPackageBlacklist));
+        sb.append(String.format("%-40s %s\n", "logQueueCapacity", logQueueCapacity));
+        sb.append(String.format("%-40s %s\n", "logFlushIntervalInMillis", logFlushIntervalInMillis));
+        sb.append(String.format("%-40s %s\n", "logBinary", logBinary));
+        sb.append(String.format("%-40s %s\n", "logSubscriptionsEnabled", logSubscriptionsEnabled));
+        sb.append(String.format("%-40s %s\n", "logTestBufferSizeInKilobytes", logTestBufferSizeInKilobytes));
+        sb.append(String.format("%-40s %s\n", "logTestDir", logTestDir));
+        sb.append(String.format("%-40s %s\n", "watchdogEnabled", watchdogEnabled));
+        sb.append(String.format("%-40s %s\n", "watchdogPackages", watchdogPackages));
+        sb.append(String.format("%-40s %s\n", "watchdogDir", watchdogDir));
+        sb.append(String.format("%-40s %s\n", "stateResetStrategy", stateResetStrategy));
+        sb.append(String.format("%-40s %s\n", "apkCacheSizeInMegabytes", apkCacheSizeInMegabytes));
+        sb.append(String.format("%-40s %s\n", "installPolicy", installPolicy));
         return sb.toString();
     }
 
@@ -21,6 +21,7 @@ import java.io.File;
 import org.arquillian.droidium.container.configuration.AndroidSDK;
 import org.arquillian.droidium.container.impl.AndroidApplicationHelper;
 import org.arquillian.droidium.container.impl.AndroidApplicationManager;
+import org.arquillian.droidium.container.impl.AndroidApplicationStateResetter;
 import org.arquillian.droidium.container.spi.AndroidDeployment;
 import org.arquillian.droidium.container.spi.event.AfterAndroidDeploymentDeployed;
 import org.arquillian.droidium.container.spi.event.AndroidDeploy;
@@ -65,6 +66,9 @@ public class AndroidDeploymentInstaller {
     @Inject
     private Instance<AndroidDeploymentRegister> androidDeploymentRegister;
 
+    @Inject
+    private Instance<AndroidApplicationStateResetter> androidApplicationStateResetter;
+
     @Inject
     private Event<BeforeAndroidDeploymentDeployed> beforeDeploy;
 
@@ -92,7 +96,19 @@ public class AndroidDeploymentInstaller {
             .setApplicationMainActivity(androidApplicationHelper.get().getApplicationMainActivity(resignedApk));
 
         androidDeploymentRegister.get().add(deployment);
-        androidApplicationManager.get().install(deployment);
+
+        AndroidApplicationStateResetter resetter = androidApplicationStateResetter.get();
+
+        if (resetter == null || !resetter.reset(deployment)) {
+            long start = System.currentTimeMillis();
+            androidApplicationManager.get().install(deployment);
+
+            if (resetter != null) {
+                resetter.record(deployment.getApplicationBasePackage(), AndroidApplicationStateResetter.INSTALL,
+                    System.currentTimeMillis() - start);
+                resetter.installed(deployment);
+            }
+        }
 
         afterDeploy.fire(new AfterAndroidDeploymentDeployed(deployment));
     }
@@ -18,6 +18,7 @@ package org.arquillian.droidium.container.deployment;
 
 import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.impl.AndroidApplicationManager;
+import org.arquillian.droidium.container.impl.AndroidApplicationStateResetter;
 import org.arquillian.droidium.container.spi.AndroidDeployment;
 import org.arquillian.droidium.container.spi.event.AfterAndroidDeploymentUnDeployed;
 import org.arquillian.droidium.container.spi.event.AndroidUnDeploy;
@@ -49,6 +50,9 @@ public class AndroidDeploymentUninstaller {
     @Inject
     private Instance<AndroidDeploymentRegister> androidDeploymentRegister;
 
+    @Inject
+    private Instance<AndroidApplicationStateResetter> androidApplicationStateResetter;
+
     @Inject
     private Event<BeforeAndroidDeploymentUnDeployed> beforeUnDeploy;
 
@@ -61,7 +65,18 @@ public class AndroidDeploymentUninstaller {
 
         beforeUnDeploy.fire(new BeforeAndroidDeploymentUnDeployed(androidDeployment));
 
-        androidApplicationManager.get().setDevice(device).uninstall(androidDeployment);
+        AndroidApplicationStateResetter resetter = androidApplicationStateResetter.get();
+
+        // when kept installed, state of the application is reset on the next deployment instead
+        if ((resetter == null || !resetter.keepInstalled(androidDeployment)) && !androidApplicationManager.get().keepInstalled()) {
+            long start = System.currentTimeMillis();
+            androidApplicationManager.get().setDevice(device).uninstall(androidDeployment);
+
+            if (resetter != null) {
+                resetter.record(androidDeployment.getApplicationBasePackage(), AndroidApplicationStateResetter.UNINSTALL,
+                    System.currentTimeMillis() - start);
+            }
+        }
 
         afterUnDeploy.fire(new AfterAndroidDeploymentUnDeployed(androidDeployment));
 
@@ -16,12 +16,18 @@
  */
 package org.arquillian.droidium.container.deployment;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.api.AndroidDeviceMetadata;
 import org.arquillian.droidium.container.api.AndroidDeviceRegister;
 import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
 import org.arquillian.droidium.container.configuration.AndroidSDK;
 import org.arquillian.droidium.container.impl.AndroidApplicationManager;
+import org.arquillian.droidium.container.impl.AndroidApplicationStateResetter;
+import org.arquillian.droidium.container.impl.StateResetStrategy;
+import org.arquillian.droidium.container.spi.event.AndroidContainerStop;
 import org.arquillian.droidium.container.spi.event.AndroidDeviceReady;
 import org.jboss.arquillian.container.spi.Container;
 import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
@@ -40,6 +46,8 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  */
 public class AndroidDeviceContext {
 
+    private static final Logger logger = Logger.getLogger(AndroidDeviceContext.class.getName());
+
     @Inject
     @ContainerScoped
     public InstanceProducer<AndroidApplicationManager> androidApplicationManager;
@@ -53,6 +61,13 @@ public class AndroidDeviceContext {
     @Inject
     private Instance<AndroidDeviceRegister> androidDeviceRegister;
 
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<AndroidApplicationStateResetter> androidApplicationStateResetter;
+
+    @Inject
+    private Instance<AndroidContainerConfiguration> configuration;
+
     public void onBeforeDeploy(@Observes BeforeDeploy event, AndroidDevice androidDevice) {
 
         if (event.getDeployableContainer().getConfigurationClass() != AndroidContainerConfiguration.class) {
@@ -94,5 +109,29 @@ public class AndroidDeviceContext {
             metadata.setContainerQualifier(container.getName());
             androidDeviceRegister.get().put(event.getDevice(), metadata);
         }
+
+        String stateResetStrategy = configuration.get() == null
+            ? StateResetStrategy.DEFAULT : configuration.get().getStateResetStrategy();
+
+        androidApplicationStateResetter.set(new AndroidApplicationStateResetter(event.getDevice(), stateResetStrategy));
+    }
+
+    public void onAndroidContainerStop(@Observes(precedence = 10) AndroidContainerStop event) {
+        AndroidApplicationStateResetter resetter = androidApplicationStateResetter.get();
+
+        if (resetter != null) {
+            if (resetter.hasTimings()) {
+                logger.log(Level.INFO, "Installation and state reset timings with \"{0}\" strategy:\n{1}",
+                    new Object[] { resetter.getStrategy(), resetter.getTimingsReport() });
+            }
+
+            AndroidApplicationManager manager = androidApplicationManager.get();
+
+            // skipIdentical install policy keeps applications installed across test runs on purpose
+            if (manager == null || !manager.keepInstalled()) {
+                resetter.uninstallKept();
+            }
+            resetter.cleanup();
+        }
     }
 }
@@ -0,0 +1,56 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.enrichment;
+
+import java.lang.annotation.Annotation;
+
+import org.arquillian.droidium.container.api.AndroidLogcat;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.test.api.ArquillianResource;
+import org.jboss.arquillian.test.spi.enricher.resource.ResourceProvider;
+
+/**
+ * Resource provider which allows tests to wait for logcat records of Android device.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ * @see AndroidLogcat
+ */
+public class AndroidLogcatResourceProvider implements ResourceProvider {
+
+    @Inject
+    private Instance<AndroidLogcat> androidLogcat;
+
+    @Override
+    public boolean canProvide(Class<?> type) {
+        return AndroidLogcat.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public Object lookup(ArquillianResource resource, Annotation... qualifiers) {
+
+        AndroidLogcat logcat = androidLogcat.get();
+
+        if (logcat == null) {
+            throw new IllegalStateException("Unable to inject Android logcat instance into the test, logcat is not read. "
+                + "Set logType or logSubscriptionsEnabled in the configuration of the container.");
+        }
+
+        return logcat;
+    }
+
+}
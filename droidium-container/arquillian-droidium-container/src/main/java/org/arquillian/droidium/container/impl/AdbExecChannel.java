@@ -0,0 +1,193 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+
+import com.android.ddmlib.AndroidDebugBridge;
+
+/**
+ * Runs a command on a device by {@code exec} service of the adb server and streams its standard output to the host.<br>
+ * <br>
+ * Unlike {@code shell} service, {@code exec} does not allocate a terminal on the device so binary output, e.g. of
+ * {@code screencap}, arrives untouched. The service is available since API level 21. This is what {@code adb exec-out}
+ * does.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class AdbExecChannel {
+
+    public static final int MIN_API_LEVEL = 21;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final InetSocketAddress adbAddress;
+
+    private int connectTimeout = 5000;
+
+    private int readTimeout = 10000;
+
+    /**
+     * Creates a channel to the adb server ddmlib is connected to.
+     */
+    public AdbExecChannel() {
+        this(AndroidDebugBridge.getSocketAddress());
+    }
+
+    /**
+     *
+     * @param adbAddress address of the adb server
+     */
+    public AdbExecChannel(InetSocketAddress adbAddress) {
+        if (adbAddress == null) {
+            throw new IllegalArgumentException("Address of adb server can not be a null object.");
+        }
+        this.adbAddress = adbAddress;
+    }
+
+    /**
+     *
+     * @param connectTimeout timeout of connecting to the adb server in milliseconds
+     * @return this
+     */
+    public AdbExecChannel connectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     *
+     * @param readTimeout maximal time in milliseconds to wait for the next bytes of the output
+     * @return this
+     */
+    public AdbExecChannel readTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Executes {@code command} on the device of {@code serialNumber}.
+     *
+     * @param serialNumber serial number of the device
+     * @param command command to execute
+     * @return standard output of the command, closing it closes the connection to the adb server
+     * @throws AndroidExecutionException if the adb server refuses the device or the command
+     */
+    public InputStream exec(String serialNumber, String command) throws AndroidExecutionException {
+        final Socket socket;
+        try {
+            socket = connect(serialNumber, "exec:" + command);
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to execute \"{0}\" on device {1} by adb server at {2}.",
+                command, serialNumber, adbAddress);
+        }
+
+        try {
+            return new FilterInputStream(socket.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    socket.close();
+                }
+            };
+        } catch (IOException ex) {
+            close(socket);
+            throw new AndroidExecutionException(ex, "Unable to execute \"{0}\" on device {1} by adb server at {2}.",
+                command, serialNumber, adbAddress);
+        }
+    }
+
+    /**
+     * Connects to {@code service} of the device of {@code serialNumber}, e.g. {@code sync:}.
+     *
+     * @param serialNumber serial number of the device
+     * @param service service of the device to connect to
+     * @return socket connected to the service
+     * @throws IOException if it is not possible to connect to the adb server
+     * @throws AndroidExecutionException if the adb server refuses the device or the service
+     */
+    Socket connect(String serialNumber, String service) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(adbAddress, connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+
+            request(in, out, "host:transport:" + serialNumber);
+            request(in, out, service);
+
+            return socket;
+        } catch (IOException ex) {
+            close(socket);
+            throw ex;
+        } catch (AndroidExecutionException ex) {
+            close(socket);
+            throw ex;
+        }
+    }
+
+    InetSocketAddress getAdbAddress() {
+        return adbAddress;
+    }
+
+    private void request(InputStream in, OutputStream out, String request) throws IOException {
+        byte[] payload = request.getBytes(CHARSET);
+        out.write(String.format("%04x", payload.length).getBytes(CHARSET));
+        out.write(payload);
+        out.flush();
+
+        DataInputStream data = new DataInputStream(in);
+        byte[] status = new byte[4];
+        data.readFully(status);
+
+        String response = new String(status, CHARSET);
+        if ("OKAY".equals(response)) {
+            return;
+        }
+
+        String message = response;
+        if ("FAIL".equals(response)) {
+            byte[] length = new byte[4];
+            data.readFully(length);
+            byte[] reason = new byte[Integer.parseInt(new String(length, CHARSET), 16)];
+            data.readFully(reason);
+            message = new String(reason, CHARSET);
+        }
+
+        throw new AndroidExecutionException("Adb server refused \"{0}\": {1}", request, message);
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+
+/**
+ * Connection to {@code sync} service of a device, the one {@code adb push} and {@code adb pull} talk to.<br>
+ * <br>
+ * Every request is a four letters long id followed by the length of its path in little endian and the path itself.
+ * Files are sent and received in {@code DATA} chunks of at most {@value FileTransferOptions#MAX_CHUNK_SIZE} bytes. One
+ * connection transfers one file at a time, after a failed request the connection is not usable anymore and has to be
+ * closed.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class AdbSyncChannel {
+
+    static final int S_IFMT = 0170000;
+
+    static final int S_IFDIR = 0040000;
+
+    static final int S_IFREG = 0100000;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final String serialNumber;
+
+    private final Socket socket;
+
+    private final DataInputStream in;
+
+    private final OutputStream out;
+
+    private final byte[] header = new byte[8];
+
+    /**
+     *
+     * @param channel channel to the adb server to connect by
+     * @param serialNumber serial number of the device
+     * @throws AndroidExecutionException if it is not possible to connect to the sync service of the device
+     */
+    public AdbSyncChannel(AdbExecChannel channel, String serialNumber) throws AndroidExecutionException {
+        this.serialNumber = serialNumber;
+        try {
+            this.socket = channel.connect(serialNumber, "sync:");
+            this.in = new DataInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream(), FileTransferOptions.MAX_CHUNK_SIZE + 8);
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to connect to sync service of device {0} by adb server at {1}.",
+                serialNumber, channel.getAdbAddress());
+        }
+    }
+
+    /**
+     *
+     * @param path path on the device
+     * @return entry of the path, its mode is 0 when there is nothing on the path
+     * @throws IOException if the connection is broken
+     */
+    public Entry stat(String path) throws IOException {
+        request("STAT", path);
+        expect("STAT");
+        return new Entry(path, readInt(), readInt(), readInt());
+    }
+
+    /**
+     *
+     * @param path directory on the device
+     * @return entries of the directory without {@code .} and {@code ..}
+     * @throws IOException if the connection is broken
+     */
+    public List<Entry> list(String path) throws IOException {
+        request("LIST", path);
+
+        List<Entry> entries = new ArrayList<Entry>();
+
+        while (true) {
+            String id = readId();
+            int mode = readInt();
+            int size = readInt();
+            int time = readInt();
+            byte[] name = new byte[readInt()];
+            in.readFully(name);
+
+            if ("DONE".equals(id)) {
+                return entries;
+            }
+            if (!"DENT".equals(id)) {
+                throw new IOException("Unexpected response " + id + " to listing of " + path + " on device " + serialNumber);
+            }
+
+            String entryName = new String(name, CHARSET);
+            if (!entryName.equals(".") && !entryName.equals("..")) {
+                entries.add(new Entry(entryName, mode, size, time));
+            }
+        }
+    }
+
+    /**
+     * Sends {@code data} to a file on the device, directories of the file are created by the device.
+     *
+     * @param path file on the device
+     * @param mode mode of the file, e.g. {@code 0100644}
+     * @param time modification time of the file in seconds
+     * @param data data of the file
+     * @param chunkSize size of one chunk in bytes
+     * @return number of sent bytes
+     * @throws IOException if reading of {@code data} fails, the connection is broken or the device refuses the file
+     */
+    public long send(String path, int mode, long time, InputStream data, int chunkSize) throws IOException {
+        request("SEND", path + "," + mode);
+
+        byte[] buffer = new byte[Math.min(chunkSize, FileTransferOptions.MAX_CHUNK_SIZE)];
+        long sent = 0;
+        int read;
+
+        while ((read = readChunk(data, buffer)) > 0) {
+            writeHeader("DATA", read);
+            out.write(buffer, 0, read);
+            sent += read;
+        }
+
+        writeHeader("DONE", (int) time);
+        out.flush();
+
+        expect("OKAY");
+        readInt();
+
+        return sent;
+    }
+
+    /**
+     *
+     * @param path file on the device
+     * @param data stream to write the file to
+     * @return number of received bytes
+     * @throws IOException if writing to {@code data} fails, the connection is broken or the device refuses the file
+     */
+    public long recv(String path, OutputStream data) throws IOException {
+        request("RECV", path);
+
+        byte[] buffer = new byte[FileTransferOptions.MAX_CHUNK_SIZE];
+        long received = 0;
+
+        while (true) {
+            String id = readId();
+            int length = readInt();
+
+            if ("DONE".equals(id)) {
+                return received;
+            }
+            if ("FAIL".equals(id)) {
+                throw new IOException(failure(length, "receive " + path));
+            }
+            if (!"DATA".equals(id) || length < 0 || length > buffer.length) {
+                throw new IOException("Unexpected response " + id + " to receiving of " + path + " on device " + serialNumber);
+            }
+
+            in.readFully(buffer, 0, length);
+            data.write(buffer, 0, length);
+            received += length;
+        }
+    }
+
+    /**
+     * Ends the session and closes the connection. It is safe to call this method repeatedly.
+     */
+    public void close() {
+        try {
+            if (!socket.isClosed()) {
+                writeHeader("QUIT", 0);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // ignore
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private void request(String id, String path) throws IOException {
+        byte[] payload = path.getBytes(CHARSET);
+        writeHeader(id, payload.length);
+        out.write(payload);
+        out.flush();
+    }
+
+    private void expect(String expected) throws IOException {
+        String id = readId();
+        if ("FAIL".equals(id)) {
+            throw new IOException(failure(readInt(), expected));
+        }
+        if (!expected.equals(id)) {
+            throw new IOException("Unexpected response " + id + " of device " + serialNumber + " instead of " + expected);
+        }
+    }
+
+    private String failure(int length, String request) throws IOException {
+        byte[] message = new byte[Math.max(0, length)];
+        in.readFully(message);
+        return "Device " + serialNumber + " refused to " + request + ": " + new String(message, CHARSET);
+    }
+
+    private void writeHeader(String id, int value) throws IOException {
+        byte[] idBytes = id.getBytes(CHARSET);
+        System.arraycopy(idBytes, 0, header, 0, 4);
+        header[4] = (byte) value;
+        header[5] = (byte) (value >>> 8);
+        header[6] = (byte) (value >>> 16);
+        header[7] = (byte) (value >>> 24);
+        out.write(header);
+    }
+
+    private String readId() throws IOException {
+        byte[] id = new byte[4];
+        in.readFully(id);
+        return new String(id, CHARSET);
+    }
+
+    private int readInt() throws IOException {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        int b2 = in.readUnsignedByte();
+        int b3 = in.readUnsignedByte();
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    private static int readChunk(InputStream data, byte[] buffer) throws IOException {
+        int filled = 0;
+        int read;
+        while (filled < buffer.length && (read = data.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+        }
+        return filled;
+    }
+
+    /**
+     * File or directory on the device.
+     */
+    public static final class Entry {
+
+        private final String name;
+
+        private final int mode;
+
+        private final long size;
+
+        private final long time;
+
+        Entry(String name, int mode, int size, int time) {
+            this.name = name;
+            this.mode = mode;
+            this.size = size & 0xFFFFFFFFL;
+            this.time = time & 0xFFFFFFFFL;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         *
+         * @return modification time in seconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public boolean exists() {
+            return mode != 0;
+        }
+
+        public boolean isDirectory() {
+            return (mode & S_IFMT) == S_IFDIR;
+        }
+
+        public boolean isFile() {
+            return (mode & S_IFMT) == S_IFREG;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package org.arquillian.droidium.container.impl;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.arquillian.droidium.container.api.AndroidDevice;
@@ -26,12 +28,6 @@ import org.arquillian.droidium.container.configuration.Validate;
 import org.arquillian.droidium.container.spi.AndroidDeployment;
 import org.arquillian.droidium.container.utils.DroidiumFileUtils;
 import org.arquillian.droidium.container.utils.Monkey;
-import org.arquillian.spacelift.Spacelift;
-import org.arquillian.spacelift.execution.ExecutionException;
-import org.arquillian.spacelift.process.Command;
-import org.arquillian.spacelift.process.CommandBuilder;
-import org.arquillian.spacelift.process.ProcessResult;
-import org.arquillian.spacelift.task.os.CommandTool;
 
 
 /**
@@ -79,38 +75,26 @@ public class AndroidApplicationManager {
         Validate.notNull(deployment.getResignedApk(), "Application to install is a null object!");
         Validate.notNull(deployment.getApplicationBasePackage(), "Application base package name is a null object!");
 
-        Command installCommand = new CommandBuilder(sdk.getAdbPath())
-            .parameters("-s")
-            .parameter(device.getSerialNumber())
-            .parameter("install")
-            .parameter(deployment.getResignedApk().getAbsolutePath())
-            .build();
-
-        logger.fine("AUT installation command: " + installCommand.toString());
-
         String applicationBasePackage = deployment.getApplicationBasePackage();
 
         if (device.isPackageInstalled(applicationBasePackage)) {
+            if (keepInstalled()
+                && new InstalledPackageComparator(device).isIdentical(applicationBasePackage, deployment.getResignedApk())) {
+                logger.log(Level.INFO, "Identical application {0} is already installed on device {1}, its data are cleared instead.",
+                    new Object[] { applicationBasePackage, device.getSerialNumber() });
+                AndroidApplicationStateResetter.clear(device, applicationBasePackage);
+                return;
+            }
             device.uninstallPackage(applicationBasePackage);
         }
 
-        ProcessResult processDetails = null;
+        int apkCacheSize = sdk.getAndroidContainerConfiguration().getApkCacheSizeInMegabytes();
 
-        try {
-            processDetails = Spacelift.task(CommandTool.class)
-                .addEnvironment(sdk.getPlatformConfiguration().getAndroidSystemEnvironmentProperties())
-                .command(installCommand)
-                .execute()
-                .await();
-        } catch (ExecutionException e) {
-            // rewrap exception to have better stacktrace
-            throw new AndroidExecutionException(e, "Unable to execute installation command '{0} {1}' for the application {2}. "
-                + "Execution ended with exit code {3} with output\n{4}",
-                sdk.getAdbPath(),
-                installCommand,
-                applicationBasePackage,
-                processDetails.exitValue(),
-                processDetails.output());
+        if (apkCacheSize > 0) {
+            new ApkCache(device, apkCacheSize * 1024L * 1024L, sdk.getPlatformConfiguration().getTmpDir())
+                .install(deployment.getResignedApk(), "-r");
+        } else {
+            device.installPackages(Collections.singletonList(deployment.getResignedApk()), true);
         }
 
         if (!device.isPackageInstalled(applicationBasePackage)) {
@@ -119,6 +103,16 @@ public class AndroidApplicationManager {
         }
     }
 
+    /**
+     *
+     * @return true if installed applications should be kept installed on undeployment so their next installation can be
+     *         skipped, false otherwise
+     * @see InstallPolicy#SKIP_IDENTICAL
+     */
+    public boolean keepInstalled() {
+        return InstallPolicy.SKIP_IDENTICAL.equals(sdk.getAndroidContainerConfiguration().getInstallPolicy());
+    }
+
     /**
      * Uninstalls application from Android device.
      *
@@ -0,0 +1,320 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.configuration.Validate;
+import org.arquillian.droidium.container.spi.AndroidDeployment;
+import org.arquillian.droidium.container.utils.DroidiumFileUtils;
+
+/**
+ * Resets the state of an already installed application instead of uninstalling and installing it again when the same
+ * deployment is deployed repeatedly, e.g. for every test class.<br>
+ * <br>
+ * Depending on {@link StateResetStrategy}, the state is reset either by restoring an emulator snapshot which was saved
+ * right after the first installation or by {@code pm clear}. When the snapshot strategy is not usable (the device is
+ * not an emulator or its console refuses snapshot commands), {@code pm clear} is used instead. Restoring a snapshot reverts
+ * the whole emulator, the state of other applications and files on it are reverted as well.<br>
+ * <br>
+ * Deployments kept installed between deployments are uninstalled by {@link #uninstallKept()} when the container stops.<br>
+ * <br>
+ * Durations of all installations and resets are recorded per application so strategies can be compared.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class AndroidApplicationStateResetter {
+
+    private static final Logger logger = Logger.getLogger(AndroidApplicationStateResetter.class.getName());
+
+    private static final String SNAPSHOT_PREFIX = "droidium_";
+
+    // saving and loading of a snapshot takes a while on slower hosts
+    private static final int SNAPSHOT_TIMEOUT = 180000;
+
+    public static final String INSTALL = "install";
+
+    public static final String UNINSTALL = "uninstall";
+
+    public static final String SNAPSHOT_SAVE = "snapshot save";
+
+    public static final String SNAPSHOT_LOAD = "snapshot load";
+
+    public static final String CLEAR = "pm clear";
+
+    private final AndroidDevice device;
+
+    private String strategy;
+
+    // deployment name -> state of the installed deployment which can be reset
+    private final Map<String, ResettableDeployment> resettable = new HashMap<String, ResettableDeployment>();
+
+    // application package -> action -> {count, total time in ms}
+    private final Map<String, Map<String, long[]>> timings = new TreeMap<String, Map<String, long[]>>();
+
+    /**
+     *
+     * @param device device applications are installed to
+     * @param strategy one of {@link StateResetStrategy} values
+     * @throws IllegalArgumentException if {@code device} is a null object or {@code strategy} is not valid
+     */
+    public AndroidApplicationStateResetter(AndroidDevice device, String strategy) {
+        Validate.notNull(device, "Android device for state resetter can not be a null object!");
+        if (!StateResetStrategy.isValid(strategy)) {
+            throw new IllegalArgumentException("State reset strategy '" + strategy + "' is not valid.");
+        }
+
+        this.device = device;
+        this.strategy = strategy;
+
+        if (StateResetStrategy.SNAPSHOT.equals(strategy) && !device.isEmulator()) {
+            logger.log(Level.WARNING, "Device {0} is not an emulator, state of applications will be reset by 'pm clear' "
+                + "instead of emulator snapshots.", device.getSerialNumber());
+            this.strategy = StateResetStrategy.CLEAR;
+        }
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Resets the state of {@code deployment} when it is already installed from the previous deployment.
+     *
+     * @param deployment deployment to reset the state of
+     * @return true if the state was reset and the deployment does not need to be installed, false otherwise
+     */
+    public boolean reset(AndroidDeployment deployment) {
+        if (StateResetStrategy.REINSTALL.equals(strategy)) {
+            return false;
+        }
+
+        ResettableDeployment installed = resettable.get(deployment.getDeploymentName());
+
+        if (installed == null) {
+            return false;
+        }
+
+        String applicationPackage = deployment.getApplicationBasePackage();
+
+        if (!installed.applicationPackage.equals(applicationPackage)
+            || !installed.fingerprint.equals(DroidiumFileUtils.getContentFingerprint(deployment.getDeployApk()))) {
+            logger.log(Level.INFO, "Deployment {0} has changed since its last installation, it will be installed again.",
+                deployment.getDeploymentName());
+            resettable.remove(deployment.getDeploymentName());
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+
+        if (StateResetStrategy.SNAPSHOT.equals(strategy)) {
+            try {
+                new EmulatorConsoleClient(device).readTimeout(SNAPSHOT_TIMEOUT).execute("avd snapshot load " + installed.snapshot);
+            } catch (AndroidExecutionException ex) {
+                fallbackToClear(ex);
+            }
+        }
+
+        if (!device.isPackageInstalled(applicationPackage)) {
+            resettable.remove(deployment.getDeploymentName());
+            return false;
+        }
+
+        if (StateResetStrategy.SNAPSHOT.equals(strategy)) {
+            record(applicationPackage, SNAPSHOT_LOAD, System.currentTimeMillis() - start);
+        } else {
+            clear(device, applicationPackage);
+            record(applicationPackage, CLEAR, System.currentTimeMillis() - start);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers freshly installed {@code deployment} so its state can be reset next time. In case of the snapshot strategy,
+     * the snapshot of the emulator is saved.
+     *
+     * @param deployment installed deployment
+     */
+    public void installed(AndroidDeployment deployment) {
+        if (StateResetStrategy.REINSTALL.equals(strategy)) {
+            return;
+        }
+
+        ResettableDeployment installed = new ResettableDeployment(deployment.getApplicationBasePackage(),
+            DroidiumFileUtils.getContentFingerprint(deployment.getDeployApk()),
+            SNAPSHOT_PREFIX + deployment.getDeploymentName().replaceAll("[^A-Za-z0-9_.-]", "_"));
+
+        if (StateResetStrategy.SNAPSHOT.equals(strategy)) {
+            long start = System.currentTimeMillis();
+            try {
+                new EmulatorConsoleClient(device).readTimeout(SNAPSHOT_TIMEOUT).execute("avd snapshot save " + installed.snapshot);
+                record(installed.applicationPackage, SNAPSHOT_SAVE, System.currentTimeMillis() - start);
+            } catch (AndroidExecutionException ex) {
+                fallbackToClear(ex);
+            }
+        }
+
+        resettable.put(deployment.getDeploymentName(), installed);
+    }
+
+    /**
+     *
+     * @param deployment deployment to be undeployed
+     * @return true if {@code deployment} should stay installed on undeployment since its state will be reset
+     */
+    public boolean keepInstalled(AndroidDeployment deployment) {
+        return !StateResetStrategy.REINSTALL.equals(strategy) && resettable.containsKey(deployment.getDeploymentName());
+    }
+
+    /**
+     * Records a duration of an action done with an application.
+     *
+     * @param applicationPackage package of the application
+     * @param action action, e.g. {@link #INSTALL}
+     * @param millis duration of the action in milliseconds
+     */
+    public void record(String applicationPackage, String action, long millis) {
+        Map<String, long[]> actions = timings.get(applicationPackage);
+        if (actions == null) {
+            actions = new TreeMap<String, long[]>();
+            timings.put(applicationPackage, actions);
+        }
+
+        long[] timing = actions.get(action);
+        if (timing == null) {
+            timing = new long[2];
+            actions.put(action, timing);
+        }
+
+        timing[0]++;
+        timing[1] += millis;
+
+        logger.log(Level.INFO, "{0} of {1} on device {2} took {3} ms.",
+            new Object[] { action, applicationPackage, device.getSerialNumber(), String.valueOf(millis) });
+    }
+
+    /**
+     * Uninstalls deployments which were kept installed on undeployment so they do not stay on the device after the container
+     * is stopped. Errors are only logged since the device might be already going down.
+     */
+    public void uninstallKept() {
+        if (StateResetStrategy.REINSTALL.equals(strategy)) {
+            return;
+        }
+
+        for (ResettableDeployment installed : resettable.values()) {
+            try {
+                long start = System.currentTimeMillis();
+                device.uninstallPackage(installed.applicationPackage);
+                record(installed.applicationPackage, UNINSTALL, System.currentTimeMillis() - start);
+            } catch (AndroidExecutionException ex) {
+                logger.log(Level.WARNING, "Unable to uninstall {0} from device {1}: {2}", new Object[] {
+                    installed.applicationPackage, device.getSerialNumber(), ex.getMessage() });
+            }
+        }
+    }
+
+    /**
+     * Removes snapshots saved by this resetter. Errors are only logged since the emulator might be already going down.
+     */
+    public void cleanup() {
+        if (StateResetStrategy.SNAPSHOT.equals(strategy)) {
+            for (ResettableDeployment installed : resettable.values()) {
+                try {
+                    new EmulatorConsoleClient(device).execute("avd snapshot del " + installed.snapshot);
+                } catch (AndroidExecutionException ex) {
+                    logger.log(Level.FINE, "Unable to delete snapshot {0}: {1}", new Object[] { installed.snapshot, ex.getMessage() });
+                }
+            }
+        }
+        resettable.clear();
+    }
+
+    /**
+     *
+     * @return table of recorded durations per application and action
+     */
+    public String getTimingsReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %-16s %8s %12s %12s\n", "application", "action", "count", "total [ms]", "avg [ms]"));
+        for (Map.Entry<String, Map<String, long[]>> application : timings.entrySet()) {
+            for (Map.Entry<String, long[]> action : application.getValue().entrySet()) {
+                long[] timing = action.getValue();
+                sb.append(String.format("%-40s %-16s %8d %12d %12d\n", application.getKey(), action.getKey(), timing[0],
+                    timing[1], timing[1] / timing[0]));
+            }
+        }
+        return sb.toString();
+    }
+
+    public boolean hasTimings() {
+        return !timings.isEmpty();
+    }
+
+    static void clear(AndroidDevice device, String applicationPackage) {
+        final StringBuilder output = new StringBuilder();
+
+        device.executeShellCommand("pm clear " + applicationPackage, new AndroidDeviceOutputReciever() {
+
+            @Override
+            public void processNewLines(String[] lines) {
+                for (String line : lines) {
+                    output.append(line);
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        if (!output.toString().contains("Success")) {
+            throw new AndroidExecutionException("Unable to clear data of application {0} on device {1}: {2}", applicationPackage,
+                device.getSerialNumber(), output.toString());
+        }
+    }
+
+    private void fallbackToClear(AndroidExecutionException ex) {
+        logger.log(Level.WARNING, "Emulator snapshots are not usable on device {0}, state of applications will be reset by "
+            + "'pm clear' from now on. Reason: {1}", new Object[] { device.getSerialNumber(), ex.getMessage() });
+        strategy = StateResetStrategy.CLEAR;
+    }
+
+    private static final class ResettableDeployment {
+
+        private final String applicationPackage;
+
+        private final String fingerprint;
+
+        private final String snapshot;
+
+        public ResettableDeployment(String applicationPackage, String fingerprint, String snapshot) {
+            this.applicationPackage = applicationPackage;
+            this.fingerprint = fingerprint;
+            this.snapshot = snapshot;
+        }
+    }
+}
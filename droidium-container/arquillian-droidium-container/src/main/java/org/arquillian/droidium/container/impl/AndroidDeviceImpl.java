@@ -18,9 +18,11 @@ package org.arquillian.droidium.container.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,19 +30,14 @@ import org.arquillian.droidium.container.api.ActivityManager;
 import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
 import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.DeviceScreenshot;
+import org.arquillian.droidium.container.api.FileTransfer;
+import org.arquillian.droidium.container.api.FileTransferOptions;
 import org.arquillian.droidium.container.api.ScreenrecordOptions;
-import org.arquillian.droidium.container.api.Screenshot;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
 import org.arquillian.droidium.container.api.Video;
 import org.arquillian.droidium.container.configuration.AndroidSDK;
 import org.arquillian.droidium.container.configuration.Validate;
-import org.arquillian.droidium.container.task.AndroidKillTask;
-import org.arquillian.droidium.container.task.AndroidPidTask;
-import org.arquillian.droidium.container.task.ScreenRecordToolBuilder;
-import org.arquillian.spacelift.Spacelift;
-import org.arquillian.spacelift.execution.Execution;
-import org.arquillian.spacelift.execution.ExecutionCondition;
-import org.arquillian.spacelift.process.ProcessResult;
-import org.arquillian.spacelift.task.os.CommandTool;
 
 import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.IDevice;
@@ -67,6 +64,9 @@ public class AndroidDeviceImpl implements AndroidDevice {
 
     private static final String RECORD_DIRECTORY = "/sdcard/";
 
+    // package manager verifies and optimizes an installed application before it answers
+    private static final int INSTALL_TIMEOUT = 300000;
+
     private IDevice delegate;
 
     private AndroidSDK androidSdk;
@@ -79,9 +79,13 @@ public class AndroidDeviceImpl implements AndroidDevice {
 
     private boolean alreadyRuns = false;
 
-    private String recordedVideoRemote;
+    private ScreenRecorder screenRecorder;
+
+    private ScreenRecordStreamer screenrecordStreamer;
+
+    private File streamedVideo;
 
-    private Execution<ProcessResult> screenrecorderExecution;
+    private ScreenshotCapturer screenshotCapturer;
 
     public AndroidDeviceImpl() {
         // only for testing purposes
@@ -244,6 +248,33 @@ public class AndroidDeviceImpl implements AndroidDevice {
         installPackage(new File(packageFilePath), reinstall, extraArgs);
     }
 
+    @Override
+    public void installPackages(List<File> apks, boolean reinstall, String... extraArgs) throws AndroidExecutionException {
+        Validate.notNull(apks, "APKs to install can not be a null object!");
+
+        int apiLevel = delegate.getApiLevel();
+
+        if (apiLevel > 0 && apiLevel < AdbExecChannel.MIN_API_LEVEL) {
+            if (apks.size() == 1) {
+                installPackage(apks.get(0), reinstall, extraArgs);
+                return;
+            }
+            throw new AndroidExecutionException("Installation of more APKs requires Android device of API level {0} at least, {1} is of {2}.",
+                AdbExecChannel.MIN_API_LEVEL, getSerialNumber(), apiLevel);
+        }
+
+        List<String> options = new ArrayList<String>();
+        if (reinstall) {
+            options.add("-r");
+        }
+        if (extraArgs != null) {
+            options.addAll(Arrays.asList(extraArgs));
+        }
+
+        new StreamedInstaller(getSerialNumber(), new AdbExecChannel().readTimeout(INSTALL_TIMEOUT), apiLevel)
+            .install(apks, options.toArray(new String[options.size()]));
+    }
+
     @Override
     public boolean isPackageInstalled(String packageName) throws AndroidExecutionException {
         try {
@@ -286,6 +317,22 @@ public class AndroidDeviceImpl implements AndroidDevice {
         delegate.pushFile(localFile.getAbsolutePath(), remoteFile.getAbsolutePath());
     }
 
+    @Override
+    public FileTransfer push(File local, String remotePath, FileTransferOptions options) throws Exception {
+        return getFileTransferEngine(options).push(local, remotePath, options);
+    }
+
+    @Override
+    public FileTransfer pull(String remotePath, File local, FileTransferOptions options) throws Exception {
+        return getFileTransferEngine(options).pull(remotePath, local, options);
+    }
+
+    private FileTransferEngine getFileTransferEngine(FileTransferOptions options) {
+        Validate.notNull(options, "Options of the transfer can not be a null object.");
+        return new FileTransferEngine(getSerialNumber(), new AdbExecChannel().readTimeout(options.timeout),
+            delegate.getApiLevel() >= AdbExecChannel.MIN_API_LEVEL);
+    }
+
     @Override
     public void remove(File remoteFile) throws Exception {
         executeShellCommand("rm " + remoteFile.getAbsolutePath());
@@ -313,75 +360,106 @@ public class AndroidDeviceImpl implements AndroidDevice {
         }
 
         Validate.notNullOrEmpty(remoteFilePath, "remoteFilePath for taken video is a null object");
-        recordedVideoRemote = remoteFilePath;
+        Validate.notNull(options, "options for recording of a video is a null object");
 
+        ScreenRecorder recorder = new ScreenRecorder(delegate, options, remoteFilePath);
+        recorder.start();
+
+        screenRecorder = recorder;
+    }
+
+    @Override
+    public void startStreamedRecording(File localFile, ScreenrecordOptions options) throws Exception {
+        if (isRecording()) {
+            throw new IllegalStateException("Android device is already recording the video.");
+        }
+
+        Validate.notNull(localFile, "localFile for streamed video is a null object");
         Validate.notNull(options, "options for recording of a video is a null object");
 
-        CommandTool screenRecorderTool = new ScreenRecordToolBuilder()
-            .androidSdk(androidSdk)
-            .options(options)
-            .remoteFilePath(recordedVideoRemote)
-            .build();
+        int apiLevel = delegate.getApiLevel();
+        if (apiLevel > 0 && apiLevel < AdbExecChannel.MIN_API_LEVEL) {
+            throw new AndroidExecutionException("Streaming of a video requires Android device of API level {0} at least, {1} is of {2}.",
+                AdbExecChannel.MIN_API_LEVEL, getSerialNumber(), apiLevel);
+        }
 
-        screenrecorderExecution = screenRecorderTool.execute();
+        ScreenRecordStreamer streamer = new ScreenRecordStreamer(getSerialNumber(), new AdbExecChannel().readTimeout(0), options,
+            localFile);
+        streamer.start();
+
+        screenrecordStreamer = streamer;
+        streamedVideo = localFile;
     }
 
     @Override
     public boolean isRecording() {
-        return screenrecorderExecution != null;
+        return screenRecorder != null || screenrecordStreamer != null;
     }
 
     @Override
     public Video stopRecording(String localFilePath) throws Exception {
+        if (screenrecordStreamer != null) {
+            return stopStreamedRecording(new File(localFilePath));
+        }
+
+        String remoteFilePath = stopRecordingOnDevice();
+
+        pull(remoteFilePath, localFilePath);
+        remove(remoteFilePath);
+
+        Video video = new VideoImpl();
+        video.setVideo(new File(localFilePath));
+
+        return video;
+    }
+
+    @Override
+    public String stopRecordingOnDevice() throws Exception {
         if (!isRecording()) {
             throw new IllegalStateException("Android device is not recording any video yet.");
         }
 
-        // get screenrecord pid and send SIGKILL to it, all is done on Android side via adb
-        Integer screenrecordPid = Spacelift.task("screenrecord", AndroidPidTask.class).androidSdk(androidSdk).execute().await();
+        if (screenrecordStreamer != null) {
+            throw new IllegalStateException("Android device streams the video to " + streamedVideo.getAbsolutePath()
+                + ", there is nothing to leave on the device.");
+        }
 
-        // if it is lower then 0, then it is not running anymore so it was recording 180 seconds and we reached this method
-        // after it, so there is nothing to send SIGINT to hence it is not necessary to wait for its termination neither.
-        if (screenrecordPid > 0) {
-            Spacelift.task(screenrecordPid, AndroidKillTask.class).androidSdk(androidSdk).signum(2).execute().await();
+        try {
+            return screenRecorder.stop();
+        } finally {
+            screenRecorder = null;
+        }
+    }
 
-            // reexecution of task which checks if screenrecorder is still running until it is not
-            // we do not check PID because it could be meanwhile reused by other process
-            Spacelift.task("screenrecord", AndroidProcessRunningTask.class)
-                .androidSdk(androidSdk)
-                .execute()
-                .reexecuteEvery(1, TimeUnit.SECONDS)
-                .until(60, TimeUnit.SECONDS, new ExecutionCondition<Boolean>() {
+    @Override
+    public Video stopRecording(File localFilePath) throws Exception {
+        return stopRecording(localFilePath.getAbsolutePath());
+    }
 
-                    @Override
-                    public boolean satisfiedBy(Boolean processRunning) {
-                        return !processRunning;
-                    }
-                });
-        }
+    private Video stopStreamedRecording(File localFile) throws Exception {
+        File streamed = streamedVideo;
 
         try {
-            screenrecorderExecution.terminate();
-        } catch (org.arquillian.spacelift.execution.ExecutionException ex) {
-            log.log(Level.FINE, "Unable to terminate screenrecorder execution on host's side.");
+            screenrecordStreamer.stop();
         } finally {
-            screenrecorderExecution = null;
+            screenrecordStreamer = null;
+            streamedVideo = null;
         }
 
-        pull(recordedVideoRemote, localFilePath);
-        remove(recordedVideoRemote);
+        if (!streamed.getAbsoluteFile().equals(localFile.getAbsoluteFile())) {
+            localFile.delete();
+            if (!streamed.renameTo(localFile)) {
+                throw new AndroidExecutionException("Unable to move streamed video {0} to {1}.", streamed.getAbsolutePath(),
+                    localFile.getAbsolutePath());
+            }
+        }
 
         Video video = new VideoImpl();
-        video.setVideo(new File(localFilePath));
+        video.setVideo(localFile);
 
         return video;
     }
 
-    @Override
-    public Video stopRecording(File localFilePath) throws Exception {
-        return stopRecording(localFilePath.getAbsolutePath());
-    }
-
     @Override
     public int getDroneHostPort() {
         return droneHostPort;
@@ -403,12 +481,28 @@ public class AndroidDeviceImpl implements AndroidDevice {
     }
 
     @Override
-    public Screenshot getScreenshot() throws Exception {
-        Screenshot screenshot = new ScreenshotImpl();
+    public DeviceScreenshot getScreenshot() throws Exception {
+        DeviceScreenshot screenshot = new ScreenshotImpl();
         screenshot.setRawImage(delegate.getScreenshot());
         return screenshot;
     }
 
+    @Override
+    public DeviceScreenshot getScreenshot(ScreenshotBackend backend) throws Exception {
+        Validate.notNull(backend, "Screenshot backend can not be a null object!");
+
+        if (backend == ScreenshotBackend.FRAMEBUFFER) {
+            return getScreenshot();
+        }
+
+        ScreenshotCapturer.Capture capture = getScreenshotCapturer().capture(backend);
+
+        DeviceScreenshot screenshot = new ScreenshotImpl();
+        screenshot.setRawImage(capture.getRawImage());
+        screenshot.setPng(capture.getPng());
+        return screenshot;
+    }
+
     @Override
     public void setAlreadyRuns(boolean alreadyRuns) {
         this.alreadyRuns = alreadyRuns;
@@ -419,12 +513,24 @@ public class AndroidDeviceImpl implements AndroidDevice {
         return alreadyRuns;
     }
 
-    private static class ScreenshotImpl implements Screenshot {
+    private synchronized ScreenshotCapturer getScreenshotCapturer() {
+        if (screenshotCapturer == null) {
+            screenshotCapturer = new ScreenshotCapturer(delegate, new AdbExecChannel());
+        }
+        return screenshotCapturer;
+    }
+
+    private static class ScreenshotImpl implements DeviceScreenshot {
 
         RawImage screenshot;
 
+        byte[] png;
+
         @Override
         public RawImage getRawImage() {
+            if (screenshot == null && png != null) {
+                screenshot = ScreencapReader.decodePng(png);
+            }
             return screenshot;
         }
 
@@ -433,6 +539,32 @@ public class AndroidDeviceImpl implements AndroidDevice {
             this.screenshot = screenshot;
         }
 
+        @Override
+        public byte[] getPng() {
+            return png;
+        }
+
+        @Override
+        public void setPng(byte[] png) {
+            this.png = png;
+        }
+
+        @Override
+        public int getWidth() {
+            if (screenshot != null) {
+                return screenshot.width;
+            }
+            return png == null ? 0 : ScreencapReader.getPngWidth(png);
+        }
+
+        @Override
+        public int getHeight() {
+            if (screenshot != null) {
+                return screenshot.height;
+            }
+            return png == null ? 0 : ScreencapReader.getPngHeight(png);
+        }
+
     }
 
     private static class VideoImpl implements Video {
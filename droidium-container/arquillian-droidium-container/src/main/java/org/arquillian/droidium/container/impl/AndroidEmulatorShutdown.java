@@ -30,6 +30,10 @@
  */
 package org.arquillian.droidium.container.impl;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,8 +46,12 @@ import org.arquillian.droidium.container.spi.event.AndroidContainerStop;
 import org.arquillian.droidium.container.spi.event.AndroidEmulatorShuttedDown;
 import org.arquillian.droidium.container.spi.event.AndroidVirtualDeviceDelete;
 import org.arquillian.droidium.container.task.EmulatorShutdownTask;
+import org.arquillian.droidium.platform.impl.DroidiumPlatformConfiguration;
 import org.arquillian.spacelift.Spacelift;
 import org.arquillian.spacelift.execution.CountDownWatch;
+import org.arquillian.spacelift.execution.Execution;
+import org.jboss.arquillian.container.spi.context.ContainerContext;
+import org.jboss.arquillian.container.spi.event.StopSuiteContainers;
 import org.jboss.arquillian.core.api.Event;
 import org.jboss.arquillian.core.api.Instance;
 import org.jboss.arquillian.core.api.annotation.Inject;
@@ -52,8 +60,14 @@ import org.jboss.arquillian.core.api.annotation.Observes;
 /**
  * Brings Android emulator down. <br>
  * <br>
+ * Emulator is killed only after all other {@link AndroidContainerStop} observers of its container are done. When suite
+ * containers are stopped and parallel emulator shutdown is enabled, the kill command is sent without waiting for it, so
+ * all emulators started by Droidium go down in parallel. Their disconnection is awaited once every suite container is
+ * stopped.<br>
+ * <br>
  * Observes:
  * <ul>
+ * <li>{@link StopSuiteContainers}</li>
  * <li>{@link AndroidContainerStop}</li>
  * </ul>
  *
@@ -85,7 +99,22 @@ public class AndroidEmulatorShutdown {
     @Inject
     private Event<AndroidVirtualDeviceDelete> androidVirtualDeviceDelete;
 
-    public void shutdownEmulator(@Observes AndroidContainerStop event) throws AndroidExecutionException {
+    @Inject
+    private Instance<DroidiumPlatformConfiguration> platformConfiguration;
+
+    @Inject
+    private Instance<ContainerContext> containerContext;
+
+    // container name -> shutdown of its emulator which is awaited after all suite containers are stopped
+    private final Map<String, PendingShutdown> pendingShutdowns = new LinkedHashMap<String, PendingShutdown>();
+
+    private boolean stoppingSuiteInParallel;
+
+    public void startSuiteShutdown(@Observes(precedence = 100) StopSuiteContainers event) {
+        stoppingSuiteInParallel = platformConfiguration.get() != null && platformConfiguration.get().isParallelEmulatorShutdown();
+    }
+
+    public void shutdownEmulator(@Observes(precedence = -10) AndroidContainerStop event) throws AndroidExecutionException {
 
         AndroidDevice device = androidDevice.get();
         AndroidContainerConfiguration configuration = this.configuration.get();
@@ -99,16 +128,87 @@ public class AndroidEmulatorShutdown {
 
             logger.info("Waiting " + countdown.timeout() + " seconds for emulator " + device.getAvdName() + " to be disconnected and shutdown.");
 
-            Spacelift.task(device, EmulatorShutdownTask.class).countdown(countdown).execute().await();
+            PendingShutdown shutdown = new PendingShutdown(countdown,
+                Spacelift.task(device, EmulatorShutdownTask.class).countdown(countdown).execute());
 
-            logger.info("Device " + device.getAvdName() + " on port " + device.getConsolePort() + " was disconnected in " + countdown.timeElapsed() + " seconds.");
+            if (stoppingSuiteInParallel) {
+                pendingShutdowns.put(containerContext.get().getActiveId(), shutdown);
+                return;
+            }
+
+            shutdown.await(device);
+            emulatorShuttedDown(device, configuration);
+        }
+    }
 
-            if (configuration.isAVDGenerated()) {
-                androidVirtualDeviceDelete.fire(new AndroidVirtualDeviceDelete());
+    public void awaitSuiteShutdown(@Observes(precedence = -100) StopSuiteContainers event) {
+        stoppingSuiteInParallel = false;
+
+        if (pendingShutdowns.isEmpty()) {
+            return;
+        }
+
+        logger.log(Level.INFO, "Waiting for {0} Android emulators stopped in parallel.", String.valueOf(pendingShutdowns.size()));
+
+        Map<String, PendingShutdown> shutdowns = new LinkedHashMap<String, PendingShutdown>(pendingShutdowns);
+        pendingShutdowns.clear();
+
+        List<String> stopped = new ArrayList<String>();
+        RuntimeException failure = null;
+
+        // every emulator has to be down before the first AndroidEmulatorShuttedDown disconnects Android Debug Bridge
+        for (Map.Entry<String, PendingShutdown> shutdown : shutdowns.entrySet()) {
+            containerContext.get().activate(shutdown.getKey());
+            try {
+                shutdown.getValue().await(androidDevice.get());
+                stopped.add(shutdown.getKey());
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            } finally {
+                containerContext.get().deactivate();
             }
+        }
 
-            androidEmulatorShuttedDown.fire(new AndroidEmulatorShuttedDown(device));
+        for (String container : stopped) {
+            containerContext.get().activate(container);
+            try {
+                emulatorShuttedDown(androidDevice.get(), configuration.get());
+            } finally {
+                containerContext.get().deactivate();
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void emulatorShuttedDown(AndroidDevice device, AndroidContainerConfiguration configuration) {
+        if (configuration.isAVDGenerated()) {
+            androidVirtualDeviceDelete.fire(new AndroidVirtualDeviceDelete());
+        }
+
+        androidEmulatorShuttedDown.fire(new AndroidEmulatorShuttedDown(device));
+    }
+
+    private static final class PendingShutdown {
+
+        private final CountDownWatch countdown;
+
+        private final Execution<Boolean> execution;
+
+        PendingShutdown(CountDownWatch countdown, Execution<Boolean> execution) {
+            this.countdown = countdown;
+            this.execution = execution;
+        }
+
+        void await(AndroidDevice device) {
+            execution.await();
+
+            logger.info("Device " + device.getAvdName() + " on port " + device.getConsolePort() + " was disconnected in " + countdown.timeElapsed() + " seconds.");
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+import org.arquillian.droidium.container.configuration.Validate;
+import org.arquillian.droidium.container.utils.DroidiumFileUtils;
+
+/**
+ * Cache of APKs on a device. An APK is pushed to {@value #CACHE_DIR}{@code /<sha256>.apk} once and installed from there
+ * by {@code pm install}, installing the same APK again does not transfer it to the device at all.<br>
+ * <br>
+ * Cached APKs are listed in {@value #MANIFEST} on the device by their SHA-256, size and the time they were installed
+ * last, one APK per line. The manifest lives next to the APKs so they disappear together, e.g. when the device is wiped.
+ * When the total size of cached APKs exceeds the size of the cache, the least recently installed ones are removed.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ApkCache {
+
+    private static final Logger logger = Logger.getLogger(ApkCache.class.getName());
+
+    public static final String CACHE_DIR = "/data/local/tmp/droidium-cache";
+
+    public static final String MANIFEST = CACHE_DIR + "/manifest";
+
+    private static final Pattern MANIFEST_ENTRY_PATTERN = Pattern.compile("^([0-9a-f]{64}) (\\d+) (\\d+)$");
+
+    private final AndroidDevice device;
+
+    private final long size;
+
+    private final File tmpDir;
+
+    /**
+     *
+     * @param device device to cache APKs on
+     * @param size maximal total size of cached APKs in bytes
+     * @param tmpDir directory to prepare the manifest in
+     */
+    public ApkCache(AndroidDevice device, long size, File tmpDir) {
+        Validate.notNull(device, "Device to cache APKs on can not be a null object!");
+        Validate.notNull(tmpDir, "Temporary directory can not be a null object!");
+        this.device = device;
+        this.size = size;
+        this.tmpDir = tmpDir;
+    }
+
+    /**
+     * Installs {@code apk}, it is pushed to the cache first unless it is cached already.
+     *
+     * @param apk APK to install
+     * @param installOptions options of {@code pm install}, e.g. {@code -r}
+     * @throws AndroidExecutionException if the APK can not be pushed or installed
+     */
+    public void install(File apk, String... installOptions) throws AndroidExecutionException {
+        Validate.notNull(apk, "APK to install can not be a null object!");
+        if (!Validate.isReadable(apk.getAbsoluteFile())) {
+            throw new IllegalArgumentException("File " + apk.getAbsoluteFile() + " must represent a readable APK file");
+        }
+
+        String sha256 = DroidiumFileUtils.getDigest(apk, "SHA-256");
+        String remotePath = getRemotePath(sha256);
+
+        Map<String, CachedApk> manifest = readManifest();
+
+        CachedApk cached = manifest.get(sha256);
+        boolean pushed = cached == null;
+
+        if (pushed) {
+            push(apk, remotePath);
+            cached = new CachedApk(sha256, apk.length(), 0);
+            manifest.put(sha256, cached);
+        } else {
+            logger.log(Level.FINE, "{0} is cached on device {1} as {2}", new Object[] { apk, device.getSerialNumber(), remotePath });
+        }
+
+        cached.lastInstalled = System.currentTimeMillis();
+
+        evict(manifest, sha256);
+        writeManifest(manifest);
+
+        String failure = pmInstall(remotePath, installOptions);
+
+        if (failure != null && !pushed) {
+            logger.log(Level.FINE, "Installation of cached {0} on device {1} failed, it is pushed again: {2}",
+                new Object[] { remotePath, device.getSerialNumber(), failure });
+            push(apk, remotePath);
+            failure = pmInstall(remotePath, installOptions);
+        }
+
+        if (failure != null) {
+            throw new AndroidExecutionException("Unable to install {0} on device {1}: {2}", apk.getAbsolutePath(),
+                device.getSerialNumber(), failure);
+        }
+    }
+
+    static String getRemotePath(String sha256) {
+        return CACHE_DIR + "/" + sha256 + ".apk";
+    }
+
+    private void push(File apk, String remotePath) {
+        try {
+            device.push(apk, remotePath, new FileTransferOptions.Builder().setVerify(true).build());
+        } catch (AndroidExecutionException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new AndroidExecutionException(ex, "Unable to push {0} to {1} on device {2}.", apk.getAbsolutePath(), remotePath,
+                device.getSerialNumber());
+        }
+    }
+
+    private String pmInstall(String remotePath, String... installOptions) {
+        StringBuilder command = new StringBuilder("pm install");
+        for (String option : installOptions) {
+            command.append(" ").append(option);
+        }
+        command.append(" ").append(remotePath);
+
+        List<String> output = execute(command.toString());
+
+        for (String line : output) {
+            if (line.trim().startsWith("Success")) {
+                return null;
+            }
+        }
+
+        StringBuilder failure = new StringBuilder();
+        for (String line : output) {
+            if (!line.trim().isEmpty()) {
+                failure.append(failure.length() == 0 ? "" : " ").append(line.trim());
+            }
+        }
+        return failure.length() == 0 ? "no output of pm install" : failure.toString();
+    }
+
+    private Map<String, CachedApk> readManifest() {
+        Map<String, CachedApk> manifest = new LinkedHashMap<String, CachedApk>();
+
+        for (String line : execute("cat " + MANIFEST + " 2>/dev/null")) {
+            Matcher matcher = MANIFEST_ENTRY_PATTERN.matcher(line.trim());
+            if (matcher.matches()) {
+                manifest.put(matcher.group(1),
+                    new CachedApk(matcher.group(1), Long.parseLong(matcher.group(2)), Long.parseLong(matcher.group(3))));
+            }
+        }
+
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, CachedApk> manifest) {
+        File manifestFile = null;
+
+        try {
+            manifestFile = File.createTempFile("droidium-cache-manifest", null, tmpDir);
+            Writer writer = new OutputStreamWriter(new FileOutputStream(manifestFile), "UTF-8");
+            try {
+                for (CachedApk cached : manifest.values()) {
+                    writer.write(cached.sha256 + " " + cached.size + " " + cached.lastInstalled + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            device.push(manifestFile.getAbsolutePath(), MANIFEST);
+        } catch (Exception ex) {
+            throw new AndroidExecutionException(ex, "Unable to write manifest of the cache of APKs on device {0}.",
+                device.getSerialNumber());
+        } finally {
+            if (manifestFile != null) {
+                manifestFile.delete();
+            }
+        }
+    }
+
+    private void evict(Map<String, CachedApk> manifest, String keptSha256) {
+        List<CachedApk> cached = new ArrayList<CachedApk>(manifest.values());
+
+        Collections.sort(cached, new Comparator<CachedApk>() {
+            @Override
+            public int compare(CachedApk first, CachedApk second) {
+                return first.lastInstalled < second.lastInstalled ? -1 : first.lastInstalled == second.lastInstalled ? 0 : 1;
+            }
+        });
+
+        long total = 0;
+        for (CachedApk apk : cached) {
+            total += apk.size;
+        }
+
+        StringBuilder command = new StringBuilder("rm -f");
+        int evicted = 0;
+
+        for (CachedApk apk : cached) {
+            if (total <= size) {
+                break;
+            }
+            if (apk.sha256.equals(keptSha256)) {
+                continue;
+            }
+            command.append(" ").append(getRemotePath(apk.sha256));
+            manifest.remove(apk.sha256);
+            total -= apk.size;
+            evicted++;
+        }
+
+        if (evicted > 0) {
+            logger.log(Level.FINE, "Evicting {0} APKs from the cache on device {1}", new Object[] { evicted, device.getSerialNumber() });
+            execute(command.toString());
+        }
+    }
+
+    private List<String> execute(String command) {
+        final List<String> output = new ArrayList<String>();
+
+        device.executeShellCommand(command, new AndroidDeviceOutputReciever() {
+            @Override
+            public void processNewLines(String[] lines) {
+                for (String line : lines) {
+                    output.add(line);
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        return output;
+    }
+
+    private static final class CachedApk {
+
+        private final String sha256;
+
+        private final long size;
+
+        private long lastInstalled;
+
+        CachedApk(String sha256, long size, long lastInstalled) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.lastInstalled = lastInstalled;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.arquillian.droidium.container.impl;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +27,9 @@ import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
 import com.android.ddmlib.IDevice;
 
 /**
+ * Listens to changes on ADB bus. Besides flags which can be polled, it counts down a latch as soon as the watched device
+ * is disconnected so a caller can block in {@link #awaitOffline(long, TimeUnit)} instead of polling {@link #isOffline()}.
+ *
  * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
  *
  */
@@ -36,9 +41,11 @@ public class DeviceDiscovery implements IDeviceChangeListener {
 
     private AndroidDevice device;
 
-    private boolean online;
+    private volatile boolean online;
+
+    private volatile boolean offline;
 
-    private boolean offline;
+    private final CountDownLatch offlineLatch = new CountDownLatch(1);
 
     @Override
     public void deviceChanged(IDevice delegate, int changeMask) {
@@ -58,16 +65,23 @@ public class DeviceDiscovery implements IDeviceChangeListener {
 
     @Override
     public void deviceDisconnected(IDevice delegate) {
+        if (this.device == null || delegate == null) {
+            return;
+        }
+
+        boolean disconnected;
+
         if (delegate.isEmulator()) {
-            if (delegate.getAvdName().equals(this.device.getAvdName())) {
-                offline = true;
-                logger.fine("Device id=" + delegate.getAvdName() + " disconnected from ADB bus.");
-            }
+            disconnected = equal(delegate.getSerialNumber(), this.device.getSerialNumber())
+                || equal(delegate.getAvdName(), this.device.getAvdName());
         } else {
-            if (delegate.getSerialNumber().equals(this.device.getSerialNumber())) {
-                offline = true;
-                logger.fine("Device id=" + delegate.getSerialNumber() + " disconnected from ADB bus.");
-            }
+            disconnected = equal(delegate.getSerialNumber(), this.device.getSerialNumber());
+        }
+
+        if (disconnected) {
+            offline = true;
+            offlineLatch.countDown();
+            logger.fine("Device id=" + delegate.getSerialNumber() + " disconnected from ADB bus.");
         }
     }
 
@@ -96,4 +110,20 @@ public class DeviceDiscovery implements IDeviceChangeListener {
     public boolean isOffline() {
         return offline;
     }
+
+    /**
+     * Blocks until the device this discovery was set with is disconnected from ADB bus.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of {@code timeout}
+     * @return true if the device was disconnected before {@code timeout} elapsed, false otherwise
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean awaitOffline(long timeout, TimeUnit unit) throws InterruptedException {
+        return offlineLatch.await(timeout, unit);
+    }
+
+    private static boolean equal(String first, String second) {
+        return first != null && first.equals(second);
+    }
 }
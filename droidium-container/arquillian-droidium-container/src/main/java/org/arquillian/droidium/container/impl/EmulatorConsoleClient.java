@@ -0,0 +1,356 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+
+/**
+ * Client of the telnet console of a running Android emulator.<br>
+ * <br>
+ * Every command sent to the console is answered by zero or more lines of output terminated either by a line starting
+ * with {@code OK} or by a line starting with {@code KO}, the latter carrying the reason of the failure. Newer emulators
+ * require the client to authenticate itself by the token stored in {@code ~/.emulator_console_auth_token} before any
+ * other command is accepted, the location of the token file is taken from the banner the console sends upon connection.<br>
+ * <br>
+ * Instances are not thread safe, one client is meant to be used by one thread at a time.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class EmulatorConsoleClient {
+
+    private static final Logger logger = Logger.getLogger(EmulatorConsoleClient.class.getName());
+
+    public static final String AUTH_TOKEN_FILE_NAME = ".emulator_console_auth_token";
+
+    private static final String CONSOLE_HOST = "127.0.0.1";
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final Pattern AUTH_TOKEN_FILE_PATTERN = Pattern.compile("'(.*" + Pattern.quote(AUTH_TOKEN_FILE_NAME) + ")'");
+
+    private final int port;
+
+    private int connectTimeout = 5000;
+
+    private int readTimeout = 10000;
+
+    private File authTokenFile;
+
+    private Socket socket;
+
+    private BufferedReader reader;
+
+    private Writer writer;
+
+    /**
+     *
+     * @param port console port of the emulator
+     * @throws IllegalArgumentException if {@code port} is not a valid port number
+     */
+    public EmulatorConsoleClient(int port) {
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Console port of an emulator has to be in range (0, 65535], it is " + port);
+        }
+        this.port = port;
+    }
+
+    /**
+     *
+     * @param device emulator to connect to
+     * @throws IllegalArgumentException if {@code device} is null or its console port can not be resolved
+     */
+    public EmulatorConsoleClient(AndroidDevice device) {
+        this(resolveConsolePort(device));
+    }
+
+    /**
+     *
+     * @param connectTimeout timeout of opening a connection to the console in milliseconds
+     * @return this
+     */
+    public EmulatorConsoleClient connectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     *
+     * @param readTimeout maximal time in milliseconds to wait for the next line of the response
+     * @return this
+     */
+    public EmulatorConsoleClient readTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     *
+     * @param authTokenFile file holding the authentication token, overrides the one announced by the console
+     * @return this
+     */
+    public EmulatorConsoleClient authTokenFile(File authTokenFile) {
+        this.authTokenFile = authTokenFile;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Connects to the console, reads its banner and authenticates when the console asks for it.
+     *
+     * @return this
+     * @throws AndroidExecutionException if it is not possible to connect or to authenticate
+     */
+    public EmulatorConsoleClient connect() throws AndroidExecutionException {
+        if (isConnected()) {
+            return this;
+        }
+
+        try {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(CONSOLE_HOST, port), connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+            writer = new OutputStreamWriter(socket.getOutputStream(), CHARSET);
+        } catch (IOException ex) {
+            close();
+            throw new AndroidExecutionException(ex, "Unable to connect to the console of the emulator on port {0}.",
+                String.valueOf(port));
+        }
+
+        List<String> banner = readResponse("banner");
+
+        File tokenFile = resolveAuthTokenFile(banner);
+
+        if (tokenFile != null) {
+            logger.fine("Authenticating to the console of the emulator on port " + port + " with the token from " + tokenFile);
+            execute("auth " + readAuthToken(tokenFile));
+        }
+
+        return this;
+    }
+
+    public boolean isConnected() {
+        return socket != null && socket.isConnected() && !socket.isClosed();
+    }
+
+    /**
+     * Sends a command to the console and waits for its response.
+     *
+     * @param command command to execute, e.g. {@code avd status}
+     * @return lines of the response without the terminating {@code OK} line
+     * @throws AndroidExecutionException if the console answers with {@code KO}, it does not answer in time or the
+     *         connection is broken
+     */
+    public List<String> execute(String command) throws AndroidExecutionException {
+        if (command == null || command.trim().isEmpty()) {
+            throw new IllegalArgumentException("Command to execute on the emulator console can not be a null object nor an empty string.");
+        }
+
+        if (!isConnected()) {
+            connect();
+        }
+
+        send(command);
+
+        return readResponse(command);
+    }
+
+    /**
+     * Sends {@code kill} command to the console. The emulator closes the connection as soon as it starts to shut itself
+     * down so the end of the stream is treated as a confirmation as well. The client is closed afterwards.
+     *
+     * @throws AndroidExecutionException if the command can not be sent or the console refuses it
+     */
+    public void kill() throws AndroidExecutionException {
+        if (!isConnected()) {
+            connect();
+        }
+
+        try {
+            send("kill");
+            readResponse("kill");
+        } catch (ConsoleClosedException ex) {
+            logger.fine("Console of the emulator on port " + port + " was closed while killing it.");
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection to the console. It is safe to call this method repeatedly.
+     */
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+        socket = null;
+        reader = null;
+        writer = null;
+    }
+
+    private void send(String command) {
+        try {
+            writer.write(command);
+            writer.write("\r\n");
+            writer.flush();
+        } catch (IOException ex) {
+            close();
+            throw new AndroidExecutionException(ex, "Unable to send command \"{0}\" to the console of the emulator on port {1}.",
+                command, String.valueOf(port));
+        }
+    }
+
+    private List<String> readResponse(String command) {
+        List<String> lines = new ArrayList<String>();
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("OK")) {
+                    return lines;
+                }
+                if (line.startsWith("KO")) {
+                    throw new AndroidExecutionException("Console of the emulator on port {0} refused \"{1}\": {2}",
+                        String.valueOf(port), command, line.length() > 2 ? line.substring(2).replaceFirst("^:\\s*", "") : line);
+                }
+                lines.add(line);
+            }
+        } catch (SocketTimeoutException ex) {
+            close();
+            throw new AndroidExecutionException(ex, "Console of the emulator on port {0} did not respond to \"{1}\" in {2} ms.",
+                String.valueOf(port), command, String.valueOf(readTimeout));
+        } catch (IOException ex) {
+            close();
+            throw new ConsoleClosedException(port, command, ex);
+        }
+
+        close();
+        throw new ConsoleClosedException(port, command, null);
+    }
+
+    private File resolveAuthTokenFile(List<String> banner) {
+        boolean authenticationRequired = false;
+        File announcedTokenFile = null;
+
+        for (String line : banner) {
+            if (line.contains("Authentication required")) {
+                authenticationRequired = true;
+            }
+            Matcher matcher = AUTH_TOKEN_FILE_PATTERN.matcher(line);
+            if (matcher.find()) {
+                announcedTokenFile = new File(matcher.group(1));
+            }
+        }
+
+        if (!authenticationRequired) {
+            return null;
+        }
+
+        if (authTokenFile != null) {
+            return authTokenFile;
+        }
+
+        if (announcedTokenFile != null) {
+            return announcedTokenFile;
+        }
+
+        return new File(System.getProperty("user.home"), AUTH_TOKEN_FILE_NAME);
+    }
+
+    private String readAuthToken(File tokenFile) {
+        BufferedReader tokenReader = null;
+        try {
+            tokenReader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), CHARSET));
+            String token = tokenReader.readLine();
+            if (token == null || token.trim().isEmpty()) {
+                throw new AndroidExecutionException("Authentication token file {0} of the emulator console is empty.",
+                    tokenFile.getAbsolutePath());
+            }
+            return token.trim();
+        } catch (IOException ex) {
+            close();
+            throw new AndroidExecutionException(ex, "Unable to read authentication token of the emulator console from {0}.",
+                tokenFile.getAbsolutePath());
+        } finally {
+            if (tokenReader != null) {
+                try {
+                    tokenReader.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static int resolveConsolePort(AndroidDevice device) {
+        if (device == null) {
+            throw new IllegalArgumentException("Device to connect to the console of can not be a null object.");
+        }
+
+        String consolePort = device.getConsolePort();
+
+        if (consolePort == null) {
+            String serialNumber = device.getSerialNumber();
+            consolePort = serialNumber == null ? null : serialNumber.substring(serialNumber.lastIndexOf("-") + 1);
+        }
+
+        try {
+            return Integer.parseInt(consolePort);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Unable to resolve console port of the device " + device.getSerialNumber());
+        }
+    }
+
+    /**
+     * Thrown when the console closes the connection before the response is terminated.
+     */
+    static class ConsoleClosedException extends AndroidExecutionException {
+
+        private static final long serialVersionUID = -2961367519373520487L;
+
+        ConsoleClosedException(int port, String command, Throwable cause) {
+            super("Console of the emulator on port " + port + " closed the connection while waiting for the response to \""
+                + command + "\".", cause);
+        }
+    }
+}
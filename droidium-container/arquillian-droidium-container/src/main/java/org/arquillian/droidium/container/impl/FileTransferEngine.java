@@ -0,0 +1,505 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransfer;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+import org.arquillian.droidium.container.configuration.Validate;
+
+/**
+ * Transfers files and directory trees between the host computer and a device over {@link AdbSyncChannel}.<br>
+ * <br>
+ * Files are transferred by a pool of {@link FileTransferOptions#concurrency} threads, each of them holds its own sync
+ * connection so files are transferred side by side. A pulled file is written to {@code <file>.part} first and moved to
+ * its place once it is complete. When a pull fails, the part keeps the modification time of the remote file so the next
+ * pull of the same remote file continues from the last whole chunk by {@code dd} over {@link AdbExecChannel}, which is
+ * available since API level 21 only. Verified files are compared by MD5 computed by {@code md5sum} on the device, devices
+ * without it are compared by size only.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class FileTransferEngine {
+
+    private static final Logger log = Logger.getLogger(FileTransferEngine.class.getName());
+
+    static final String PART_EXTENSION = ".part";
+
+    private static final Pattern MD5_PATTERN = Pattern.compile("^([0-9a-fA-F]{32})\\s");
+
+    private final String serialNumber;
+
+    private final AdbExecChannel channel;
+
+    private final boolean execAvailable;
+
+    /**
+     *
+     * @param serialNumber serial number of the device
+     * @param channel channel to the adb server
+     * @param execAvailable true if the device is able to execute commands by {@link AdbExecChannel}
+     */
+    public FileTransferEngine(String serialNumber, AdbExecChannel channel, boolean execAvailable) {
+        Validate.notNullOrEmpty(serialNumber, "Serial number of the device to transfer files to can not be a null object nor an empty string.");
+        Validate.notNull(channel, "Channel to the adb server can not be a null object.");
+        this.serialNumber = serialNumber;
+        this.channel = channel;
+        this.execAvailable = execAvailable;
+    }
+
+    /**
+     *
+     * @param local file or directory to push
+     * @param remotePath file or directory on the device to push to
+     * @param options options of the transfer
+     * @return numbers of the transfer
+     * @throws AndroidExecutionException if any file can not be pushed
+     */
+    public FileTransfer push(File local, String remotePath, FileTransferOptions options) throws AndroidExecutionException {
+        Validate.notNull(local, "Local file to push can not be a null object.");
+        Validate.notNullOrEmpty(remotePath, "Remote path to push to can not be a null object nor an empty string.");
+        Validate.notNull(options, "Options of the transfer can not be a null object.");
+
+        if (!local.exists()) {
+            throw new AndroidExecutionException("Unable to push {0} to device {1}, it does not exist.", local.getAbsolutePath(),
+                serialNumber);
+        }
+
+        List<Task> tasks = new ArrayList<Task>();
+        collectPushes(local, remotePath, options, tasks);
+
+        return run(tasks, options, "push " + local.getAbsolutePath() + " to " + remotePath);
+    }
+
+    /**
+     *
+     * @param remotePath file or directory on the device to pull
+     * @param local file or directory to pull to
+     * @param options options of the transfer
+     * @return numbers of the transfer
+     * @throws AndroidExecutionException if any file can not be pulled
+     */
+    public FileTransfer pull(String remotePath, File local, FileTransferOptions options) throws AndroidExecutionException {
+        Validate.notNullOrEmpty(remotePath, "Remote path to pull can not be a null object nor an empty string.");
+        Validate.notNull(local, "Local file to pull to can not be a null object.");
+        Validate.notNull(options, "Options of the transfer can not be a null object.");
+
+        List<Task> tasks = new ArrayList<Task>();
+
+        AdbSyncChannel sync = new AdbSyncChannel(channel, serialNumber);
+        try {
+            AdbSyncChannel.Entry entry = sync.stat(remotePath);
+            if (!entry.exists()) {
+                throw new AndroidExecutionException("Unable to pull {0} from device {1}, it does not exist.", remotePath,
+                    serialNumber);
+            }
+            if (entry.isDirectory()) {
+                collectPulls(sync, remotePath, local, options, tasks);
+            } else {
+                tasks.add(new Pull(remotePath, local, entry, options));
+            }
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to list {0} on device {1}.", remotePath, serialNumber);
+        } finally {
+            sync.close();
+        }
+
+        return run(tasks, options, "pull " + remotePath + " to " + local.getAbsolutePath());
+    }
+
+    private void collectPushes(File local, String remotePath, FileTransferOptions options, List<Task> tasks) {
+        if (local.isDirectory()) {
+            File[] children = local.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectPushes(child, join(remotePath, child.getName()), options, tasks);
+                }
+            }
+        } else {
+            tasks.add(new Push(local, remotePath, options));
+        }
+    }
+
+    private void collectPulls(AdbSyncChannel sync, String remotePath, File local, FileTransferOptions options, List<Task> tasks)
+        throws IOException {
+        for (AdbSyncChannel.Entry entry : sync.list(remotePath)) {
+            String remoteChild = join(remotePath, entry.getName());
+            File localChild = new File(local, entry.getName());
+            if (entry.isDirectory()) {
+                collectPulls(sync, remoteChild, localChild, options, tasks);
+            } else if (entry.isFile()) {
+                tasks.add(new Pull(remoteChild, localChild, entry, options));
+            } else {
+                log.log(Level.FINE, "{0} on device {1} is neither a file nor a directory, it is not pulled.",
+                    new Object[] { remoteChild, serialNumber });
+            }
+        }
+    }
+
+    private FileTransfer run(List<Task> tasks, FileTransferOptions options, String description) {
+        long start = System.currentTimeMillis();
+
+        final BlockingQueue<AdbSyncChannel> idle = new LinkedBlockingQueue<AdbSyncChannel>();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong resumedBytes = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.concurrency, tasks.size())),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "droidium-file-transfer-" + serialNumber + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for (final Task task : tasks) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (failed.get()) {
+                        return null;
+                    }
+                    AdbSyncChannel sync = idle.poll();
+                    if (sync == null) {
+                        sync = new AdbSyncChannel(channel, serialNumber);
+                    }
+                    try {
+                        long[] transferred = task.transfer(sync);
+                        bytes.addAndGet(transferred[0]);
+                        resumedBytes.addAndGet(transferred[1]);
+                        files.incrementAndGet();
+                        idle.add(sync);
+                        return null;
+                    } catch (Exception ex) {
+                        sync.close();
+                        failed.set(true);
+                        throw new IOException("Unable to " + task, ex);
+                    }
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        Throwable failure = null;
+        int failures = 0;
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                failures++;
+                if (failure == null) {
+                    failure = ex.getCause();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                failure = ex;
+                break;
+            }
+        }
+
+        AdbSyncChannel sync;
+        while ((sync = idle.poll()) != null) {
+            sync.close();
+        }
+
+        if (failure != null) {
+            throw new AndroidExecutionException(failure, "Unable to {0} of device {1}, {2} of {3} files failed, {4} were transferred.",
+                description, serialNumber, failures, tasks.size(), files.get());
+        }
+
+        FileTransfer transfer = new FileTransfer(files.get(), bytes.get(), resumedBytes.get(), System.currentTimeMillis() - start);
+        log.log(Level.INFO, "{0} of device {1}: {2}", new Object[] { description, serialNumber, transfer });
+        return transfer;
+    }
+
+    private String md5OnDevice(String remotePath) throws IOException {
+        if (!execAvailable) {
+            return null;
+        }
+
+        InputStream in = channel.exec(serialNumber, "md5sum " + quote(remotePath) + " 2>/dev/null");
+        try {
+            String line = new BufferedReader(new InputStreamReader(in, "UTF-8")).readLine();
+            if (line != null) {
+                Matcher matcher = MD5_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    return matcher.group(1).toLowerCase();
+                }
+            }
+            log.log(Level.FINE, "Device {0} does not compute MD5 of {1}, it is compared by size only.",
+                new Object[] { serialNumber, remotePath });
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String md5(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not supported.", ex);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[FileTransferOptions.MAX_CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private void verify(File local, String remotePath, long remoteSize) throws IOException {
+        if (local.length() != remoteSize) {
+            throw new IOException("Size of " + local.getAbsolutePath() + " is " + local.length() + " bytes but " + remotePath
+                + " on device " + serialNumber + " has " + remoteSize + " bytes.");
+        }
+
+        String remoteMd5 = md5OnDevice(remotePath);
+        if (remoteMd5 != null && !remoteMd5.equals(md5(local))) {
+            throw new IOException("Checksum of " + local.getAbsolutePath() + " does not match checksum of " + remotePath
+                + " on device " + serialNumber + ".");
+        }
+    }
+
+    private static String join(String remotePath, String name) {
+        return remotePath.endsWith("/") ? remotePath + name : remotePath + "/" + name;
+    }
+
+    private static String quote(String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+    private static void close(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * Transfer of one file.
+     */
+    private interface Task {
+
+        /**
+         *
+         * @param sync connection to transfer the file over
+         * @return number of transferred bytes and number of bytes which were not transferred again
+         * @throws IOException if the transfer fails
+         */
+        long[] transfer(AdbSyncChannel sync) throws IOException;
+    }
+
+    private final class Push implements Task {
+
+        private final File local;
+
+        private final String remotePath;
+
+        private final FileTransferOptions options;
+
+        Push(File local, String remotePath, FileTransferOptions options) {
+            this.local = local;
+            this.remotePath = remotePath;
+            this.options = options;
+        }
+
+        @Override
+        public long[] transfer(AdbSyncChannel sync) throws IOException {
+            int mode = AdbSyncChannel.S_IFREG | (local.canExecute() ? 0755 : 0644);
+
+            InputStream in = new BufferedInputStream(new FileInputStream(local), options.chunkSize);
+            long sent;
+            try {
+                sent = sync.send(remotePath, mode, local.lastModified() / 1000, in, options.chunkSize);
+            } finally {
+                in.close();
+            }
+
+            if (options.verify) {
+                verify(local, remotePath, sync.stat(remotePath).getSize());
+            }
+
+            return new long[] { sent, 0 };
+        }
+
+        @Override
+        public String toString() {
+            return "push " + local.getAbsolutePath() + " to " + remotePath;
+        }
+    }
+
+    private final class Pull implements Task {
+
+        private final String remotePath;
+
+        private final File local;
+
+        private final AdbSyncChannel.Entry entry;
+
+        private final FileTransferOptions options;
+
+        Pull(String remotePath, File local, AdbSyncChannel.Entry entry, FileTransferOptions options) {
+            this.remotePath = remotePath;
+            this.local = local;
+            this.entry = entry;
+            this.options = options;
+        }
+
+        @Override
+        public long[] transfer(AdbSyncChannel sync) throws IOException {
+            File parent = local.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent.getAbsolutePath());
+            }
+
+            File part = new File(local.getAbsolutePath() + PART_EXTENSION);
+            long remoteTime = entry.getTime() * 1000;
+            long offset = 0;
+
+            if (options.resume && execAvailable && part.isFile() && part.lastModified() == remoteTime
+                && part.length() < entry.getSize()) {
+                offset = part.length() / options.chunkSize * options.chunkSize;
+            }
+
+            RandomAccessFile truncated = new RandomAccessFile(part, "rw");
+            try {
+                truncated.setLength(offset);
+            } finally {
+                truncated.close();
+            }
+
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(part, true), options.chunkSize);
+            long received = 0;
+            boolean complete = false;
+
+            try {
+                if (offset > 0) {
+                    log.log(Level.FINE, "Resuming pull of {0} from device {1} at {2} bytes",
+                        new Object[] { remotePath, serialNumber, offset });
+                    received = resume(out, offset);
+                } else {
+                    received = sync.recv(remotePath, out);
+                }
+                out.flush();
+                complete = true;
+            } finally {
+                close(out);
+                if (!complete) {
+                    part.setLastModified(remoteTime);
+                }
+            }
+
+            try {
+                if (options.verify) {
+                    verify(part, remotePath, entry.getSize());
+                } else if (part.length() != entry.getSize()) {
+                    throw new IOException("Pulled " + part.length() + " bytes of " + remotePath + " on device " + serialNumber
+                        + " instead of " + entry.getSize() + " bytes.");
+                }
+            } catch (IOException ex) {
+                part.delete();
+                throw ex;
+            }
+
+            local.delete();
+            if (!part.renameTo(local)) {
+                throw new IOException("Unable to move " + part.getAbsolutePath() + " to " + local.getAbsolutePath());
+            }
+            local.setLastModified(remoteTime);
+
+            return new long[] { received, offset };
+        }
+
+        private long resume(OutputStream out, long offset) throws IOException {
+            InputStream in = channel.exec(serialNumber, "dd if=" + quote(remotePath) + " bs=" + options.chunkSize + " skip="
+                + (offset / options.chunkSize) + " 2>/dev/null");
+            try {
+                byte[] buffer = new byte[options.chunkSize];
+                long received = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    received += read;
+                }
+                return received;
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "pull " + remotePath + " to " + local.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,692 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes H.264 elementary stream in Annex B format, as it is printed by {@code screenrecord --output-format=h264}, to
+ * an MP4 file while the stream arrives.<br>
+ * <br>
+ * The stream is split to access units which are written to {@code mdat} box right away with start codes replaced by
+ * lengths of NAL units. The stream has no timestamps so an access unit is stamped by the time its first byte arrived.
+ * Sample tables are kept in memory and written to {@code moov} box behind the media data by {@link #finish(long)}, so
+ * finishing the file costs no more than writing the tables. Access units preceding the first IDR picture are dropped.
+ * When sequence or picture parameter set changes, e.g. after {@code screenrecord} was restarted with another size, a
+ * new sample description is added.<br>
+ * <br>
+ * Instances are not thread safe.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class H264Mp4Writer {
+
+    static final int TIMESCALE = 90000;
+
+    private static final int MOVIE_TIMESCALE = 1000;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int NAL_SLICE = 1;
+
+    private static final int NAL_IDR_SLICE = 5;
+
+    private static final int NAL_SEI = 6;
+
+    private static final int NAL_SPS = 7;
+
+    private static final int NAL_PPS = 8;
+
+    private static final int NAL_AUD = 9;
+
+    private static final int[] IDENTITY_MATRIX = { 0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000 };
+
+    private final File file;
+
+    private final byte[] ftyp;
+
+    private final DataOutputStream out;
+
+    // NAL unit being read
+
+    private byte[] nal = new byte[64 * 1024];
+
+    private int nalLength;
+
+    private long nalTime;
+
+    private boolean inNal;
+
+    private int zeros;
+
+    // access unit being collected
+
+    private final List<byte[]> unit = new ArrayList<byte[]>();
+
+    private long unitTime;
+
+    private boolean unitHasSlice;
+
+    private boolean unitIsIdr;
+
+    // parameter sets
+
+    private byte[] sps;
+
+    private byte[] pps;
+
+    private final List<byte[][]> descriptions = new ArrayList<byte[][]>();
+
+    // sample tables
+
+    private int samples;
+
+    private int[] sizes = new int[1024];
+
+    private long[] times = new long[1024];
+
+    private boolean[] sync = new boolean[1024];
+
+    private int[] sampleDescriptions = new int[1024];
+
+    private long dataLength;
+
+    private boolean finished;
+
+    /**
+     *
+     * @param file MP4 file to write, it is overwritten
+     * @throws IOException if the file can not be written
+     */
+    public H264Mp4Writer(File file) throws IOException {
+        this.file = file;
+        this.ftyp = new BoxBuilder("ftyp").fourcc("isom").u32(512).fourcc("isom").fourcc("iso2").fourcc("avc1")
+            .fourcc("mp41").build();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        this.out.write(ftyp);
+        // mdat with 64 bit size which is set when the file is finished
+        this.out.write(ByteBuffer.allocate(16).putInt(1).putInt(fourcc("mdat")).putLong(0).array());
+    }
+
+    /**
+     * Writes next bytes of the stream, they arrived just now.
+     *
+     * @param buffer bytes of the stream
+     * @param offset offset of the first byte in {@code buffer}
+     * @param length number of bytes to write
+     * @throws IOException if the file can not be written
+     */
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        write(buffer, offset, length, System.nanoTime());
+    }
+
+    /**
+     * Writes next bytes of the stream.
+     *
+     * @param buffer bytes of the stream
+     * @param offset offset of the first byte in {@code buffer}
+     * @param length number of bytes to write
+     * @param time time the bytes arrived at in nanoseconds as returned by {@link System#nanoTime()}
+     * @throws IOException if the file can not be written
+     */
+    public void write(byte[] buffer, int offset, int length, long time) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("MP4 file " + file + " is already finished.");
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer[i];
+            if (b == 1 && zeros >= 2) {
+                endNal();
+                inNal = true;
+                nalLength = 0;
+                nalTime = time;
+                zeros = 0;
+                continue;
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+            if (inNal) {
+                if (nalLength == nal.length) {
+                    nal = Arrays.copyOf(nal, nal.length * 2);
+                }
+                nal[nalLength++] = b;
+            }
+        }
+    }
+
+    /**
+     *
+     * @return number of samples written so far
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Writes the last access unit, sample tables and closes the file.
+     *
+     * @param endTime time the stream ended at in nanoseconds as returned by {@link System#nanoTime()}, the last sample lasts
+     *        until then
+     * @return duration of the video in milliseconds
+     * @throws IOException if the file can not be written or the stream did not contain any picture
+     */
+    public long finish(long endTime) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("MP4 file " + file + " is already finished.");
+        }
+        finished = true;
+
+        long duration = 0;
+
+        try {
+            endNal();
+            endUnit();
+
+            if (samples == 0) {
+                throw new IOException("Stream written to " + file + " does not contain any picture.");
+            }
+
+            long[] durations = new long[samples];
+            for (int i = 1; i <= samples; i++) {
+                long time = ticks((i < samples ? times[i] : Math.max(endTime, times[samples - 1])) - times[0]);
+                time = Math.max(time, duration + 1);
+                durations[i - 1] = time - duration;
+                duration = time;
+            }
+
+            out.write(moov(durations, duration));
+        } finally {
+            out.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(ftyp.length + 8);
+            raf.writeLong(16 + dataLength);
+        } finally {
+            raf.close();
+        }
+
+        return duration * 1000 / TIMESCALE;
+    }
+
+    /**
+     * Closes the file without finishing it.
+     */
+    public void abort() {
+        finished = true;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private void endNal() throws IOException {
+        if (!inNal) {
+            return;
+        }
+        inNal = false;
+
+        // trailing zero bytes belong to the next start code
+        while (nalLength > 0 && nal[nalLength - 1] == 0) {
+            nalLength--;
+        }
+        if (nalLength == 0) {
+            return;
+        }
+
+        byte[] unitNal = Arrays.copyOf(nal, nalLength);
+        int type = unitNal[0] & 0x1F;
+
+        if (type == NAL_SLICE || type == NAL_IDR_SLICE) {
+            // first_mb_in_slice is 0, i.e. ue(v) coded as a single 1 bit, for the first slice of a picture
+            if (unitHasSlice && unitNal.length > 1 && (unitNal[1] & 0x80) != 0) {
+                endUnit();
+            }
+            if (unit.isEmpty()) {
+                unitTime = nalTime;
+            }
+            unit.add(unitNal);
+            unitHasSlice = true;
+            unitIsIdr |= type == NAL_IDR_SLICE;
+            return;
+        }
+
+        if (unitHasSlice && (type == NAL_SEI || type == NAL_SPS || type == NAL_PPS || type == NAL_AUD || (type >= 14 && type <= 18))) {
+            endUnit();
+        }
+
+        if (type == NAL_SPS) {
+            sps = unitNal;
+        } else if (type == NAL_PPS) {
+            pps = unitNal;
+        } else if (type != NAL_AUD) {
+            if (unit.isEmpty()) {
+                unitTime = nalTime;
+            }
+            unit.add(unitNal);
+        }
+    }
+
+    private void endUnit() throws IOException {
+        try {
+            if (!unitHasSlice || sps == null || pps == null || (samples == 0 && !unitIsIdr)) {
+                return;
+            }
+
+            int size = 0;
+            for (byte[] unitNal : unit) {
+                out.writeInt(unitNal.length);
+                out.write(unitNal);
+                size += 4 + unitNal.length;
+            }
+
+            if (samples == sizes.length) {
+                sizes = Arrays.copyOf(sizes, samples * 2);
+                times = Arrays.copyOf(times, samples * 2);
+                sync = Arrays.copyOf(sync, samples * 2);
+                sampleDescriptions = Arrays.copyOf(sampleDescriptions, samples * 2);
+            }
+
+            sizes[samples] = size;
+            times[samples] = unitTime;
+            sync[samples] = unitIsIdr;
+            sampleDescriptions[samples] = description();
+            samples++;
+            dataLength += size;
+        } finally {
+            unit.clear();
+            unitHasSlice = false;
+            unitIsIdr = false;
+        }
+    }
+
+    private int description() {
+        for (int i = 0; i < descriptions.size(); i++) {
+            byte[][] description = descriptions.get(i);
+            if (Arrays.equals(description[0], sps) && Arrays.equals(description[1], pps)) {
+                return i + 1;
+            }
+        }
+        descriptions.add(new byte[][] { sps, pps });
+        return descriptions.size();
+    }
+
+    private static long ticks(long nanos) {
+        return nanos * TIMESCALE / 1000000000L;
+    }
+
+    private byte[] moov(long[] durations, long duration) throws IOException {
+        long movieDuration = duration * MOVIE_TIMESCALE / TIMESCALE;
+
+        SequenceParameterSet first = SequenceParameterSet.parse(descriptions.get(0)[0]);
+
+        BoxBuilder mvhd = new BoxBuilder("mvhd").u32(0).u32(0).u32(0).u32(MOVIE_TIMESCALE).u32(movieDuration)
+            .u32(0x00010000).u16(0x0100).u16(0).u32(0).u32(0);
+        matrix(mvhd);
+        mvhd.u32(0).u32(0).u32(0).u32(0).u32(0).u32(0).u32(2);
+
+        BoxBuilder tkhd = new BoxBuilder("tkhd").u32(3).u32(0).u32(0).u32(1).u32(0).u32(movieDuration).u32(0).u32(0)
+            .u16(0).u16(0).u16(0).u16(0);
+        matrix(tkhd);
+        tkhd.u32(first.width << 16).u32(first.height << 16);
+
+        byte[] mdhd = new BoxBuilder("mdhd").u32(0).u32(0).u32(0).u32(TIMESCALE).u32(duration).u16(0x55C4).u16(0).build();
+
+        byte[] hdlr = new BoxBuilder("hdlr").u32(0).u32(0).fourcc("vide").u32(0).u32(0).u32(0)
+            .bytes("VideoHandler\0".getBytes(ASCII)).build();
+
+        byte[] vmhd = new BoxBuilder("vmhd").u32(1).u16(0).u16(0).u16(0).u16(0).build();
+
+        byte[] dinf = new BoxBuilder("dinf").bytes(new BoxBuilder("dref").u32(0).u32(1)
+            .bytes(new BoxBuilder("url ").u32(1).build()).build()).build();
+
+        byte[] minf = new BoxBuilder("minf").bytes(vmhd).bytes(dinf).bytes(stbl(durations)).build();
+        byte[] mdia = new BoxBuilder("mdia").bytes(mdhd).bytes(hdlr).bytes(minf).build();
+        byte[] trak = new BoxBuilder("trak").bytes(tkhd.build()).bytes(mdia).build();
+
+        return new BoxBuilder("moov").bytes(mvhd.build()).bytes(trak).build();
+    }
+
+    private byte[] stbl(long[] durations) throws IOException {
+        BoxBuilder stsd = new BoxBuilder("stsd").u32(0).u32(descriptions.size());
+        for (byte[][] description : descriptions) {
+            stsd.bytes(avc1(description[0], description[1]));
+        }
+
+        List<long[]> runs = new ArrayList<long[]>();
+        for (long value : durations) {
+            long[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last[1] == value) {
+                last[0]++;
+            } else {
+                runs.add(new long[] { 1, value });
+            }
+        }
+        BoxBuilder stts = new BoxBuilder("stts").u32(0).u32(runs.size());
+        for (long[] run : runs) {
+            stts.u32(run[0]).u32(run[1]);
+        }
+
+        int syncSamples = 0;
+        for (int i = 0; i < samples; i++) {
+            syncSamples += sync[i] ? 1 : 0;
+        }
+        BoxBuilder stss = new BoxBuilder("stss").u32(0).u32(syncSamples);
+        for (int i = 0; i < samples; i++) {
+            if (sync[i]) {
+                stss.u32(i + 1);
+            }
+        }
+
+        // one chunk for every run of samples sharing their description
+        List<int[]> chunks = new ArrayList<int[]>();
+        for (int i = 0; i < samples; i++) {
+            if (i == 0 || sampleDescriptions[i] != sampleDescriptions[i - 1]) {
+                chunks.add(new int[] { i, 0, sampleDescriptions[i] });
+            }
+            chunks.get(chunks.size() - 1)[1]++;
+        }
+
+        BoxBuilder stsc = new BoxBuilder("stsc").u32(0).u32(chunks.size());
+        BoxBuilder stsz = new BoxBuilder("stsz").u32(0).u32(0).u32(samples);
+        boolean co64 = ftyp.length + 16 + dataLength > 0xFFFFFFFFL;
+        BoxBuilder stco = new BoxBuilder(co64 ? "co64" : "stco").u32(0).u32(chunks.size());
+
+        long offset = ftyp.length + 16;
+        for (int c = 0; c < chunks.size(); c++) {
+            int[] chunk = chunks.get(c);
+            stsc.u32(c + 1).u32(chunk[1]).u32(chunk[2]);
+            if (co64) {
+                stco.u64(offset);
+            } else {
+                stco.u32(offset);
+            }
+            for (int i = chunk[0]; i < chunk[0] + chunk[1]; i++) {
+                offset += sizes[i];
+            }
+        }
+        for (int i = 0; i < samples; i++) {
+            stsz.u32(sizes[i]);
+        }
+
+        return new BoxBuilder("stbl").bytes(stsd.build()).bytes(stts.build()).bytes(stss.build()).bytes(stsc.build())
+            .bytes(stsz.build()).bytes(stco.build()).build();
+    }
+
+    private static byte[] avc1(byte[] sps, byte[] pps) throws IOException {
+        SequenceParameterSet parameters = SequenceParameterSet.parse(sps);
+
+        BoxBuilder avcC = new BoxBuilder("avcC").u8(1).u8(sps[1]).u8(sps[2]).u8(sps[3]).u8(0xFF).u8(0xE1)
+            .u16(sps.length).bytes(sps).u8(1).u16(pps.length).bytes(pps);
+        if (parameters.hasChromaFormat()) {
+            avcC.u8(0xFC | parameters.chromaFormat).u8(0xF8 | parameters.bitDepthLuma).u8(0xF8 | parameters.bitDepthChroma)
+                .u8(0);
+        }
+
+        BoxBuilder avc1 = new BoxBuilder("avc1").u32(0).u16(0).u16(1).u32(0).u32(0).u32(0).u32(0)
+            .u16(parameters.width).u16(parameters.height).u32(0x00480000).u32(0x00480000).u32(0).u16(1);
+        avc1.bytes(new byte[32]).u16(0x0018).u16(0xFFFF).bytes(avcC.build());
+
+        return avc1.build();
+    }
+
+    private static void matrix(BoxBuilder box) {
+        for (int value : IDENTITY_MATRIX) {
+            box.u32(value);
+        }
+    }
+
+    private static int fourcc(String type) {
+        return ByteBuffer.wrap(type.getBytes(ASCII)).getInt();
+    }
+
+    /**
+     * Fields of sequence parameter set needed to describe the video in MP4 file.
+     */
+    static final class SequenceParameterSet {
+
+        int profile;
+
+        int chromaFormat = 1;
+
+        int bitDepthLuma;
+
+        int bitDepthChroma;
+
+        int width;
+
+        int height;
+
+        boolean hasChromaFormat() {
+            return profile == 100 || profile == 110 || profile == 122 || profile == 144;
+        }
+
+        static SequenceParameterSet parse(byte[] sps) throws IOException {
+            BitReader reader = new BitReader(sps);
+            SequenceParameterSet parameters = new SequenceParameterSet();
+
+            reader.bits(8); // NAL unit header
+            parameters.profile = reader.bits(8);
+            reader.bits(16); // constraint flags and level
+            reader.ue(); // seq_parameter_set_id
+
+            boolean separateColourPlanes = false;
+            switch (parameters.profile) {
+                case 100: case 110: case 122: case 244: case 44: case 83: case 86: case 118: case 128: case 138:
+                case 139: case 134: case 135:
+                    parameters.chromaFormat = reader.ue();
+                    if (parameters.chromaFormat == 3) {
+                        separateColourPlanes = reader.bits(1) == 1;
+                    }
+                    parameters.bitDepthLuma = reader.ue();
+                    parameters.bitDepthChroma = reader.ue();
+                    reader.bits(1); // qpprime_y_zero_transform_bypass_flag
+                    if (reader.bits(1) == 1) {
+                        for (int i = 0; i < (parameters.chromaFormat != 3 ? 8 : 12); i++) {
+                            if (reader.bits(1) == 1) {
+                                reader.skipScalingList(i < 6 ? 16 : 64);
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            reader.ue(); // log2_max_frame_num_minus4
+            int pictureOrderCountType = reader.ue();
+            if (pictureOrderCountType == 0) {
+                reader.ue(); // log2_max_pic_order_cnt_lsb_minus4
+            } else if (pictureOrderCountType == 1) {
+                reader.bits(1); // delta_pic_order_always_zero_flag
+                reader.se(); // offset_for_non_ref_pic
+                reader.se(); // offset_for_top_to_bottom_field
+                int cycle = reader.ue();
+                for (int i = 0; i < cycle; i++) {
+                    reader.se();
+                }
+            }
+            reader.ue(); // max_num_ref_frames
+            reader.bits(1); // gaps_in_frame_num_value_allowed_flag
+
+            int widthInMbs = reader.ue() + 1;
+            int heightInMapUnits = reader.ue() + 1;
+            int frameMbsOnly = reader.bits(1);
+            if (frameMbsOnly == 0) {
+                reader.bits(1); // mb_adaptive_frame_field_flag
+            }
+            reader.bits(1); // direct_8x8_inference_flag
+
+            int width = widthInMbs * 16;
+            int height = (2 - frameMbsOnly) * heightInMapUnits * 16;
+
+            if (reader.bits(1) == 1) {
+                int chromaArrayType = separateColourPlanes ? 0 : parameters.chromaFormat;
+                int cropUnitX = chromaArrayType == 1 || chromaArrayType == 2 ? 2 : 1;
+                int cropUnitY = (chromaArrayType == 1 ? 2 : 1) * (2 - frameMbsOnly);
+                width -= cropUnitX * (reader.ue() + reader.ue());
+                height -= cropUnitY * (reader.ue() + reader.ue());
+            }
+
+            parameters.width = width;
+            parameters.height = height;
+
+            return parameters;
+        }
+    }
+
+    /**
+     * Reads bits of a NAL unit with emulation prevention bytes removed.
+     */
+    private static final class BitReader {
+
+        private final byte[] data;
+
+        private int length;
+
+        private long position;
+
+        BitReader(byte[] nal) {
+            data = new byte[nal.length];
+            int zeros = 0;
+            for (byte b : nal) {
+                if (zeros >= 2 && b == 3) {
+                    zeros = 0;
+                    continue;
+                }
+                zeros = b == 0 ? zeros + 1 : 0;
+                data[length++] = b;
+            }
+        }
+
+        int bits(int count) throws IOException {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                if (position >= length * 8L) {
+                    throw new IOException("Sequence parameter set is truncated.");
+                }
+                int bit = (data[(int) (position >> 3)] >> (7 - (int) (position & 7))) & 1;
+                value = (value << 1) | bit;
+                position++;
+            }
+            return value;
+        }
+
+        int ue() throws IOException {
+            int leadingZeros = 0;
+            while (bits(1) == 0) {
+                if (++leadingZeros > 31) {
+                    throw new IOException("Sequence parameter set is broken.");
+                }
+            }
+            return (int) ((1L << leadingZeros) - 1 + (leadingZeros == 0 ? 0 : bits(leadingZeros) & 0xFFFFFFFFL));
+        }
+
+        int se() throws IOException {
+            int value = ue();
+            return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+        }
+
+        void skipScalingList(int size) throws IOException {
+            int last = 8;
+            int next = 8;
+            for (int i = 0; i < size; i++) {
+                if (next != 0) {
+                    next = (last + se() + 256) % 256;
+                }
+                last = next == 0 ? last : next;
+            }
+        }
+    }
+
+    /**
+     * Writes one box, its size is known once all its content is written.
+     */
+    private static final class BoxBuilder {
+
+        private final String type;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        BoxBuilder(String type) {
+            this.type = type;
+        }
+
+        BoxBuilder u8(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        BoxBuilder u16(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        BoxBuilder u32(long value) {
+            try {
+                out.writeInt((int) value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        BoxBuilder u64(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        BoxBuilder fourcc(String value) {
+            return u32(H264Mp4Writer.fourcc(value));
+        }
+
+        BoxBuilder bytes(byte[] value) {
+            bytes.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] build() {
+            byte[] payload = bytes.toByteArray();
+            return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .putInt(H264Mp4Writer.fourcc(type))
+                .put(payload)
+                .array();
+        }
+    }
+}
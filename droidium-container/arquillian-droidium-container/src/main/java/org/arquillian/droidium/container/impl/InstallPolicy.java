@@ -0,0 +1,42 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+/**
+ * Policies of installing an application which is already installed on the device.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class InstallPolicy {
+
+    /**
+     * Installed application is always uninstalled and installed again.
+     */
+    public static final String ALWAYS = "always";
+
+    /**
+     * Installation is skipped when the installed APK is identical to the one to install, data of the application are
+     * cleared by {@code pm clear} instead. Application is kept installed on undeployment.
+     */
+    public static final String SKIP_IDENTICAL = "skipIdentical";
+
+    public static final String DEFAULT = ALWAYS;
+
+    public static boolean isValid(String policy) {
+        return ALWAYS.equals(policy) || SKIP_IDENTICAL.equals(policy);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.configuration.Validate;
+import org.arquillian.droidium.container.utils.DroidiumFileUtils;
+
+/**
+ * Compares APK of a package installed on a device with a local APK. Path of the installed APK is resolved by
+ * {@code pm path} and its digest is computed on the device by {@code sha256sum}, or by {@code md5sum} when the former is
+ * not available. Package manager keeps installed APK byte for byte so it is identical to the local one only when the very
+ * same APK was installed.<br>
+ * <br>
+ * Packages installed from more APKs (split APKs) are never considered to be identical to a single local APK.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class InstalledPackageComparator {
+
+    private static final Logger logger = Logger.getLogger(InstalledPackageComparator.class.getName());
+
+    private static final String PACKAGE_PATH_PREFIX = "package:";
+
+    private static final Pattern SHA256_PATTERN = Pattern.compile("^([0-9a-fA-F]{64})\\s");
+
+    private static final Pattern MD5_PATTERN = Pattern.compile("^([0-9a-fA-F]{32})\\s");
+
+    private final AndroidDevice device;
+
+    /**
+     *
+     * @param device device packages are installed on
+     * @throws IllegalArgumentException if {@code device} is a null object
+     */
+    public InstalledPackageComparator(AndroidDevice device) {
+        Validate.notNull(device, "Device to compare installed packages on can not be a null object!");
+        this.device = device;
+    }
+
+    /**
+     *
+     * @param applicationPackage package installed on the device
+     * @param apk local APK
+     * @return true if {@code applicationPackage} is installed from the APK identical to {@code apk}, false otherwise or
+     *         when it can not be decided
+     */
+    public boolean isIdentical(String applicationPackage, File apk) {
+        Validate.notNull(applicationPackage, "Package to compare can not be a null object!");
+        Validate.notNull(apk, "APK to compare can not be a null object!");
+
+        List<String> paths = new ArrayList<String>();
+
+        for (String line : execute("pm path " + applicationPackage)) {
+            if (line.trim().startsWith(PACKAGE_PATH_PREFIX)) {
+                paths.add(line.trim().substring(PACKAGE_PATH_PREFIX.length()));
+            }
+        }
+
+        if (paths.size() != 1) {
+            logger.log(Level.FINE, "Package {0} is installed from {1} APKs on device {2}, it is not compared.",
+                new Object[] { applicationPackage, paths.size(), device.getSerialNumber() });
+            return false;
+        }
+
+        String remoteSha256 = digest("sha256sum", paths.get(0), SHA256_PATTERN);
+
+        if (remoteSha256 != null) {
+            return remoteSha256.equalsIgnoreCase(DroidiumFileUtils.getDigest(apk, "SHA-256"));
+        }
+
+        String remoteMd5 = digest("md5sum", paths.get(0), MD5_PATTERN);
+
+        if (remoteMd5 != null) {
+            return remoteMd5.equalsIgnoreCase(DroidiumFileUtils.getDigest(apk, "MD5"));
+        }
+
+        logger.log(Level.FINE, "Unable to compute digest of {0} on device {1}, package {2} is not compared.",
+            new Object[] { paths.get(0), device.getSerialNumber(), applicationPackage });
+
+        return false;
+    }
+
+    private String digest(String tool, String remotePath, Pattern pattern) {
+        for (String line : execute(tool + " '" + remotePath + "' 2>/dev/null")) {
+            Matcher matcher = pattern.matcher(line.trim() + " ");
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    private List<String> execute(String command) {
+        final List<String> output = new ArrayList<String>();
+
+        device.executeShellCommand(command, new AndroidDeviceOutputReciever() {
+            @Override
+            public void processNewLines(String[] lines) {
+                for (String line : lines) {
+                    output.add(line);
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        return output;
+    }
+}
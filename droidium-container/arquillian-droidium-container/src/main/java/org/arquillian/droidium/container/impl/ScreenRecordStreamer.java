@@ -0,0 +1,287 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
+import org.arquillian.droidium.container.configuration.Validate;
+
+/**
+ * Records the screen of Android device by {@code screenrecord --output-format=h264} and streams the video to an MP4 file
+ * on the host over {@link AdbExecChannel} while it is recorded, nothing is stored on the device.<br>
+ * <br>
+ * The command is executed as {@code echo $$; exec screenrecord ...} so the first line of the stream is the PID of
+ * {@code screenrecord} itself. Stopping sends {@code SIGINT} to exactly that process, {@code screenrecord} then drains
+ * its encoder and closes the stream. When {@code screenrecord} stops by reaching its time limit, it is started again and
+ * the stream continues in the same file so there is no limit of the length of the video.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenRecordStreamer {
+
+    private static final Logger log = Logger.getLogger(ScreenRecordStreamer.class.getName());
+
+    private static final long STOP_TIMEOUT = 10000;
+
+    private final String serialNumber;
+
+    private final AdbExecChannel channel;
+
+    private final ScreenrecordOptions options;
+
+    private final File file;
+
+    private final Object lock = new Object();
+
+    private H264Mp4Writer writer;
+
+    private Thread thread;
+
+    private InputStream stream;
+
+    private int pid = -1;
+
+    private volatile boolean stopping;
+
+    private volatile Exception failure;
+
+    /**
+     *
+     * @param serialNumber serial number of the device to record
+     * @param channel channel to execute {@code screenrecord} by, it should not time out reading as the screen may not
+     *        change for a long time
+     * @param options options of {@code screenrecord}, time limit is not taken into account
+     * @param file MP4 file to save the video to
+     */
+    public ScreenRecordStreamer(String serialNumber, AdbExecChannel channel, ScreenrecordOptions options, File file) {
+        Validate.notNullOrEmpty(serialNumber, "Serial number of the device to record can not be a null object nor an empty string.");
+        Validate.notNull(channel, "Channel to execute screenrecord by can not be a null object.");
+        Validate.notNull(options, "Options of screenrecord can not be a null object.");
+        Validate.notNull(file, "File to save the video to can not be a null object.");
+        this.serialNumber = serialNumber;
+        this.channel = channel;
+        this.options = options;
+        this.file = file;
+    }
+
+    /**
+     * Starts {@code screenrecord} and a thread writing its output to the file.
+     *
+     * @throws AndroidExecutionException if the file can not be created or {@code screenrecord} can not be executed
+     */
+    public void start() throws AndroidExecutionException {
+        if (thread != null) {
+            throw new IllegalStateException("Screen of device " + serialNumber + " is already streamed.");
+        }
+
+        try {
+            writer = new H264Mp4Writer(file);
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to create file {0} to stream the screen of device {1} to.",
+                file.getAbsolutePath(), serialNumber);
+        }
+
+        try {
+            stream = open();
+        } catch (AndroidExecutionException ex) {
+            writer.abort();
+            file.delete();
+            throw ex;
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pump();
+            }
+        }, "droidium-screenrecord-stream-" + serialNumber);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops {@code screenrecord} and finishes the file. The video lasts until this method was called.
+     *
+     * @return duration of the video in milliseconds
+     * @throws AndroidExecutionException if the stream failed or it did not contain any picture
+     */
+    public long stop() throws AndroidExecutionException {
+        if (thread == null) {
+            throw new IllegalStateException("Screen of device " + serialNumber + " is not streamed.");
+        }
+
+        long endTime = System.nanoTime();
+
+        int recordingPid;
+        synchronized (lock) {
+            stopping = true;
+            recordingPid = pid;
+        }
+
+        if (recordingPid > 0) {
+            try {
+                close(channel.exec(serialNumber, "kill -2 " + recordingPid), true);
+            } catch (AndroidExecutionException ex) {
+                log.log(Level.FINE, "Unable to send SIGINT to screenrecord " + recordingPid + " on device " + serialNumber, ex);
+            }
+        }
+
+        if (!join()) {
+            log.log(Level.WARNING, "screenrecord {0} on device {1} did not stop in {2} ms, its stream is closed.",
+                new Object[] { String.valueOf(recordingPid), serialNumber, String.valueOf(STOP_TIMEOUT) });
+            synchronized (lock) {
+                close(stream, false);
+            }
+            join();
+        }
+
+        thread = null;
+
+        try {
+            long duration = writer.finish(endTime);
+            log.log(Level.FINE, "Streamed {0} ms of video of device {1} to {2}",
+                new Object[] { String.valueOf(duration), serialNumber, file });
+            return duration;
+        } catch (IOException ex) {
+            file.delete();
+            throw new AndroidExecutionException(failure != null ? failure : ex,
+                "Unable to stream the screen of device {0} to {1}.", serialNumber, file.getAbsolutePath());
+        }
+    }
+
+    private void pump() {
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in;
+        synchronized (lock) {
+            in = stream;
+        }
+
+        try {
+            while (true) {
+                long received = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    writer.write(buffer, 0, read);
+                    received += read;
+                }
+
+                synchronized (lock) {
+                    close(in, false);
+                    if (stopping) {
+                        return;
+                    }
+                    if (received == 0) {
+                        throw new AndroidExecutionException("screenrecord {0} on device {1} ended without recording anything.",
+                            String.valueOf(pid), serialNumber);
+                    }
+                    log.log(Level.FINE, "screenrecord {0} on device {1} reached its time limit, it is started again.",
+                        new Object[] { String.valueOf(pid), serialNumber });
+                    in = stream = open();
+                }
+            }
+        } catch (Exception ex) {
+            if (!stopping) {
+                log.log(Level.WARNING, "Streaming of the screen of device " + serialNumber + " failed.", ex);
+                failure = ex;
+            }
+        } finally {
+            synchronized (lock) {
+                close(in, false);
+            }
+        }
+    }
+
+    private InputStream open() throws AndroidExecutionException {
+        InputStream in = channel.exec(serialNumber, getCommand());
+        try {
+            pid = readPid(in);
+            return in;
+        } catch (IOException ex) {
+            close(in, false);
+            throw new AndroidExecutionException(ex, "Unable to read PID of screenrecord on device {0}.", serialNumber);
+        }
+    }
+
+    private String getCommand() {
+        StringBuilder command = new StringBuilder("echo $$; exec screenrecord --output-format=h264");
+
+        if (options.width > 0 && options.height > 0) {
+            command.append(" --size ").append(options.width).append("x").append(options.height);
+        }
+
+        if (options.bitrate > 0) {
+            command.append(" --bit-rate ").append(options.bitrate);
+        }
+
+        return command.append(" --time-limit ").append(ScreenrecordOptions.MAX_TIME_LIMIT).append(" -").toString();
+    }
+
+    private static int readPid(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1 || line.length() > 16) {
+                throw new IOException("Stream does not start with a PID.");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        try {
+            return Integer.parseInt(line.toString().trim());
+        } catch (NumberFormatException ex) {
+            throw new IOException("Stream does not start with a PID but with " + line + ".");
+        }
+    }
+
+    private boolean join() {
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    private static void close(InputStream in, boolean drain) {
+        if (in == null) {
+            return;
+        }
+        try {
+            if (drain) {
+                byte[] buffer = new byte[256];
+                while (in.read(buffer) != -1) {
+                }
+            }
+        } catch (IOException ex) {
+            // ignore
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+}
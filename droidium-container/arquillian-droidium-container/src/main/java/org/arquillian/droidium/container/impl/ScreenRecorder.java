@@ -0,0 +1,241 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
+import org.arquillian.droidium.container.configuration.Validate;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import com.android.ddmlib.NullOutputReceiver;
+
+/**
+ * Records the screen of Android device by {@code screenrecord} to a file on the device.<br>
+ * <br>
+ * Everything is executed through {@link IDevice} of the recorded device so any number of devices attached to one host
+ * can be recorded at once. The command is executed as {@code echo $$; exec screenrecord ...} so the first line of its
+ * output is the PID of {@code screenrecord} itself. Stopping sends {@code SIGINT} to exactly that process and waits until
+ * the shell stream of {@code screenrecord} ends, which happens once the video is finished on the device. When
+ * {@code screenrecord} already ended by reaching its time limit, nothing is signalled so a reused PID is never hit.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenRecorder {
+
+    private static final Logger log = Logger.getLogger(ScreenRecorder.class.getName());
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final long START_TIMEOUT = 10000;
+
+    private static final long STOP_TIMEOUT = 60000;
+
+    private final IDevice device;
+
+    private final ScreenrecordOptions options;
+
+    private final String remoteFilePath;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private Thread thread;
+
+    private volatile int pid = -1;
+
+    private volatile boolean cancelled;
+
+    private volatile Exception failure;
+
+    /**
+     *
+     * @param device device to record
+     * @param options options of {@code screenrecord}
+     * @param remoteFilePath file path of the video on the device
+     */
+    public ScreenRecorder(IDevice device, ScreenrecordOptions options, String remoteFilePath) {
+        Validate.notNull(device, "Device to record can not be a null object.");
+        Validate.notNull(options, "Options of screenrecord can not be a null object.");
+        Validate.notNullOrEmpty(remoteFilePath, "Remote file path of the video can not be a null object nor an empty string.");
+        this.device = device;
+        this.options = options;
+        this.remoteFilePath = remoteFilePath;
+    }
+
+    /**
+     * Starts {@code screenrecord} and waits until its PID is known.
+     *
+     * @throws AndroidExecutionException if {@code screenrecord} can not be executed or it does not report its PID in time
+     */
+    public void start() throws AndroidExecutionException {
+        if (thread != null) {
+            throw new IllegalStateException("Screen of device " + device.getSerialNumber() + " is already recorded.");
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                record();
+            }
+        }, "droidium-screenrecord-" + device.getSerialNumber());
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            if (!started.await(START_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                cancelled = true;
+                throw new AndroidExecutionException("screenrecord on device {0} did not start in {1} ms.",
+                    device.getSerialNumber(), String.valueOf(START_TIMEOUT));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+            throw new AndroidExecutionException(ex, "Interrupted while starting screenrecord on device {0}.",
+                device.getSerialNumber());
+        }
+
+        if (pid <= 0) {
+            thread = null;
+            throw new AndroidExecutionException(failure, "Unable to start screenrecord on device {0}.", device.getSerialNumber());
+        }
+
+        log.log(Level.FINE, "screenrecord {0} on device {1} records to {2}",
+            new Object[] { String.valueOf(pid), device.getSerialNumber(), remoteFilePath });
+    }
+
+    /**
+     * Sends {@code SIGINT} to {@code screenrecord} unless it has already ended and waits until its shell stream ends.
+     *
+     * @return file path of the video on the device
+     * @throws AndroidExecutionException if {@code screenrecord} does not end in time
+     */
+    public String stop() throws AndroidExecutionException {
+        if (thread == null) {
+            throw new IllegalStateException("Screen of device " + device.getSerialNumber() + " is not recorded.");
+        }
+
+        try {
+            if (thread.isAlive()) {
+                try {
+                    device.executeShellCommand("kill -2 " + pid, new NullOutputReceiver());
+                } catch (Exception ex) {
+                    log.log(Level.FINE, "Unable to send SIGINT to screenrecord " + pid + " on device " + device.getSerialNumber(), ex);
+                }
+
+                thread.join(STOP_TIMEOUT);
+
+                if (thread.isAlive()) {
+                    cancelled = true;
+                    throw new AndroidExecutionException("screenrecord {0} on device {1} did not stop in {2} ms.",
+                        String.valueOf(pid), device.getSerialNumber(), String.valueOf(STOP_TIMEOUT));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+            throw new AndroidExecutionException(ex, "Interrupted while stopping screenrecord {0} on device {1}.",
+                String.valueOf(pid), device.getSerialNumber());
+        } finally {
+            thread = null;
+        }
+
+        if (failure != null) {
+            log.log(Level.WARNING, "Shell of screenrecord " + pid + " on device " + device.getSerialNumber() + " failed.", failure);
+        }
+
+        return remoteFilePath;
+    }
+
+    private void record() {
+        try {
+            device.executeShellCommand(getCommand(), new PidReceiver(), 0);
+        } catch (Exception ex) {
+            failure = ex;
+        } finally {
+            started.countDown();
+        }
+    }
+
+    private String getCommand() {
+        StringBuilder command = new StringBuilder("echo $$; exec screenrecord");
+
+        if (options.width > 0 && options.height > 0) {
+            command.append(" --size ").append(options.width).append("x").append(options.height);
+        }
+
+        if (options.bitrate > 0) {
+            command.append(" --bit-rate ").append(options.bitrate);
+        }
+
+        int timeLimit = options.timeLimit > 0 && options.timeLimit <= ScreenrecordOptions.MAX_TIME_LIMIT
+            ? options.timeLimit
+            : ScreenrecordOptions.MAX_TIME_LIMIT;
+
+        return command.append(" --time-limit ").append(timeLimit).append(" ").append(remoteFilePath).toString();
+    }
+
+    /**
+     * Takes the first line of the output as the PID, the rest is only logged.
+     */
+    private final class PidReceiver implements IShellOutputReceiver {
+
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public void addOutput(byte[] data, int offset, int length) {
+            String output = new String(data, offset, length, CHARSET);
+            if (pid > 0) {
+                log.log(Level.FINE, "screenrecord {0} on device {1}: {2}",
+                    new Object[] { String.valueOf(pid), device.getSerialNumber(), output.trim() });
+                return;
+            }
+            for (int i = 0; i < output.length() && pid <= 0; i++) {
+                char c = output.charAt(i);
+                if (c == '\n') {
+                    try {
+                        pid = Integer.parseInt(line.toString().trim());
+                    } catch (NumberFormatException ex) {
+                        failure = new AndroidExecutionException("Output of screenrecord on device {0} does not start with a PID but with {1}.",
+                            device.getSerialNumber(), line);
+                        cancelled = true;
+                        started.countDown();
+                        return;
+                    }
+                    started.countDown();
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Reads output of {@code screencap} command.<br>
+ * <br>
+ * Raw output starts by a header of little endian integers: width, height, pixel format and, since Android 9, a color
+ * space. Rows of pixels follow without any padding. Whether the color space is present is derived from the size of the
+ * output so both variants are read. Frames are returned as {@link RawImage} with channel offsets of the pixel format so they can be
+ * converted without touching individual pixels here.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreencapReader {
+
+    static final int PIXEL_FORMAT_RGBA_8888 = 1;
+
+    static final int PIXEL_FORMAT_RGBX_8888 = 2;
+
+    static final int PIXEL_FORMAT_RGB_888 = 3;
+
+    static final int PIXEL_FORMAT_RGB_565 = 4;
+
+    static final int PIXEL_FORMAT_BGRA_8888 = 5;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int HEADER_SIZE_WITH_COLOR_SPACE = 16;
+
+    private static final byte[] PNG_SIGNATURE = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    private ScreencapReader() {
+    }
+
+    /**
+     * Reads uncompressed output of {@code screencap}.
+     *
+     * @param in output of {@code screencap}
+     * @return frame of the output
+     * @throws IOException if the output can not be read
+     * @throws AndroidExecutionException if the output is not a frame of a known pixel format
+     */
+    public static RawImage readRaw(InputStream in) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        if (read(in, header, 0, HEADER_SIZE) < HEADER_SIZE) {
+            throw new AndroidExecutionException("Output of screencap is too short to hold a header of a frame.");
+        }
+
+        int width = readInt(header, 0);
+        int height = readInt(header, 4);
+        int format = readInt(header, 8);
+
+        if (width <= 0 || height <= 0) {
+            throw new AndroidExecutionException("Output of screencap holds a frame of invalid size {0}x{1}.",
+                String.valueOf(width), String.valueOf(height));
+        }
+
+        int pixels = width * height;
+        int size = pixels * getBytesPerPixel(format);
+
+        // the color space, when present, is read into the buffer as well and moved away afterwards
+        byte[] data = new byte[size + HEADER_SIZE_WITH_COLOR_SPACE - HEADER_SIZE];
+        int length = read(in, data, 0, data.length);
+
+        if (length == data.length) {
+            System.arraycopy(data, HEADER_SIZE_WITH_COLOR_SPACE - HEADER_SIZE, data, 0, size);
+        } else if (length != size || in.read() != -1) {
+            throw new AndroidExecutionException("Output of screencap does not match a frame {0}x{1} of format {2}.",
+                String.valueOf(width), String.valueOf(height), String.valueOf(format));
+        }
+
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.width = width;
+        rawImage.height = height;
+
+        switch (format) {
+            case PIXEL_FORMAT_RGBA_8888:
+                setChannels(rawImage, 32, 0, 8, 16, 24, 8);
+                break;
+            case PIXEL_FORMAT_RGBX_8888:
+                setChannels(rawImage, 32, 0, 8, 16, 24, 0);
+                break;
+            case PIXEL_FORMAT_BGRA_8888:
+                setChannels(rawImage, 32, 16, 8, 0, 24, 8);
+                break;
+            case PIXEL_FORMAT_RGB_888:
+                data = expand(data, pixels);
+                setChannels(rawImage, 32, 0, 8, 16, 24, 0);
+                break;
+            default:
+                rawImage.bpp = 16;
+                rawImage.red_offset = 11;
+                rawImage.red_length = 5;
+                rawImage.green_offset = 5;
+                rawImage.green_length = 6;
+                rawImage.blue_offset = 0;
+                rawImage.blue_length = 5;
+        }
+
+        // data may be longer by the size of the color space, only the size of the frame is significant
+        rawImage.data = data;
+        rawImage.size = rawImage.width * rawImage.height * (rawImage.bpp >> 3);
+
+        return rawImage;
+    }
+
+    /**
+     * Reads PNG output of {@code screencap -p}.
+     *
+     * @param in output of {@code screencap -p}
+     * @return encoded image
+     * @throws IOException if the output can not be read
+     * @throws AndroidExecutionException if the output is not a PNG image
+     */
+    public static byte[] readPng(InputStream in) throws IOException {
+        byte[] png = readFully(in, 256 * 1024);
+        if (png.length < 24 || !startsWithSignature(png)) {
+            throw new AndroidExecutionException("Output of screencap of {0} bytes is not a PNG image.", String.valueOf(png.length));
+        }
+        return png;
+    }
+
+    /**
+     *
+     * @param png PNG image
+     * @return width of the image taken from its header
+     */
+    public static int getPngWidth(byte[] png) {
+        return readIntBigEndian(png, 16);
+    }
+
+    /**
+     *
+     * @param png PNG image
+     * @return height of the image taken from its header
+     */
+    public static int getPngHeight(byte[] png) {
+        return readIntBigEndian(png, 20);
+    }
+
+    /**
+     * Decodes PNG image to a frame of layout RGBX 8888.
+     *
+     * @param png PNG image
+     * @return decoded frame
+     * @throws AndroidExecutionException if the image can not be decoded
+     */
+    public static RawImage decodePng(byte[] png) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(png));
+        } catch (IOException ex) {
+            throw new AndroidExecutionException("Unable to decode PNG screenshot.", ex);
+        }
+        if (image == null) {
+            throw new AndroidExecutionException("Unable to decode PNG screenshot.");
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        byte[] data = new byte[width * height * 4];
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                data[index++] = (byte) (rgb >> 16);
+                data[index++] = (byte) (rgb >> 8);
+                data[index++] = (byte) rgb;
+                data[index++] = (byte) 0xff;
+            }
+        }
+
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.width = width;
+        rawImage.height = height;
+        rawImage.data = data;
+        rawImage.size = data.length;
+        setChannels(rawImage, 32, 0, 8, 16, 24, 0);
+
+        return rawImage;
+    }
+
+    private static int getBytesPerPixel(int format) {
+        switch (format) {
+            case PIXEL_FORMAT_RGBA_8888:
+            case PIXEL_FORMAT_RGBX_8888:
+            case PIXEL_FORMAT_BGRA_8888:
+                return 4;
+            case PIXEL_FORMAT_RGB_888:
+                return 3;
+            case PIXEL_FORMAT_RGB_565:
+                return 2;
+            default:
+                throw new AndroidExecutionException("Pixel format {0} of screencap output is not supported.", String.valueOf(format));
+        }
+    }
+
+    private static void setChannels(RawImage rawImage, int bpp, int red, int green, int blue, int alpha, int alphaLength) {
+        rawImage.bpp = bpp;
+        rawImage.red_offset = red;
+        rawImage.red_length = 8;
+        rawImage.green_offset = green;
+        rawImage.green_length = 8;
+        rawImage.blue_offset = blue;
+        rawImage.blue_length = 8;
+        rawImage.alpha_offset = alpha;
+        rawImage.alpha_length = alphaLength;
+    }
+
+    private static byte[] expand(byte[] output, int pixels) {
+        byte[] data = new byte[pixels * 4];
+        for (int i = 0, j = 0; i < data.length; i += 4, j += 3) {
+            data[i] = output[j];
+            data[i + 1] = output[j + 1];
+            data[i + 2] = output[j + 2];
+            data[i + 3] = (byte) 0xff;
+        }
+        return data;
+    }
+
+    private static boolean startsWithSignature(byte[] png) {
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (png[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+            | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static int readIntBigEndian(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8
+            | (bytes[offset + 3] & 0xff);
+    }
+
+    private static int read(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        int read;
+        while (total < length && (read = in.read(buffer, offset + total, length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private static byte[] readFully(InputStream in, int initialCapacity) throws IOException {
+        byte[] buffer = new byte[initialCapacity];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, length);
+                buffer = bigger;
+            }
+        }
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+}
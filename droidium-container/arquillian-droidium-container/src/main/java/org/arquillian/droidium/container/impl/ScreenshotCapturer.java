@@ -0,0 +1,283 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.RawImage;
+
+/**
+ * Takes screenshots of one device by a {@link ScreenshotBackend}.<br>
+ * <br>
+ * For {@link ScreenshotBackend#AUTO}, devices below API level {@value AdbExecChannel#MIN_API_LEVEL} use the
+ * framebuffer. Newer devices take their first screenshots by every backend in turn until each backend took
+ * {@value #SAMPLES} of them, each of these screenshots is returned to the caller, and the backend with the shortest
+ * median time is used from then on, so a single slow first connection does not decide. A backend which fails is not
+ * tried again.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotCapturer {
+
+    private static final Logger logger = Logger.getLogger(ScreenshotCapturer.class.getName());
+
+    private static final ScreenshotBackend[] CANDIDATES = new ScreenshotBackend[] {
+        ScreenshotBackend.SCREENCAP_RAW,
+        ScreenshotBackend.SCREENCAP_PNG,
+        ScreenshotBackend.FRAMEBUFFER
+    };
+
+    static final int SAMPLES = 3;
+
+    private final IDevice device;
+
+    private final AdbExecChannel channel;
+
+    private final Map<ScreenshotBackend, List<Long>> measured = new EnumMap<ScreenshotBackend, List<Long>>(
+        ScreenshotBackend.class);
+
+    private final Set<ScreenshotBackend> failed = EnumSet.noneOf(ScreenshotBackend.class);
+
+    private ScreenshotBackend selected;
+
+    /**
+     *
+     * @param device device to take screenshots of
+     * @param channel channel to execute {@code screencap} by
+     */
+    public ScreenshotCapturer(IDevice device, AdbExecChannel channel) {
+        if (device == null) {
+            throw new IllegalArgumentException("Device to take screenshots of can not be a null object.");
+        }
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel to execute screencap by can not be a null object.");
+        }
+        this.device = device;
+        this.channel = channel;
+    }
+
+    /**
+     *
+     * @param backend backend to take the screenshot by
+     * @return taken screenshot, either {@link RawImage} or PNG image
+     * @throws Exception if the backend fails or, for {@link ScreenshotBackend#AUTO}, all backends fail
+     */
+    public synchronized Capture capture(ScreenshotBackend backend) throws Exception {
+        if (backend == ScreenshotBackend.AUTO) {
+            return captureAuto();
+        }
+        return captureBy(backend);
+    }
+
+    /**
+     *
+     * @return backend selected for {@link ScreenshotBackend#AUTO} or null if it is not selected yet
+     */
+    public synchronized ScreenshotBackend getSelected() {
+        return selected;
+    }
+
+    private Capture captureAuto() throws Exception {
+        if (selected == null) {
+            int apiLevel = device.getApiLevel();
+            // unknown API level is treated as a new device, screencap falls back to the framebuffer when it fails
+            if (apiLevel > 0 && apiLevel < AdbExecChannel.MIN_API_LEVEL) {
+                selected = ScreenshotBackend.FRAMEBUFFER;
+            }
+        }
+
+        if (selected != null) {
+            try {
+                return captureBy(selected);
+            } catch (Exception ex) {
+                if (selected == ScreenshotBackend.FRAMEBUFFER) {
+                    throw ex;
+                }
+                logger.log(Level.WARNING, "Screenshot backend " + selected + " failed on device " + device.getSerialNumber()
+                    + ", falling back to " + ScreenshotBackend.FRAMEBUFFER, ex);
+                selected = ScreenshotBackend.FRAMEBUFFER;
+                return captureBy(selected);
+            }
+        }
+
+        Exception failure = null;
+
+        ScreenshotBackend candidate;
+        while ((candidate = nextCandidate()) != null) {
+            long start = System.nanoTime();
+            try {
+                Capture capture = captureBy(candidate);
+                samples(candidate).add(System.nanoTime() - start);
+                selectFastest();
+                return capture;
+            } catch (Exception ex) {
+                logger.log(Level.FINE, "Screenshot backend " + candidate + " failed on device " + device.getSerialNumber(), ex);
+                failed.add(candidate);
+                failure = ex;
+            }
+        }
+
+        selectFastest();
+
+        if (selected == null) {
+            if (failure != null) {
+                throw failure;
+            }
+            throw new AndroidExecutionException("None of screenshot backends works on device {0}.", device.getSerialNumber());
+        }
+
+        return captureBy(selected);
+    }
+
+    /**
+     *
+     * @return backend which has not failed and took the fewest samples, null when all backends are measured
+     */
+    private ScreenshotBackend nextCandidate() {
+        ScreenshotBackend next = null;
+        int fewest = SAMPLES;
+
+        for (ScreenshotBackend candidate : CANDIDATES) {
+            int taken = samples(candidate).size();
+            if (!failed.contains(candidate) && taken < fewest) {
+                next = candidate;
+                fewest = taken;
+            }
+        }
+
+        return next;
+    }
+
+    private void selectFastest() {
+        if (nextCandidate() != null) {
+            return;
+        }
+
+        ScreenshotBackend fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        StringBuilder sb = new StringBuilder();
+
+        for (ScreenshotBackend candidate : CANDIDATES) {
+            sb.append(' ').append(candidate).append('=');
+            if (failed.contains(candidate)) {
+                sb.append("failed");
+                continue;
+            }
+            long median = median(samples(candidate));
+            sb.append(TimeUnit.NANOSECONDS.toMillis(median)).append(" ms");
+            if (median < fastestTime) {
+                fastest = candidate;
+                fastestTime = median;
+            }
+        }
+
+        if (fastest != null) {
+            logger.log(Level.INFO, "Selected screenshot backend {0} for device {1}, median of {2} screenshots:{3}",
+                new Object[] { fastest, device.getSerialNumber(), SAMPLES, sb });
+            selected = fastest;
+        }
+    }
+
+    private List<Long> samples(ScreenshotBackend backend) {
+        List<Long> samples = measured.get(backend);
+        if (samples == null) {
+            samples = new ArrayList<Long>(SAMPLES);
+            measured.put(backend, samples);
+        }
+        return samples;
+    }
+
+    static long median(List<Long> samples) {
+        List<Long> sorted = new ArrayList<Long>(samples);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private Capture captureBy(ScreenshotBackend backend) throws Exception {
+        switch (backend) {
+            case FRAMEBUFFER:
+                RawImage rawImage = device.getScreenshot();
+                if (rawImage == null) {
+                    throw new AndroidExecutionException("Framebuffer of device {0} is not available.", device.getSerialNumber());
+                }
+                return new Capture(rawImage, null);
+            case SCREENCAP_RAW:
+                InputStream raw = channel.exec(device.getSerialNumber(), "screencap");
+                try {
+                    return new Capture(ScreencapReader.readRaw(raw), null);
+                } finally {
+                    close(raw);
+                }
+            case SCREENCAP_PNG:
+                InputStream png = channel.exec(device.getSerialNumber(), "screencap -p");
+                try {
+                    return new Capture(null, ScreencapReader.readPng(png));
+                } finally {
+                    close(png);
+                }
+            default:
+                throw new IllegalArgumentException("Unsupported screenshot backend " + backend);
+        }
+    }
+
+    private static void close(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * Screenshot taken by a backend, either uncompressed or PNG encoded.
+     */
+    public static final class Capture {
+
+        private final RawImage rawImage;
+
+        private final byte[] png;
+
+        Capture(RawImage rawImage, byte[] png) {
+            this.rawImage = rawImage;
+            this.png = png;
+        }
+
+        public RawImage getRawImage() {
+            return rawImage;
+        }
+
+        public byte[] getPng() {
+            return png;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+/**
+ * Strategies of resetting the state of an application between deployments of the same application.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class StateResetStrategy {
+
+    /**
+     * Application is uninstalled on undeployment and installed again on the next deployment.
+     */
+    public static final String REINSTALL = "reinstall";
+
+    /**
+     * Emulator snapshot is saved after the first deployment and restored on every next deployment of the same application.
+     * Restoring the snapshot reverts the state of the whole emulator, including other applications.
+     */
+    public static final String SNAPSHOT = "snapshot";
+
+    /**
+     * Application is kept installed and its data are cleared by {@code pm clear} on every next deployment.
+     */
+    public static final String CLEAR = "clear";
+
+    public static final String DEFAULT = REINSTALL;
+
+    public static boolean isValid(String strategy) {
+        return REINSTALL.equals(strategy) || SNAPSHOT.equals(strategy) || CLEAR.equals(strategy);
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.configuration.Validate;
+
+/**
+ * Installs APKs by streaming them from the host right to the package manager of a device over {@code exec} service of the
+ * adb server, neither a temporary copy on the device nor on the host is made.<br>
+ * <br>
+ * More APKs, e.g. a base APK and its splits, are installed in one install session: the session is created by
+ * {@code pm install-create}, every APK is written to it by {@code pm install-write} over its own connection, concurrently
+ * with the others, and the session is committed by {@code pm install-commit} at last. Session which was not committed is
+ * abandoned. Devices of API level 24 (7.0) and above are asked by {@code cmd package} which does not start a new virtual
+ * machine for every command as {@code pm} does, a single APK is installed there by {@code cmd package install -S <size>}
+ * reading the APK from its standard input. Older devices install a single APK in a session as well since their
+ * {@code pm install} can not read from the standard input.<br>
+ * <br>
+ * Requires API level 21 (5.0) and above.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class StreamedInstaller {
+
+    private static final Logger logger = Logger.getLogger(StreamedInstaller.class.getName());
+
+    public static final int CMD_API_LEVEL = 24;
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final Pattern SESSION_PATTERN = Pattern.compile("\\[(\\d+)\\]");
+
+    private final String serialNumber;
+
+    private final AdbExecChannel channel;
+
+    private final String packageManager;
+
+    private final boolean streamedInstall;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    /**
+     *
+     * @param serialNumber serial number of the device to install APKs to
+     * @param channel channel to the adb server, its read timeout has to cover the installation of the largest APK
+     * @param apiLevel API level of the device
+     * @throws IllegalArgumentException if {@code serialNumber} or {@code channel} is a null object
+     */
+    public StreamedInstaller(String serialNumber, AdbExecChannel channel, int apiLevel) {
+        Validate.notNullOrEmpty(serialNumber, "Serial number of the device to install APKs to can not be a null object nor an empty string.");
+        Validate.notNull(channel, "Channel to adb server can not be a null object.");
+        this.serialNumber = serialNumber;
+        this.channel = channel;
+        this.packageManager = apiLevel >= CMD_API_LEVEL ? "cmd package" : "pm";
+        this.streamedInstall = apiLevel >= CMD_API_LEVEL;
+    }
+
+    /**
+     *
+     * @param concurrency maximal number of APKs of one session written concurrently
+     * @return this
+     */
+    public StreamedInstaller concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Installs {@code apks} in one install session, a single APK is installed by {@code cmd package install -S} directly
+     * when the device supports it.
+     *
+     * @param apks base APK followed by its splits
+     * @param options options of {@code pm install}, e.g. {@code -r}
+     * @throws AndroidExecutionException if any APK can not be written or the installation fails
+     */
+    public void install(List<File> apks, String... options) throws AndroidExecutionException {
+        Validate.notNull(apks, "APKs to install can not be a null object.");
+        if (apks.isEmpty()) {
+            throw new IllegalArgumentException("There has to be at least one APK to install.");
+        }
+        for (File apk : apks) {
+            if (apk == null || !Validate.isReadable(apk.getAbsoluteFile())) {
+                throw new IllegalArgumentException("File " + apk + " must represent a readable APK file");
+            }
+        }
+
+        long start = System.currentTimeMillis();
+
+        if (apks.size() == 1 && streamedInstall) {
+            File apk = apks.get(0);
+            String output = stream(packageManager + " install" + join(options) + " -S " + apk.length(), apk);
+            if (!isSuccess(output)) {
+                throw new AndroidExecutionException("Unable to install {0} on device {1}: {2}", apk.getAbsolutePath(),
+                    serialNumber, output.trim());
+            }
+        } else {
+            installSession(apks, options);
+        }
+
+        logger.log(Level.FINE, "{0} APKs were streamed and installed on device {1} in {2} ms", new Object[] { apks.size(),
+            serialNumber, System.currentTimeMillis() - start });
+    }
+
+    private void installSession(List<File> apks, String... options) {
+        long totalSize = 0;
+        for (File apk : apks) {
+            totalSize += apk.length();
+        }
+
+        String created = execute(packageManager + " install-create" + join(options) + " -S " + totalSize);
+        Matcher matcher = SESSION_PATTERN.matcher(created);
+        if (!isSuccess(created) || !matcher.find()) {
+            throw new AndroidExecutionException("Unable to create install session on device {0}: {1}", serialNumber,
+                created.trim());
+        }
+
+        final String session = matcher.group(1);
+        boolean committed = false;
+
+        try {
+            writeSession(session, apks);
+
+            String output = execute(packageManager + " install-commit " + session);
+            if (!isSuccess(output)) {
+                throw new AndroidExecutionException("Unable to commit install session {0} of {1} APKs on device {2}: {3}",
+                    session, String.valueOf(apks.size()), serialNumber, output.trim());
+            }
+            committed = true;
+        } finally {
+            if (!committed) {
+                abandon(session);
+            }
+        }
+    }
+
+    private void writeSession(final String session, List<File> apks) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, apks.size())),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "droidium-install-" + serialNumber + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for (int i = 0; i < apks.size(); i++) {
+            final File apk = apks.get(i);
+            // names of APKs have to be unique within a session
+            final String name = i + "_" + apk.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    String output = stream(packageManager + " install-write -S " + apk.length() + " " + session + " " + name
+                        + " -", apk);
+                    if (!isSuccess(output)) {
+                        throw new AndroidExecutionException("Unable to write {0} to install session {1} on device {2}: {3}",
+                            apk.getAbsolutePath(), session, serialNumber, output.trim());
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof AndroidExecutionException) {
+                throw (AndroidExecutionException) ex.getCause();
+            }
+            throw new AndroidExecutionException(ex.getCause(), "Unable to write APKs to install session {0} on device {1}.",
+                session, serialNumber);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AndroidExecutionException(ex, "Writing of APKs to install session {0} on device {1} was interrupted.",
+                session, serialNumber);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void abandon(String session) {
+        try {
+            execute(packageManager + " install-abandon " + session);
+        } catch (AndroidExecutionException ex) {
+            logger.log(Level.FINE, "Unable to abandon install session {0} on device {1}: {2}", new Object[] { session,
+                serialNumber, ex.getMessage() });
+        }
+    }
+
+    private String stream(String command, File apk) {
+        Socket socket = null;
+
+        try {
+            socket = channel.connect(serialNumber, "exec:" + command);
+
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new FileInputStream(apk);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.flush();
+            } finally {
+                in.close();
+            }
+
+            return read(socket.getInputStream());
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to stream {0} to \"{1}\" on device {2}.", apk.getAbsolutePath(),
+                command, serialNumber);
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private String execute(String command) {
+        InputStream in = channel.exec(serialNumber, command);
+        try {
+            return read(in);
+        } catch (IOException ex) {
+            throw new AndroidExecutionException(ex, "Unable to read output of \"{0}\" on device {1}.", command, serialNumber);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toString("UTF-8");
+    }
+
+    private static boolean isSuccess(String output) {
+        for (String line : output.split("\n")) {
+            if (line.trim().startsWith("Success")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String join(String... options) {
+        StringBuilder sb = new StringBuilder();
+        if (options != null) {
+            for (String option : options) {
+                sb.append(" ").append(option);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.AndroidLogcat;
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+import org.arquillian.droidium.container.spi.event.AndroidBridgeTerminated;
+import org.arquillian.droidium.container.spi.event.AndroidContainerStop;
+import org.arquillian.droidium.container.spi.event.AndroidDeviceReady;
+import org.jboss.arquillian.container.spi.Container;
+import org.jboss.arquillian.container.spi.ContainerRegistry;
+import org.jboss.arquillian.container.spi.context.ContainerContext;
+import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.InstanceProducer;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.core.spi.EventContext;
+import org.jboss.arquillian.test.spi.TestResult;
+import org.jboss.arquillian.test.spi.event.suite.Test;
+
+import com.android.ddmlib.AndroidDebugBridge;
+
+/**
+ * Starts {@link DeviceCrashWatchdog} of every Android device when {@code watchdogEnabled} is set and arms the watchdogs
+ * of all started Android containers while a test runs. When an application crashes, an ANR occurs or a device goes
+ * offline during the test, the test is failed with the description of the crash even if the test itself passed.<br>
+ * <br>
+ * Observes:
+ * <ul>
+ * <li>{@link AndroidDeviceReady}</li>
+ * <li>{@link Test}</li>
+ * <li>{@link AndroidContainerStop}</li>
+ * <li>{@link AndroidBridgeTerminated}</li>
+ * </ul>
+ * Produces ContainerScoped:
+ * <ul>
+ * <li>{@link DeviceCrashWatchdog}</li>
+ * </ul>
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class AndroidCrashWatchdog {
+
+    private static final Logger logger = Logger.getLogger(AndroidCrashWatchdog.class.getName());
+
+    private static final long COLLECT_TIMEOUT_IN_SECONDS = 10;
+
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<DeviceCrashWatchdog> deviceCrashWatchdog;
+
+    @Inject
+    private Instance<ContainerRegistry> containerRegistry;
+
+    @Inject
+    private Instance<ContainerContext> containerContext;
+
+    @Inject
+    private Instance<AndroidContainerConfiguration> configuration;
+
+    @Inject
+    private Instance<AndroidDevice> androidDevice;
+
+    @Inject
+    private Instance<AndroidLogcat> androidLogcat;
+
+    @Inject
+    private Instance<TestResult> testResult;
+
+    // runs after AndroidLogInitializer started reading logcat
+    public void startWatchdog(@Observes(precedence = -10) AndroidDeviceReady event) {
+        AndroidContainerConfiguration configuration = this.configuration.get();
+
+        if (!configuration.isWatchdogEnabled()) {
+            return;
+        }
+
+        AndroidLogcat logcat = androidLogcat.get();
+
+        if (logcat == null) {
+            logger.warning("Crash watchdog of " + androidDevice.get().getSerialNumber() + " is not started, logcat is not read.");
+            return;
+        }
+
+        DeviceCrashWatchdog watchdog = new DeviceCrashWatchdog(androidDevice.get(),
+            configuration.getWatchdogPackages(),
+            new File(configuration.getWatchdogDir()))
+            .watch(logcat);
+
+        AndroidDebugBridge.addDeviceChangeListener(watchdog);
+
+        deviceCrashWatchdog.set(watchdog);
+    }
+
+    public void watchTest(@Observes EventContext<Test> context) {
+        List<String> containers = getWatchedContainers();
+
+        for (String container : containers) {
+            containerContext.get().activate(container);
+            try {
+                deviceCrashWatchdog.get().arm(Thread.currentThread());
+            } finally {
+                containerContext.get().deactivate();
+            }
+        }
+
+        List<String> crashes = new ArrayList<String>();
+
+        try {
+            context.proceed();
+        } finally {
+            for (String container : containers) {
+                containerContext.get().activate(container);
+                try {
+                    String crash = deviceCrashWatchdog.get().disarm();
+                    if (crash != null) {
+                        crashes.add(crash);
+                    }
+                } finally {
+                    containerContext.get().deactivate();
+                }
+            }
+
+            if (!crashes.isEmpty()) {
+                // the watchdog interrupted this thread, clear the flag so it does not break the rest of the suite
+                Thread.interrupted();
+            }
+        }
+
+        TestResult result = testResult.get();
+
+        if (crashes.isEmpty() || result == null) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("Test was failed by Droidium crash watchdog: ");
+        for (String crash : crashes) {
+            sb.append("\n").append(crash);
+        }
+
+        result.setStatus(TestResult.Status.FAILED);
+        result.setThrowable(new AndroidExecutionException(sb.toString(), result.getThrowable()));
+    }
+
+    public void stopWatchdog(@Observes AndroidContainerStop event) {
+        stop();
+    }
+
+    public void terminateWatchdog(@Observes AndroidBridgeTerminated event) {
+        stop();
+    }
+
+    private void stop() {
+        DeviceCrashWatchdog watchdog = deviceCrashWatchdog.get();
+        if (watchdog != null) {
+            AndroidDebugBridge.removeDeviceChangeListener(watchdog);
+            watchdog.close(COLLECT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private List<String> getWatchedContainers() {
+        List<String> containers = new ArrayList<String>();
+
+        if (containerRegistry.get() == null) {
+            return containers;
+        }
+
+        for (Container container : containerRegistry.get().getContainers()) {
+            if (container.getState() != Container.State.STARTED
+                || container.getDeployableContainer().getConfigurationClass() != AndroidContainerConfiguration.class) {
+                continue;
+            }
+
+            containerContext.get().activate(container.getName());
+            try {
+                if (deviceCrashWatchdog.get() != null) {
+                    containers.add(container.getName());
+                }
+            } finally {
+                containerContext.get().deactivate();
+            }
+        }
+
+        return containers;
+    }
+}
@@ -20,28 +20,20 @@ package org.arquillian.droidium.container.log;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.Writer;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.AndroidLogcat;
 import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
 import org.arquillian.droidium.container.configuration.AndroidSDK;
 import org.arquillian.droidium.container.spi.event.AndroidBridgeTerminated;
+import org.arquillian.droidium.container.spi.event.AndroidContainerStop;
 import org.arquillian.droidium.container.spi.event.AndroidDeviceReady;
-import org.arquillian.spacelift.Spacelift;
-import org.arquillian.spacelift.execution.Execution;
-import org.arquillian.spacelift.execution.ExecutionException;
 import org.arquillian.spacelift.process.Command;
 import org.arquillian.spacelift.process.CommandBuilder;
-import org.arquillian.spacelift.task.Task;
-import org.arquillian.spacelift.task.os.CommandTool;
 import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
 import org.jboss.arquillian.core.api.Instance;
 import org.jboss.arquillian.core.api.InstanceProducer;
@@ -49,18 +41,55 @@ import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.arquillian.core.api.annotation.Observes;
 
 /**
- *
+ * Starts {@link LogcatPipeline} reading logcat of an Android device as soon as the device is ready and stops it when the
+ * container is stopped.<br>
+ * <br>
+ * Observes:
+ * <ul>
+ * <li>{@link AndroidDeviceReady}</li>
+ * <li>{@link AndroidContainerStop}</li>
+ * <li>{@link AndroidBridgeTerminated}</li>
+ * </ul>
+ * Produces ContainerScoped:
+ * <ul>
+ * <li>{@link LogcatHelper}</li>
+ * <li>{@link LogcatPipeline}</li>
+ * <li>{@link AndroidLogcat}</li>
+ * <li>{@link LogcatTestBuffer}</li> when {@code logTestBufferSizeInKilobytes} is set
+ * <li>{@link ProcessNameResolver}</li> when logcat is filtered or {@code logType} is {@code indexed}
+ * </ul>
  *
  * @author <a href="mailto:tkriz@redhat.com">Tadeas Kriz</a>
  */
-// FIXME this class is leaking resources - 3 processes are executed
 public class AndroidLogInitializer {
     private static final Logger logger = Logger.getLogger(AndroidLogInitializer.class.getName());
 
+    private static final long STOP_TIMEOUT_IN_SECONDS = 10;
+
+    private static final long PROCESS_REFRESH_INTERVAL_IN_MILLIS = 2000;
+
+    private static final long UNKNOWN_PROCESS_TTL_IN_MILLIS = 5000;
+
     @Inject
     @ContainerScoped
     private InstanceProducer<LogcatHelper> logcatHelper;
 
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<LogcatPipeline> logcatPipeline;
+
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<LogcatTestBuffer> logcatTestBuffer;
+
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<AndroidLogcat> androidLogcat;
+
+    @Inject
+    @ContainerScoped
+    private InstanceProducer<ProcessNameResolver> processNameResolver;
+
     @Inject
     private Instance<AndroidContainerConfiguration> configuration;
 
@@ -70,217 +99,168 @@ public class AndroidLogInitializer {
     @Inject
     private Instance<AndroidDevice> androidDevice;
 
-    private Execution<Writer> logcatExecution;
-
     public void initAndroidLog(@Observes AndroidDeviceReady event) {
-        logger.info("Initializing Android LogcatReader");
-
         if (logcatHelper.get() == null) {
             logcatHelper.set(new LogcatHelper(configuration.get(), androidDevice.get()));
         }
 
-        this.logcatExecution = Spacelift.task(LogcatReader.class)
-            .androidSdk(androidSDK.get())
-            .containerConfiguration(configuration.get())
-            .androidDevice(androidDevice.get())
-            .writer(logcatHelper.get().prepareWriter())
-            .execute();
-    }
+        AndroidContainerConfiguration configuration = this.configuration.get();
+        AndroidDevice device = androidDevice.get();
 
-    public void terminateAndroidLog(@Observes AndroidBridgeTerminated event) {
-        logcatExecution.terminate();
-
-        Writer w = logcatExecution.await();
-        if(w != null) {
-            try {
-                w.close();
-            }
-            catch (IOException e) {
-            }
+        ProcessNameResolver resolver = null;
+        if (configuration.isLogFilteringEnabled() || LogType.INDEXED.equals(configuration.getLogType())) {
+            resolver = new ProcessNameResolver(device, PROCESS_REFRESH_INTERVAL_IN_MILLIS, UNKNOWN_PROCESS_TTL_IN_MILLIS);
+            processNameResolver.set(resolver);
         }
-    }
-
-    private static class LogcatReader extends Task<Object,Writer> {
-        private AndroidContainerConfiguration configuration;
-        private AndroidSDK androidSDK;
-        private AndroidDevice androidDevice;
 
-        private Writer writer;
+        LogcatSink sink = logcatHelper.get().prepareSink(resolver);
 
-        private Pattern pattern;
-
-        private List<String> whiteList = new ArrayList<String>();
-        private List<String> blackList = new ArrayList<String>();
-        private Map<Integer, String> processMap = new HashMap<Integer, String>();
-
-        public LogcatReader androidDevice(AndroidDevice device) {
-            this.androidDevice = device;
-            return this;
-        }
-
-
-        public LogcatReader androidSdk(AndroidSDK sdk) {
-            this.androidSDK = sdk;
-            return this;
+        if (configuration.getLogTestBufferSizeInKilobytes() > 0) {
+            LogcatTestBuffer buffer = new LogcatTestBuffer(configuration.getLogTestBufferSizeInKilobytes() * 1024L, sink);
+            logcatTestBuffer.set(buffer);
+            sink = buffer;
         }
 
-        public LogcatReader containerConfiguration(AndroidContainerConfiguration configuration) {
-            this.configuration = configuration;
+        if (sink == null && (configuration.isLogSubscriptionsEnabled() || configuration.isWatchdogEnabled())) {
+            // logcat is read for subscriptions only
+            sink = new LogcatSink() {
+                @Override
+                public void write(LogcatRecord record) {
+                }
 
-            if (configuration.getLogPackageWhitelist() != null) {
-                String[] whiteList = configuration.getLogPackageWhitelist().split(",");
-                for (String packageName : whiteList) {
-                    this.whiteList.add(escapePackageName(packageName));
+                @Override
+                public void flush() {
                 }
-            }
 
-            if (configuration.getLogPackageBlacklist() != null) {
-                String[] blackList = configuration.getLogPackageBlacklist().split(",");
-                for (String packageName : blackList) {
-                    this.blackList.add(escapePackageName(packageName));
+                @Override
+                public void close() {
                 }
-            }
-            return this;
+            };
         }
 
-        public LogcatReader writer(Writer writer) {
-            this.writer = writer;
-            return this;
+        if (sink == null) {
+            if (resolver != null) {
+                resolver.close();
+            }
+            return;
         }
 
-        @Override
-        protected Writer process(Object input) throws Exception {
-            if (writer == null) {
-                return null;
-            }
+        logger.info("Initializing Android LogcatReader");
+
+        LogcatDispatcher dispatcher = new LogcatDispatcher(device.getSerialNumber());
+
+        LogcatPipeline pipeline = new LogcatPipeline(device.getSerialNumber(),
+            sink,
+            configuration.isLogFilteringEnabled() ? new LogcatFilter(configuration, resolver) : null,
+            configuration.getLogQueueCapacity(),
+            configuration.getLogFlushIntervalInMillis())
+            .binary(configuration.isLogBinary())
+            .dispatcher(dispatcher);
 
+        try {
+            clearLogcat(device);
+            pipeline.start(startLogcat(device, configuration));
+        } catch (IOException ex) {
             try {
-                Command command = new CommandBuilder(androidSDK.getAdbPath())
-                    .parameter("-s")
-                    .parameter(androidDevice.getSerialNumber())
-                    .parameter("logcat")
-                    .parameter("-c")
-                    .build();
-
-                ProcessBuilder builder = new ProcessBuilder(command.getFullCommand());
-                Process process = builder.start();
-
-                command = new CommandBuilder(androidSDK.getAdbPath())
-                    .parameter("-s")
-                    .parameter(androidDevice.getSerialNumber())
-                    .parameter("logcat")
-                    .parameter("*:" + configuration.getLogLevel())
-                    .build();
-
-                builder = new ProcessBuilder(command.getFullCommand());
-                process = builder.start();
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    if (shouldWrite(line)) {
-                        writer.write(line);
-                        writer.flush();
-                    }
-                }
-                writer.close();
-                reader.close();
+                sink.close();
             } catch (IOException e) {
-                logger.log(Level.SEVERE, "Error with logcat logging!", e);
+                // ignore
             }
-
-            return writer;
+            throw new AndroidExecutionException(ex, "Unable to start logcat of device {0}", device.getSerialNumber());
         }
 
-        private String escapePackageName(String packageName) {
-            return packageName
-                .replace("\\", "\\\\")
-                .replace(".", "\\.")
-                .replace("[", "\\[")
-                .replace("]", "\\]")
-                .replace("(", "\\(")
-                .replace(")", "\\)")
-                .replace("?", "\\?")
-                .replace("+", "\\+")
-                .replace("*", ".*?");
-        }
+        logcatPipeline.set(pipeline);
+        androidLogcat.set(dispatcher);
+    }
 
-        private boolean shouldWrite(String line) {
-            if (!configuration.isLogFilteringEnabled()) {
-                return true;
-            }
+    public void stopAndroidLog(@Observes(precedence = 100) AndroidContainerStop event) {
+        stopPipeline();
+    }
 
-            if (pattern == null) {
-                // This pattern will fetch us process id from logcat line
-                pattern = Pattern.compile("./.+?\\(([\\s0-9]+?)\\):.*");
-            }
+    public void terminateAndroidLog(@Observes AndroidBridgeTerminated event) {
+        stopPipeline();
+    }
 
-            Matcher matcher = pattern.matcher(line);
-            if (!matcher.matches()) {
-                return false;
-            }
+    private void stopPipeline() {
+        LogcatPipeline pipeline = logcatPipeline.get();
+        if (pipeline != null) {
+            pipeline.stop(STOP_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        }
+        ProcessNameResolver resolver = processNameResolver.get();
+        if (resolver != null) {
+            resolver.close();
+        }
+    }
 
-            String processIdString = matcher.group(1).trim();
-            Integer processId = Integer.valueOf(processIdString);
+    private void clearLogcat(AndroidDevice device) throws IOException {
+        Command command = new CommandBuilder(androidSDK.get().getAdbPath())
+            .parameter("-s")
+            .parameter(device.getSerialNumber())
+            .parameter("logcat")
+            .parameter("-c")
+            .build();
 
-            if (!processMap.containsKey(processId)) {
-                loadProcessMap();
-            }
+        Process process = new ProcessBuilder(command.getFullCommand()).redirectErrorStream(true).start();
 
-            String processName = processMap.get(processId);
-            if (processName == null) {
-                processName = "";
+        try {
+            // consume the output so the process does not block on a full pipe
+            while (process.getInputStream().read() != -1) {
             }
+            process.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            process.getInputStream().close();
+            process.getOutputStream().close();
+            process.getErrorStream().close();
+        }
 
-            for (String regex : whiteList) {
-                if (processName.matches(regex)) {
-                    return true;
-                }
-            }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Logcat of " + device.getSerialNumber() + " cleared.");
+        }
+    }
 
-            for (String regex : blackList) {
-                if (processName.matches(regex)) {
-                    return false;
-                }
-            }
+    private Process startLogcat(AndroidDevice device, AndroidContainerConfiguration configuration) throws IOException {
+        CommandBuilder commandBuilder = new CommandBuilder(androidSDK.get().getAdbPath())
+            .parameter("-s")
+            .parameter(device.getSerialNumber());
 
-            return true;
+        if (configuration.isLogBinary()) {
+            // exec-out keeps binary output intact, shell would translate line feeds on older devices
+            commandBuilder.parameters("exec-out", "logcat", "-B");
+        } else {
+            commandBuilder.parameter("logcat");
         }
 
-        private void loadProcessMap() {
-            try {
-                processMap.clear();
-
-                Command command = new CommandBuilder(androidSDK.getAdbPath())
-                    .parameter("-s")
-                    .parameter(androidDevice.getSerialNumber())
-                    .parameter("shell")
-                    .parameter("ps")
-                    .build();
-
-                List<String> runningProcesses = Spacelift.task(CommandTool.class)
-                    .addEnvironment(androidSDK.getPlatformConfiguration().getAndroidSystemEnvironmentProperties())
-                    .command(command).execute().await().output();
-
-                Pattern pattern = Pattern
-                    .compile(".*?\\s+([0-9]+)\\s+[0-9]+\\s+[0-9]+\\s+[0-9]+\\s+[0-9a-f]+\\s+[0-9a-f]+\\s.?\\s(.*)");
-                for(String line: runningProcesses) {
-                    Matcher matcher = pattern.matcher(line);
-
-                    if (!matcher.matches()) {
-                        continue;
-                    }
+        Command command = commandBuilder.parameter("*:" + configuration.getLogLevel()).build();
 
-                    Integer processId = Integer.valueOf(matcher.group(1));
-                    String processName = matcher.group(2);
+        if (!configuration.isLogBinary()) {
+            return new ProcessBuilder(command.getFullCommand()).redirectErrorStream(true).start();
+        }
 
-                    processMap.put(processId, processName);
-                }
-            } catch (ExecutionException e) {
-                logger.log(Level.SEVERE, "Couldn't load process map!", e);
+        // anything adb writes to stderr would corrupt binary records so it is drained separately
+        Process process = new ProcessBuilder(command.getFullCommand()).start();
+        drainErrorStream(process, device.getSerialNumber());
+        return process;
+    }
 
+    private static void drainErrorStream(final Process process, final String serialNumber) {
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), "UTF-8"));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        logger.log(Level.WARNING, "adb logcat of {0}: {1}", new Object[] { serialNumber, line });
+                    }
+                } catch (IOException ex) {
+                    // process was destroyed
+                }
             }
-        }
+        }, "droidium-logcat-stderr-" + serialNumber);
+        drainer.setDaemon(true);
+        drainer.start();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import org.arquillian.droidium.container.spi.event.AndroidLogPersisted;
+import org.arquillian.recorder.reporter.event.PropertyReportEvent;
+import org.arquillian.recorder.reporter.model.entry.FileEntry;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+
+/**
+ * Reports logcat of failed tests as file entries of Arquillian Recorder reports, next to screenshots and videos taken
+ * during these tests. Registered only when Arquillian Recorder reporter is on the class path.<br>
+ * <br>
+ * Observes:
+ * <ul>
+ * <li>{@link AndroidLogPersisted}</li>
+ * </ul>
+ *
+ * Fires:
+ * <ul>
+ * <li>{@link PropertyReportEvent}</li>
+ * </ul>
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class AndroidLogReporter {
+
+    public static final String REPORTER_CLASS_NAME = "org.arquillian.recorder.reporter.event.PropertyReportEvent";
+
+    @Inject
+    private Event<PropertyReportEvent> propertyReportEvent;
+
+    public void onAndroidLogPersisted(@Observes AndroidLogPersisted event) {
+        FileEntry entry = new FileEntry();
+        entry.setPath(event.getFile().getPath());
+        entry.setSize(Long.toString(event.getFile().length()));
+        entry.setType("text/plain");
+        entry.setMessage("logcat of " + event.getDevice().getSerialNumber());
+
+        propertyReportEvent.fire(new PropertyReportEvent(entry));
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+import org.arquillian.droidium.container.spi.event.AndroidLogPersisted;
+import org.jboss.arquillian.container.spi.Container;
+import org.jboss.arquillian.container.spi.ContainerRegistry;
+import org.jboss.arquillian.container.spi.context.ContainerContext;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.TestResult;
+import org.jboss.arquillian.test.spi.event.suite.After;
+import org.jboss.arquillian.test.spi.event.suite.Before;
+
+/**
+ * Segments logcat kept in {@link LogcatTestBuffer} of every started Android container by tests. The buffer is reset
+ * before each test and when the test fails, its segment is written to
+ * {@code logTestDir/serial-number/test-class/test-method.log}.<br>
+ * <br>
+ * Records are read and buffered asynchronously so the segment of a test is closed once records read until the end of
+ * the test are written to the buffer or after a short while at the latest.<br>
+ * <br>
+ * Observes:
+ * <ul>
+ * <li>{@link Before}</li>
+ * <li>{@link After}</li>
+ * </ul>
+ *
+ * Fires:
+ * <ul>
+ * <li>{@link AndroidLogPersisted}</li> for every device when a test fails
+ * </ul>
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class AndroidLogTestSegmenter {
+
+    private static final Logger logger = Logger.getLogger(AndroidLogTestSegmenter.class.getName());
+
+    private static final long IDLE_TIMEOUT_IN_MILLIS = 500;
+
+    @Inject
+    private Instance<ContainerRegistry> containerRegistry;
+
+    @Inject
+    private Instance<ContainerContext> containerContext;
+
+    @Inject
+    private Instance<LogcatTestBuffer> logcatTestBuffer;
+
+    @Inject
+    private Instance<LogcatPipeline> logcatPipeline;
+
+    @Inject
+    private Instance<AndroidContainerConfiguration> configuration;
+
+    @Inject
+    private Instance<AndroidDevice> androidDevice;
+
+    @Inject
+    private Instance<TestResult> testResult;
+
+    @Inject
+    private Event<AndroidLogPersisted> androidLogPersisted;
+
+    public void onBefore(@Observes Before event) {
+        if (containerRegistry.get() == null) {
+            return;
+        }
+
+        for (Container container : containerRegistry.get().getContainers()) {
+            if (!isStartedAndroidContainer(container)) {
+                continue;
+            }
+
+            containerContext.get().activate(container.getName());
+
+            try {
+                LogcatTestBuffer buffer = logcatTestBuffer.get();
+                if (buffer != null) {
+                    awaitIdle();
+                    buffer.reset();
+                }
+            } finally {
+                containerContext.get().deactivate();
+            }
+        }
+    }
+
+    public void onAfter(@Observes(precedence = 50) After event) {
+        if (containerRegistry.get() == null) {
+            return;
+        }
+
+        TestResult result = testResult.get();
+
+        if (result == null || result.getStatus() != TestResult.Status.FAILED) {
+            return;
+        }
+
+        String testClassName = event.getTestClass().getName();
+        String testMethodName = event.getTestMethod().getName();
+
+        for (Container container : containerRegistry.get().getContainers()) {
+            if (!isStartedAndroidContainer(container)) {
+                continue;
+            }
+
+            containerContext.get().activate(container.getName());
+
+            try {
+                LogcatTestBuffer buffer = logcatTestBuffer.get();
+                if (buffer != null) {
+                    awaitIdle();
+                    persist(buffer, testClassName, testMethodName);
+                }
+            } finally {
+                containerContext.get().deactivate();
+            }
+        }
+    }
+
+    private void persist(LogcatTestBuffer buffer, String testClassName, String testMethodName) {
+        AndroidDevice device = androidDevice.get();
+
+        if (buffer.getRecords() == 0) {
+            return;
+        }
+
+        File deviceDir = new File(configuration.get().getLogTestDir(), LogcatHelper.toFileName(device.getSerialNumber()));
+        File file = new File(new File(deviceDir, testClassName), testMethodName + ".log");
+
+        FileLogcatSink sink = null;
+        try {
+            sink = new FileLogcatSink(file);
+            int records = buffer.writeTo(sink);
+            sink.flush();
+
+            logger.log(Level.INFO, "Logcat of device {0} during failed test {1}#{2} ({3} records) was written to {4}",
+                new Object[] { device.getSerialNumber(), testClassName, testMethodName, records, file.getPath() });
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Unable to write logcat of device " + device.getSerialNumber() + " during failed test "
+                + testClassName + "#" + testMethodName + " to " + file.getPath(), ex);
+            return;
+        } finally {
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        androidLogPersisted.fire(new AndroidLogPersisted(device, file, testClassName, testMethodName));
+    }
+
+    private void awaitIdle() {
+        LogcatPipeline pipeline = logcatPipeline.get();
+        if (pipeline != null) {
+            pipeline.awaitIdle(IDLE_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static boolean isStartedAndroidContainer(Container container) {
+        return container.getState() == Container.State.STARTED
+            && container.getDeployableContainer().getConfigurationClass() == AndroidContainerConfiguration.class;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Writes logcat records to the standard output. Records of one batch are rendered into a single buffer which is printed
+ * at once on {@link #flush()} so the console is not locked for every line.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class ConsoleLogcatSink implements LogcatSink {
+
+    private static final int MAX_BUFFERED_CHARS = 64 * 1024;
+
+    private final PrintStream out;
+
+    private final String prefix;
+
+    private final StringBuilder buffer = new StringBuilder(8192);
+
+    public ConsoleLogcatSink(String prefix) {
+        this(System.out, prefix);
+    }
+
+    public ConsoleLogcatSink(PrintStream out, String prefix) {
+        this.out = out;
+        this.prefix = prefix == null ? "" : prefix;
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        record.appendTo(buffer.append(prefix)).append('\n');
+        if (buffer.length() >= MAX_BUFFERED_CHARS) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer.length() != 0) {
+            out.print(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidLogcat;
+import org.arquillian.droidium.container.api.LogcatListener;
+import org.arquillian.droidium.container.api.LogcatMatch;
+import org.arquillian.droidium.container.api.LogcatSubscription;
+
+import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
+import com.android.ddmlib.IDevice;
+
+/**
+ * Watches one Android device for crashes of applications while a test runs.<br>
+ * <br>
+ * Crashes are detected from logcat as it is read: {@code FATAL EXCEPTION} of {@code AndroidRuntime}, {@code ANR in} of
+ * {@code ActivityManager} and native crashes reported by {@code DEBUG}. Disconnection of the device and its transition
+ * to the offline state are taken from the events of the debug bridge. The first crash during a test interrupts the
+ * thread running the test so it does not wait for a timeout of a blocking call, the test is then failed by
+ * {@link AndroidCrashWatchdog}. ANR traces and tombstones are pulled from the device asynchronously.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class DeviceCrashWatchdog implements IDeviceChangeListener {
+
+    private static final Logger logger = Logger.getLogger(DeviceCrashWatchdog.class.getName());
+
+    static final String ANR_TRACES = "/data/anr/traces.txt";
+
+    // lines of a crash kept for its description
+    private static final int MAX_LINES = 30;
+
+    // traces of an ANR are written by the system a while after the ANR is logged
+    static final long ANR_TRACES_DELAY_IN_MILLIS = 3000;
+
+    private static final Pattern PROCESS_LINE = Pattern.compile("^Process: ([^,\\s]+), PID: (\\d+)");
+
+    private static final Pattern NATIVE_CRASH_LINE = Pattern.compile("^pid: (\\d+), tid: \\d+, name: .*>>> (\\S+) <<<");
+
+    private final AndroidDevice device;
+
+    private final List<Pattern> packages;
+
+    private final File directory;
+
+    private final List<LogcatSubscription> subscriptions = new ArrayList<LogcatSubscription>();
+
+    private final ScheduledExecutorService collector;
+
+    private final List<File> collected = new ArrayList<File>();
+
+    private Thread armed;
+
+    private Crash crash;
+
+    // pid of AndroidRuntime which logged FATAL EXCEPTION, -1 if none
+    private int fatalPid = -1;
+
+    private long anrTracesDelayInMillis = ANR_TRACES_DELAY_IN_MILLIS;
+
+    /**
+     *
+     * @param device device to watch
+     * @param packages names of processes whose crashes fail tests, {@code *} matches any characters, null or empty
+     *        string for all processes
+     * @param directory directory to store ANR traces and tombstones pulled from the device to
+     */
+    public DeviceCrashWatchdog(AndroidDevice device, String packages, File directory) {
+        this.device = device;
+        this.packages = LogcatFilter.compile(packages);
+        this.directory = directory;
+        this.collector = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "droidium-crash-collector-" + DeviceCrashWatchdog.this.device.getSerialNumber());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Subscribes to logcat of the device.
+     *
+     * @param logcat logcat of the device
+     * @return this
+     */
+    public DeviceCrashWatchdog watch(AndroidLogcat logcat) {
+        subscriptions.add(logcat.subscribe("AndroidRuntime", "", new LogcatListener() {
+            @Override
+            public void onLog(LogcatMatch match) {
+                onAndroidRuntime(match);
+            }
+        }));
+        subscriptions.add(logcat.subscribe("ActivityManager", "^ANR in (\\S+)", new LogcatListener() {
+            @Override
+            public void onLog(LogcatMatch match) {
+                onAnr(match);
+            }
+        }));
+        subscriptions.add(logcat.subscribe("DEBUG", "", new LogcatListener() {
+            @Override
+            public void onLog(LogcatMatch match) {
+                onDebug(match);
+            }
+        }));
+        subscriptions.add(logcat.subscribe("tombstoned", "^Tombstone written to: (\\S+)", new LogcatListener() {
+            @Override
+            public void onLog(LogcatMatch match) {
+                pull(match.group(1), 0);
+            }
+        }));
+        return this;
+    }
+
+    DeviceCrashWatchdog anrTracesDelay(long anrTracesDelayInMillis) {
+        this.anrTracesDelayInMillis = anrTracesDelayInMillis;
+        return this;
+    }
+
+    /**
+     * Starts watching for crashes during a test.
+     *
+     * @param thread thread running the test which is interrupted upon a crash
+     */
+    public synchronized void arm(Thread thread) {
+        armed = thread;
+        crash = null;
+    }
+
+    /**
+     * Stops watching for crashes during a test.
+     *
+     * @return description of the first crash during the test or null if there was no crash
+     */
+    public synchronized String disarm() {
+        armed = null;
+        fatalPid = -1;
+        return crash == null ? null : crash.toString();
+    }
+
+    /**
+     *
+     * @return ANR traces and tombstones pulled from the device so far
+     */
+    public List<File> getCollected() {
+        synchronized (collected) {
+            return new ArrayList<File>(collected);
+        }
+    }
+
+    /**
+     * Cancels subscriptions and waits for ANR traces and tombstones being pulled.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     */
+    public void close(long timeout, TimeUnit unit) {
+        for (LogcatSubscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+
+        // delayed pulls are still run after the shutdown
+        collector.shutdown();
+        try {
+            if (!collector.awaitTermination(timeout, unit)) {
+                logger.log(Level.WARNING, "Pulling of ANR traces and tombstones from {0} did not finish in time.",
+                    device.getSerialNumber());
+                collector.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            collector.shutdownNow();
+        }
+    }
+
+    @Override
+    public void deviceChanged(IDevice delegate, int changeMask) {
+        if ((changeMask & IDevice.CHANGE_STATE) != 0 && isWatched(delegate) && delegate.isOffline()) {
+            trigger(new Crash("Device " + device.getSerialNumber() + " went offline", null, -1));
+        }
+    }
+
+    @Override
+    public void deviceConnected(IDevice delegate) {
+    }
+
+    @Override
+    public void deviceDisconnected(IDevice delegate) {
+        if (isWatched(delegate)) {
+            trigger(new Crash("Device " + device.getSerialNumber() + " was disconnected", null, -1));
+        }
+    }
+
+    void onAndroidRuntime(LogcatMatch match) {
+        String message = match.getMessage();
+
+        if (message.startsWith("FATAL EXCEPTION")) {
+            synchronized (this) {
+                fatalPid = match.getPid();
+            }
+            // the name of the process follows on the next line, older devices do not log it at all
+            if (packages.isEmpty()) {
+                trigger(new Crash(message, null, match.getPid()));
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (match.getPid() != fatalPid) {
+                return;
+            }
+        }
+
+        Matcher process = PROCESS_LINE.matcher(message);
+        if (process.find()) {
+            if (accepts(process.group(1))) {
+                trigger(new Crash("FATAL EXCEPTION", process.group(1), match.getPid()));
+            }
+        }
+
+        append(match);
+    }
+
+    void onAnr(LogcatMatch match) {
+        if (accepts(match.group(1))) {
+            trigger(new Crash("ANR", match.group(1), -1));
+            append(match);
+            pull(ANR_TRACES, anrTracesDelayInMillis);
+        }
+    }
+
+    void onDebug(LogcatMatch match) {
+        Matcher nativeCrash = NATIVE_CRASH_LINE.matcher(match.getMessage());
+        if (nativeCrash.find()) {
+            if (accepts(nativeCrash.group(2))) {
+                trigger(new Crash("Native crash", nativeCrash.group(2), Integer.parseInt(nativeCrash.group(1))));
+            }
+            return;
+        }
+
+        if (match.getMessage().startsWith("Tombstone written to: ")) {
+            pull(match.getMessage().substring("Tombstone written to: ".length()).trim(), 0);
+            return;
+        }
+
+        append(match);
+    }
+
+    private synchronized void trigger(Crash crash) {
+        if (armed == null) {
+            logger.log(Level.WARNING, "{0} on {1} between tests", new Object[] { crash.headline(), device.getSerialNumber() });
+            return;
+        }
+
+        if (this.crash != null) {
+            this.crash.merge(crash);
+            return;
+        }
+
+        this.crash = crash;
+        logger.log(Level.SEVERE, "{0} on {1}, interrupting the running test", new Object[] { crash.headline(), device.getSerialNumber() });
+        armed.interrupt();
+    }
+
+    private synchronized void append(LogcatMatch match) {
+        if (crash != null) {
+            crash.append(match.getMessage());
+        }
+    }
+
+    private boolean accepts(String process) {
+        if (packages.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern : packages) {
+            if (pattern.matcher(process).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isWatched(IDevice delegate) {
+        return delegate != null && device.getSerialNumber().equals(delegate.getSerialNumber());
+    }
+
+    private void pull(final String remotePath, long delayInMillis) {
+        final File file = new File(new File(directory, LogcatHelper.toFileName(device.getSerialNumber())),
+            new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + "-" + new File(remotePath).getName());
+
+        Runnable pull = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+                        throw new IllegalStateException("Unable to create directory " + file.getParent());
+                    }
+                    device.pull(remotePath, file.getAbsolutePath());
+                    synchronized (collected) {
+                        collected.add(file);
+                    }
+                    logger.log(Level.INFO, "{0} of {1} was saved to {2}", new Object[] { remotePath, device.getSerialNumber(), file });
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Unable to pull " + remotePath + " from " + device.getSerialNumber()
+                        + ", reading it may need a rooted device", ex);
+                }
+            }
+        };
+
+        try {
+            collector.schedule(pull, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException ex) {
+            // the watchdog is closed
+            logger.log(Level.FINE, "Crash collector of {0} is closed, {1} is not pulled", new Object[] { device.getSerialNumber(), remotePath });
+        }
+    }
+
+    private static final class Crash {
+
+        private final String reason;
+
+        private String process;
+
+        private final int pid;
+
+        private final StringBuilder lines = new StringBuilder();
+
+        private int lineCount;
+
+        private Crash(String reason, String process, int pid) {
+            this.reason = reason;
+            this.process = process;
+            this.pid = pid;
+        }
+
+        // a crash of an unknown process is completed by a later record of the same crash which knows the process
+        private void merge(Crash other) {
+            if (process == null && pid == other.pid) {
+                process = other.process;
+            }
+        }
+
+        private void append(String line) {
+            if (lineCount++ < MAX_LINES) {
+                lines.append("\n\t").append(line);
+            }
+        }
+
+        private String headline() {
+            StringBuilder sb = new StringBuilder(reason);
+            if (process != null) {
+                sb.append(" in ").append(process);
+            }
+            if (pid != -1) {
+                sb.append(" (pid ").append(pid).append(")");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return lineCount > MAX_LINES ? headline() + lines + "\n\t..." : headline() + lines;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes logcat records into gzip compressed segment files in a directory of one device.<br>
+ * <br>
+ * Records are rendered and encoded into large chunks by the calling thread, full chunks are compressed and written by a
+ * dedicated thread so neither compression nor disk I/O slows the caller down. A few chunks circulate between both
+ * threads, when all of them are waiting to be written the caller waits as well.<br>
+ * <br>
+ * A new segment is started when the compressed size of the current one reaches the size limit or when it is open longer
+ * than the time limit. Segments are named {@code logcat-yyyyMMdd-HHmmss-n.log.gz}, when the number of segments is
+ * limited the oldest ones written by this sink are deleted. Segments are rotated at chunk boundaries which are always
+ * line boundaries so every segment can be decompressed and read on its own.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class GzipRotatingLogcatSink implements LogcatSink {
+
+    private static final Logger logger = Logger.getLogger(GzipRotatingLogcatSink.class.getName());
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final int CHUNKS = 4;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final Chunk END = new Chunk(0);
+
+    private final File directory;
+
+    private final long maxSegmentSize;
+
+    private final long maxSegmentAgeInMillis;
+
+    private final int maxSegments;
+
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNKS + 1);
+
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private final Thread writerThread;
+
+    private final List<File> segments = new ArrayList<File>();
+
+    private Chunk chunk;
+
+    private volatile IOException failure;
+
+    private CountingOutputStream segmentOutput;
+
+    private OutputStream segmentStream;
+
+    private long segmentOpened;
+
+    private int segmentNumber;
+
+    private boolean closed;
+
+    /**
+     *
+     * @param directory directory to write segments to, it is created when it does not exist
+     * @param maxSegmentSize maximal compressed size of one segment in bytes
+     * @param maxSegmentAgeInMillis maximal time one segment is written to, 0 for no time limit
+     * @param maxSegments maximal number of segments kept in the directory, 0 for no limit
+     * @throws IOException if {@code directory} can not be created
+     */
+    public GzipRotatingLogcatSink(File directory, long maxSegmentSize, long maxSegmentAgeInMillis, int maxSegments)
+        throws IOException {
+        if (maxSegmentSize <= 0) {
+            throw new IllegalArgumentException("Maximal size of a logcat segment has to be positive.");
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory.getAbsolutePath() + " for logcat segments.");
+        }
+
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegmentAgeInMillis = maxSegmentAgeInMillis;
+        this.maxSegments = maxSegments;
+
+        for (int i = 0; i < CHUNKS - 1; i++) {
+            free.add(new Chunk(CHUNK_SIZE));
+        }
+        this.chunk = new Chunk(CHUNK_SIZE);
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeChunks();
+            }
+        }, "droidium-logcat-gzip-" + directory.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        checkFailure();
+
+        line.setLength(0);
+        record.appendTo(line).append('\n');
+
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            ByteBuffer bytes = ByteBuffer.wrap(chunk.data, chunk.length, chunk.data.length - chunk.length);
+            encoder.reset();
+            encoder.encode(chars, bytes, true);
+            if (!chars.hasRemaining()) {
+                chunk.length = bytes.position();
+                return;
+            }
+            if (chunk.length == 0) {
+                // one line longer than the whole chunk
+                chunk.length = bytes.position();
+                chars = CharBuffer.wrap(line, chars.position(), line.length());
+            } else {
+                // the line does not fit, it goes to the next chunk as a whole
+                chars = CharBuffer.wrap(line);
+            }
+            handOver(false);
+        }
+    }
+
+    /**
+     * Hands buffered records over to the writing thread.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        if (chunk.length != 0) {
+            handOver(true);
+        }
+    }
+
+    /**
+     * Writes all buffered records and finishes the last segment.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (chunk.length != 0) {
+            handOver(false);
+        }
+
+        try {
+            full.put(END);
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing logcat segments in " + directory.getAbsolutePath());
+        }
+
+        checkFailure();
+    }
+
+    /**
+     *
+     * @return segments written by this sink which were not deleted, the oldest first
+     */
+    public List<File> getSegments() {
+        synchronized (segments) {
+            return new ArrayList<File>(segments);
+        }
+    }
+
+    private void handOver(boolean flush) throws IOException {
+        chunk.flush = flush;
+        try {
+            full.put(chunk);
+            chunk = free.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing logcat segment in " + directory.getAbsolutePath());
+        }
+        chunk.length = 0;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeChunks() {
+        try {
+            while (true) {
+                Chunk next = full.take();
+                if (next == END) {
+                    break;
+                }
+                try {
+                    if (failure == null) {
+                        writeChunk(next);
+                    }
+                } catch (IOException ex) {
+                    failure = ex;
+                } finally {
+                    free.put(next);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                closeSegment();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+    }
+
+    private void writeChunk(Chunk next) throws IOException {
+        long now = System.currentTimeMillis();
+
+        if (segmentStream != null && (segmentOutput.count >= maxSegmentSize
+            || maxSegmentAgeInMillis > 0 && now - segmentOpened >= maxSegmentAgeInMillis)) {
+            closeSegment();
+        }
+
+        if (segmentStream == null) {
+            openSegment(now);
+        }
+
+        segmentStream.write(next.data, 0, next.length);
+
+        if (next.flush) {
+            segmentStream.flush();
+        }
+    }
+
+    private void openSegment(long now) throws IOException {
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(now));
+        File segment = new File(directory, "logcat-" + timestamp + "-" + segmentNumber++ + ".log.gz");
+
+        segmentOutput = new CountingOutputStream(new FileOutputStream(segment));
+        segmentStream = new GZIPOutputStream(new BufferedOutputStream(segmentOutput, OUTPUT_BUFFER_SIZE), OUTPUT_BUFFER_SIZE);
+        segmentOpened = now;
+
+        synchronized (segments) {
+            segments.add(segment);
+            while (maxSegments > 0 && segments.size() > maxSegments) {
+                File oldest = segments.remove(0);
+                if (!oldest.delete()) {
+                    logger.log(Level.WARNING, "Unable to delete old logcat segment {0}", oldest.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentStream != null) {
+            try {
+                segmentStream.close();
+            } finally {
+                segmentStream = null;
+                segmentOutput = null;
+            }
+        }
+    }
+
+    private static final class Chunk {
+
+        private final byte[] data;
+
+        private int length;
+
+        private boolean flush;
+
+        private Chunk(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes logcat records into an append-only store which can be queried by {@link LogcatStore} later on.<br>
+ * <br>
+ * The store is a directory with three files:
+ * <ul>
+ * <li>{@code logcat.records} - records one after another</li>
+ * <li>{@code logcat.index} - one fixed size entry per block of records holding the position and the length of the
+ * block, the time range of its records, the set of their levels and bloom filters of their pids and tags</li>
+ * <li>{@code logcat.processes} - names of processes by pid as they were known when their records were written</li>
+ * </ul>
+ * A block is closed once its records take {@value #BLOCK_BYTES} bytes and when the sink is closed, flushing does not
+ * close it so blocks stay large enough to be worth indexing regardless of how often the sink is flushed. Queries read
+ * only blocks whose index entry says they may hold matching records, records of a block which is not closed yet are
+ * read as not indexed.<br>
+ * <br>
+ * Records read from text logcat output do not carry time, they are stamped with the time they are written at.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class IndexedLogcatSink implements LogcatSink {
+
+    static final String RECORDS_FILE = "logcat.records";
+
+    static final String INDEX_FILE = "logcat.index";
+
+    static final String PROCESSES_FILE = "logcat.processes";
+
+    static final int BLOCK_BYTES = 32 * 1024;
+
+    static final int BLOOM_LONGS = 4;
+
+    // offset, length, count, min and max time, levels and two bloom filters
+    static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 8 + 8 + 4 + 2 * BLOOM_LONGS * 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ProcessNameResolver resolver;
+
+    private final DataOutputStream records;
+
+    private final DataOutputStream index;
+
+    private final Writer processes;
+
+    private final Map<Integer, String> knownProcesses = new HashMap<Integer, String>();
+
+    private long offset;
+
+    private long blockOffset;
+
+    private int blockCount;
+
+    private long blockMinTime;
+
+    private long blockMaxTime;
+
+    private int blockLevels;
+
+    private final long[] blockPids = new long[BLOOM_LONGS];
+
+    private final long[] blockTags = new long[BLOOM_LONGS];
+
+    /**
+     *
+     * @param directory directory of the store, it is created when it does not exist, records are appended to an existing
+     *        store
+     * @param resolver resolver of process names, null when names of processes are not stored
+     * @throws IOException if the store can not be opened
+     */
+    public IndexedLogcatSink(File directory, ProcessNameResolver resolver) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory.getAbsolutePath() + " for logcat store.");
+        }
+
+        File recordsFile = new File(directory, RECORDS_FILE);
+
+        this.resolver = resolver;
+        this.offset = recordsFile.length();
+        this.records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile, true), BUFFER_SIZE));
+        this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, INDEX_FILE), true)));
+        this.processes = new OutputStreamWriter(new FileOutputStream(new File(directory, PROCESSES_FILE), true), UTF_8);
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        long timestamp = record.getTimestamp() == -1 ? System.currentTimeMillis() : record.getTimestamp();
+        boolean parsed = record.isParsed();
+
+        byte[] tag = parsed && record.getTag() != null ? record.getTag().getBytes(UTF_8) : new byte[0];
+        String text = parsed ? record.getMessage() : record.toString();
+        byte[] message = (text == null ? "" : text).getBytes(UTF_8);
+
+        if (blockCount == 0) {
+            blockOffset = offset;
+            blockMinTime = timestamp;
+            blockMaxTime = timestamp;
+        }
+
+        int length = 8 + 4 + 4 + 1 + 2 + tag.length + 4 + message.length;
+
+        records.writeInt(length);
+        records.writeLong(timestamp);
+        records.writeInt(record.getPid());
+        records.writeInt(record.getTid());
+        records.writeByte(parsed ? record.getLevel() : LogcatRecord.UNKNOWN_LEVEL);
+        records.writeShort(tag.length);
+        records.write(tag);
+        records.writeInt(message.length);
+        records.write(message);
+
+        offset += 4 + length;
+
+        blockCount++;
+        blockMinTime = Math.min(blockMinTime, timestamp);
+        blockMaxTime = Math.max(blockMaxTime, timestamp);
+        blockLevels |= LogcatQuery.levelBit(parsed ? record.getLevel() : LogcatRecord.UNKNOWN_LEVEL);
+        addToBloom(blockPids, pidHash(record.getPid()));
+        if (parsed && record.getTag() != null) {
+            addToBloom(blockTags, tagHash(record.getTag()));
+        }
+
+        if (parsed && resolver != null) {
+            rememberProcess(record.getPid(), timestamp);
+        }
+
+        if (offset - blockOffset >= BLOCK_BYTES) {
+            closeBlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        records.flush();
+        index.flush();
+        processes.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeBlock();
+            flush();
+        } finally {
+            records.close();
+            index.close();
+            processes.close();
+        }
+    }
+
+    private void closeBlock() throws IOException {
+        if (blockCount == 0) {
+            return;
+        }
+
+        index.writeLong(blockOffset);
+        index.writeInt((int) (offset - blockOffset));
+        index.writeInt(blockCount);
+        index.writeLong(blockMinTime);
+        index.writeLong(blockMaxTime);
+        index.writeInt(blockLevels);
+        for (int i = 0; i < BLOOM_LONGS; i++) {
+            index.writeLong(blockPids[i]);
+            blockPids[i] = 0;
+        }
+        for (int i = 0; i < BLOOM_LONGS; i++) {
+            index.writeLong(blockTags[i]);
+            blockTags[i] = 0;
+        }
+
+        blockCount = 0;
+        blockLevels = 0;
+    }
+
+    private void rememberProcess(int pid, long timestamp) throws IOException {
+        String name = resolver.resolve(pid);
+        if (name == null) {
+            return;
+        }
+
+        Integer key = Integer.valueOf(pid);
+        if (!name.equals(knownProcesses.get(key))) {
+            knownProcesses.put(key, name);
+            processes.write(timestamp + "\t" + pid + "\t" + name + "\n");
+        }
+    }
+
+    static int pidHash(int pid) {
+        return pid * 0x9E3779B9;
+    }
+
+    static int tagHash(String tag) {
+        return tag.hashCode() * 0x9E3779B9;
+    }
+
+    static void addToBloom(long[] bloom, int hash) {
+        int first = (hash >>> 24) & 0xff;
+        int second = (hash >>> 16) & 0xff;
+        bloom[first >>> 6] |= 1L << (first & 63);
+        bloom[second >>> 6] |= 1L << (second & 63);
+    }
+
+    static boolean mayContain(long[] bloom, int hash) {
+        int first = (hash >>> 24) & 0xff;
+        int second = (hash >>> 16) & 0xff;
+        return (bloom[first >>> 6] & 1L << (first & 63)) != 0 && (bloom[second >>> 6] & 1L << (second & 63)) != 0;
+    }
+}
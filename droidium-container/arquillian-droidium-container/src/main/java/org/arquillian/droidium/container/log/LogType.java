@@ -25,6 +25,8 @@ public class LogType {
     public static final String OUTPUT = "output";
     public static final String LOGGER = "logger";
     public static final String FILE = "file";
+    public static final String GZIP = "gzip";
+    public static final String INDEXED = "indexed";
     public static final String DISABLE = "disable";
 
     public static final String DEFAULT = OUTPUT;
@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes binary output of {@code logcat -B}, a stream of {@code logger_entry} structures, into {@link LogcatRecord}s.<br>
+ * <br>
+ * Every entry starts with a little endian header:
+ *
+ * <pre>
+ * uint16_t len;       // length of the payload
+ * uint16_t hdr_size;  // size of the header, 0 in version 1 where the header has 20 bytes
+ * int32_t  pid;
+ * int32_t  tid;
+ * int32_t  sec;
+ * int32_t  nsec;
+ * ...                 // euid, lid or uid in newer versions, skipped
+ * </pre>
+ *
+ * followed by the payload made of a priority byte, NUL terminated tag and NUL terminated message. Level, pid, tid and
+ * timestamp are decoded right away, tag and message are left as bytes in the record, see
+ * {@link LogcatRecord#setPayload(byte[], int, int, int, int)}.<br>
+ * <br>
+ * The decoder reuses its buffer, a record it fills is valid only until the next call of {@link #next(LogcatRecord)}.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatBinaryDecoder {
+
+    private static final int HEADER_V1_SIZE = 20;
+
+    private static final char[] LEVELS = { '?', '?', 'V', 'D', 'I', 'W', 'E', 'F', 'S' };
+
+    private final InputStream input;
+
+    private final byte[] header = new byte[HEADER_V1_SIZE];
+
+    private byte[] buffer = new byte[4096];
+
+    /**
+     *
+     * @param input binary logcat output, it should be buffered
+     */
+    public LogcatBinaryDecoder(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the next entry into {@code record}.
+     *
+     * @param record record to fill
+     * @return false when the end of the stream was reached, true otherwise
+     * @throws IOException if reading fails or the stream does not hold logger entries
+     */
+    public boolean next(LogcatRecord record) throws IOException {
+        if (!readFully(header, 0, 4, true)) {
+            return false;
+        }
+
+        int length = uint16(header, 0);
+        int headerSize = uint16(header, 2);
+
+        if (headerSize == 0) {
+            headerSize = HEADER_V1_SIZE;
+        } else if (headerSize < HEADER_V1_SIZE) {
+            throw new IOException("Invalid size of logger entry header: " + headerSize);
+        }
+
+        readFully(header, 4, HEADER_V1_SIZE - 4, false);
+        skip(headerSize - HEADER_V1_SIZE);
+
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        readFully(buffer, 0, length, false);
+
+        record.clear();
+        record.setPid(int32(header, 4));
+        record.setTid(int32(header, 8));
+        record.setTimestamp((int32(header, 12) & 0xffffffffL) * 1000L + int32(header, 16) / 1000000);
+
+        if (length == 0) {
+            record.setPayload(buffer, 0, 0, 0, 0);
+            return true;
+        }
+
+        int priority = buffer[0] & 0xff;
+        record.setLevel(priority < LEVELS.length ? LEVELS[priority] : LogcatRecord.UNKNOWN_LEVEL);
+
+        int tagEnd = indexOfNul(buffer, 1, length);
+        int messageStart = Math.min(tagEnd + 1, length);
+        int messageEnd = indexOfNul(buffer, messageStart, length);
+
+        record.setPayload(buffer, 1, tagEnd - 1, messageStart, messageEnd - messageStart);
+
+        return true;
+    }
+
+    private boolean readFully(byte[] bytes, int offset, int length, boolean endAllowed) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = input.read(bytes, offset + read, length - read);
+            if (count == -1) {
+                if (endAllowed && read == 0) {
+                    return false;
+                }
+                throw new EOFException("Binary logcat output ended in the middle of an entry.");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            long skipped = input.skip(length);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    throw new EOFException("Binary logcat output ended in the middle of an entry.");
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static int indexOfNul(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int uint16(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int int32(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+            | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
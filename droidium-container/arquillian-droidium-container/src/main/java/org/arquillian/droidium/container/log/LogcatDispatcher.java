@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.AndroidLogcat;
+import org.arquillian.droidium.container.api.LogcatListener;
+import org.arquillian.droidium.container.api.LogcatMatch;
+import org.arquillian.droidium.container.api.LogcatSubscription;
+
+/**
+ * Matches logcat records read by {@link LogcatPipeline} against subscriptions of tests.<br>
+ * <br>
+ * Records are dispatched by the reader thread of the pipeline before they are filtered and queued for the sink so a
+ * subscription is notified as soon as the record is read. Regular expressions are compiled when subscribing and tags
+ * are compared without decoding the record, a message is decoded only when the tag of a subscription matches. When
+ * there are no subscriptions, dispatching costs one volatile read.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatDispatcher implements AndroidLogcat {
+
+    private static final Logger logger = Logger.getLogger(LogcatDispatcher.class.getName());
+
+    private final String name;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    /**
+     *
+     * @param name name of the dispatcher used in messages, e.g. serial number of a device
+     */
+    public LogcatDispatcher(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public LogcatSubscription expect(String tag, String regex) {
+        return add(new Subscription(tag, compile(regex), null));
+    }
+
+    @Override
+    public LogcatMatch awaitLog(String tag, String regex, long timeout, TimeUnit unit) {
+        LogcatSubscription subscription = expect(tag, regex);
+        try {
+            LogcatMatch match = subscription.await(timeout, unit);
+            if (match == null) {
+                throw new AndroidExecutionException("No logcat record of {0} with tag {1} matching \"{2}\" was read in {3} ms.",
+                    name, tag == null ? "*" : tag, regex, String.valueOf(unit.toMillis(timeout)));
+            }
+            return match;
+        } finally {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public LogcatSubscription subscribe(String tag, String regex, LogcatListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener of logcat records can not be a null object.");
+        }
+        return add(new Subscription(tag, compile(regex), listener));
+    }
+
+    /**
+     * Matches {@code record} against all subscriptions. Called by one thread only.
+     *
+     * @param record logcat record
+     */
+    public void dispatch(LogcatRecord record) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.match(record);
+        }
+    }
+
+    /**
+     * Cancels all subscriptions.
+     */
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    public int getSubscriptions() {
+        return subscriptions.size();
+    }
+
+    private Subscription add(Subscription subscription) {
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private static Pattern compile(String regex) {
+        if (regex == null) {
+            throw new IllegalArgumentException("Regular expression of logcat subscription can not be a null object.");
+        }
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            throw new IllegalArgumentException("Regular expression of logcat subscription is not valid: " + regex, ex);
+        }
+    }
+
+    private final class Subscription implements LogcatSubscription {
+
+        private final String tag;
+
+        private final Matcher matcher;
+
+        private final LogcatListener listener;
+
+        private final CountDownLatch matched = new CountDownLatch(1);
+
+        private final AtomicLong matches = new AtomicLong();
+
+        private volatile LogcatMatch first;
+
+        private volatile boolean cancelled;
+
+        private Subscription(String tag, Pattern pattern, LogcatListener listener) {
+            this.tag = tag;
+            // only the dispatching thread uses the matcher
+            this.matcher = pattern.matcher("");
+            this.listener = listener;
+        }
+
+        private void match(LogcatRecord record) {
+            if (cancelled) {
+                return;
+            }
+
+            String message;
+            if (record.isParsed()) {
+                if (tag != null && !record.tagEquals(tag)) {
+                    return;
+                }
+                message = record.getMessage();
+            } else {
+                if (tag != null) {
+                    return;
+                }
+                message = record.toString();
+            }
+
+            if (message == null || !matcher.reset(message).find()) {
+                return;
+            }
+
+            String[] groups = new String[matcher.groupCount() + 1];
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = matcher.group(i);
+            }
+
+            LogcatMatch match = new LogcatMatch(record.getLevel(), record.getTag(), record.getPid(),
+                record.getTimestamp() == -1 ? System.currentTimeMillis() : record.getTimestamp(), message, groups);
+
+            matches.incrementAndGet();
+
+            if (listener == null) {
+                // cancelled before the waiting thread is woken up
+                cancel();
+            }
+
+            if (first == null) {
+                first = match;
+                matched.countDown();
+            }
+
+            if (listener == null) {
+                return;
+            }
+
+            try {
+                listener.onLog(match);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Listener of logcat of " + name + " failed.", ex);
+            }
+        }
+
+        @Override
+        public LogcatMatch await(long timeout, TimeUnit unit) {
+            try {
+                matched.await(timeout, unit);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return first;
+        }
+
+        @Override
+        public long getMatches() {
+            return matches.get();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+
+/**
+ * Decides which logcat records are written according to {@code logPackageWhitelist} and {@code logPackageBlacklist}.
+ * Package patterns are compiled once when the filter is created.<br>
+ * <br>
+ * Process names are looked up by {@link ProcessNameResolver} which never blocks the caller. The decision about a pid
+ * is memoized so patterns are matched only when a pid is seen for the first time or when the resolver learned
+ * something new since then. Records of processes which are not known yet are treated as if their process had an empty
+ * name.<br>
+ * <br>
+ * Instances are not thread safe, one filter is meant to be used by the reading thread of a logcat pipeline.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatFilter {
+
+    // decisions of pids which are not seen anymore are dropped on every full refresh, this caps them in between
+    static final int MAX_DECISIONS = 4096;
+
+    private final boolean enabled;
+
+    private final List<Pattern> whiteList;
+
+    private final List<Pattern> blackList;
+
+    private final ProcessNameResolver resolver;
+
+    private final Map<Integer, Decision> decisions = new HashMap<Integer, Decision>();
+
+    private long evaluations;
+
+    private long refreshes;
+
+    /**
+     *
+     * @param configuration configuration holding package patterns
+     * @param resolver resolver of process names, it can be null only when filtering is disabled
+     */
+    public LogcatFilter(AndroidContainerConfiguration configuration, ProcessNameResolver resolver) {
+        this.enabled = configuration.isLogFilteringEnabled();
+        this.whiteList = compile(configuration.getLogPackageWhitelist());
+        this.blackList = compile(configuration.getLogPackageBlacklist());
+        this.resolver = resolver;
+
+        if (enabled && resolver == null) {
+            throw new IllegalArgumentException("Resolver of process names can not be a null object when log filtering is enabled.");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     * @param record record to decide about
+     * @return true if {@code record} should be written, false otherwise
+     */
+    public boolean accept(LogcatRecord record) {
+        if (!enabled) {
+            return true;
+        }
+
+        if (!record.isParsed()) {
+            return false;
+        }
+
+        resolver.hint(record);
+
+        long generation = resolver.getGeneration();
+
+        if (refreshes != resolver.getRefreshes()) {
+            refreshes = resolver.getRefreshes();
+            for (Iterator<Integer> iterator = decisions.keySet().iterator(); iterator.hasNext();) {
+                if (!resolver.isKnown(iterator.next().intValue())) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (decisions.size() >= MAX_DECISIONS) {
+            decisions.clear();
+        }
+
+        Integer processId = Integer.valueOf(record.getPid());
+
+        Decision decision = decisions.get(processId);
+
+        if (decision != null && decision.generation == generation) {
+            return decision.accept;
+        }
+
+        String processName = resolver.resolve(record.getPid());
+
+        if (decision != null && equal(decision.processName, processName)) {
+            decision.generation = generation;
+            return decision.accept;
+        }
+
+        evaluations++;
+
+        decisions.put(processId, new Decision(processName, accept(processName == null ? "" : processName), generation));
+
+        return decisions.get(processId).accept;
+    }
+
+    /**
+     *
+     * @param processName name of the process which logged a record
+     * @return true if records of {@code processName} should be written, false otherwise
+     */
+    public boolean accept(String processName) {
+        for (Pattern pattern : whiteList) {
+            if (pattern.matcher(processName).matches()) {
+                return true;
+            }
+        }
+
+        for (Pattern pattern : blackList) {
+            if (pattern.matcher(processName).matches()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     * @return how many times package patterns were matched against a process name
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Stops the resolver of process names.
+     */
+    public void close() {
+        if (resolver != null) {
+            resolver.close();
+        }
+    }
+
+    static List<Pattern> compile(String packages) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+
+        if (packages == null) {
+            return patterns;
+        }
+
+        for (String packageName : packages.split(",")) {
+            packageName = packageName.trim();
+            if (packageName.length() != 0) {
+                patterns.add(Pattern.compile(escapePackageName(packageName)));
+            }
+        }
+
+        return patterns;
+    }
+
+    private static String escapePackageName(String packageName) {
+        return packageName
+            .replace("\\", "\\\\")
+            .replace(".", "\\.")
+            .replace("[", "\\[")
+            .replace("]", "\\]")
+            .replace("(", "\\(")
+            .replace(")", "\\)")
+            .replace("?", "\\?")
+            .replace("+", "\\+")
+            .replace("*", ".*?");
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private static final class Decision {
+
+        private final String processName;
+
+        private final boolean accept;
+
+        private long generation;
+
+        private Decision(String processName, boolean accept, long generation) {
+            this.processName = processName;
+            this.accept = accept;
+            this.generation = generation;
+        }
+    }
+}
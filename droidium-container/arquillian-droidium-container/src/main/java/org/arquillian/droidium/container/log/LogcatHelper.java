@@ -17,9 +17,9 @@
  */
 package org.arquillian.droidium.container.log;
 
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.Writer;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,128 +43,137 @@ public class LogcatHelper {
         this.androidDevice = androidDevice;
     }
 
-    public Writer prepareWriter() { // TODO implement log4j support
+    /**
+     * Creates the sink of logcat records according to {@code logType}.
+     *
+     * @return sink to write logcat records to or null if logging is disabled or the sink can not be created
+     */
+    public LogcatSink prepareSink() {
+        return prepareSink(null);
+    }
+
+    /**
+     * Creates the sink of logcat records according to {@code logType}.
+     *
+     * @param resolver resolver of process names stored along with records when {@code logType} is {@code indexed}, it
+     *        can be null
+     * @return sink to write logcat records to or null if logging is disabled or the sink can not be created
+     */
+    public LogcatSink prepareSink(ProcessNameResolver resolver) { // TODO implement log4j support
         if (configuration.getLogType().equals(LogType.OUTPUT)) {
             String prefix = configuration.isLogSerialId() ? "LOGCAT (" + androidDevice.getSerialNumber() + "): " : "LOGCAT: ";
-            return new LogcatToConsoleWriter(prefix);
+            return new ConsoleLogcatSink(prefix);
         } else if (configuration.getLogType().equals(LogType.LOGGER)) {
             String name = configuration.isLogSerialId() ? "LOGCAT (" + androidDevice.getSerialNumber() + ")" : "LOGCAT";
-            return new LogcatToLoggerWriter(Logger.getLogger(name));
+            return new LoggerLogcatSink(Logger.getLogger(name));
         } else if (configuration.getLogType().equals(LogType.FILE)) {
-            String logPath = configuration.getLogFilePath();
-
-            if (configuration.isLogSerialId()) {
-                String[] logPathParts = logPath.split("\\.");
-
-                if (logPathParts.length > 1) {
-                    logPath = "";
-                    for (int i = 0; i < logPathParts.length - 1; i++) {
-                        logPath += logPathParts[i];
-                    }
-
-                    logPath += androidDevice.getSerialNumber();
-
-                    logPath += logPathParts[logPathParts.length - 1];
-                } else {
-                    logPath += androidDevice.getSerialNumber();
-                }
-            }
             try {
-                return new LogcatToFileWriter(logPath);
+                return new FileLogcatSink(getLogFile());
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Couldn't open log file!", e);
                 return null;
             }
+        } else if (configuration.getLogType().equals(LogType.GZIP)) {
+            try {
+                return new GzipRotatingLogcatSink(getLogDirectory(),
+                    configuration.getLogRotationSizeInMegabytes() * 1024L * 1024L,
+                    configuration.getLogRotationIntervalInMinutes() * 60L * 1000L,
+                    configuration.getLogRotationMaxSegments());
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Couldn't create log directory!", e);
+                return null;
+            }
+        } else if (configuration.getLogType().equals(LogType.INDEXED)) {
+            try {
+                return new IndexedLogcatSink(getLogDirectory(), resolver);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Couldn't open logcat store!", e);
+                return null;
+            }
         } else {
             return null;
         }
     }
 
-    public AndroidContainerConfiguration getConfiguration() {
-        return configuration;
-    }
-
-    public void setConfiguration(AndroidContainerConfiguration configuration) {
-        this.configuration = configuration;
-    }
-
-    public AndroidDevice getAndroidDevice() {
-        return androidDevice;
-    }
-
-    public void setAndroidDevice(AndroidDevice androidDevice) {
-        this.androidDevice = androidDevice;
-    }
-
-    private static class LogcatToConsoleWriter extends Writer {
-
-        private String prefix;
-
-        public LogcatToConsoleWriter(String prefix) {
-            this.prefix = prefix;
+    /**
+     * Resolves the file logcat is written to when {@code logType} is {@code file}. When {@code logSerialId} is set, the
+     * serial number of the device is put before the extension of the file name, e.g. {@code target/logcat.log} becomes
+     * {@code target/logcat.emulator-5554.log}.
+     *
+     * @return file to write logcat to
+     */
+    public File getLogFile() {
+        File logFile = new File(configuration.getLogFilePath());
+
+        if (!configuration.isLogSerialId()) {
+            return logFile;
         }
 
-        @Override
-        public void write(char[] cbuf, int off, int len) throws IOException {
-            String line = String.copyValueOf(cbuf, off, len);
-            System.out.println(prefix + line);
-        }
+        String name = logFile.getName();
+        String serialId = toFileName(androidDevice.getSerialNumber());
 
-        @Override
-        public void flush() throws IOException {
-            System.out.flush();
-        }
+        int extension = name.lastIndexOf('.');
 
-        @Override
-        public void close() throws IOException {
-            System.out.flush();
+        if (extension > 0) {
+            name = name.substring(0, extension) + "." + serialId + name.substring(extension);
+        } else {
+            name = name + "." + serialId;
         }
-    }
 
-    private static class LogcatToLoggerWriter extends Writer {
+        return new File(logFile.getParentFile(), name);
+    }
 
-        private Logger logger;
+    /**
+     *
+     * @return directory of the device logcat segments are written to when {@code logType} is {@code gzip} or the
+     *         logcat store is kept in when {@code logType} is {@code indexed}
+     */
+    public File getLogDirectory() {
+        return new File(configuration.getLogDir(), toFileName(androidDevice.getSerialNumber()));
+    }
 
-        public LogcatToLoggerWriter(Logger logger) {
-            this.logger = logger;
+    /**
+     * Turns a serial number of a device to a string usable in file names, serial numbers of devices connected over
+     * network contain colons, e.g. {@code 192.168.56.101:5555}.
+     *
+     * @param serialNumber serial number of a device
+     * @return {@code serialNumber} with characters unsafe in file names replaced by underscores
+     */
+    public static String toFileName(String serialNumber) {
+        StringBuilder sb = new StringBuilder(serialNumber.length());
+        for (int i = 0; i < serialNumber.length(); i++) {
+            char c = serialNumber.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' ? c : '_');
         }
+        return sb.toString();
+    }
 
-        @Override
-        public void write(char[] cbuf, int off, int len) throws IOException {
-            String line = String.copyValueOf(cbuf, off, len);
-            if (line.startsWith(LogLevel.ERROR)) {
-                logger.severe(line);
-            } else if (line.startsWith(LogLevel.WARN)) {
-                logger.warning(line);
-            } else if (line.startsWith(LogLevel.INFO)) {
-                logger.info(line);
-            } else if (line.startsWith(LogLevel.DEBUG)) {
-                logger.config(line);
-            } else if (line.startsWith(LogLevel.VERBOSE)) {
-                logger.fine(line);
-            } else {
-                logger.finer(line);
-            }
-        }
+    /**
+     * Queries logcat of the device stored when {@code logType} is {@code indexed}. Records still waiting in the logcat
+     * pipeline are not visible until the pipeline flushes them.
+     *
+     * @param query criteria of records
+     * @return matching records in the order they were written
+     * @throws IOException if there is no logcat store of the device or it can not be read
+     */
+    public List<LogcatRecord> query(LogcatQuery query) throws IOException {
+        return LogcatStore.open(getLogDirectory()).query(query);
+    }
 
-        @Override
-        public void flush() throws IOException {
-        }
+    public AndroidContainerConfiguration getConfiguration() {
+        return configuration;
+    }
 
-        @Override
-        public void close() throws IOException {
-        }
+    public void setConfiguration(AndroidContainerConfiguration configuration) {
+        this.configuration = configuration;
     }
 
-    private static class LogcatToFileWriter extends FileWriter {
-        public LogcatToFileWriter(String fileName) throws IOException {
-            super(fileName);
-        }
+    public AndroidDevice getAndroidDevice() {
+        return androidDevice;
+    }
 
-        @Override
-        public void write(String str) throws IOException {
-            super.write(str + "\n");
-        }
+    public void setAndroidDevice(AndroidDevice androidDevice) {
+        this.androidDevice = androidDevice;
     }
 
 }
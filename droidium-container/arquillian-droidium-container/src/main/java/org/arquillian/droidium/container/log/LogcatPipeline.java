@@ -0,0 +1,457 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves logcat records from the output of {@code adb logcat} to a {@link LogcatSink}.<br>
+ * <br>
+ * A reader thread parses and filters records and hands them over to a sink thread through a bounded
+ * {@link LogcatRecordQueue}. The sink thread writes records in batches and flushes the sink periodically. When the
+ * sink can not keep up and the queue is full, the reader waits for a free slot for a while and then drops the record.
+ * Dropped records are counted and reported into the sink as well as all other statistics when the pipeline is stopped.<br>
+ * <br>
+ * Output of logcat is read either as text in {@code brief} format or, in binary mode, as {@code logcat -B} entries
+ * decoded by {@link LogcatBinaryDecoder} where records are rendered to text only by the sink.<br>
+ * <br>
+ * Records are matched against subscriptions of tests by {@link LogcatDispatcher} in the reader thread, before they are
+ * filtered.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatPipeline {
+
+    private static final Logger logger = Logger.getLogger(LogcatPipeline.class.getName());
+
+    private static final int BATCH_SIZE = 512;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final long MAX_BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final String name;
+
+    private final LogcatSink sink;
+
+    private final LogcatFilter filter;
+
+    private final LogcatRecordQueue queue;
+
+    private final long flushIntervalNanos;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong filtered = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    private volatile int maxQueueDepth;
+
+    private volatile boolean readerFinished;
+
+    private volatile boolean stopped;
+
+    private boolean binary;
+
+    private LogcatDispatcher dispatcher;
+
+    private Process process;
+
+    private Thread readerThread;
+
+    private Thread sinkThread;
+
+    /**
+     *
+     * @param name name of the pipeline used in names of its threads, e.g. serial number of a device
+     * @param sink sink to write records to
+     * @param filter filter of records, null to write all records
+     * @param queueCapacity capacity of the queue between reader and sink
+     * @param flushIntervalInMillis maximal time records stay in the sink unflushed
+     */
+    public LogcatPipeline(String name, LogcatSink sink, LogcatFilter filter, int queueCapacity, long flushIntervalInMillis) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink of logcat pipeline can not be a null object.");
+        }
+        if (flushIntervalInMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval of logcat pipeline has to be positive.");
+        }
+        this.name = name;
+        this.sink = sink;
+        this.filter = filter;
+        this.queue = new LogcatRecordQueue(queueCapacity);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalInMillis);
+    }
+
+    /**
+     *
+     * @param binary true if logcat output is read in binary format of {@code logcat -B}, false for {@code brief} text
+     * @return this
+     */
+    public synchronized LogcatPipeline binary(boolean binary) {
+        if (readerThread != null) {
+            throw new IllegalStateException("Format of logcat pipeline " + name + " can not be changed after it was started.");
+        }
+        this.binary = binary;
+        return this;
+    }
+
+    /**
+     *
+     * @param dispatcher dispatcher of records to subscriptions, records are dispatched before they are filtered
+     * @return this
+     */
+    public synchronized LogcatPipeline dispatcher(LogcatDispatcher dispatcher) {
+        if (readerThread != null) {
+            throw new IllegalStateException("Dispatcher of logcat pipeline " + name + " can not be changed after it was started.");
+        }
+        this.dispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Starts reading of the standard output of a running {@code adb logcat} process. The process is destroyed when the
+     * pipeline is stopped.
+     *
+     * @param process logcat process
+     * @return this
+     */
+    public synchronized LogcatPipeline start(Process process) {
+        this.process = process;
+        return start(process.getInputStream());
+    }
+
+    /**
+     * Starts reading of logcat output from {@code input} until its end.
+     *
+     * @param input logcat output in {@code brief} format or in binary format when the pipeline is in binary mode
+     * @return this
+     */
+    public synchronized LogcatPipeline start(final InputStream input) {
+        if (readerThread != null) {
+            throw new IllegalStateException("Logcat pipeline " + name + " was already started.");
+        }
+
+        sinkThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "droidium-logcat-sink-" + name);
+        sinkThread.setDaemon(true);
+
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (binary) {
+                        produceBinary(input);
+                    } else {
+                        produce(input);
+                    }
+                } finally {
+                    readerFinished = true;
+                    LockSupport.unpark(sinkThread);
+                }
+            }
+        }, "droidium-logcat-reader-" + name);
+        readerThread.setDaemon(true);
+
+        sinkThread.start();
+        readerThread.start();
+
+        return this;
+    }
+
+    /**
+     * Stops reading, writes all records already read, closes the sink and logs statistics of this pipeline.
+     *
+     * @param timeout maximal time to wait for the pipeline to finish
+     * @param unit unit of {@code timeout}
+     */
+    public synchronized void stop(long timeout, TimeUnit unit) {
+        if (stopped || readerThread == null) {
+            return;
+        }
+        stopped = true;
+
+        if (process != null) {
+            process.destroy();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        try {
+            readerThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (readerThread.isAlive()) {
+                readerThread.interrupt();
+            }
+            LockSupport.unpark(sinkThread);
+            sinkThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (filter != null) {
+            filter.close();
+        }
+
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+
+        if (sinkThread.isAlive()) {
+            logger.log(Level.WARNING, "Logcat sink of {0} did not finish in time, {1} records were not written.",
+                new Object[] { name, queue.size() });
+        }
+
+        logger.log(Level.INFO, "Logcat of {0}: {1}", new Object[] { name, getStatistics() });
+    }
+
+    /**
+     * Waits until all records read so far were handed over to the sink.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     * @return true if the queue of this pipeline is empty, false if the time elapsed before
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (!queue.isEmpty() && isRunning()) {
+            if (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.unpark(sinkThread);
+            LockSupport.parkNanos(BACKOFF_NANOS * 10);
+        }
+
+        return true;
+    }
+
+    public boolean isRunning() {
+        return readerThread != null && !stopped;
+    }
+
+    /**
+     *
+     * @return human readable statistics of this pipeline
+     */
+    public String getStatistics() {
+        return String.format("received %d, filtered out %d, written %d, dropped %d, max queue depth %d/%d, reader blocked %d ms",
+            received.get(), filtered.get(), written.get(), dropped.get(), maxQueueDepth, queue.capacity(),
+            TimeUnit.NANOSECONDS.toMillis(blockedNanos.get()));
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getFiltered() {
+        return filtered.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void produce(InputStream input) {
+        LogcatRecord record = new LogcatRecord();
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(input, "UTF-8"), READ_BUFFER_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handle(record.parseBrief(line));
+            }
+        } catch (IOException ex) {
+            if (!stopped) {
+                logger.log(Level.SEVERE, "Error while reading logcat of " + name, ex);
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void produceBinary(InputStream input) {
+        LogcatRecord record = new LogcatRecord();
+
+        InputStream stream = new BufferedInputStream(input, READ_BUFFER_SIZE);
+        try {
+            LogcatBinaryDecoder decoder = new LogcatBinaryDecoder(stream);
+            while (decoder.next(record)) {
+                handle(record);
+            }
+        } catch (IOException ex) {
+            if (!stopped) {
+                logger.log(Level.SEVERE, "Error while reading binary logcat of " + name, ex);
+            }
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private void handle(LogcatRecord record) {
+        received.incrementAndGet();
+
+        if (dispatcher != null) {
+            dispatcher.dispatch(record);
+        }
+
+        if (filter != null && !filter.accept(record)) {
+            filtered.incrementAndGet();
+            return;
+        }
+
+        offer(record);
+    }
+
+    private void offer(LogcatRecord record) {
+        LogcatRecord slot = queue.claim();
+
+        if (slot == null) {
+            LockSupport.unpark(sinkThread);
+            long start = System.nanoTime();
+            while ((slot = queue.claim()) == null && System.nanoTime() - start < MAX_BLOCK_NANOS
+                && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            }
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        if (slot == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        slot.copyFrom(record);
+        queue.publish();
+
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth == 1) {
+            LockSupport.unpark(sinkThread);
+        }
+    }
+
+    private void consume() {
+        final LogcatRecord dropReport = new LogcatRecord();
+
+        LogcatRecordQueue.RecordHandler handler = new LogcatRecordQueue.RecordHandler() {
+            @Override
+            public void handle(LogcatRecord record) throws Exception {
+                sink.write(record);
+            }
+        };
+
+        long reportedDrops = 0;
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        boolean failed = false;
+
+        while (true) {
+            int handled = 0;
+            try {
+                handled = failed ? queue.drain(DISCARD, BATCH_SIZE) : queue.drain(handler, BATCH_SIZE);
+
+                long drops = dropped.get();
+                if (drops != reportedDrops && !failed) {
+                    dropReport.clear().setLine("--------- droidium dropped " + (drops - reportedDrops)
+                        + " logcat lines of " + name + ", logcat sink can not keep up");
+                    sink.write(dropReport);
+                    reportedDrops = drops;
+                    dirty = true;
+                }
+
+                if (handled > 0 && !failed) {
+                    written.addAndGet(handled);
+                    dirty = true;
+                }
+
+                long now = System.nanoTime();
+                if (dirty && (handled == 0 || now - lastFlush >= flushIntervalNanos)) {
+                    if (handled == 0 && now - lastFlush < flushIntervalNanos && !readerFinished) {
+                        // idle, but the flush is not due yet
+                        LockSupport.parkNanos(flushIntervalNanos - (now - lastFlush));
+                        continue;
+                    }
+                    sink.flush();
+                    lastFlush = System.nanoTime();
+                    dirty = false;
+                }
+            } catch (Exception ex) {
+                if (!failed) {
+                    logger.log(Level.SEVERE, "Writing of logcat of " + name + " failed, following records are discarded.", ex);
+                    failed = true;
+                }
+            }
+
+            if (handled == 0) {
+                if (readerFinished && queue.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+
+        try {
+            sink.close();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Unable to close logcat sink of " + name, ex);
+        }
+    }
+
+    private static final LogcatRecordQueue.RecordHandler DISCARD = new LogcatRecordQueue.RecordHandler() {
+        @Override
+        public void handle(LogcatRecord record) {
+        }
+    };
+}
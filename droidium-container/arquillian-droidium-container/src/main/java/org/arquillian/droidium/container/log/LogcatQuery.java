@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+/**
+ * Criteria of records looked up in {@link LogcatStore}. All criteria which are set have to be met by a record.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatQuery {
+
+    static final String LEVELS = "VDIWEFS?";
+
+    private long from = Long.MIN_VALUE;
+
+    private long to = Long.MAX_VALUE;
+
+    private int levelMask;
+
+    private int pid = -1;
+
+    private String tag;
+
+    private String process;
+
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     *
+     * @param from time in milliseconds since the epoch, records logged before are skipped
+     * @return this
+     */
+    public LogcatQuery from(long from) {
+        this.from = from;
+        return this;
+    }
+
+    /**
+     *
+     * @param to time in milliseconds since the epoch, records logged after are skipped
+     * @return this
+     */
+    public LogcatQuery to(long to) {
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Adds a level records can have, can be called repeatedly.
+     *
+     * @param level level, e.g. {@code E}
+     * @return this
+     */
+    public LogcatQuery level(char level) {
+        levelMask |= levelBit(level);
+        return this;
+    }
+
+    /**
+     * Adds {@code level} and all more severe levels to levels records can have.
+     *
+     * @param level the least severe level, e.g. {@code W}
+     * @return this
+     */
+    public LogcatQuery minLevel(char level) {
+        int index = LEVELS.indexOf(Character.toUpperCase(level));
+        if (index == -1 || index == LEVELS.length() - 1) {
+            throw new IllegalArgumentException("Unknown logcat level " + level);
+        }
+        for (int i = index; i < LEVELS.length() - 1; i++) {
+            levelMask |= 1 << i;
+        }
+        return this;
+    }
+
+    public LogcatQuery pid(int pid) {
+        this.pid = pid;
+        return this;
+    }
+
+    public LogcatQuery tag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    /**
+     *
+     * @param process name of the process which logged records, {@code *} matches any characters, e.g. {@code com.example*}
+     * @return this
+     */
+    public LogcatQuery process(String process) {
+        this.process = process;
+        return this;
+    }
+
+    /**
+     *
+     * @param limit maximal number of returned records
+     * @return this
+     */
+    public LogcatQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     *
+     * @return bit mask of {@link #levelBit(char)} of wanted levels, 0 for all levels
+     */
+    public int getLevelMask() {
+        return levelMask;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getProcess() {
+        return process;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    static int levelBit(char level) {
+        int index = LEVELS.indexOf(Character.toUpperCase(level));
+        return 1 << (index == -1 ? LEVELS.length() - 1 : index);
+    }
+
+    @Override
+    public String toString() {
+        return "LogcatQuery [from=" + from + ", to=" + to + ", levelMask=" + Integer.toBinaryString(levelMask) + ", pid=" + pid
+            + ", tag=" + tag + ", process=" + process + ", limit=" + limit + "]";
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.nio.charset.Charset;
+
+/**
+ * One logcat entry. Instances are mutable and meant to be reused, records are preallocated in {@link LogcatRecordQueue}
+ * and filled in place by the reader, so use {@link #copyFrom(LogcatRecord)} to keep a record beyond the call it was
+ * handed to.<br>
+ * <br>
+ * Records decoded from binary logcat output keep their tag and message as bytes, these are turned into strings only when
+ * they are asked for, usually by a sink when the record is rendered, so records which are filtered out by pid or level
+ * never cost a string.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatRecord {
+
+    public static final char UNKNOWN_LEVEL = '?';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private char level = UNKNOWN_LEVEL;
+
+    private String tag;
+
+    private int pid = -1;
+
+    private int tid = -1;
+
+    private long timestamp = -1;
+
+    private String message;
+
+    private String line;
+
+    private byte[] payload;
+
+    // owned by this record, payload copied from other records is kept here
+    private byte[] buffer;
+
+    private int tagOffset;
+
+    private int tagLength;
+
+    private int messageOffset;
+
+    private int messageLength;
+
+    /**
+     * Fills this record from a line in logcat {@code brief} format, e.g. {@code I/ActivityManager(  345): message}. Lines
+     * which are not in this format (e.g. {@code --------- beginning of main}) are kept as they are with unknown level
+     * and pid.
+     *
+     * @param line logcat line
+     * @return this
+     */
+    public LogcatRecord parseBrief(String line) {
+        clear();
+        this.line = line;
+
+        int length = line.length();
+
+        if (length < 2 || line.charAt(1) != '/') {
+            return this;
+        }
+
+        int open = line.indexOf('(', 2);
+        if (open == -1) {
+            return this;
+        }
+
+        int close = line.indexOf(')', open);
+        if (close == -1 || close + 1 >= length || line.charAt(close + 1) != ':') {
+            return this;
+        }
+
+        int pid = 0;
+        boolean digits = false;
+        for (int i = open + 1; i < close; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                pid = pid * 10 + (c - '0');
+                digits = true;
+            } else if (c != ' ') {
+                return this;
+            }
+        }
+
+        if (!digits) {
+            return this;
+        }
+
+        this.level = line.charAt(0);
+        this.tag = line.substring(2, open).trim();
+        this.pid = pid;
+        int messageStart = close + 2;
+        if (messageStart < length && line.charAt(messageStart) == ' ') {
+            messageStart++;
+        }
+        this.message = messageStart < length ? line.substring(messageStart) : "";
+
+        return this;
+    }
+
+    /**
+     * Copies all values from {@code other} to this record.
+     *
+     * @param other record to copy values from
+     * @return this
+     */
+    public LogcatRecord copyFrom(LogcatRecord other) {
+        this.level = other.level;
+        this.tag = other.tag;
+        this.pid = other.pid;
+        this.tid = other.tid;
+        this.timestamp = other.timestamp;
+        this.message = other.message;
+        this.line = other.line;
+        this.payload = null;
+        if (other.payload != null && (other.tag == null || other.message == null)) {
+            copyPayload(other);
+        }
+        return this;
+    }
+
+    public LogcatRecord clear() {
+        level = UNKNOWN_LEVEL;
+        tag = null;
+        pid = -1;
+        tid = -1;
+        timestamp = -1;
+        message = null;
+        line = null;
+        tagLength = 0;
+        messageLength = 0;
+        payload = null;
+        return this;
+    }
+
+    /**
+     * Sets tag and message of this record as UTF-8 bytes, {@code bytes} are referenced, not copied.
+     *
+     * @param bytes array holding tag and message
+     * @param tagOffset offset of the tag in {@code bytes}
+     * @param tagLength length of the tag in bytes
+     * @param messageOffset offset of the message in {@code bytes}
+     * @param messageLength length of the message in bytes
+     * @return this
+     */
+    public LogcatRecord setPayload(byte[] bytes, int tagOffset, int tagLength, int messageOffset, int messageLength) {
+        this.payload = bytes;
+        this.tagOffset = tagOffset;
+        this.tagLength = tagLength;
+        this.messageOffset = messageOffset;
+        this.messageLength = messageLength;
+        this.tag = null;
+        this.message = null;
+        return this;
+    }
+
+    /**
+     * Compares the tag of this record with {@code other} without decoding the tag when possible.
+     *
+     * @param other tag to compare with
+     * @return true if the tag of this record is equal to {@code other}
+     */
+    public boolean tagEquals(String other) {
+        if (tag != null || payload == null) {
+            return other.equals(tag);
+        }
+
+        if (other.length() != tagLength) {
+            return isAscii(other) ? false : other.equals(getTag());
+        }
+
+        for (int i = 0; i < tagLength; i++) {
+            char c = other.charAt(i);
+            if (c >= 0x80) {
+                return other.equals(getTag());
+            }
+            if (payload[tagOffset + i] != (byte) c) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Appends this record in logcat {@code brief} format to {@code sb}. The original line is used when the record was
+     * read from text output of logcat.
+     *
+     * @param sb builder to append this record to
+     * @return {@code sb}
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (line != null) {
+            return sb.append(line);
+        }
+
+        String tag = getTag();
+        String message = getMessage();
+
+        if (message == null) {
+            return appendPrefix(sb, tag);
+        }
+
+        // multi line messages are rendered as one line per message line, the same way logcat does
+        int end = message.length();
+        while (end > 0 && message.charAt(end - 1) == '\n') {
+            end--;
+        }
+
+        int start = 0;
+        do {
+            int newLine = message.indexOf('\n', start);
+            if (newLine == -1 || newLine > end) {
+                newLine = end;
+            }
+            if (start != 0) {
+                sb.append('\n');
+            }
+            appendPrefix(sb, tag).append(message, start, newLine);
+            start = newLine + 1;
+        } while (start < end);
+
+        return sb;
+    }
+
+    private StringBuilder appendPrefix(StringBuilder sb, String tag) {
+        sb.append(level).append('/').append(tag == null ? "" : tag).append('(');
+        if (pid < 10000) {
+            sb.append(pid < 10 ? "    " : pid < 100 ? "   " : pid < 1000 ? "  " : " ");
+        }
+        return sb.append(pid).append("): ");
+    }
+
+    /**
+     *
+     * @return rough number of bytes of heap this record occupies when it is kept
+     */
+    public int getSizeEstimate() {
+        int size = 64;
+        if (line != null) {
+            size += line.length() * 2;
+        }
+        size += tag != null ? tag.length() * 2 : tagLength;
+        size += message != null ? message.length() * 2 : messageLength;
+        return size;
+    }
+
+    public boolean isParsed() {
+        return pid != -1;
+    }
+
+    public char getLevel() {
+        return level;
+    }
+
+    public LogcatRecord setLevel(char level) {
+        this.level = level;
+        return this;
+    }
+
+    public String getTag() {
+        if (tag == null && payload != null) {
+            tag = new String(payload, tagOffset, tagLength, UTF_8);
+        }
+        return tag;
+    }
+
+    public LogcatRecord setTag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public LogcatRecord setPid(int pid) {
+        this.pid = pid;
+        return this;
+    }
+
+    public int getTid() {
+        return tid;
+    }
+
+    public LogcatRecord setTid(int tid) {
+        this.tid = tid;
+        return this;
+    }
+
+    /**
+     *
+     * @return time of the record in milliseconds since the epoch or -1 when it is not known
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public LogcatRecord setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    public String getMessage() {
+        if (message == null && payload != null) {
+            message = new String(payload, messageOffset, messageLength, UTF_8);
+        }
+        return message;
+    }
+
+    public LogcatRecord setMessage(String message) {
+        this.message = message;
+        return this;
+    }
+
+    /**
+     *
+     * @return raw line this record was parsed from or null if it was not read from text output of logcat
+     */
+    public String getLine() {
+        return line;
+    }
+
+    public LogcatRecord setLine(String line) {
+        this.line = line;
+        return this;
+    }
+
+    private void copyPayload(LogcatRecord other) {
+        int start = Math.min(other.tagOffset, other.messageOffset);
+        int end = Math.max(other.tagOffset + other.tagLength, other.messageOffset + other.messageLength);
+
+        if (buffer == null || buffer.length < end - start) {
+            buffer = new byte[Math.max(end - start, 256)];
+        }
+        System.arraycopy(other.payload, start, buffer, 0, end - start);
+
+        this.payload = buffer;
+        this.tagOffset = other.tagOffset - start;
+        this.tagLength = other.tagLength;
+        this.messageOffset = other.messageOffset - start;
+        this.messageLength = other.messageLength;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
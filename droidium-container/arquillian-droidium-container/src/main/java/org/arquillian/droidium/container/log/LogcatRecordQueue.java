@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue of {@link LogcatRecord}s for exactly one producer and one consumer thread.<br>
+ * <br>
+ * Records are preallocated, the producer claims a free slot by {@link #claim()}, fills it in place and makes it
+ * visible to the consumer by {@link #publish()}. The consumer processes published records in batches by
+ * {@link #drain(RecordHandler, int)} after which their slots are reused. No objects are allocated on either side.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatRecordQueue {
+
+    private final LogcatRecord[] records;
+
+    private final int mask;
+
+    // next slot to be published by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // next slot to be consumed by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     *
+     * @param capacity minimal number of records this queue holds, rounded up to the power of two
+     * @throws IllegalArgumentException if {@code capacity} is not positive or it is too big
+     */
+    public LogcatRecordQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity of logcat queue has to be in range (0, 2^30], it is " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        records = new LogcatRecord[size];
+        for (int i = 0; i < size; i++) {
+            records[i] = new LogcatRecord();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Called by the producer only.
+     *
+     * @return free record to be filled and published or null if the queue is full
+     */
+    public LogcatRecord claim() {
+        long currentTail = tail.get();
+        if (currentTail - head.get() >= records.length) {
+            return null;
+        }
+        return records[(int) (currentTail & mask)];
+    }
+
+    /**
+     * Publishes the record returned by the last {@link #claim()}. Called by the producer only.
+     */
+    public void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Hands at most {@code maxBatch} published records to {@code handler} and frees their slots afterwards. Called by the
+     * consumer only.
+     *
+     * @param handler handler of records
+     * @param maxBatch maximal number of records to handle
+     * @return number of handled records
+     * @throws Exception rethrown from {@code handler}, slots of already handled records are freed
+     */
+    public int drain(RecordHandler handler, int maxBatch) throws Exception {
+        long currentHead = head.get();
+        long available = Math.min(tail.get() - currentHead, maxBatch);
+
+        int handled = 0;
+        try {
+            while (handled < available) {
+                LogcatRecord record = records[(int) ((currentHead + handled) & mask)];
+                handled++;
+                handler.handle(record);
+            }
+        } finally {
+            head.lazySet(currentHead + handled);
+        }
+
+        return handled;
+    }
+
+    /**
+     *
+     * @return number of published records which were not consumed yet
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return records.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Handles records consumed from {@link LogcatRecordQueue}.
+     */
+    public interface RecordHandler {
+
+        /**
+         *
+         * @param record record to handle, it must not be referenced after this method returns
+         * @throws Exception if handling fails
+         */
+        void handle(LogcatRecord record) throws Exception;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+
+/**
+ * Destination of logcat records. All methods are called from a single thread of {@link LogcatPipeline}, records are
+ * written in batches followed by {@link #flush()}.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public interface LogcatSink {
+
+    /**
+     *
+     * @param record record to write, it must not be referenced after this method returns
+     * @throws IOException if writing fails
+     */
+    void write(LogcatRecord record) throws IOException;
+
+    /**
+     * Flushes records written so far.
+     *
+     * @throws IOException if flushing fails
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flushes and releases all resources of this sink.
+     *
+     * @throws IOException if closing fails
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,433 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Reads logcat records written by {@link IndexedLogcatSink}. The store is read from files only, it does not need any
+ * device nor a running container.<br>
+ * <br>
+ * A query reads the whole index, which is small, and then only blocks of records the index does not rule out. Records
+ * no index entry covers, e.g. those of a block which is not closed yet or which was left behind by a killed writer, are
+ * always read, in chunks of {@value #CHUNK_SIZE} bytes.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    // timestamp, pid, tid, level, tag length and message length
+    private static final int RECORD_HEADER_SIZE = 8 + 4 + 4 + 1 + 2 + 4;
+
+    private final File directory;
+
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    // pid -> time since when the process had the name -> name
+    private final Map<Integer, TreeMap<Long, String>> processes = new HashMap<Integer, TreeMap<Long, String>>();
+
+    private LogcatStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     *
+     * @param directory directory of the store
+     * @return opened store
+     * @throws IOException if the store does not exist or can not be read
+     */
+    public static LogcatStore open(File directory) throws IOException {
+        if (!new File(directory, IndexedLogcatSink.RECORDS_FILE).isFile()) {
+            throw new IOException("There is no logcat store in " + directory.getAbsolutePath());
+        }
+
+        LogcatStore store = new LogcatStore(directory);
+        store.readIndex();
+        store.readProcesses();
+        return store;
+    }
+
+    /**
+     *
+     * @param query criteria of records
+     * @return all matching records in the order they were written
+     * @throws IOException if reading of the store fails
+     */
+    public List<LogcatRecord> query(LogcatQuery query) throws IOException {
+        final List<LogcatRecord> result = new ArrayList<LogcatRecord>();
+
+        query(query, new LogcatSink() {
+            @Override
+            public void write(LogcatRecord record) {
+                result.add(new LogcatRecord().copyFrom(record));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Writes matching records to {@code sink}, the sink is neither flushed nor closed.
+     *
+     * @param query criteria of records
+     * @param sink sink to write matching records to
+     * @return number of matching records
+     * @throws IOException if reading of the store fails or writing to {@code sink} fails
+     */
+    public int query(LogcatQuery query, LogcatSink sink) throws IOException {
+        Matcher matcher = new Matcher(query);
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, IndexedLogcatSink.RECORDS_FILE), "r");
+        try {
+            LogcatRecord record = new LogcatRecord();
+            int found = 0;
+            long covered = 0;
+
+            for (Block block : blocks) {
+                if (block.offset > covered) {
+                    found = scan(file, covered, block.offset, matcher, sink, found);
+                    if (found >= query.getLimit()) {
+                        return found;
+                    }
+                }
+                covered = Math.max(covered, block.offset + block.length);
+
+                if (!matcher.mayMatch(block)) {
+                    continue;
+                }
+
+                byte[] bytes = new byte[block.length];
+                file.seek(block.offset);
+                file.readFully(bytes);
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    if (read(buffer, record) && matcher.matches(record)) {
+                        sink.write(record);
+                        if (++found >= query.getLimit()) {
+                            return found;
+                        }
+                    }
+                }
+            }
+
+            // records written after the last index entry
+            return scan(file, covered, file.length(), matcher, sink, found);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads records between {@code from} and {@code to} which are not covered by the index. Only a chunk of them is held
+     * in memory at a time, a chunk is enlarged just for a record which does not fit into it. Reading stops at a record
+     * which was not written completely.
+     */
+    private int scan(RandomAccessFile file, long from, long to, Matcher matcher, LogcatSink sink, int found)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        buffer.limit(0);
+
+        LogcatRecord record = new LogcatRecord();
+        long position = from;
+        file.seek(from);
+
+        while (true) {
+            long needed = buffer.remaining() < 4 ? 4 : 4L + buffer.getInt(buffer.position());
+            if ((buffer.remaining() >= 4 && needed < 4 + RECORD_HEADER_SIZE) || needed - buffer.remaining() > to - position) {
+                return found;
+            }
+
+            if (needed > buffer.remaining()) {
+                if (needed > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate((int) needed);
+                    larger.put(buffer);
+                    buffer = larger;
+                } else {
+                    buffer.compact();
+                }
+                int count = (int) Math.min(buffer.remaining(), to - position);
+                file.readFully(buffer.array(), buffer.position(), count);
+                buffer.position(buffer.position() + count);
+                buffer.flip();
+                position += count;
+                continue;
+            }
+
+            if (read(buffer, record) && matcher.matches(record)) {
+                sink.write(record);
+                if (++found >= matcher.query.getLimit()) {
+                    return found;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param pid pid of a process
+     * @param timestamp time in milliseconds since the epoch
+     * @return name the process had at {@code timestamp} or null if it is not known
+     */
+    public String getProcessName(int pid, long timestamp) {
+        TreeMap<Long, String> names = processes.get(Integer.valueOf(pid));
+        if (names == null) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = names.floorEntry(timestamp);
+        // the name is usually learned a moment after the first record of the process
+        return entry != null ? entry.getValue() : names.firstEntry().getValue();
+    }
+
+    /**
+     *
+     * @return number of records covered by the index
+     */
+    public long getIndexedRecords() {
+        long count = 0;
+        for (Block block : blocks) {
+            count += block.count;
+        }
+        return count;
+    }
+
+    public int getBlocks() {
+        return blocks.size();
+    }
+
+    private boolean read(ByteBuffer buffer, LogcatRecord record) {
+        int length = buffer.getInt();
+        int end = buffer.position() + length;
+
+        long timestamp = buffer.getLong();
+        int pid = buffer.getInt();
+        int tid = buffer.getInt();
+        char level = (char) buffer.get();
+        int tagLength = buffer.getShort() & 0xffff;
+        int tagOffset = buffer.position();
+        buffer.position(tagOffset + tagLength);
+        int messageLength = buffer.getInt();
+        int messageOffset = buffer.position();
+
+        record.clear();
+        if (pid == -1) {
+            record.setLine(new String(buffer.array(), messageOffset, messageLength, UTF_8));
+        } else {
+            record.setLevel(level).setPid(pid).setTid(tid)
+                .setPayload(buffer.array(), tagOffset, tagLength, messageOffset, messageLength);
+        }
+        record.setTimestamp(timestamp);
+
+        buffer.position(end);
+        return true;
+    }
+
+    private void readIndex() throws IOException {
+        File indexFile = new File(directory, IndexedLogcatSink.INDEX_FILE);
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            while (true) {
+                Block block = new Block();
+                try {
+                    block.offset = index.readLong();
+                    block.length = index.readInt();
+                    block.count = index.readInt();
+                    block.minTime = index.readLong();
+                    block.maxTime = index.readLong();
+                    block.levels = index.readInt();
+                    for (int i = 0; i < IndexedLogcatSink.BLOOM_LONGS; i++) {
+                        block.pids[i] = index.readLong();
+                    }
+                    for (int i = 0; i < IndexedLogcatSink.BLOOM_LONGS; i++) {
+                        block.tags[i] = index.readLong();
+                    }
+                } catch (EOFException ex) {
+                    // incomplete last entry, records of its block are read as not indexed
+                    break;
+                }
+                blocks.add(block);
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    private void readProcesses() throws IOException {
+        File processesFile = new File(directory, IndexedLogcatSink.PROCESSES_FILE);
+        if (!processesFile.isFile()) {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(processesFile), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t", 3);
+                if (columns.length != 3) {
+                    continue;
+                }
+                try {
+                    Integer pid = Integer.valueOf(columns[1]);
+                    TreeMap<Long, String> names = processes.get(pid);
+                    if (names == null) {
+                        names = new TreeMap<Long, String>();
+                        processes.put(pid, names);
+                    }
+                    names.put(Long.valueOf(columns[0]), columns[2]);
+                } catch (NumberFormatException ex) {
+                    // incomplete last line
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static final class Block {
+
+        private long offset;
+
+        private int length;
+
+        private int count;
+
+        private long minTime;
+
+        private long maxTime;
+
+        private int levels;
+
+        private final long[] pids = new long[IndexedLogcatSink.BLOOM_LONGS];
+
+        private final long[] tags = new long[IndexedLogcatSink.BLOOM_LONGS];
+    }
+
+    private final class Matcher {
+
+        private final LogcatQuery query;
+
+        private final int tagHash;
+
+        private final List<Pattern> processPatterns;
+
+        // pids which had a name matching the process of the query at some time
+        private final List<Integer> processPids = new ArrayList<Integer>();
+
+        private Matcher(LogcatQuery query) {
+            this.query = query;
+            this.tagHash = query.getTag() == null ? 0 : IndexedLogcatSink.tagHash(query.getTag());
+            this.processPatterns = query.getProcess() == null ? null : LogcatFilter.compile(query.getProcess());
+
+            if (processPatterns != null) {
+                for (Map.Entry<Integer, TreeMap<Long, String>> process : processes.entrySet()) {
+                    for (String name : process.getValue().values()) {
+                        if (matchesProcess(name)) {
+                            processPids.add(process.getKey());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean mayMatch(Block block) {
+            if (block.maxTime < query.getFrom() || block.minTime > query.getTo()) {
+                return false;
+            }
+            if (query.getLevelMask() != 0 && (block.levels & query.getLevelMask()) == 0) {
+                return false;
+            }
+            if (query.getPid() != -1 && !IndexedLogcatSink.mayContain(block.pids, IndexedLogcatSink.pidHash(query.getPid()))) {
+                return false;
+            }
+            if (query.getTag() != null && !IndexedLogcatSink.mayContain(block.tags, tagHash)) {
+                return false;
+            }
+            if (processPatterns != null) {
+                for (Integer pid : processPids) {
+                    if (IndexedLogcatSink.mayContain(block.pids, IndexedLogcatSink.pidHash(pid))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private boolean matches(LogcatRecord record) {
+            if (record.getTimestamp() < query.getFrom() || record.getTimestamp() > query.getTo()) {
+                return false;
+            }
+            if (query.getLevelMask() != 0 && (LogcatQuery.levelBit(record.getLevel()) & query.getLevelMask()) == 0) {
+                return false;
+            }
+            if (query.getPid() != -1 && record.getPid() != query.getPid()) {
+                return false;
+            }
+            if (query.getTag() != null && !record.tagEquals(query.getTag())) {
+                return false;
+            }
+            if (processPatterns != null) {
+                String name = getProcessName(record.getPid(), record.getTimestamp());
+                return name != null && matchesProcess(name);
+            }
+            return true;
+        }
+
+        private boolean matchesProcess(String name) {
+            for (Pattern pattern : processPatterns) {
+                if (pattern.matcher(name).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Prints records of a logcat store written when {@code logType} is {@code indexed}, no device is needed.<br>
+ * <br>
+ * Usage: {@code LogcatStoreMain <directory> [-l level] [-m minLevel] [-p pid] [-t tag] [-P process] [-f from] [-T to]
+ * [-n limit]}, times are either milliseconds since the epoch or {@code yyyy-MM-dd'T'HH:mm:ss}.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatStoreMain {
+
+    private static final String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            usage();
+            System.exit(1);
+        }
+
+        LogcatQuery query = new LogcatQuery();
+
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                String option = args[i];
+                String value = args[i + 1];
+
+                if ("-l".equals(option)) {
+                    query.level(value.charAt(0));
+                } else if ("-m".equals(option)) {
+                    query.minLevel(value.charAt(0));
+                } else if ("-p".equals(option)) {
+                    query.pid(Integer.parseInt(value));
+                } else if ("-t".equals(option)) {
+                    query.tag(value);
+                } else if ("-P".equals(option)) {
+                    query.process(value);
+                } else if ("-f".equals(option)) {
+                    query.from(parseTime(value));
+                } else if ("-T".equals(option)) {
+                    query.to(parseTime(value));
+                } else if ("-n".equals(option)) {
+                    query.limit(Integer.parseInt(value));
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            System.exit(1);
+        }
+
+        final PrintStream out = System.out;
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        final StringBuilder sb = new StringBuilder();
+
+        LogcatStore.open(new File(args[0])).query(query, new LogcatSink() {
+
+            @Override
+            public void write(LogcatRecord record) {
+                sb.setLength(0);
+                sb.append(format.format(new Date(record.getTimestamp()))).append(' ');
+                out.println(record.appendTo(sb));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        out.flush();
+    }
+
+    static long parseTime(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            try {
+                return new SimpleDateFormat(TIME_FORMAT).parse(value).getTime();
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Time " + value + " is neither milliseconds nor " + TIME_FORMAT);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: " + LogcatStoreMain.class.getName()
+            + " <directory> [-l level] [-m minLevel] [-p pid] [-t tag] [-P process] [-f from] [-T to] [-n limit]");
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps logcat records of the currently running test in memory.<br>
+ * <br>
+ * The buffer is cleared by {@link #reset()} when a test starts, records written since then form the segment of that
+ * test which can be persisted by {@link #writeTo(LogcatSink)} when the test fails. The memory the segment occupies is
+ * bounded, the oldest records are evicted when the bound is reached. Evicted records are recycled for new ones so a
+ * long running suite does not produce garbage per record.<br>
+ * <br>
+ * Records are passed to the delegate sink, if any, as well, so logcat can be kept in memory only or in memory and in
+ * the output selected by {@code logType} at the same time.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LogcatTestBuffer implements LogcatSink {
+
+    private final long capacityInBytes;
+
+    private final LogcatSink delegate;
+
+    private final ArrayDeque<LogcatRecord> records = new ArrayDeque<LogcatRecord>();
+
+    private final ArrayDeque<LogcatRecord> pool = new ArrayDeque<LogcatRecord>();
+
+    private long size;
+
+    private long evicted;
+
+    /**
+     *
+     * @param capacityInBytes maximal memory records of one test can occupy
+     * @param delegate sink all records are passed to as well, can be null
+     */
+    public LogcatTestBuffer(long capacityInBytes, LogcatSink delegate) {
+        if (capacityInBytes <= 0) {
+            throw new IllegalArgumentException("Capacity of logcat test buffer has to be positive.");
+        }
+        this.capacityInBytes = capacityInBytes;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        synchronized (this) {
+            LogcatRecord copy = pool.isEmpty() ? new LogcatRecord() : pool.poll();
+            copy.copyFrom(record);
+            records.add(copy);
+            size += copy.getSizeEstimate();
+
+            while (size > capacityInBytes && records.size() > 1) {
+                LogcatRecord oldest = records.poll();
+                size -= oldest.getSizeEstimate();
+                evicted++;
+                pool.add(oldest.clear());
+            }
+        }
+
+        if (delegate != null) {
+            delegate.write(record);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (delegate != null) {
+            delegate.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            records.clear();
+            pool.clear();
+            size = 0;
+        }
+
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Starts a new segment, records of the previous one are discarded.
+     */
+    public synchronized void reset() {
+        while (!records.isEmpty()) {
+            pool.add(records.poll().clear());
+        }
+        size = 0;
+        evicted = 0;
+    }
+
+    /**
+     * Writes records of the current segment to {@code sink}. When some records of the segment were evicted, the output
+     * starts with a line saying how many. The sink is not closed.
+     *
+     * @param sink sink to write records to
+     * @return number of written records
+     * @throws IOException if writing fails
+     */
+    public int writeTo(LogcatSink sink) throws IOException {
+        List<LogcatRecord> segment;
+        long evictedRecords;
+
+        synchronized (this) {
+            segment = new ArrayList<LogcatRecord>(records.size());
+            for (LogcatRecord record : records) {
+                segment.add(new LogcatRecord().copyFrom(record));
+            }
+            evictedRecords = evicted;
+        }
+
+        if (evictedRecords != 0) {
+            sink.write(new LogcatRecord().setLine("--------- droidium evicted " + evictedRecords
+                + " earlier logcat lines of this test, logcat test buffer is full"));
+        }
+
+        for (LogcatRecord record : segment) {
+            sink.write(record);
+        }
+
+        return segment.size();
+    }
+
+    public synchronized int getRecords() {
+        return records.size();
+    }
+
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+}
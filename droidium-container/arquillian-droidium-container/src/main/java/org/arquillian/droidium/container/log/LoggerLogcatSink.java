@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes logcat records to a {@link Logger}, the logging level is derived from the priority of a record.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class LoggerLogcatSink implements LogcatSink {
+
+    private final Logger logger;
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    public LoggerLogcatSink(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        Level level = toLevel(record.getLevel());
+        if (logger.isLoggable(level)) {
+            buffer.setLength(0);
+            logger.log(level, record.appendTo(buffer).toString());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    static Level toLevel(char level) {
+        switch (level) {
+            case 'F':
+            case 'E':
+                return Level.SEVERE;
+            case 'W':
+                return Level.WARNING;
+            case 'I':
+                return Level.INFO;
+            case 'D':
+                return Level.CONFIG;
+            case 'V':
+                return Level.FINE;
+            default:
+                return Level.FINER;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+
+/**
+ * Resolves names of processes running on an Android device by their pids.<br>
+ * <br>
+ * Names are cached, every refresh drops names of processes which are not running anymore since their pids can be reused.
+ * When a pid is not known, the pid is remembered as unknown for a while and the process list is
+ * refreshed asynchronously by {@code ps} executed over the existing ADB connection, at most once per refresh interval,
+ * so processes spawned in a quick succession do not cause one refresh each. Names of started processes are also picked
+ * from {@code ActivityManager} records flowing through logcat for free.<br>
+ * <br>
+ * Every finished refresh increments {@link #getGeneration()} so callers can memoize their decisions per pid and
+ * reconsider them only when something could have changed.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class ProcessNameResolver {
+
+    private static final Logger logger = Logger.getLogger(ProcessNameResolver.class.getName());
+
+    private static final String ACTIVITY_MANAGER = "ActivityManager";
+
+    private static final String START_PROC = "Start proc ";
+
+    private final AndroidDevice device;
+
+    private final long refreshIntervalInMillis;
+
+    private final long negativeTtlInMillis;
+
+    private final Map<Integer, String> names = new ConcurrentHashMap<Integer, String>();
+
+    private final Map<Integer, Long> unknown = new ConcurrentHashMap<Integer, Long>();
+
+    // pid -> time its name was learned from logcat, such names are not pruned by a refresh which started earlier
+    private final Map<Integer, Long> hinted = new ConcurrentHashMap<Integer, Long>();
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastRefresh;
+
+    // toolbox ps of older Androids lists all processes by default, toybox ps of newer ones needs -A
+    private volatile String psCommand = "ps -A";
+
+    /**
+     *
+     * @param device device to resolve processes of
+     * @param refreshIntervalInMillis minimal time between two refreshes of the process list
+     * @param negativeTtlInMillis time a pid which was not found is not looked up again
+     */
+    public ProcessNameResolver(AndroidDevice device, long refreshIntervalInMillis, long negativeTtlInMillis) {
+        this.device = device;
+        this.refreshIntervalInMillis = refreshIntervalInMillis;
+        this.negativeTtlInMillis = negativeTtlInMillis;
+        this.lastRefresh = System.currentTimeMillis() - refreshIntervalInMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "droidium-process-resolver-" + ProcessNameResolver.this.device.getSerialNumber());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the name of a process immediately, never blocks.
+     *
+     * @param pid pid of a process
+     * @return name of the process or null if it is not known yet
+     */
+    public String resolve(int pid) {
+        Integer key = Integer.valueOf(pid);
+
+        String name = names.get(key);
+        if (name != null) {
+            return name;
+        }
+
+        long now = System.currentTimeMillis();
+        Long since = unknown.get(key);
+        if (since != null && now - since.longValue() < negativeTtlInMillis) {
+            return null;
+        }
+
+        unknown.put(key, Long.valueOf(now));
+        scheduleRefresh(now);
+
+        return null;
+    }
+
+    /**
+     *
+     * @param pid pid of a process
+     * @return true if the name of the process is known
+     */
+    public boolean isKnown(int pid) {
+        return names.containsKey(Integer.valueOf(pid));
+    }
+
+    /**
+     * Learns the name of a process from {@code ActivityManager: Start proc ...} record.
+     *
+     * @param record logcat record
+     */
+    public void hint(LogcatRecord record) {
+        if (!record.tagEquals(ACTIVITY_MANAGER)) {
+            return;
+        }
+
+        String message = record.getMessage();
+        if (message == null || !message.startsWith(START_PROC)) {
+            return;
+        }
+
+        int pid = -1;
+        String name = null;
+
+        // Start proc 1234:com.example.app/u0a55 for activity ...
+        int colon = message.indexOf(':', START_PROC.length());
+        if (colon != -1) {
+            pid = parsePid(message, START_PROC.length(), colon);
+            if (pid != -1) {
+                int end = message.indexOf('/', colon);
+                name = message.substring(colon + 1, end == -1 ? message.length() : end);
+            }
+        }
+
+        // Start proc com.example.app for activity ...: pid=1234 uid=10055 gids={...}
+        if (pid == -1) {
+            int space = message.indexOf(' ', START_PROC.length());
+            int pidIndex = message.indexOf("pid=");
+            if (space != -1 && pidIndex != -1) {
+                int end = message.indexOf(' ', pidIndex);
+                pid = parsePid(message, pidIndex + 4, end == -1 ? message.length() : end);
+                name = message.substring(START_PROC.length(), space);
+            }
+        }
+
+        if (pid != -1 && name != null && name.length() != 0) {
+            Integer key = Integer.valueOf(pid);
+            hinted.put(key, Long.valueOf(System.currentTimeMillis()));
+            if (!name.equals(names.put(key, name))) {
+                unknown.remove(key);
+                generation.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     *
+     * @return number which changes every time names of processes may have changed
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void scheduleRefresh(long now) {
+        if (executor.isShutdown() || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        long delay = Math.max(0, lastRefresh + refreshIntervalInMillis - now);
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } finally {
+                    lastRefresh = System.currentTimeMillis();
+                    refreshScheduled.set(false);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh() {
+        long started = System.currentTimeMillis();
+
+        List<String> lines = ps(psCommand);
+
+        if (lines.size() <= 1 && !"ps".equals(psCommand)) {
+            psCommand = "ps";
+            lines = ps(psCommand);
+        }
+
+        Map<Integer, String> processes = parse(lines);
+
+        // pids are reused so names of processes which are gone are dropped, unless the listing failed altogether
+        if (!processes.isEmpty()) {
+            for (Iterator<Integer> iterator = names.keySet().iterator(); iterator.hasNext();) {
+                Integer pid = iterator.next();
+                Long hintedAt = hinted.get(pid);
+                if (!processes.containsKey(pid) && (hintedAt == null || hintedAt.longValue() < started)) {
+                    iterator.remove();
+                }
+            }
+            for (Iterator<Long> iterator = hinted.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().longValue() < started) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, String> process : processes.entrySet()) {
+            names.put(process.getKey(), process.getValue());
+            unknown.remove(process.getKey());
+        }
+
+        refreshes.incrementAndGet();
+        generation.incrementAndGet();
+    }
+
+    private List<String> ps(String command) {
+        final List<String> lines = new ArrayList<String>();
+
+        try {
+            device.executeShellCommand(command, new AndroidDeviceOutputReciever() {
+                @Override
+                public void processNewLines(String[] newLines) {
+                    for (String line : newLines) {
+                        lines.add(line);
+                    }
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+        } catch (AndroidExecutionException ex) {
+            logger.log(Level.WARNING, "Unable to list processes of " + device.getSerialNumber(), ex);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Parses the output of {@code ps}, the pid is taken from the column named {@code PID} and the name from the last one.
+     *
+     * @param lines lines of {@code ps} output including the header
+     * @return pid to process name map
+     */
+    static Map<Integer, String> parse(List<String> lines) {
+        Map<Integer, String> processes = new HashMap<Integer, String>();
+
+        int pidColumn = -1;
+
+        for (String line : lines) {
+            String[] columns = line.trim().split("\\s+");
+
+            if (pidColumn == -1) {
+                for (int i = 0; i < columns.length; i++) {
+                    if ("PID".equals(columns[i])) {
+                        pidColumn = i;
+                        break;
+                    }
+                }
+                continue;
+            }
+
+            if (columns.length <= pidColumn + 1) {
+                continue;
+            }
+
+            int pid = parsePid(columns[pidColumn], 0, columns[pidColumn].length());
+            if (pid != -1) {
+                processes.put(Integer.valueOf(pid), columns[columns.length - 1]);
+            }
+        }
+
+        return processes;
+    }
+
+    private static int parsePid(String value, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        int pid = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Adapts any {@link Writer} to {@link LogcatSink}, every record is written by one {@link Writer#write(String)} call
+ * without a line separator.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+public class WriterLogcatSink implements LogcatSink {
+
+    private final Writer writer;
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    public WriterLogcatSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(LogcatRecord record) throws IOException {
+        buffer.setLength(0);
+        writer.write(record.appendTo(buffer).toString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.task;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.configuration.AndroidSDK;
+import org.arquillian.droidium.container.utils.DroidiumFileUtils;
+import org.arquillian.droidium.container.utils.ZipAligner;
+import org.arquillian.spacelift.task.Task;
+
+/**
+ * Aligns uncompressed entries of APKs by {@link ZipAligner}. APK which is aligned already is returned as it is, otherwise
+ * an aligned copy is returned. Alignment has to be done after the APK is signed since {@code jarsigner} does not keep it.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class APKAlignerTask extends Task<File, File> {
+
+    private static final Logger logger = Logger.getLogger(APKAlignerTask.class.getName());
+
+    private AndroidSDK androidSDK;
+
+    public APKAlignerTask sdk(AndroidSDK androidSDK) {
+        this.androidSDK = androidSDK;
+        return this;
+    }
+
+    @Override
+    protected File process(File toAlign) throws Exception {
+
+        if (toAlign == null || !toAlign.exists()) {
+            throw new IllegalStateException("File to be aligned is either null or it does not exists");
+        }
+
+        List<String> misaligned = ZipAligner.verify(toAlign);
+
+        if (misaligned.isEmpty()) {
+            return toAlign;
+        }
+
+        logger.log(Level.FINE, "{0} entries of {1} are not aligned, e.g. {2}", new Object[] { misaligned.size(),
+            toAlign.getAbsolutePath(), misaligned.get(0) });
+
+        File aligned = new File(androidSDK.getPlatformConfiguration().getTmpDir(), DroidiumFileUtils.getRandomAPKFileName());
+
+        ZipAligner.align(toAlign, aligned);
+
+        return aligned;
+    }
+}
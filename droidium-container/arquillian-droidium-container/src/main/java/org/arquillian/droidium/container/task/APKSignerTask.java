@@ -27,7 +27,7 @@ import org.arquillian.spacelift.task.Task;
 import org.arquillian.spacelift.task.os.CommandTool;
 
 /**
- * Signs APKs.
+ * Signs APKs. Signed APKs are aligned by {@link APKAlignerTask}.
  *
  * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
  *
@@ -66,6 +66,6 @@ public class APKSignerTask extends Task<File, File> {
             .addEnvironment(androidSDK.getPlatformConfiguration().getAndroidSystemEnvironmentProperties())
             .command(jarSignerCommand).execute().await();
 
-        return signed;
+        return Spacelift.task(signed, APKAlignerTask.class).sdk(androidSDK).execute().await();
     }
 }
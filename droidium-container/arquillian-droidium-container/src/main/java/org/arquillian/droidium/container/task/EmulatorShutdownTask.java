@@ -16,26 +16,22 @@
  */
 package org.arquillian.droidium.container.task;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.api.AndroidExecutionException;
 import org.arquillian.droidium.container.impl.DeviceDiscovery;
+import org.arquillian.droidium.container.impl.EmulatorConsoleClient;
 import org.arquillian.spacelift.execution.CountDownWatch;
-import org.arquillian.spacelift.execution.ExecutionCondition;
-import org.arquillian.spacelift.execution.ExecutionException;
 import org.arquillian.spacelift.task.Task;
 
 import com.android.ddmlib.AndroidDebugBridge;
 
 /**
- * Brings an emulator down.
+ * Brings an emulator down.<br>
+ * <br>
+ * Sends {@code kill} command via {@link EmulatorConsoleClient} and blocks until ADB bus reports the emulator as
+ * disconnected or until the countdown expires.
  *
  * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
  *
@@ -55,99 +51,26 @@ public class EmulatorShutdownTask extends Task<AndroidDevice, Boolean> {
         final DeviceDiscovery deviceDiscovery = new DeviceDiscovery();
         deviceDiscovery.setDevice(device);
 
+        // listener has to be registered before the kill command is sent, otherwise disconnection could be missed
         AndroidDebugBridge.addDeviceChangeListener(deviceDiscovery);
 
         try {
-            getExecutionService().execute(sendEmulatorCommand(extractPortFromDevice(device), "kill")).awaitAtMost(10, TimeUnit.SECONDS);
-        } catch (ExecutionException ex) {
-            throw new AndroidExecutionException(String.format("Sending of kill command to emulator {0} was not completed "
-                + "successfully in 10 seconds.", device.getSerialNumber()), ex);
-        }
-
-        boolean shuttedDown = false;
-
-        try {
-            shuttedDown = getExecutionService().execute(new Callable<Boolean>() {
-
-                @Override
-                public Boolean call() throws Exception {
-                    return deviceDiscovery.isOffline();
-                }
-            }).reexecuteEvery(1, TimeUnit.SECONDS).until(countdown, new ExecutionCondition<Boolean>() {
-
-                @Override
-                public boolean satisfiedBy(Boolean offline) throws ExecutionException {
-                    return offline;
-                }
-            });
-
-        } catch (ExecutionException ex) {
-            throw new AndroidExecutionException(String.format("Unable to get the emulator {0} down", device.getSerialNumber()), ex);
-        }
-
-        AndroidDebugBridge.removeDeviceChangeListener(deviceDiscovery);
-
-        return shuttedDown;
-
-    }
-
-    /**
-     * This method extracts a port number from the serial number of a device. It assumes that the device name is of format
-     * [xxxx-nnnn] where nnnn is the port number.
-     *
-     * @param device The device to extract the port number from.
-     * @return Returns the port number of the device
-     */
-    private int extractPortFromDevice(AndroidDevice device) {
-        String portStr = device.getSerialNumber().substring(device.getSerialNumber().lastIndexOf("-") + 1);
-        if (portStr != null && portStr.length() > 0) {
             try {
-                return Integer.parseInt(portStr);
-            } catch (NumberFormatException e) {
-                return -1;
+                new EmulatorConsoleClient(device).kill();
+            } catch (AndroidExecutionException ex) {
+                throw new AndroidExecutionException(ex, "Sending of kill command to emulator {0} was not completed successfully.",
+                    device.getSerialNumber());
             }
-        }
-        // If the port is not available then return -1
-        return -1;
-    }
-
-    private Callable<Boolean> sendEmulatorCommand(final int port, final String command) {
-        return new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws IOException {
-                Socket socket = null;
-                BufferedReader in = null;
-                PrintWriter out = null;
-
-                try {
-                    socket = new Socket("127.0.0.1", port);
-                    out = new PrintWriter(socket.getOutputStream(), true);
-                    in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
-                    String telnetOutputString = null;
-
-                    while ((telnetOutputString = in.readLine()) != null) {
-                        if (telnetOutputString.equals("OK")) {
-                            break;
-                        }
-                    }
-
-                    out.write(command);
-                    out.write("\n");
-                    out.flush();
-                } finally {
-                    try {
-                        out.close();
-                        in.close();
-                        socket.close();
-                    } catch (Exception e) {
-                        // ignore
-                    }
-                }
-
-                return true;
+            if (!deviceDiscovery.awaitOffline(Math.max(countdown.timeLeft(), 0), countdown.getTimeUnit())) {
+                throw new AndroidExecutionException("Unable to get the emulator {0} down in {1} {2}.", device.getSerialNumber(),
+                    String.valueOf(countdown.timeout()), countdown.getTimeUnit().toString().toLowerCase());
             }
+        } finally {
+            AndroidDebugBridge.removeDeviceChangeListener(deviceDiscovery);
+        }
 
-        };
+        return true;
     }
+
 }
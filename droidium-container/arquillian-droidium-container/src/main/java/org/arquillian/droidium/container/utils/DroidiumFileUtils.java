@@ -17,9 +17,20 @@
 package org.arquillian.droidium.container.utils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.arquillian.droidium.container.api.FileType;
@@ -145,4 +156,101 @@ public class DroidiumFileUtils {
         return toFile;
     }
 
+    /**
+     * Computes fingerprint of the content of a ZIP file (e.g. an APK). Only names, sizes and CRCs of the entries taken from
+     * the central directory are hashed so the fingerprint does not change when the same archive is exported again with
+     * different timestamps and the entries do not have to be inflated.
+     *
+     * @param zipFile ZIP file to compute the fingerprint of
+     * @return hex encoded SHA-1 of the content listing of {@code zipFile}
+     * @throws RuntimeException if {@code zipFile} can not be read
+     */
+    public static String getContentFingerprint(File zipFile) {
+        Validate.notNull(zipFile, "File to compute the fingerprint of can not be a null object!");
+
+        ZipFile zip = null;
+
+        try {
+            zip = new ZipFile(zipFile);
+
+            List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            Enumeration<? extends ZipEntry> enumeration = zip.entries();
+            while (enumeration.hasMoreElements()) {
+                entries.add(enumeration.nextElement());
+            }
+
+            Collections.sort(entries, new Comparator<ZipEntry>() {
+                @Override
+                public int compare(ZipEntry first, ZipEntry second) {
+                    return first.getName().compareTo(second.getName());
+                }
+            });
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            for (ZipEntry entry : entries) {
+                digest.update(entry.getName().getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(Long.toHexString(entry.getSize()).getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(Long.toHexString(entry.getCrc()).getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to compute the fingerprint of " + zipFile.getAbsolutePath(), ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Unable to compute the fingerprint of " + zipFile.getAbsolutePath(), ex);
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes digest of the whole content of a file byte by byte, contrary to {@link #getContentFingerprint(File)}.
+     *
+     * @param file file to compute the digest of
+     * @param algorithm digest algorithm, e.g. {@code SHA-256} or {@code MD5}
+     * @return hex encoded digest of {@code file}
+     * @throws RuntimeException if {@code file} can not be read or {@code algorithm} is not supported
+     */
+    public static String getDigest(File file, String algorithm) {
+        Validate.notNull(file, "File to compute the digest of can not be a null object!");
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance(algorithm);
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to compute " + algorithm + " of " + file.getAbsolutePath(), ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Unable to compute " + algorithm + " of " + file.getAbsolutePath(), ex);
+        }
+    }
+
 }
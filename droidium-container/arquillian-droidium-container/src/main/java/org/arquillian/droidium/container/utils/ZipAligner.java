@@ -0,0 +1,376 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+import org.jboss.arquillian.container.spi.client.deployment.Validate;
+
+/**
+ * Aligns uncompressed entries of a ZIP file (e.g. an APK) the way {@code zipalign -p 4} does. Data of every stored entry is
+ * made to start at an offset which is a multiple of 4 bytes, data of stored native libraries ({@code .so} files) at a
+ * multiple of the page size, so the platform can map resources and libraries right from the APK instead of copying them.
+ * Entries are padded by zeros appended to the extra field of their local headers, their data are copied untouched so a
+ * JAR signature stays valid.<br>
+ * <br>
+ * Entries are copied in the order they are stored in the source file, only the central directory is held in memory. ZIP64
+ * archives are not supported.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ZipAligner {
+
+    public static final int ALIGNMENT = 4;
+
+    public static final int PAGE_ALIGNMENT = 4096;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+
+    private static final int STORED = 0;
+
+    private static final int MAX_EXTRA_LENGTH = 0xffff;
+
+    private ZipAligner() {
+    }
+
+    /**
+     * Writes aligned copy of {@code source} to {@code target}.
+     *
+     * @param source ZIP file to align
+     * @param target file to write aligned ZIP file to, it can not be the same file as {@code source}
+     * @throws IOException if {@code source} can not be read or {@code target} written
+     * @throws ZipException if {@code source} is not a valid ZIP file
+     */
+    public static void align(File source, File target) throws IOException {
+        Validate.notNull(source, "ZIP file to align can not be a null object!");
+        Validate.notNull(target, "File to write aligned ZIP file to can not be a null object!");
+
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            throw new IllegalArgumentException("ZIP file " + source.getAbsolutePath() + " can not be aligned in place.");
+        }
+
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+
+        try {
+            CentralDirectory directory = readCentralDirectory(in);
+
+            List<Entry> inFileOrder = new ArrayList<Entry>(directory.entries);
+            Collections.sort(inFileOrder, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry first, Entry second) {
+                    return first.localHeaderOffset < second.localHeaderOffset ? -1
+                        : first.localHeaderOffset == second.localHeaderOffset ? 0 : 1;
+                }
+            });
+
+            CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(target), 64 * 1024));
+
+            try {
+                Map<Long, Long> offsets = new HashMap<Long, Long>();
+                byte[] buffer = new byte[64 * 1024];
+
+                for (Entry entry : inFileOrder) {
+                    offsets.put(entry.localHeaderOffset, out.count);
+                    copyEntry(in, out, entry, buffer);
+                }
+
+                long centralDirectoryOffset = out.count;
+
+                for (Entry entry : directory.entries) {
+                    writeInt(entry.centralHeader, 42, offsets.get(entry.localHeaderOffset));
+                    out.write(entry.centralHeader);
+                }
+
+                byte[] end = directory.endOfCentralDirectory;
+                writeInt(end, 12, out.count - centralDirectoryOffset);
+                writeInt(end, 16, centralDirectoryOffset);
+                out.write(end);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks alignment of stored entries of {@code zip}.
+     *
+     * @param zip ZIP file to check
+     * @return names of stored entries which are not aligned, an empty list when {@code zip} is aligned
+     * @throws IOException if {@code zip} can not be read
+     * @throws ZipException if {@code zip} is not a valid ZIP file
+     */
+    public static List<String> verify(File zip) throws IOException {
+        Validate.notNull(zip, "ZIP file to verify can not be a null object!");
+
+        List<String> misaligned = new ArrayList<String>();
+
+        RandomAccessFile in = new RandomAccessFile(zip, "r");
+
+        try {
+            for (Entry entry : readCentralDirectory(in).entries) {
+                if (entry.method != STORED) {
+                    continue;
+                }
+
+                byte[] header = new byte[LOCAL_HEADER_LENGTH];
+                in.seek(entry.localHeaderOffset);
+                in.readFully(header);
+                checkSignature(header, 0, LOCAL_HEADER_SIGNATURE, entry.name);
+
+                long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_LENGTH + readShort(header, 26) + readShort(header, 28);
+
+                if (dataOffset % getAlignment(entry) != 0) {
+                    misaligned.add(entry.name);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return misaligned;
+    }
+
+    private static void copyEntry(RandomAccessFile in, CountingOutputStream out, Entry entry, byte[] buffer) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_LENGTH];
+        in.seek(entry.localHeaderOffset);
+        in.readFully(header);
+        checkSignature(header, 0, LOCAL_HEADER_SIGNATURE, entry.name);
+
+        int nameLength = readShort(header, 26);
+        int extraLength = readShort(header, 28);
+
+        byte[] nameAndExtra = new byte[nameLength + extraLength];
+        in.readFully(nameAndExtra);
+
+        int padding = 0;
+
+        if (entry.method == STORED) {
+            int alignment = getAlignment(entry);
+            long dataOffset = out.count + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+            padding = (int) ((alignment - dataOffset % alignment) % alignment);
+
+            if (extraLength + padding > MAX_EXTRA_LENGTH) {
+                throw new ZipException("Entry " + entry.name + " can not be aligned, its extra field is too long.");
+            }
+        }
+
+        writeShort(header, 28, extraLength + padding);
+        out.write(header);
+        out.write(nameAndExtra);
+        out.write(new byte[padding]);
+
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new ZipException("Data of entry " + entry.name + " are truncated.");
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+
+        if ((readShort(header, 6) & DATA_DESCRIPTOR_FLAG) != 0) {
+            // descriptor may or may not start with its signature
+            byte[] descriptor = new byte[16];
+            in.readFully(descriptor, 0, 12);
+            if (readInt(descriptor, 0) == DATA_DESCRIPTOR_SIGNATURE) {
+                in.readFully(descriptor, 12, 4);
+                out.write(descriptor, 0, 16);
+            } else {
+                out.write(descriptor, 0, 12);
+            }
+        }
+    }
+
+    private static CentralDirectory readCentralDirectory(RandomAccessFile in) throws IOException {
+        long length = in.length();
+
+        if (length < END_OF_CENTRAL_DIRECTORY_LENGTH) {
+            throw new ZipException("File is too short to be a ZIP file.");
+        }
+
+        // end of central directory is followed by a comment of at most 64 KiB
+        int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xffff);
+        byte[] tail = new byte[tailLength];
+        in.seek(length - tailLength);
+        in.readFully(tail);
+
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (readInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                && i + END_OF_CENTRAL_DIRECTORY_LENGTH + readShort(tail, i + 20) == tailLength) {
+                end = i;
+                break;
+            }
+        }
+
+        if (end == -1) {
+            throw new ZipException("End of central directory was not found.");
+        }
+
+        CentralDirectory directory = new CentralDirectory();
+        directory.endOfCentralDirectory = new byte[tailLength - end];
+        System.arraycopy(tail, end, directory.endOfCentralDirectory, 0, directory.endOfCentralDirectory.length);
+
+        int entries = readShort(tail, end + 10);
+        long size = readInt(tail, end + 12) & 0xffffffffL;
+        long offset = readInt(tail, end + 16) & 0xffffffffL;
+
+        if (entries == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+            throw new ZipException("ZIP64 archives are not supported.");
+        }
+
+        byte[] central = new byte[(int) size];
+        in.seek(offset);
+        in.readFully(central);
+
+        int position = 0;
+        for (int i = 0; i < entries; i++) {
+            checkSignature(central, position, CENTRAL_HEADER_SIGNATURE, "#" + i);
+
+            int nameLength = readShort(central, position + 28);
+            int headerLength = CENTRAL_HEADER_LENGTH + nameLength + readShort(central, position + 30)
+                + readShort(central, position + 32);
+
+            Entry entry = new Entry();
+            entry.centralHeader = new byte[headerLength];
+            System.arraycopy(central, position, entry.centralHeader, 0, headerLength);
+            entry.name = new String(central, position + CENTRAL_HEADER_LENGTH, nameLength, "UTF-8");
+            entry.method = readShort(central, position + 10);
+            entry.compressedSize = readInt(central, position + 20) & 0xffffffffL;
+            entry.localHeaderOffset = readInt(central, position + 42) & 0xffffffffL;
+
+            directory.entries.add(entry);
+            position += headerLength;
+        }
+
+        return directory;
+    }
+
+    private static int getAlignment(Entry entry) {
+        return entry.name.endsWith(".so") ? PAGE_ALIGNMENT : ALIGNMENT;
+    }
+
+    private static void checkSignature(byte[] bytes, int offset, int signature, String entry) throws ZipException {
+        if (readInt(bytes, offset) != signature) {
+            throw new ZipException("Invalid header of entry " + entry + ".");
+        }
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+            | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, long value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static final class Entry {
+
+        private String name;
+
+        private int method;
+
+        private long compressedSize;
+
+        private long localHeaderOffset;
+
+        private byte[] centralHeader;
+    }
+
+    private static final class CentralDirectory {
+
+        private final List<Entry> entries = new ArrayList<Entry>();
+
+        private byte[] endOfCentralDirectory;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final OutputStream delegate;
+
+        private long count;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.spi.AndroidDeployment;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class AndroidApplicationStateResetterTestCase {
+
+    private static final String PACKAGE = "org.arquillian.droidium.test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AndroidDevice device;
+
+    @Before
+    public void setup() {
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("0123456789");
+        when(device.isEmulator()).thenReturn(false);
+        when(device.isPackageInstalled(PACKAGE)).thenReturn(true);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((AndroidDeviceOutputReciever) invocation.getArguments()[1]).processNewLines(new String[] { "Success" });
+                return null;
+            }
+        }).when(device).executeShellCommand(anyString(), any(AndroidDeviceOutputReciever.class));
+    }
+
+    @Test
+    public void reinstallStrategyNeverResetsTest() throws IOException {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.REINSTALL);
+        AndroidDeployment deployment = deployment("content");
+
+        resetter.installed(deployment);
+
+        Assert.assertFalse(resetter.reset(deployment));
+        Assert.assertFalse(resetter.keepInstalled(deployment));
+    }
+
+    @Test
+    public void snapshotStrategyFallsBackToClearOnRealDeviceTest() {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.SNAPSHOT);
+
+        Assert.assertEquals(StateResetStrategy.CLEAR, resetter.getStrategy());
+    }
+
+    @Test
+    public void clearStrategyResetsInstalledDeploymentTest() throws IOException {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.CLEAR);
+        AndroidDeployment deployment = deployment("content");
+
+        Assert.assertFalse(resetter.reset(deployment));
+
+        resetter.installed(deployment);
+
+        Assert.assertTrue(resetter.keepInstalled(deployment));
+        Assert.assertTrue(resetter.reset(deployment("content")));
+        verify(device, times(1)).executeShellCommand(eq("pm clear " + PACKAGE), any(AndroidDeviceOutputReciever.class));
+        Assert.assertTrue(resetter.hasTimings());
+    }
+
+    @Test
+    public void changedDeploymentIsInstalledAgainTest() throws IOException {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.CLEAR);
+
+        resetter.installed(deployment("content"));
+
+        Assert.assertFalse(resetter.reset(deployment("changed content")));
+        verify(device, never()).executeShellCommand(anyString(), any(AndroidDeviceOutputReciever.class));
+    }
+
+    @Test
+    public void keptDeploymentsAreUninstalledTest() throws IOException {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.CLEAR);
+
+        resetter.installed(deployment("content"));
+        resetter.uninstallKept();
+        resetter.cleanup();
+
+        verify(device, times(1)).uninstallPackage(PACKAGE);
+    }
+
+    @Test
+    public void reinstallStrategyDoesNotUninstallTest() throws IOException {
+        AndroidApplicationStateResetter resetter = new AndroidApplicationStateResetter(device, StateResetStrategy.REINSTALL);
+
+        resetter.installed(deployment("content"));
+        resetter.uninstallKept();
+
+        verify(device, never()).uninstallPackage(anyString());
+    }
+
+    private AndroidDeployment deployment(String content) throws IOException {
+        File apk = temporaryFolder.newFile();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk));
+        zip.putNextEntry(new ZipEntry("classes.dex"));
+        zip.write(content.getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+
+        return new AndroidDeployment()
+            .setDeploymentName("deployment")
+            .setApplicationBasePackage(PACKAGE)
+            .setDeployApk(apk);
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceRegister;
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+import org.arquillian.droidium.container.spi.event.AndroidContainerStop;
+import org.arquillian.droidium.container.spi.event.AndroidEmulatorShuttedDown;
+import org.arquillian.droidium.container.task.EmulatorShutdownTask;
+import org.arquillian.droidium.platform.impl.DroidiumPlatformConfiguration;
+import org.arquillian.spacelift.Spacelift;
+import org.arquillian.spacelift.task.NoArgConstructorTaskFactory;
+import org.arquillian.spacelift.task.TaskFactory;
+import org.jboss.arquillian.container.spi.context.ContainerContext;
+import org.jboss.arquillian.container.spi.context.annotation.ContainerScoped;
+import org.jboss.arquillian.container.spi.event.StopClassContainers;
+import org.jboss.arquillian.container.spi.event.StopSuiteContainers;
+import org.jboss.arquillian.container.test.AbstractContainerTestBase;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.ApplicationScoped;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link AndroidEmulatorShutdown} stopping two emulators of suite scoped containers while two test classes run.
+ * Kill command is recorded by a fake {@link EmulatorShutdownTask} instead of being sent to an emulator.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class AndroidEmulatorShutdownTestCase extends AbstractContainerTestBase {
+
+    private static final List<String> CONTAINERS = Arrays.asList("android1", "android2");
+
+    private static final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    private static volatile CountDownLatch killed;
+
+    private static volatile boolean awaitAllKilled;
+
+    private DroidiumPlatformConfiguration platformConfiguration;
+
+    @Override
+    protected void addExtensions(List<Class<?>> extensions) {
+        extensions.add(AndroidEmulatorShutdown.class);
+        extensions.add(ContainerTeardown.class);
+        extensions.add(SuiteContainersStopper.class);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        events.clear();
+        killed = new CountDownLatch(CONTAINERS.size());
+
+        Spacelift.registry().register(EmulatorShutdownTask.class, new FakeShutdownTaskFactory());
+
+        platformConfiguration = new DroidiumPlatformConfiguration();
+        bind(ApplicationScoped.class, DroidiumPlatformConfiguration.class, platformConfiguration);
+        bind(ApplicationScoped.class, AndroidDeviceRegister.class, new AndroidDeviceRegisterImpl());
+
+        for (String container : CONTAINERS) {
+            AndroidDevice device = mock(AndroidDevice.class);
+            when(device.isEmulator()).thenReturn(true);
+            when(device.getAlreadyRuns()).thenReturn(false);
+            when(device.getSerialNumber()).thenReturn(container);
+            when(device.getAvdName()).thenReturn(container);
+
+            getManager().getContext(ContainerContext.class).activate(container);
+            bind(ContainerScoped.class, AndroidContainerConfiguration.class, new AndroidContainerConfiguration());
+            bind(ContainerScoped.class, AndroidDevice.class, device);
+            getManager().getContext(ContainerContext.class).deactivate();
+        }
+    }
+
+    @After
+    public void restoreShutdownTask() throws Exception {
+        Spacelift.registry().register(EmulatorShutdownTask.class);
+    }
+
+    @Test
+    public void parallelShutdownInSuiteModeTest() {
+        platformConfiguration.setProperty("parallelEmulatorShutdown", "true");
+        // each emulator goes down only when both were killed, so awaiting them one by one would time out
+        awaitAllKilled = true;
+
+        runTwoTestClasses();
+
+        assertEventFired(AndroidEmulatorShuttedDown.class, 2);
+        assertEventFiredInContext(AndroidEmulatorShuttedDown.class, ContainerContext.class);
+
+        for (String container : CONTAINERS) {
+            Assert.assertTrue(events.toString(), events.indexOf("teardown " + container) < events.indexOf("kill " + container));
+            Assert.assertTrue(events.toString(), events.contains("down " + container));
+        }
+
+        // Android Debug Bridge is disconnected on the first AndroidEmulatorShuttedDown
+        Assert.assertEquals(Arrays.asList("shutted down android1", "shutted down android2"), events.subList(6, 8));
+    }
+
+    @Test
+    public void sequentialShutdownInSuiteModeTest() {
+        platformConfiguration.setProperty("parallelEmulatorShutdown", "false");
+        awaitAllKilled = false;
+
+        runTwoTestClasses();
+
+        assertEventFired(AndroidEmulatorShuttedDown.class, 2);
+
+        Assert.assertEquals(Arrays.asList(
+            "teardown android1", "kill android1", "down android1", "shutted down android1",
+            "teardown android2", "kill android2", "down android2", "shutted down android2"), events);
+    }
+
+    private void runTwoTestClasses() {
+        // containers started in suite mode are not stopped after a test class
+        fire(new StopClassContainers());
+        fire(new StopClassContainers());
+
+        Assert.assertTrue(events.toString(), events.isEmpty());
+        assertEventFired(AndroidEmulatorShuttedDown.class, 0);
+
+        fire(new StopSuiteContainers());
+    }
+
+    /**
+     * Stands for other {@link AndroidContainerStop} observers, e.g. uninstalling of applications.
+     */
+    public static class ContainerTeardown {
+
+        @Inject
+        private Instance<AndroidDevice> androidDevice;
+
+        public void teardown(@Observes AndroidContainerStop event) {
+            events.add("teardown " + androidDevice.get().getSerialNumber());
+        }
+
+        public void shuttedDown(@Observes AndroidEmulatorShuttedDown event) {
+            events.add("shutted down " + event.getDevice().getSerialNumber());
+        }
+    }
+
+    /**
+     * Stops suite containers one after another as Arquillian does.
+     */
+    public static class SuiteContainersStopper {
+
+        @Inject
+        private Instance<ContainerContext> containerContext;
+
+        @Inject
+        private Event<AndroidContainerStop> androidContainerStop;
+
+        public void stop(@Observes StopSuiteContainers event) {
+            for (String container : CONTAINERS) {
+                containerContext.get().activate(container);
+                try {
+                    androidContainerStop.fire(new AndroidContainerStop());
+                } finally {
+                    containerContext.get().deactivate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates fake shutdown tasks through {@link NoArgConstructorTaskFactory} which sets their execution service.
+     */
+    private static class FakeShutdownTaskFactory implements TaskFactory<AndroidDevice, Boolean, EmulatorShutdownTask> {
+
+        private final TaskFactory<AndroidDevice, Boolean, FakeShutdownTask> factory =
+            new NoArgConstructorTaskFactory<AndroidDevice, Boolean, FakeShutdownTask>(FakeShutdownTask.class);
+
+        @Override
+        public EmulatorShutdownTask create() {
+            return factory.create();
+        }
+
+        @Override
+        public Collection<String> aliases() {
+            return factory.aliases();
+        }
+    }
+
+    public static class FakeShutdownTask extends EmulatorShutdownTask {
+
+        @Override
+        protected Boolean process(AndroidDevice device) throws Exception {
+            events.add("kill " + device.getSerialNumber());
+            killed.countDown();
+            if (awaitAllKilled && !killed.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Emulators were not killed in parallel.");
+            }
+            events.add("down " + device.getSerialNumber());
+            return true;
+        }
+    }
+}
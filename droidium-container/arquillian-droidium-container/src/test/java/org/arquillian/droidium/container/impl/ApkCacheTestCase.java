@@ -0,0 +1,220 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests {@link ApkCache} against a mocked device keeping its files in memory.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ApkCacheTestCase {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, String> files = new ConcurrentHashMap<String, String>();
+
+    private final List<String> installed = new ArrayList<String>();
+
+    private volatile boolean installFails;
+
+    private AndroidDevice device;
+
+    @Before
+    public void setup() throws Exception {
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String command = (String) invocation.getArguments()[0];
+                AndroidDeviceOutputReciever reciever = (AndroidDeviceOutputReciever) invocation.getArguments()[1];
+                reciever.processNewLines(shell(command).split("\n"));
+                return null;
+            }
+        }).when(device).executeShellCommand(anyString(), any(AndroidDeviceOutputReciever.class));
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                files.put((String) invocation.getArguments()[1], "apk");
+                return null;
+            }
+        }).when(device).push(any(File.class), anyString(), any(FileTransferOptions.class));
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                files.put((String) invocation.getArguments()[1], read(new File((String) invocation.getArguments()[0])));
+                return null;
+            }
+        }).when(device).push(anyString(), eq(ApkCache.MANIFEST));
+    }
+
+    @Test
+    public void cachedApkIsNotPushedAgainTest() throws Exception {
+        File apk = apk("first.apk", 100);
+
+        cache(1000).install(apk, "-r");
+        cache(1000).install(apk, "-r");
+
+        verify(device, times(1)).push(any(File.class), anyString(), any(FileTransferOptions.class));
+        Assert.assertEquals(2, installed.size());
+        Assert.assertEquals(installed.get(0), installed.get(1));
+        Assert.assertTrue(installed.get(0).startsWith(ApkCache.CACHE_DIR + "/"));
+        Assert.assertEquals(1, manifest().size());
+    }
+
+    @Test
+    public void leastRecentlyInstalledApkIsEvictedTest() throws Exception {
+        File first = apk("first.apk", 100);
+        File second = apk("second.apk", 100);
+        File third = apk("third.apk", 100);
+
+        cache(250).install(first);
+        Thread.sleep(5);
+        cache(250).install(second);
+        Thread.sleep(5);
+        cache(250).install(first);
+        Thread.sleep(5);
+        cache(250).install(third);
+
+        List<String> manifest = manifest();
+
+        Assert.assertEquals(2, manifest.size());
+        Assert.assertTrue(files.containsKey(installed.get(0)));
+        Assert.assertFalse(files.containsKey(installed.get(1)));
+        Assert.assertTrue(files.containsKey(installed.get(3)));
+    }
+
+    @Test
+    public void missingCachedApkIsPushedAgainTest() throws Exception {
+        File apk = apk("first.apk", 100);
+
+        cache(1000).install(apk);
+        files.remove(installed.get(0));
+        cache(1000).install(apk);
+
+        verify(device, times(2)).push(any(File.class), anyString(), any(FileTransferOptions.class));
+        Assert.assertTrue(files.containsKey(installed.get(0)));
+    }
+
+    @Test
+    public void failedInstallationTest() throws Exception {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("INSTALL_FAILED_OLDER_SDK");
+
+        installFails = true;
+
+        cache(1000).install(apk("first.apk", 100));
+    }
+
+    private ApkCache cache(long size) {
+        return new ApkCache(device, size, temporaryFolder.getRoot());
+    }
+
+    private List<String> manifest() {
+        return Arrays.asList(files.get(ApkCache.MANIFEST).split("\n"));
+    }
+
+    private String shell(String command) {
+        if (command.startsWith("cat " + ApkCache.MANIFEST)) {
+            return files.containsKey(ApkCache.MANIFEST) ? files.get(ApkCache.MANIFEST) : "";
+        }
+        if (command.startsWith("rm -f ")) {
+            for (String path : command.substring("rm -f ".length()).split(" ")) {
+                files.remove(path);
+            }
+            return "";
+        }
+        if (command.startsWith("pm install")) {
+            String path = command.substring(command.lastIndexOf(' ') + 1);
+            if (installFails) {
+                return "\tpkg: " + path + "\nFailure [INSTALL_FAILED_OLDER_SDK]";
+            }
+            if (!files.containsKey(path)) {
+                return "\tpkg: " + path + "\nFailure [INSTALL_FAILED_INVALID_URI]";
+            }
+            installed.add(path);
+            return "\tpkg: " + path + "\nSuccess";
+        }
+        throw new IllegalArgumentException("Unexpected command " + command);
+    }
+
+    private File apk(String name, int length) throws IOException {
+        File apk = temporaryFolder.newFile(name);
+        FileOutputStream out = new FileOutputStream(apk);
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) name.charAt(0));
+        content[0] = (byte) name.length();
+        out.write(content);
+        out.close();
+        return apk;
+    }
+
+    private static String read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return new String(content, "UTF-8");
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link EmulatorConsoleClient} against a fake emulator console.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class EmulatorConsoleClientTestCase {
+
+    private static final String TOKEN = "s3cr3t";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeConsole console;
+
+    private EmulatorConsoleClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (console != null) {
+            console.stop();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        File tokenFile = temporaryFolder.newFile(EmulatorConsoleClient.AUTH_TOKEN_FILE_NAME);
+        FileWriter writer = new FileWriter(tokenFile);
+        writer.write(TOKEN + "\n");
+        writer.close();
+
+        console = new FakeConsole(tokenFile);
+        console.start();
+
+        client = new EmulatorConsoleClient(console.getPort()).readTimeout(1000);
+    }
+
+    @Test
+    public void authenticateAndExecuteTest() {
+        List<String> response = client.connect().execute("avd name");
+
+        Assert.assertTrue(console.authenticated);
+        Assert.assertEquals(1, response.size());
+        Assert.assertEquals("test_avd", response.get(0));
+    }
+
+    @Test
+    public void refusedCommandTest() {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("unknown command");
+
+        client.execute("bogus");
+    }
+
+    @Test
+    public void responseTimeoutTest() {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("did not respond");
+
+        client.execute("sleep");
+    }
+
+    @Test
+    public void killTest() {
+        client.kill();
+
+        Assert.assertTrue(console.killed);
+        Assert.assertFalse(client.isConnected());
+    }
+
+    private static final class FakeConsole implements Runnable {
+
+        private final ServerSocket serverSocket;
+
+        private final File tokenFile;
+
+        private Thread thread;
+
+        private volatile boolean authenticated;
+
+        private volatile boolean killed;
+
+        public FakeConsole(File tokenFile) throws IOException {
+            this.serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            this.tokenFile = tokenFile;
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void start() {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void stop() throws Exception {
+            serverSocket.close();
+            thread.join(5000);
+        }
+
+        @Override
+        public void run() {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+
+                out.print("Android Console: Authentication required\r\n");
+                out.print("Android Console: type 'auth <auth_token>' to authenticate\r\n");
+                out.print("Android Console: you can find your <auth_token> in\r\n");
+                out.print("'" + tokenFile.getAbsolutePath() + "'\r\n");
+                out.print("OK\r\n");
+                out.flush();
+
+                String command;
+                while ((command = in.readLine()) != null) {
+                    if (command.equals("auth " + TOKEN)) {
+                        authenticated = true;
+                        out.print("Android Console: type 'help' for a list of commands\r\nOK\r\n");
+                    } else if (!authenticated) {
+                        out.print("KO: unknown command, try 'help'\r\n");
+                    } else if (command.equals("avd name")) {
+                        out.print("test_avd\r\nOK\r\n");
+                    } else if (command.equals("kill")) {
+                        killed = true;
+                        out.print("OK: killing emulator, bye bye\r\n");
+                        out.flush();
+                        break;
+                    } else if (command.equals("sleep")) {
+                        // no response at all
+                    } else {
+                        out.print("KO: unknown command, try 'help'\r\n");
+                    }
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                // server socket closed
+            } finally {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException ex) {
+                        // ignore
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransfer;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link FileTransferEngine} against a fake adb server which keeps files of the device in a temporary folder.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class FileTransferEngineTestCase {
+
+    private static final String SERIAL_NUMBER = "emulator-5554";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeAdbServer adb;
+
+    private FileTransferEngine engine;
+
+    @Before
+    public void setup() throws Exception {
+        adb = new FakeAdbServer(temporaryFolder.newFolder("device"));
+        adb.start();
+        engine = new FileTransferEngine(SERIAL_NUMBER, new AdbExecChannel(new InetSocketAddress("127.0.0.1", adb.getPort())), true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adb.stop();
+    }
+
+    @Test
+    public void pushDirectoryTest() throws Exception {
+        File local = temporaryFolder.newFolder("data");
+        byte[] first = write(new File(local, "first.bin"), 5000);
+        byte[] second = write(new File(local, "nested/second.bin"), 70000);
+        byte[] third = write(new File(local, "nested/deeper/third.bin"), 0);
+
+        FileTransfer transfer = engine.push(local, "/sdcard/data",
+            new FileTransferOptions.Builder().setConcurrency(2).setChunkSize(1000).setVerify(true).build());
+
+        Assert.assertEquals(3, transfer.getFiles());
+        Assert.assertEquals(75000, transfer.getBytes());
+        Assert.assertArrayEquals(first, read(adb.file("/sdcard/data/first.bin")));
+        Assert.assertArrayEquals(second, read(adb.file("/sdcard/data/nested/second.bin")));
+        Assert.assertArrayEquals(third, read(adb.file("/sdcard/data/nested/deeper/third.bin")));
+        Assert.assertEquals(1000, adb.largestChunk);
+    }
+
+    @Test
+    public void pullDirectoryTest() throws Exception {
+        byte[] first = write(adb.file("/sdcard/artifacts/first.log"), 1234);
+        byte[] second = write(adb.file("/sdcard/artifacts/videos/second.mp4"), 200000);
+
+        File local = new File(temporaryFolder.getRoot(), "artifacts");
+
+        FileTransfer transfer = engine.pull("/sdcard/artifacts", local, new FileTransferOptions.Builder().setVerify(true).build());
+
+        Assert.assertEquals(2, transfer.getFiles());
+        Assert.assertEquals(201234, transfer.getBytes());
+        Assert.assertEquals(0, transfer.getResumedBytes());
+        Assert.assertArrayEquals(first, read(new File(local, "first.log")));
+        Assert.assertArrayEquals(second, read(new File(local, "videos/second.mp4")));
+        Assert.assertFalse(new File(local, "videos/second.mp4" + FileTransferEngine.PART_EXTENSION).exists());
+    }
+
+    @Test
+    public void resumePullTest() throws Exception {
+        File remote = adb.file("/sdcard/video.mp4");
+        byte[] content = write(remote, 10000);
+
+        File local = new File(temporaryFolder.getRoot(), "video.mp4");
+        File part = new File(local.getPath() + FileTransferEngine.PART_EXTENSION);
+        FileOutputStream out = new FileOutputStream(part);
+        out.write(content, 0, 3500);
+        out.close();
+        part.setLastModified(remote.lastModified() / 1000 * 1000);
+
+        FileTransfer transfer = engine.pull("/sdcard/video.mp4", local, new FileTransferOptions.Builder().setChunkSize(1000).build());
+
+        Assert.assertEquals(3000, transfer.getResumedBytes());
+        Assert.assertEquals(7000, transfer.getBytes());
+        Assert.assertArrayEquals(content, read(local));
+        Assert.assertTrue(adb.commands.contains("dd if='/sdcard/video.mp4' bs=1000 skip=3 2>/dev/null"));
+    }
+
+    @Test
+    public void checksumMismatchTest() throws Exception {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("1 of 1 files failed");
+
+        write(adb.file("/sdcard/corrupted.bin"), 100);
+        adb.corruptChecksums = true;
+
+        File local = new File(temporaryFolder.getRoot(), "corrupted.bin");
+
+        try {
+            engine.pull("/sdcard/corrupted.bin", local, new FileTransferOptions.Builder().setVerify(true).build());
+        } finally {
+            Assert.assertFalse(local.exists());
+        }
+    }
+
+    @Test
+    public void missingRemotePathTest() throws Exception {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("does not exist");
+
+        engine.pull("/sdcard/missing", new File(temporaryFolder.getRoot(), "missing"), new FileTransferOptions.Builder().build());
+    }
+
+    private static byte[] write(File file, int length) throws IOException {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        return content;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] content = new byte[(int) file.length()];
+            in.readFully(content);
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class FakeAdbServer implements Runnable {
+
+        private static final Pattern DD_PATTERN = Pattern.compile("dd if='(.*)' bs=(\\d+) skip=(\\d+) 2>/dev/null");
+
+        private static final Pattern MD5SUM_PATTERN = Pattern.compile("md5sum '(.*)' 2>/dev/null");
+
+        private final ServerSocket serverSocket;
+
+        private final File root;
+
+        private final List<String> commands = new CopyOnWriteArrayList<String>();
+
+        private volatile int largestChunk;
+
+        private volatile boolean corruptChecksums;
+
+        private Thread thread;
+
+        FakeAdbServer(File root) throws IOException {
+            this.serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+            this.root = root;
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        File file(String remotePath) {
+            return new File(root, remotePath);
+        }
+
+        void start() {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws Exception {
+            serverSocket.close();
+            thread.join(5000);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    Thread connection = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ex) {
+                // server socket closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                Assert.assertEquals("host:transport:" + SERIAL_NUMBER, request(in));
+                out.write("OKAY".getBytes("UTF-8"));
+
+                String service = request(in);
+                out.write("OKAY".getBytes("UTF-8"));
+
+                if (service.equals("sync:")) {
+                    sync(in, out);
+                } else {
+                    String command = service.substring("exec:".length());
+                    commands.add(command);
+                    exec(command, out);
+                }
+                out.flush();
+            } catch (Exception ex) {
+                // connection closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        private void exec(String command, OutputStream out) throws Exception {
+            Matcher dd = DD_PATTERN.matcher(command);
+            Matcher md5sum = MD5SUM_PATTERN.matcher(command);
+
+            if (dd.matches()) {
+                byte[] content = read(file(dd.group(1)));
+                int offset = Integer.parseInt(dd.group(2)) * Integer.parseInt(dd.group(3));
+                out.write(content, offset, content.length - offset);
+            } else if (md5sum.matches()) {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(read(file(md5sum.group(1))));
+                if (corruptChecksums) {
+                    digest[0]++;
+                }
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest) {
+                    hex.append(String.format("%02x", b & 0xFF));
+                }
+                out.write((hex + "  " + md5sum.group(1) + "\n").getBytes("UTF-8"));
+            }
+        }
+
+        private void sync(DataInputStream in, OutputStream out) throws IOException {
+            while (true) {
+                String id = id(in);
+                byte[] payload = new byte[readInt(in)];
+                in.readFully(payload);
+                String path = new String(payload, "UTF-8");
+
+                if (id.equals("QUIT")) {
+                    return;
+                } else if (id.equals("STAT")) {
+                    File file = file(path);
+                    int mode = !file.exists() ? 0 : file.isDirectory() ? AdbSyncChannel.S_IFDIR | 0755 : AdbSyncChannel.S_IFREG | 0644;
+                    out.write("STAT".getBytes("UTF-8"));
+                    writeInt(out, mode, (int) file.length(), (int) (file.lastModified() / 1000));
+                } else if (id.equals("LIST")) {
+                    for (File child : file(path).listFiles()) {
+                        byte[] name = child.getName().getBytes("UTF-8");
+                        out.write("DENT".getBytes("UTF-8"));
+                        writeInt(out, child.isDirectory() ? AdbSyncChannel.S_IFDIR | 0755 : AdbSyncChannel.S_IFREG | 0644,
+                            (int) child.length(), (int) (child.lastModified() / 1000), name.length);
+                        out.write(name);
+                    }
+                    out.write("DONE".getBytes("UTF-8"));
+                    writeInt(out, 0, 0, 0, 0);
+                } else if (id.equals("RECV")) {
+                    byte[] content = read(file(path));
+                    for (int offset = 0; offset < content.length; offset += 65536) {
+                        int length = Math.min(65536, content.length - offset);
+                        out.write("DATA".getBytes("UTF-8"));
+                        writeInt(out, length);
+                        out.write(content, offset, length);
+                    }
+                    out.write("DONE".getBytes("UTF-8"));
+                    writeInt(out, 0);
+                } else if (id.equals("SEND")) {
+                    File file = file(path.substring(0, path.lastIndexOf(',')));
+                    file.getParentFile().mkdirs();
+                    FileOutputStream content = new FileOutputStream(file);
+                    try {
+                        String chunk;
+                        while ((chunk = id(in)).equals("DATA")) {
+                            byte[] data = new byte[readInt(in)];
+                            in.readFully(data);
+                            largestChunk = Math.max(largestChunk, data.length);
+                            content.write(data);
+                        }
+                        Assert.assertEquals("DONE", chunk);
+                        readInt(in);
+                    } finally {
+                        content.close();
+                    }
+                    out.write("OKAY".getBytes("UTF-8"));
+                    writeInt(out, 0);
+                } else {
+                    throw new IOException("Unknown request " + id + Arrays.toString(payload));
+                }
+                out.flush();
+            }
+        }
+
+        private static String request(DataInputStream in) throws IOException {
+            byte[] length = new byte[4];
+            in.readFully(length);
+            byte[] request = new byte[Integer.parseInt(new String(length, "UTF-8"), 16)];
+            in.readFully(request);
+            return new String(request, "UTF-8");
+        }
+
+        private static String id(DataInputStream in) throws IOException {
+            byte[] id = new byte[4];
+            in.readFully(id);
+            return new String(id, "UTF-8");
+        }
+
+        private static int readInt(DataInputStream in) throws IOException {
+            return Integer.reverseBytes(in.readInt());
+        }
+
+        private static void writeInt(OutputStream out, int... values) throws IOException {
+            for (int value : values) {
+                out.write(new byte[] { (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24) });
+            }
+        }
+    }
+}
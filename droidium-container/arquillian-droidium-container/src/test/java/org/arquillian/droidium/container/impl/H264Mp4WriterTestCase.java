@@ -0,0 +1,261 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link H264Mp4Writer} on a synthetic H.264 elementary stream.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class H264Mp4WriterTestCase {
+
+    // baseline profile, 1088x1920 macroblocks cropped to 1080x1920
+    private static final byte[] SPS_BASELINE = new byte[] { (byte) 0x67, (byte) 0x42, (byte) 0xC0, (byte) 0x1F, (byte) 0xDA,
+        (byte) 0x01, (byte) 0x10, (byte) 0x0F, (byte) 0x1E, (byte) 0x5D };
+
+    // high profile with scaling matrices, 1280x720
+    private static final byte[] SPS_HIGH = new byte[] { (byte) 0x67, (byte) 0x64, (byte) 0x00, (byte) 0x1F, (byte) 0xAD,
+        (byte) 0x95, (byte) 0x22, (byte) 0xA4, (byte) 0x54, (byte) 0x8A, (byte) 0x91, (byte) 0x52, (byte) 0x28, (byte) 0x25,
+        (byte) 0x48, (byte) 0xA9, (byte) 0x15, (byte) 0x22, (byte) 0xA4, (byte) 0x54, (byte) 0x8A, (byte) 0x91, (byte) 0x52,
+        (byte) 0x2A, (byte) 0x45, (byte) 0x48, (byte) 0xA9, (byte) 0x15, (byte) 0x22, (byte) 0xA4, (byte) 0x54, (byte) 0x8A,
+        (byte) 0x91, (byte) 0x52, (byte) 0x2A, (byte) 0x45, (byte) 0x48, (byte) 0xA9, (byte) 0x15, (byte) 0x22, (byte) 0xA4,
+        (byte) 0x54, (byte) 0x8A, (byte) 0xDA, (byte) 0x01, (byte) 0x40, (byte) 0x16, (byte) 0xE4 };
+
+    private static final byte[] PPS = new byte[] { (byte) 0x68, (byte) 0xCE, (byte) 0x38, (byte) 0x80 };
+
+    private static final byte[] IDR_FIRST_SLICE = new byte[] { (byte) 0x65, (byte) 0x88, (byte) 0x84, 0x11, 0x22 };
+
+    private static final byte[] IDR_SECOND_SLICE = new byte[] { (byte) 0x65, (byte) 0x40, (byte) 0x33, 0x44 };
+
+    private static final byte[] P_SLICE = new byte[] { (byte) 0x41, (byte) 0x9A, (byte) 0x55, 0x66, 0x77 };
+
+    private static final byte[] SEI = new byte[] { (byte) 0x06, (byte) 0x05, (byte) 0x01, (byte) 0x80 };
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void croppedSequenceParameterSetTest() throws Exception {
+        H264Mp4Writer.SequenceParameterSet sps = H264Mp4Writer.SequenceParameterSet.parse(SPS_BASELINE);
+
+        Assert.assertEquals(66, sps.profile);
+        Assert.assertEquals(1080, sps.width);
+        Assert.assertEquals(1920, sps.height);
+        Assert.assertFalse(sps.hasChromaFormat());
+    }
+
+    @Test
+    public void highProfileSequenceParameterSetTest() throws Exception {
+        H264Mp4Writer.SequenceParameterSet sps = H264Mp4Writer.SequenceParameterSet.parse(SPS_HIGH);
+
+        Assert.assertEquals(100, sps.profile);
+        Assert.assertEquals(1, sps.chromaFormat);
+        Assert.assertEquals(1280, sps.width);
+        Assert.assertEquals(720, sps.height);
+        Assert.assertTrue(sps.hasChromaFormat());
+    }
+
+    @Test
+    public void streamTest() throws Exception {
+        File file = temporaryFolder.newFile("stream.mp4");
+        H264Mp4Writer writer = new H264Mp4Writer(file);
+
+        // P slice before the first IDR picture is dropped, so are bytes before the first start code
+        write(writer, new byte[] { 0x12, 0x34 }, 0);
+        write(writer, nal(P_SLICE), 0);
+        write(writer, nal(SPS_BASELINE), 10);
+        write(writer, nal(PPS), 10);
+        write(writer, nal(IDR_FIRST_SLICE), 20);
+        write(writer, nal(IDR_SECOND_SLICE), 20);
+        write(writer, nal(P_SLICE), 53);
+        write(writer, nal(P_SLICE), 86);
+        write(writer, nal(SEI), 100);
+        write(writer, nal(P_SLICE), 119);
+        write(writer, nal(SPS_HIGH), 150);
+        write(writer, nal(PPS), 150);
+        write(writer, nal(IDR_FIRST_SLICE), 160);
+        write(writer, nal(P_SLICE), 200);
+
+        Assert.assertEquals(280, writer.finish(TimeUnit.MILLISECONDS.toNanos(300)));
+
+        byte[] mp4 = read(file);
+
+        Assert.assertEquals(Arrays.asList("ftyp", "mdat", "moov"), types(mp4, 0, mp4.length));
+
+        ByteBuffer stbl = box(mp4, "moov", "trak", "mdia", "minf", "stbl");
+
+        ByteBuffer stsz = box(stbl, "stsz");
+        Assert.assertEquals(6, stsz.getInt(8));
+
+        ByteBuffer stss = box(stbl, "stss");
+        Assert.assertEquals(2, stss.getInt(4));
+        Assert.assertEquals(1, stss.getInt(8));
+        Assert.assertEquals(5, stss.getInt(12));
+
+        ByteBuffer stts = box(stbl, "stts");
+        List<Integer> durations = new ArrayList<Integer>();
+        for (int i = 0; i < stts.getInt(4); i++) {
+            for (int j = 0; j < stts.getInt(8 + 8 * i); j++) {
+                durations.add(stts.getInt(12 + 8 * i) / 90);
+            }
+        }
+        Assert.assertEquals(Arrays.asList(33, 33, 14, 60, 40, 100), durations);
+
+        ByteBuffer stsc = box(stbl, "stsc");
+        Assert.assertEquals(2, stsc.getInt(4));
+        Assert.assertEquals(4, stsc.getInt(12));
+        Assert.assertEquals(1, stsc.getInt(16));
+        Assert.assertEquals(2, stsc.getInt(20));
+        Assert.assertEquals(2, stsc.getInt(24));
+        Assert.assertEquals(2, stsc.getInt(28));
+
+        ByteBuffer stsd = box(stbl, "stsd");
+        Assert.assertEquals(2, stsd.getInt(4));
+        Assert.assertEquals(1080, stsd.getShort(8 + 32) & 0xFFFF);
+        Assert.assertEquals(1920, stsd.getShort(8 + 34) & 0xFFFF);
+
+        // the first sample holds both slices of the IDR picture prefixed by their lengths
+        ByteBuffer stco = box(stbl, "stco");
+        int offset = stco.getInt(8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(ByteBuffer.allocate(4).putInt(IDR_FIRST_SLICE.length).array());
+        expected.write(IDR_FIRST_SLICE);
+        expected.write(ByteBuffer.allocate(4).putInt(IDR_SECOND_SLICE.length).array());
+        expected.write(IDR_SECOND_SLICE);
+        Assert.assertEquals(expected.size(), stsz.getInt(12));
+        Assert.assertArrayEquals(expected.toByteArray(), Arrays.copyOfRange(mp4, offset, offset + expected.size()));
+
+        // mdat has 64 bit size covering all samples
+        ByteBuffer mdat = ByteBuffer.wrap(mp4, box(mp4, "ftyp").capacity() + 8, 16);
+        Assert.assertEquals(1, mdat.getInt());
+        mdat.getInt();
+        long samplesLength = 0;
+        for (int i = 0; i < 6; i++) {
+            samplesLength += stsz.getInt(12 + 4 * i);
+        }
+        Assert.assertEquals(16 + samplesLength, mdat.getLong());
+    }
+
+    @Test
+    public void streamWithoutPictureTest() throws Exception {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("does not contain any picture");
+
+        H264Mp4Writer writer = new H264Mp4Writer(temporaryFolder.newFile("empty.mp4"));
+        write(writer, nal(SPS_BASELINE), 0);
+        write(writer, nal(PPS), 0);
+        writer.finish(0);
+    }
+
+    private static byte[] nal(byte[] nal) {
+        byte[] bytes = new byte[nal.length + 4];
+        bytes[3] = 1;
+        System.arraycopy(nal, 0, bytes, 4, nal.length);
+        return bytes;
+    }
+
+    // byte by byte so start codes are split among writes
+    private static void write(H264Mp4Writer writer, byte[] bytes, long millis) throws IOException {
+        for (int i = 0; i < bytes.length; i++) {
+            writer.write(bytes, i, 1, TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static List<String> types(byte[] data, int start, int end) {
+        List<String> types = new ArrayList<String>();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int position = start;
+        while (position < end) {
+            long size = buffer.getInt(position) & 0xFFFFFFFFL;
+            if (size == 1) {
+                size = buffer.getLong(position + 8);
+            }
+            types.add(new String(data, position + 4, 4));
+            position += size;
+        }
+        return types;
+    }
+
+    private static ByteBuffer box(byte[] data, String... path) {
+        return box(ByteBuffer.wrap(data), path);
+    }
+
+    // payload of the box found by the path of box types
+    private static ByteBuffer box(ByteBuffer parent, String... path) {
+        ByteBuffer buffer = parent.slice();
+        for (String type : path) {
+            int position = 0;
+            ByteBuffer found = null;
+            while (found == null && position + 8 <= buffer.limit()) {
+                long size = buffer.getInt(position) & 0xFFFFFFFFL;
+                int header = 8;
+                if (size == 1) {
+                    size = buffer.getLong(position + 8);
+                    header = 16;
+                }
+                byte[] boxType = new byte[4];
+                for (int i = 0; i < 4; i++) {
+                    boxType[i] = buffer.get(position + 4 + i);
+                }
+                if (new String(boxType).equals(type)) {
+                    ByteBuffer payload = buffer.duplicate();
+                    payload.position(position + header);
+                    payload.limit((int) (position + size));
+                    found = payload.slice();
+                }
+                position += size;
+            }
+            Assert.assertNotNull("Box " + type + " was not found.", found);
+            buffer = found;
+        }
+        return buffer;
+    }
+}
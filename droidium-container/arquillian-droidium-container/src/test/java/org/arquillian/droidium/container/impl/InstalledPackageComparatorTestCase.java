@@ -0,0 +1,123 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.utils.DroidiumFileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests {@link InstalledPackageComparator} against a mocked device.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class InstalledPackageComparatorTestCase {
+
+    private static final String PACKAGE = "org.arquillian.droidium.test";
+
+    private static final String INSTALLED_APK = "/data/app/org.arquillian.droidium.test-1/base.apk";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // command -> output of the mocked device
+    private final Map<String, String> responses = new HashMap<String, String>();
+
+    private AndroidDevice device;
+
+    private File apk;
+
+    @Before
+    public void setup() throws Exception {
+        apk = temporaryFolder.newFile("test.apk");
+        FileOutputStream out = new FileOutputStream(apk);
+        out.write("installed apk".getBytes("UTF-8"));
+        out.close();
+
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String response = responses.get(invocation.getArguments()[0]);
+                ((AndroidDeviceOutputReciever) invocation.getArguments()[1])
+                    .processNewLines((response == null ? "/system/bin/sh: not found" : response).split("\n"));
+                return null;
+            }
+        }).when(device).executeShellCommand(anyString(), any(AndroidDeviceOutputReciever.class));
+
+        responses.put("pm path " + PACKAGE, "package:" + INSTALLED_APK);
+    }
+
+    @Test
+    public void identicalBySha256Test() {
+        responses.put("sha256sum '" + INSTALLED_APK + "' 2>/dev/null", DroidiumFileUtils.getDigest(apk, "SHA-256") + "  " + INSTALLED_APK);
+
+        Assert.assertTrue(new InstalledPackageComparator(device).isIdentical(PACKAGE, apk));
+    }
+
+    @Test
+    public void identicalByMd5Test() {
+        responses.put("md5sum '" + INSTALLED_APK + "' 2>/dev/null", DroidiumFileUtils.getDigest(apk, "MD5") + "  " + INSTALLED_APK);
+
+        Assert.assertTrue(new InstalledPackageComparator(device).isIdentical(PACKAGE, apk));
+    }
+
+    @Test
+    public void differentApkTest() {
+        responses.put("sha256sum '" + INSTALLED_APK + "' 2>/dev/null",
+            DroidiumFileUtils.getDigest(apk, "SHA-256").replaceAll(".", "0") + "  " + INSTALLED_APK);
+
+        Assert.assertFalse(new InstalledPackageComparator(device).isIdentical(PACKAGE, apk));
+    }
+
+    @Test
+    public void splitApksAreNotComparedTest() {
+        responses.put("pm path " + PACKAGE, "package:" + INSTALLED_APK + "\npackage:/data/app/split_config.xxhdpi.apk");
+        responses.put("sha256sum '" + INSTALLED_APK + "' 2>/dev/null", DroidiumFileUtils.getDigest(apk, "SHA-256") + "  " + INSTALLED_APK);
+
+        Assert.assertFalse(new InstalledPackageComparator(device).isIdentical(PACKAGE, apk));
+    }
+
+    @Test
+    public void digestNotAvailableTest() {
+        Assert.assertFalse(new InstalledPackageComparator(device).isIdentical(PACKAGE, apk));
+    }
+}
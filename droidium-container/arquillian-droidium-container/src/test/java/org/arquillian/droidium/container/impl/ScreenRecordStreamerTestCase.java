@@ -0,0 +1,221 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link ScreenRecordStreamer} against a fake adb server.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenRecordStreamerTestCase {
+
+    private static final String SERIAL_NUMBER = "emulator-5554";
+
+    private static final byte[] SPS = new byte[] { 0, 0, 0, 1, (byte) 0x67, (byte) 0x42, (byte) 0xC0, (byte) 0x1F, (byte) 0xDA,
+        (byte) 0x01, (byte) 0x10, (byte) 0x0F, (byte) 0x1E, (byte) 0x5D };
+
+    private static final byte[] PPS = new byte[] { 0, 0, 0, 1, (byte) 0x68, (byte) 0xCE, (byte) 0x38, (byte) 0x80 };
+
+    private static final byte[] IDR = new byte[] { 0, 0, 0, 1, (byte) 0x65, (byte) 0x88, (byte) 0x84, 0x11 };
+
+    private static final byte[] P = new byte[] { 0, 0, 0, 1, (byte) 0x41, (byte) 0x9A, (byte) 0x55 };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeAdbServer adb;
+
+    @Before
+    public void setup() throws Exception {
+        adb = new FakeAdbServer();
+        adb.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adb.stop();
+    }
+
+    @Test
+    public void restartAndStopTest() throws Exception {
+        File file = temporaryFolder.newFile("streamed.mp4");
+
+        ScreenrecordOptions options = new ScreenrecordOptions.Builder().setSize(720, 1280).setBitrate(2000000).build();
+
+        ScreenRecordStreamer streamer = new ScreenRecordStreamer(SERIAL_NUMBER,
+            new AdbExecChannel(new InetSocketAddress("127.0.0.1", adb.getPort())).readTimeout(0), options, file);
+
+        streamer.start();
+
+        Assert.assertTrue("screenrecord was not started again", adb.secondRecording.await(5, TimeUnit.SECONDS));
+
+        streamer.stop();
+
+        Assert.assertEquals("echo $$; exec screenrecord --output-format=h264 --size 720x1280 --bit-rate 2000000 --time-limit 180 -",
+            adb.commands.get(0));
+        Assert.assertEquals(adb.commands.get(0), adb.commands.get(1));
+        Assert.assertEquals("kill -2 4242", adb.commands.get(2));
+
+        // two pictures of the first recording, two of the second one and one flushed after SIGINT
+        Assert.assertEquals(5, samples(file));
+    }
+
+    private static int samples(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            String content = new String(bytes, "ISO-8859-1");
+            int stsz = content.indexOf("stsz");
+            return ByteBuffer.wrap(bytes, stsz + 12, 4).getInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class FakeAdbServer implements Runnable {
+
+        private final ServerSocket serverSocket;
+
+        private final List<String> commands = new CopyOnWriteArrayList<String>();
+
+        private final CountDownLatch secondRecording = new CountDownLatch(1);
+
+        private final CountDownLatch killed = new CountDownLatch(1);
+
+        private Thread thread;
+
+        FakeAdbServer() throws IOException {
+            this.serverSocket = new ServerSocket(0, 5, InetAddress.getByName("127.0.0.1"));
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void start() {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws Exception {
+            serverSocket.close();
+            thread.join(5000);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    Thread connection = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ex) {
+                // server socket closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                Assert.assertEquals("host:transport:" + SERIAL_NUMBER, request(in));
+                out.write("OKAY".getBytes("UTF-8"));
+
+                String command = request(in).substring("exec:".length());
+                commands.add(command);
+                out.write("OKAY".getBytes("UTF-8"));
+
+                if (command.startsWith("kill")) {
+                    killed.countDown();
+                } else if (commands.size() == 1) {
+                    // the first recording reaches its time limit
+                    out.write(stream("4242\n".getBytes("UTF-8"), SPS, PPS, IDR, P));
+                } else {
+                    out.write(stream("4242\n".getBytes("UTF-8"), SPS, PPS, IDR, P));
+                    out.flush();
+                    secondRecording.countDown();
+                    killed.await(5, TimeUnit.SECONDS);
+                    // encoder is drained after SIGINT
+                    out.write(P);
+                }
+                out.flush();
+            } catch (Exception ex) {
+                // connection closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        private static String request(DataInputStream in) throws IOException {
+            byte[] length = new byte[4];
+            in.readFully(length);
+            byte[] request = new byte[Integer.parseInt(new String(length, "UTF-8"), 16)];
+            in.readFully(request);
+            return new String(request, "UTF-8");
+        }
+
+        private static byte[] stream(byte[]... parts) throws IOException {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (byte[] part : parts) {
+                stream.write(part);
+            }
+            return stream.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+
+/**
+ * Tests {@link ScreenRecorder} against mocked devices.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenRecorderTestCase {
+
+    private static final String REMOTE_FILE = "/sdcard/droidium_record.mp4";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void stopSignalsRecordingOfItsDeviceOnlyTest() throws Exception {
+        FakeShell first = new FakeShell("4242\n", true);
+        FakeShell second = new FakeShell("4343\n", true);
+        IDevice firstDevice = first.mockDevice("emulator-5554");
+        IDevice secondDevice = second.mockDevice("emulator-5556");
+
+        ScreenRecorder firstRecorder = new ScreenRecorder(firstDevice, new ScreenrecordOptions.Builder().build(), REMOTE_FILE);
+        ScreenRecorder secondRecorder = new ScreenRecorder(secondDevice, new ScreenrecordOptions.Builder().build(), REMOTE_FILE);
+        firstRecorder.start();
+        secondRecorder.start();
+
+        Assert.assertEquals(REMOTE_FILE, firstRecorder.stop());
+
+        Assert.assertEquals(Collections.singletonList("kill -2 4242"), first.kills);
+        Assert.assertTrue(second.kills.isEmpty());
+        Assert.assertEquals("echo $$; exec screenrecord --time-limit 180 " + REMOTE_FILE, first.command);
+
+        secondRecorder.stop();
+
+        Assert.assertEquals(Collections.singletonList("kill -2 4343"), second.kills);
+    }
+
+    @Test
+    public void recordingEndedByTimeLimitTest() throws Exception {
+        FakeShell shell = new FakeShell("4242\n", false);
+        IDevice device = shell.mockDevice("emulator-5554");
+
+        ScreenRecorder recorder = new ScreenRecorder(device, new ScreenrecordOptions.Builder().build(), REMOTE_FILE);
+        recorder.start();
+        shell.ended.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+
+        Assert.assertEquals(REMOTE_FILE, recorder.stop());
+
+        verify(device, never()).executeShellCommand(startsWith("kill"), any(IShellOutputReceiver.class));
+    }
+
+    @Test
+    public void startWithoutPidTest() throws Exception {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("Unable to start screenrecord");
+
+        FakeShell shell = new FakeShell("/system/bin/sh: screenrecord: not found\n", false);
+
+        new ScreenRecorder(shell.mockDevice("emulator-5554"), new ScreenrecordOptions.Builder().build(), REMOTE_FILE).start();
+    }
+
+    /**
+     * Shell of a device which writes given output and then, if asked to, blocks until {@code kill} is executed.
+     */
+    private static final class FakeShell {
+
+        private final String output;
+
+        private final boolean waitForKill;
+
+        private final CountDownLatch killed = new CountDownLatch(1);
+
+        private final CountDownLatch ended = new CountDownLatch(1);
+
+        private final List<String> kills = new CopyOnWriteArrayList<String>();
+
+        private volatile String command;
+
+        FakeShell(String output, boolean waitForKill) {
+            this.output = output;
+            this.waitForKill = waitForKill;
+        }
+
+        IDevice mockDevice(String serialNumber) throws Exception {
+            IDevice device = mock(IDevice.class);
+            when(device.getSerialNumber()).thenReturn(serialNumber);
+
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    command = (String) invocation.getArguments()[0];
+                    IShellOutputReceiver receiver = (IShellOutputReceiver) invocation.getArguments()[1];
+                    byte[] data = output.getBytes("UTF-8");
+                    receiver.addOutput(data, 0, data.length);
+                    if (waitForKill) {
+                        while (!killed.await(10, TimeUnit.MILLISECONDS)) {
+                            if (receiver.isCancelled()) {
+                                break;
+                            }
+                        }
+                    }
+                    receiver.flush();
+                    ended.countDown();
+                    return null;
+                }
+            }).when(device).executeShellCommand(anyString(), any(IShellOutputReceiver.class), anyInt());
+
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    kills.add((String) invocation.getArguments()[0]);
+                    killed.countDown();
+                    return null;
+                }
+            }).when(device).executeShellCommand(anyString(), any(IShellOutputReceiver.class));
+
+            return device;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Tests {@link ScreencapReader} on synthetic output of {@code screencap}.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreencapReaderTestCase {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void rgbaWithoutColorSpaceTest() throws Exception {
+        byte[] pixels = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+
+        RawImage rawImage = ScreencapReader.readRaw(output(3, 1, ScreencapReader.PIXEL_FORMAT_RGBA_8888, false, pixels));
+
+        Assert.assertEquals(3, rawImage.width);
+        Assert.assertEquals(1, rawImage.height);
+        Assert.assertEquals(32, rawImage.bpp);
+        Assert.assertEquals(12, rawImage.size);
+        Assert.assertEquals(0x010203, rawImage.getARGB(0) & 0xffffff);
+        Assert.assertEquals(0x090a0b, rawImage.getARGB(8) & 0xffffff);
+    }
+
+    @Test
+    public void bgraWithColorSpaceTest() throws Exception {
+        byte[] pixels = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+        RawImage rawImage = ScreencapReader.readRaw(output(1, 2, ScreencapReader.PIXEL_FORMAT_BGRA_8888, true, pixels));
+
+        Assert.assertEquals(8, rawImage.size);
+        Assert.assertEquals(0x030201, rawImage.getARGB(0) & 0xffffff);
+        Assert.assertEquals(0x070605, rawImage.getARGB(4) & 0xffffff);
+    }
+
+    @Test
+    public void rgb565AndRgb888Test() throws Exception {
+        // pure red and pure blue in RGB 565, little endian
+        byte[] pixels565 = new byte[] { 0x00, (byte) 0xf8, 0x1f, 0x00 };
+        RawImage rawImage = ScreencapReader.readRaw(output(2, 1, ScreencapReader.PIXEL_FORMAT_RGB_565, true, pixels565));
+
+        Assert.assertEquals(16, rawImage.bpp);
+        Assert.assertEquals(0xff0000, rawImage.getARGB(0) & 0xffffff);
+        Assert.assertEquals(0x0000ff, rawImage.getARGB(2) & 0xffffff);
+
+        byte[] pixels888 = new byte[] { 10, 20, 30, 40, 50, 60 };
+        rawImage = ScreencapReader.readRaw(output(2, 1, ScreencapReader.PIXEL_FORMAT_RGB_888, false, pixels888));
+
+        Assert.assertEquals(32, rawImage.bpp);
+        Assert.assertEquals(0x0a141e, rawImage.getARGB(0) & 0xffffff);
+        Assert.assertEquals(0x28323c, rawImage.getARGB(4) & 0xffffff);
+    }
+
+    @Test
+    public void truncatedOutputTest() throws Exception {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("does not match a frame");
+
+        ScreencapReader.readRaw(output(2, 2, ScreencapReader.PIXEL_FORMAT_RGBA_8888, false, new byte[10]));
+    }
+
+    @Test
+    public void pngTest() throws Exception {
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(2, 1, 0x123456);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", encoded);
+
+        byte[] png = ScreencapReader.readPng(new ByteArrayInputStream(encoded.toByteArray()));
+
+        Assert.assertEquals(3, ScreencapReader.getPngWidth(png));
+        Assert.assertEquals(2, ScreencapReader.getPngHeight(png));
+
+        RawImage rawImage = ScreencapReader.decodePng(png);
+
+        Assert.assertEquals(0x123456, rawImage.getARGB((1 * 3 + 2) * 4) & 0xffffff);
+    }
+
+    private static ByteArrayInputStream output(int width, int height, int format, boolean colorSpace, byte[] pixels) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, width);
+        writeInt(out, height);
+        writeInt(out, format);
+        if (colorSpace) {
+            writeInt(out, 1);
+        }
+        out.write(pixels, 0, pixels.length);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.RawImage;
+
+/**
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenshotCapturerTestCase {
+
+    private static final String SERIAL_NUMBER = "emulator-5554";
+
+    private IDevice device;
+
+    private AdbExecChannel channel;
+
+    @Before
+    public void setup() throws Exception {
+        device = mock(IDevice.class);
+        channel = mock(AdbExecChannel.class);
+        when(device.getSerialNumber()).thenReturn(SERIAL_NUMBER);
+        when(device.getApiLevel()).thenReturn(24);
+    }
+
+    @Test
+    public void slowFirstScreenshotDoesNotDecideTest() throws Exception {
+        final AtomicInteger framebufferCalls = new AtomicInteger();
+
+        // the first framebuffer screenshot opens the connection, the next ones are fast
+        when(device.getScreenshot()).thenAnswer(new Answer<RawImage>() {
+            @Override
+            public RawImage answer(InvocationOnMock invocation) throws Throwable {
+                if (framebufferCalls.getAndIncrement() == 0) {
+                    Thread.sleep(300);
+                }
+                return new RawImage();
+            }
+        });
+        when(channel.exec(SERIAL_NUMBER, "screencap")).thenThrow(new AndroidExecutionException("screencap failed"));
+        final byte[] png = png();
+        when(channel.exec(SERIAL_NUMBER, "screencap -p")).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(50);
+                return new ByteArrayInputStream(png);
+            }
+        });
+
+        ScreenshotCapturer capturer = new ScreenshotCapturer(device, channel);
+
+        // both working backends take their samples in turn, every one of them is a screenshot for the caller
+        for (int i = 0; i < 2 * ScreenshotCapturer.SAMPLES - 1; i++) {
+            Assert.assertNotNull(capturer.capture(ScreenshotBackend.AUTO));
+            Assert.assertNull(capturer.getSelected());
+        }
+        capturer.capture(ScreenshotBackend.AUTO);
+        Assert.assertEquals(ScreenshotBackend.FRAMEBUFFER, capturer.getSelected());
+
+        Assert.assertNotNull(capturer.capture(ScreenshotBackend.AUTO).getRawImage());
+        verify(device, times(ScreenshotCapturer.SAMPLES + 1)).getScreenshot();
+        verify(channel, times(1)).exec(SERIAL_NUMBER, "screencap");
+        verify(channel, times(ScreenshotCapturer.SAMPLES)).exec(SERIAL_NUMBER, "screencap -p");
+    }
+
+    @Test
+    public void oldDeviceUsesFramebufferTest() throws Exception {
+        when(device.getApiLevel()).thenReturn(19);
+        when(device.getScreenshot()).thenReturn(new RawImage());
+
+        ScreenshotCapturer capturer = new ScreenshotCapturer(device, channel);
+        capturer.capture(ScreenshotBackend.AUTO);
+
+        Assert.assertEquals(ScreenshotBackend.FRAMEBUFFER, capturer.getSelected());
+        verify(device, times(1)).getScreenshot();
+    }
+
+    @Test
+    public void medianTest() {
+        Assert.assertEquals(20L, ScreenshotCapturer.median(Arrays.asList(300L, 10L, 20L)));
+        Assert.assertEquals(30L, ScreenshotCapturer.median(Arrays.asList(40L, 10L, 30L, 20L)));
+        Assert.assertEquals(5L, ScreenshotCapturer.median(Arrays.asList(5L)));
+    }
+
+    private static byte[] png() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
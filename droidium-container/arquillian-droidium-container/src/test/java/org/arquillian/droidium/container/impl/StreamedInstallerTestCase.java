@@ -0,0 +1,241 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.impl;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link StreamedInstaller} against a fake adb server answering as the package manager of a device.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class StreamedInstallerTestCase {
+
+    private static final String SERIAL_NUMBER = "emulator-5554";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeAdbServer adb;
+
+    private AdbExecChannel channel;
+
+    @Before
+    public void setup() throws Exception {
+        adb = new FakeAdbServer();
+        adb.start();
+        channel = new AdbExecChannel(new InetSocketAddress("127.0.0.1", adb.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adb.stop();
+    }
+
+    @Test
+    public void singleApkIsStreamedTest() throws Exception {
+        byte[] base = write("base.apk", 100000);
+
+        new StreamedInstaller(SERIAL_NUMBER, channel, 24).install(Arrays.asList(new File(temporaryFolder.getRoot(), "base.apk")),
+            "-r");
+
+        Assert.assertEquals(Arrays.asList("cmd package install -r -S 100000"), adb.commands);
+        Assert.assertArrayEquals(base, adb.written.get("install"));
+    }
+
+    @Test
+    public void splitApksAreInstalledInSessionTest() throws Exception {
+        byte[] base = write("base.apk", 70000);
+        byte[] split = write("split_config.xxhdpi.apk", 3000);
+
+        new StreamedInstaller(SERIAL_NUMBER, channel, 21).install(Arrays.asList(
+            new File(temporaryFolder.getRoot(), "base.apk"),
+            new File(temporaryFolder.getRoot(), "split_config.xxhdpi.apk")), "-r");
+
+        Assert.assertEquals("pm install-create -r -S 73000", adb.commands.get(0));
+        Assert.assertEquals("pm install-commit 42", adb.commands.get(3));
+        Assert.assertArrayEquals(base, adb.written.get("0_base.apk"));
+        Assert.assertArrayEquals(split, adb.written.get("1_split_config.xxhdpi.apk"));
+    }
+
+    @Test
+    public void failedWriteAbandonsSessionTest() throws Exception {
+        write("base.apk", 1000);
+        write("broken.apk", 1000);
+
+        try {
+            new StreamedInstaller(SERIAL_NUMBER, channel, 24).install(Arrays.asList(
+                new File(temporaryFolder.getRoot(), "base.apk"),
+                new File(temporaryFolder.getRoot(), "broken.apk")));
+            Assert.fail("Installation of a broken APK has to fail.");
+        } catch (AndroidExecutionException ex) {
+            Assert.assertTrue(ex.getMessage().contains("broken.apk"));
+        }
+
+        Assert.assertTrue(adb.commands.contains("cmd package install-abandon 42"));
+        Assert.assertFalse(adb.commands.contains("cmd package install-commit 42"));
+    }
+
+    private byte[] write(String name, int length) throws IOException {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        FileOutputStream out = new FileOutputStream(new File(temporaryFolder.getRoot(), name));
+        out.write(content);
+        out.close();
+        return content;
+    }
+
+    private static final class FakeAdbServer implements Runnable {
+
+        private static final Pattern INSTALL_PATTERN = Pattern.compile(".* install .*-S (\\d+)");
+
+        private static final Pattern WRITE_PATTERN = Pattern.compile(".* install-write -S (\\d+) 42 (\\S+) -");
+
+        private final ServerSocket serverSocket;
+
+        private final List<String> commands = new CopyOnWriteArrayList<String>();
+
+        // name of the written APK -> its content
+        private final Map<String, byte[]> written = new ConcurrentHashMap<String, byte[]>();
+
+        private Thread thread;
+
+        FakeAdbServer() throws IOException {
+            this.serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void start() {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws Exception {
+            serverSocket.close();
+            thread.join(5000);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    Thread connection = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ex) {
+                // server socket closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                Assert.assertEquals("host:transport:" + SERIAL_NUMBER, request(in));
+                out.write("OKAY".getBytes("UTF-8"));
+
+                String command = request(in).substring("exec:".length());
+                out.write("OKAY".getBytes("UTF-8"));
+                commands.add(command);
+
+                out.write(execute(command, in).getBytes("UTF-8"));
+                out.flush();
+            } catch (Exception ex) {
+                // connection closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        private String execute(String command, DataInputStream in) throws IOException {
+            Matcher install = INSTALL_PATTERN.matcher(command);
+            Matcher write = WRITE_PATTERN.matcher(command);
+
+            if (command.contains(" install-create ")) {
+                return "Success: created install session [42]\n";
+            } else if (write.matches()) {
+                byte[] content = new byte[Integer.parseInt(write.group(1))];
+                in.readFully(content);
+                if (write.group(2).contains("broken")) {
+                    return "Error: Unable to write APK\n";
+                }
+                written.put(write.group(2), content);
+                return "Success: streamed " + content.length + " bytes\n";
+            } else if (install.matches()) {
+                byte[] content = new byte[Integer.parseInt(install.group(1))];
+                in.readFully(content);
+                written.put("install", content);
+                return "Success\n";
+            } else if (command.contains(" install-commit ") || command.contains(" install-abandon ")) {
+                return "Success\n";
+            }
+            return "Unknown command: " + command + "\n";
+        }
+
+        private static String request(DataInputStream in) throws IOException {
+            byte[] length = new byte[4];
+            in.readFully(length);
+            byte[] request = new byte[Integer.parseInt(new String(length, "UTF-8"), 16)];
+            in.readFully(request);
+            return new String(request, "UTF-8");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.android.ddmlib.IDevice;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class DeviceCrashWatchdogTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AndroidDevice device;
+
+    private LogcatDispatcher dispatcher;
+
+    private DeviceCrashWatchdog watchdog;
+
+    @Before
+    public void setup() {
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+        dispatcher = new LogcatDispatcher("emulator-5554");
+        watchdog = new DeviceCrashWatchdog(device, "com.example*", temporaryFolder.getRoot())
+            .anrTracesDelay(0)
+            .watch(dispatcher);
+        watchdog.arm(Thread.currentThread());
+    }
+
+    @After
+    public void tearDown() {
+        watchdog.disarm();
+        Thread.interrupted();
+        watchdog.close(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void fatalExceptionInterruptsTestTest() {
+        log("E/AndroidRuntime( 1234): FATAL EXCEPTION: main");
+        log("E/AndroidRuntime( 1234): Process: com.example.app, PID: 1234");
+        log("E/AndroidRuntime( 1234): java.lang.NullPointerException");
+        log("E/AndroidRuntime( 1234): \tat com.example.app.Main.onCreate(Main.java:42)");
+
+        Assert.assertTrue(Thread.interrupted());
+
+        String crash = watchdog.disarm();
+        Assert.assertTrue(crash, crash.startsWith("FATAL EXCEPTION in com.example.app (pid 1234)"));
+        Assert.assertTrue(crash, crash.contains("java.lang.NullPointerException"));
+        Assert.assertTrue(crash, crash.contains("Main.java:42"));
+    }
+
+    @Test
+    public void crashOfOtherProcessIsIgnoredTest() {
+        log("E/AndroidRuntime( 2345): FATAL EXCEPTION: main");
+        log("E/AndroidRuntime( 2345): Process: com.android.systemui, PID: 2345");
+        log("I/ActivityManager(  345): ANR in com.android.phone (com.android.phone/.Main)");
+
+        Assert.assertFalse(Thread.interrupted());
+        Assert.assertNull(watchdog.disarm());
+    }
+
+    @Test
+    public void anrTracesAndTombstoneArePulledTest() throws Exception {
+        log("E/ActivityManager(  345): ANR in com.example.app (com.example.app/.Main)");
+        log("F/DEBUG   (  123): pid: 1234, tid: 1234, name: main  >>> com.example.app <<<");
+        log("F/DEBUG   (  123): Tombstone written to: /data/tombstones/tombstone_03");
+
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals("ANR in com.example.app\n\tANR in com.example.app (com.example.app/.Main)", watchdog.disarm());
+
+        watchdog.close(10, TimeUnit.SECONDS);
+
+        verify(device).pull(eq(DeviceCrashWatchdog.ANR_TRACES), anyString());
+        verify(device).pull(eq("/data/tombstones/tombstone_03"), anyString());
+        Assert.assertEquals(2, watchdog.getCollected().size());
+        Assert.assertTrue(watchdog.getCollected().get(0).getPath().contains("emulator-5554" + File.separator));
+    }
+
+    @Test
+    public void deviceGoingOfflineInterruptsTestTest() throws Exception {
+        IDevice other = mock(IDevice.class);
+        when(other.getSerialNumber()).thenReturn("emulator-5556");
+        watchdog.deviceDisconnected(other);
+        Assert.assertFalse(Thread.interrupted());
+
+        IDevice delegate = mock(IDevice.class);
+        when(delegate.getSerialNumber()).thenReturn("emulator-5554");
+        when(delegate.isOffline()).thenReturn(true);
+        watchdog.deviceChanged(delegate, IDevice.CHANGE_STATE);
+
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals("Device emulator-5554 went offline", watchdog.disarm());
+        verify(device, never()).pull(anyString(), anyString());
+    }
+
+    private void log(String line) {
+        dispatcher.dispatch(new LogcatRecord().parseBrief(line));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class GzipRotatingLogcatSinkTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void allRecordsAreWrittenToOneSegmentTest() throws IOException {
+        File directory = new File(temporaryFolder.getRoot(), "emulator-5554");
+
+        GzipRotatingLogcatSink sink = new GzipRotatingLogcatSink(directory, 1024 * 1024, 0, 0);
+        write(sink, 10000);
+        sink.flush();
+        sink.close();
+
+        Assert.assertEquals(1, sink.getSegments().size());
+        Assert.assertTrue(sink.getSegments().get(0).getName().matches("logcat-\\d{8}-\\d{6}-0\\.log\\.gz"));
+
+        List<String> lines = read(sink.getSegments());
+        Assert.assertEquals(10000, lines.size());
+        Assert.assertEquals("D/Test(    1): message 9999", lines.get(9999));
+    }
+
+    @Test
+    public void segmentsAreRotatedBySizeTest() throws IOException {
+        // incompressible messages so segments grow fast
+        GzipRotatingLogcatSink sink = new GzipRotatingLogcatSink(temporaryFolder.getRoot(), 64 * 1024, 0, 0);
+        Random random = new Random(42);
+        LogcatRecord record = new LogcatRecord().setLevel('I').setTag("Noise").setPid(2);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            String message = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+            sink.write(record.setMessage(message));
+            expected.add(record.toString());
+        }
+        sink.close();
+
+        Assert.assertTrue(sink.getSegments().size() > 1);
+        Assert.assertEquals(expected, read(sink.getSegments()));
+    }
+
+    @Test
+    public void oldestSegmentsAreDeletedTest() throws IOException {
+        GzipRotatingLogcatSink sink = new GzipRotatingLogcatSink(temporaryFolder.getRoot(), 1, 0, 2);
+        for (int i = 0; i < 5; i++) {
+            write(sink, 10);
+            sink.flush();
+        }
+        sink.close();
+
+        Assert.assertEquals(2, sink.getSegments().size());
+        Assert.assertEquals(2, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void lineLongerThanChunkTest() throws IOException {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 300 * 1024) {
+            message.append("long line ");
+        }
+
+        GzipRotatingLogcatSink sink = new GzipRotatingLogcatSink(temporaryFolder.getRoot(), 1024 * 1024, 0, 0);
+        write(sink, 1);
+        sink.write(new LogcatRecord().setLevel('W').setTag("Long").setPid(3).setMessage(message.toString()));
+        write(sink, 1);
+        sink.close();
+
+        List<String> lines = read(sink.getSegments());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(message.length() + "W/Long(    3): ".length(), lines.get(1).length());
+    }
+
+    private static void write(LogcatSink sink, int count) throws IOException {
+        LogcatRecord record = new LogcatRecord();
+        for (int i = 0; i < count; i++) {
+            sink.write(record.clear().setLevel('D').setTag("Test").setPid(1).setMessage("message " + i));
+        }
+    }
+
+    private static List<String> read(List<File> segments) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (File segment : segments) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(segment)),
+                "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return lines;
+    }
+}
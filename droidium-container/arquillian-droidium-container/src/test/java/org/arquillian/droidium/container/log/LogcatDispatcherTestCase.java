@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.LogcatListener;
+import org.arquillian.droidium.container.api.LogcatMatch;
+import org.arquillian.droidium.container.api.LogcatSubscription;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatDispatcherTestCase {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LogcatDispatcher dispatcher;
+
+    private LogcatPipeline pipeline;
+
+    private Writer logcat;
+
+    @Before
+    public void setup() throws IOException {
+        PipedInputStream input = new PipedInputStream(64 * 1024);
+        logcat = new OutputStreamWriter(new PipedOutputStream(input), "UTF-8");
+
+        dispatcher = new LogcatDispatcher("emulator-5554");
+        pipeline = new LogcatPipeline("test", new WriterLogcatSink(new StringWriter()), null, 16, 50)
+            .dispatcher(dispatcher)
+            .start(input);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logcat.close();
+        pipeline.stop(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void expectedRecordIsMatchedTest() throws IOException {
+        LogcatSubscription started = dispatcher.expect("MyService", "started in (\\d+) ms");
+
+        log("I/Other    (  100): started in 1 ms");
+        log("I/MyService(  200): starting");
+        log("I/MyService(  200): started in 42 ms");
+
+        LogcatMatch match = started.await(10, TimeUnit.SECONDS);
+
+        Assert.assertNotNull(match);
+        Assert.assertEquals('I', match.getLevel());
+        Assert.assertEquals("MyService", match.getTag());
+        Assert.assertEquals(200, match.getPid());
+        Assert.assertEquals(1, match.groupCount());
+        Assert.assertEquals("42", match.group(1));
+        // expectations are cancelled by the first match
+        Assert.assertEquals(0, dispatcher.getSubscriptions());
+    }
+
+    @Test
+    public void awaitLogTimesOutTest() throws IOException {
+        expectedException.expect(AndroidExecutionException.class);
+        expectedException.expectMessage("with tag MyService matching \"never\"");
+
+        log("I/MyService(  200): started in 42 ms");
+
+        dispatcher.awaitLog("MyService", "never", 100, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void listenerGetsAllMatchesUntilCancelledTest() throws IOException {
+        final List<String> messages = new ArrayList<String>();
+
+        LogcatSubscription subscription = dispatcher.subscribe(null, "^tick", new LogcatListener() {
+            @Override
+            public void onLog(LogcatMatch match) {
+                synchronized (messages) {
+                    messages.add(match.getTag() + ":" + match.getMessage());
+                }
+            }
+        });
+
+        LogcatSubscription last = dispatcher.expect("Clock", "tick 3");
+        log("D/Clock(  300): tick 1");
+        log("D/Timer(  301): tick 2");
+        log("D/Clock(  300): tock");
+        log("D/Clock(  300): tick 3");
+        Assert.assertNotNull(last.await(10, TimeUnit.SECONDS));
+
+        subscription.cancel();
+        // records dispatched before an expectation is registered do not match it
+        LogcatSubscription fourth = dispatcher.expect("Clock", "tick 4");
+        log("D/Clock(  300): tick 4");
+        Assert.assertNotNull(fourth.await(10, TimeUnit.SECONDS));
+
+        synchronized (messages) {
+            Assert.assertEquals(3, messages.size());
+            Assert.assertEquals("Clock:tick 1", messages.get(0));
+            Assert.assertEquals("Timer:tick 2", messages.get(1));
+        }
+        Assert.assertEquals(3, subscription.getMatches());
+    }
+
+    @Test
+    public void invalidRegexTest() {
+        expectedException.expect(IllegalArgumentException.class);
+
+        dispatcher.expect("MyService", "started in (");
+    }
+
+    private void log(String line) throws IOException {
+        logcat.write(line);
+        logcat.write('\n');
+        logcat.flush();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidDeviceOutputReciever;
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatFilterTestCase {
+
+    private static final String[] TOYBOX_PS = new String[] {
+        "USER           PID  PPID     VSZ    RSS WCHAN            ADDR S NAME",
+        "root             1     0   10876   2052 SyS_epoll_wait      0 S init",
+        "u0_a55        1234   345 1386520  73240 SyS_epoll_wait      0 S com.example.app",
+        "u0_a12        2345   345 1351400  59388 SyS_epoll_wait      0 S com.android.systemui"
+    };
+
+    private AndroidDevice device;
+
+    private ProcessNameResolver resolver;
+
+    private volatile String[] psOutput = TOYBOX_PS;
+
+    @Before
+    public void setup() {
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((AndroidDeviceOutputReciever) invocation.getArguments()[1]).processNewLines(psOutput);
+                return null;
+            }
+        }).when(device).executeShellCommand(anyString(), any(AndroidDeviceOutputReciever.class));
+
+        resolver = new ProcessNameResolver(device, 2000, 5000);
+        // no asynchronous refreshes, tests trigger them explicitly
+        resolver.close();
+    }
+
+    @Test
+    public void parseToolboxAndToyboxPsTest() {
+        Map<Integer, String> toybox = ProcessNameResolver.parse(Arrays.asList(TOYBOX_PS));
+
+        Assert.assertEquals(3, toybox.size());
+        Assert.assertEquals("com.example.app", toybox.get(1234));
+
+        Map<Integer, String> toolbox = ProcessNameResolver.parse(Arrays.asList(
+            "USER     PID   PPID  VSIZE  RSS     WCHAN    PC         NAME",
+            "u0_a55    1234  345   512340 30212 ffffffff 40052a10 S com.example.app"));
+
+        Assert.assertEquals(1, toolbox.size());
+        Assert.assertEquals("com.example.app", toolbox.get(1234));
+    }
+
+    @Test
+    public void decisionIsMemoizedUntilResolverLearnsTest() {
+        LogcatFilter filter = new LogcatFilter(configuration("com.android.*"), resolver);
+        LogcatRecord record = new LogcatRecord().setLevel('I').setTag("SystemUI").setPid(2345).setMessage("message");
+
+        // not known yet, treated as a process with an empty name
+        Assert.assertTrue(filter.accept(record));
+        Assert.assertTrue(filter.accept(record));
+        Assert.assertEquals(1, filter.getEvaluations());
+
+        resolver.refresh();
+
+        Assert.assertFalse(filter.accept(record));
+        Assert.assertFalse(filter.accept(record));
+        Assert.assertEquals(2, filter.getEvaluations());
+
+        // nothing changed for this pid, the decision is kept without matching patterns again
+        resolver.refresh();
+
+        Assert.assertFalse(filter.accept(record));
+        Assert.assertEquals(2, filter.getEvaluations());
+    }
+
+    @Test
+    public void processNameIsLearnedFromActivityManagerTest() {
+        LogcatFilter filter = new LogcatFilter(configuration("com.example.*"), resolver);
+
+        filter.accept(new LogcatRecord().setLevel('I').setTag("ActivityManager").setPid(345)
+            .setMessage("Start proc 4321:com.example.other/u0a56 for activity com.example.other/.MainActivity"));
+
+        Assert.assertEquals("com.example.other", resolver.resolve(4321));
+        Assert.assertFalse(filter.accept(new LogcatRecord().setLevel('D').setTag("Other").setPid(4321).setMessage("hi")));
+
+        filter.accept(new LogcatRecord().setLevel('I').setTag("ActivityManager").setPid(345)
+            .setMessage("Start proc com.example.legacy for activity com.example.legacy/.Main: pid=5432 uid=10057 gids={50057}"));
+
+        Assert.assertEquals("com.example.legacy", resolver.resolve(5432));
+        Assert.assertEquals(0, resolver.getRefreshes());
+    }
+
+    @Test
+    public void refreshFallsBackToPlainPsTest() {
+        psOutput = new String[] { "bad pid '-A'" };
+        resolver.refresh();
+
+        Assert.assertNull(resolver.resolve(1234));
+
+        psOutput = TOYBOX_PS;
+        resolver.refresh();
+
+        Assert.assertEquals("com.example.app", resolver.resolve(1234));
+    }
+
+    @Test
+    public void reusedPidIsResolvedAgainTest() {
+        LogcatFilter filter = new LogcatFilter(configuration("com.android.*"), resolver);
+        LogcatRecord record = new LogcatRecord().setLevel('I').setTag("SystemUI").setPid(2345).setMessage("message");
+
+        resolver.refresh();
+
+        Assert.assertFalse(filter.accept(record));
+
+        // systemui died and its pid was taken by the application under test
+        psOutput = new String[] { TOYBOX_PS[0], TOYBOX_PS[1],
+            "u0_a55        2345   345 1386520  73240 SyS_epoll_wait      0 S com.example.app" };
+        resolver.refresh();
+
+        Assert.assertEquals("com.example.app", resolver.resolve(2345));
+        Assert.assertNull(resolver.resolve(1234));
+        Assert.assertTrue(filter.accept(record));
+    }
+
+    @Test
+    public void nameOfFinishedProcessIsDroppedTest() throws InterruptedException {
+        resolver.hint(new LogcatRecord().setLevel('I').setTag("ActivityManager").setPid(345)
+            .setMessage("Start proc 4321:com.example.other/u0a56 for activity com.example.other/.MainActivity"));
+
+        Assert.assertTrue(resolver.isKnown(4321));
+
+        Thread.sleep(5);
+
+        // listing taken after the hint does not contain the process anymore
+        resolver.refresh();
+
+        Assert.assertFalse(resolver.isKnown(4321));
+        Assert.assertTrue(resolver.isKnown(1234));
+    }
+
+    private AndroidContainerConfiguration configuration(String blacklist) {
+        AndroidContainerConfiguration configuration = new AndroidContainerConfiguration();
+        configuration.setLogPackageBlacklist(blacklist);
+        return configuration;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.configuration.AndroidContainerConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatHelperTestCase {
+
+    private AndroidContainerConfiguration configuration;
+
+    private AndroidDevice device;
+
+    @Before
+    public void setup() {
+        configuration = new AndroidContainerConfiguration();
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+    }
+
+    @Test
+    public void serialIdIsPutBeforeExtensionTest() {
+        configuration.setLogSerialId(true);
+        configuration.setLogFilePath("target" + File.separator + "logs.v2" + File.separator + "logcat.log");
+
+        File logFile = new LogcatHelper(configuration, device).getLogFile();
+
+        Assert.assertEquals(new File("target" + File.separator + "logs.v2", "logcat.emulator-5554.log"), logFile);
+    }
+
+    @Test
+    public void serialIdIsAppendedWithoutExtensionTest() {
+        configuration.setLogSerialId(true);
+        configuration.setLogFilePath("target" + File.separator + "logcat");
+
+        when(device.getSerialNumber()).thenReturn("192.168.56.101:5555");
+
+        File logFile = new LogcatHelper(configuration, device).getLogFile();
+
+        Assert.assertEquals(new File("target", "logcat.192.168.56.101_5555"), logFile);
+    }
+
+    @Test
+    public void logFileIsKeptWithoutSerialIdTest() {
+        configuration.setLogFilePath("target" + File.separator + "logcat.log");
+
+        Assert.assertEquals(new File("target", "logcat.log"), new LogcatHelper(configuration, device).getLogFile());
+    }
+
+    @Test
+    public void logDirectoryIsPerDeviceTest() {
+        configuration.setLogDir("target" + File.separator + "logs");
+
+        Assert.assertEquals(new File(new File("target", "logs"), "emulator-5554"),
+            new LogcatHelper(configuration, device).getLogDirectory());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatPipelineTestCase {
+
+    @Test
+    public void parseBriefLineTest() {
+        LogcatRecord record = new LogcatRecord().parseBrief("I/ActivityManager(  345): Start proc com.example");
+
+        Assert.assertTrue(record.isParsed());
+        Assert.assertEquals('I', record.getLevel());
+        Assert.assertEquals("ActivityManager", record.getTag());
+        Assert.assertEquals(345, record.getPid());
+        Assert.assertEquals("Start proc com.example", record.getMessage());
+
+        record.parseBrief("--------- beginning of /dev/log/main");
+
+        Assert.assertFalse(record.isParsed());
+        Assert.assertEquals("--------- beginning of /dev/log/main", record.toString());
+    }
+
+    @Test
+    public void renderRecordWithoutLineTest() {
+        LogcatRecord record = new LogcatRecord().setLevel('E').setTag("AndroidRuntime").setPid(1234).setMessage("boom");
+
+        Assert.assertEquals("E/AndroidRuntime( 1234): boom", record.toString());
+    }
+
+    @Test
+    public void queueWrapsAroundTest() throws Exception {
+        LogcatRecordQueue queue = new LogcatRecordQueue(3);
+        final List<String> consumed = new ArrayList<String>();
+
+        Assert.assertEquals(4, queue.capacity());
+
+        for (int i = 0; i < 10; i++) {
+            LogcatRecord record = queue.claim();
+            Assert.assertNotNull(record);
+            record.clear().setLine("line " + i);
+            queue.publish();
+
+            queue.drain(new LogcatRecordQueue.RecordHandler() {
+                @Override
+                public void handle(LogcatRecord record) {
+                    consumed.add(record.getLine());
+                }
+            }, 1);
+        }
+
+        Assert.assertEquals(10, consumed.size());
+        Assert.assertEquals("line 9", consumed.get(9));
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNotNull(queue.claim());
+            queue.publish();
+        }
+        Assert.assertNull(queue.claim());
+    }
+
+    @Test
+    public void allLinesAreWrittenInOrderTest() throws Exception {
+        CollectingSink sink = new CollectingSink(0);
+
+        LogcatPipeline pipeline = new LogcatPipeline("test", sink, null, 16, 50).start(input(1000));
+        pipeline.stop(10, TimeUnit.SECONDS);
+
+        Assert.assertTrue(sink.closed);
+        Assert.assertEquals(1000, pipeline.getWritten());
+        Assert.assertEquals(0, pipeline.getDropped());
+        Assert.assertEquals(1000, sink.lines.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, sink.pids.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void droppedLinesAreReportedTest() throws Exception {
+        CollectingSink sink = new CollectingSink(700);
+
+        LogcatPipeline pipeline = new LogcatPipeline("test", sink, null, 1, 50).start(input(5));
+        pipeline.stop(20, TimeUnit.SECONDS);
+
+        Assert.assertTrue(pipeline.getDropped() > 0);
+        Assert.assertEquals(5, pipeline.getWritten() + pipeline.getDropped());
+
+        boolean reported = false;
+        for (String line : sink.lines) {
+            reported |= line.contains("droidium dropped");
+        }
+        Assert.assertTrue("Dropped lines were not reported to the sink.", reported);
+    }
+
+    @Test
+    public void decodeBinaryEntriesTest() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        entry(output, 0, 1234, 1240, 1400000000, 5000000, 4, "ActivityManager", "Start proc 1234:com.example/u0a55");
+        entry(output, 24, 99, 100, 1400000001, 0, 6, "AndroidRuntime", "FATAL EXCEPTION: main\nat com.example.Main\n");
+
+        LogcatBinaryDecoder decoder = new LogcatBinaryDecoder(new ByteArrayInputStream(output.toByteArray()));
+        LogcatRecord record = new LogcatRecord();
+
+        Assert.assertTrue(decoder.next(record));
+        Assert.assertEquals('I', record.getLevel());
+        Assert.assertEquals(1234, record.getPid());
+        Assert.assertEquals(1240, record.getTid());
+        Assert.assertEquals(1400000000005L, record.getTimestamp());
+        Assert.assertTrue(record.tagEquals("ActivityManager"));
+        Assert.assertFalse(record.tagEquals("ActivityManagerX"));
+        Assert.assertEquals("Start proc 1234:com.example/u0a55", record.getMessage());
+
+        Assert.assertTrue(decoder.next(record));
+        LogcatRecord copy = new LogcatRecord().copyFrom(record);
+        Assert.assertFalse(decoder.next(record));
+
+        Assert.assertEquals('E', copy.getLevel());
+        Assert.assertEquals("E/AndroidRuntime(   99): FATAL EXCEPTION: main\nE/AndroidRuntime(   99): at com.example.Main",
+            copy.toString());
+    }
+
+    @Test
+    public void binaryLinesAreWrittenInOrderTest() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            entry(output, 28, i, i, 0, 0, 3, "Test", "message " + i);
+        }
+
+        CollectingSink sink = new CollectingSink(0);
+
+        LogcatPipeline pipeline = new LogcatPipeline("test", sink, null, 16, 50).binary(true)
+            .start(new ByteArrayInputStream(output.toByteArray()));
+        pipeline.stop(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1000, pipeline.getWritten());
+        Assert.assertEquals("D/Test(  999): message 999", sink.lines.get(999));
+    }
+
+    private static void entry(ByteArrayOutputStream output, int headerSize, int pid, int tid, int sec, int nsec, int priority,
+        String tag, String message) throws IOException {
+        byte[] tagBytes = tag.getBytes("UTF-8");
+        byte[] messageBytes = message.getBytes("UTF-8");
+        int length = 1 + tagBytes.length + 1 + messageBytes.length + 1;
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize == 0 ? 20 : headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) length).putShort((short) headerSize).putInt(pid).putInt(tid).putInt(sec).putInt(nsec);
+
+        output.write(header.array());
+        output.write(priority);
+        output.write(tagBytes);
+        output.write(0);
+        output.write(messageBytes);
+        output.write(0);
+    }
+
+    private static ByteArrayInputStream input(int lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("D/Test(").append(i).append("): message ").append(i).append('\n');
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes("UTF-8"));
+    }
+
+    private static final class CollectingSink implements LogcatSink {
+
+        private final List<String> lines = new ArrayList<String>();
+
+        private final List<Integer> pids = new ArrayList<Integer>();
+
+        private final long delay;
+
+        private volatile boolean closed;
+
+        public CollectingSink(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void write(LogcatRecord record) throws IOException {
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            lines.add(record.toString());
+            if (record.isParsed()) {
+                pids.add(record.getPid());
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatStoreTestCase {
+
+    private static final int RECORDS = 5000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    private ProcessNameResolver resolver;
+
+    @Before
+    public void setup() {
+        AndroidDevice device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+        resolver = new ProcessNameResolver(device, 2000, 5000);
+        // names are learned from hints only
+        resolver.close();
+
+        directory = new File(temporaryFolder.getRoot(), "emulator-5554");
+    }
+
+    @Test
+    public void queryByLevelAndTagTest() throws IOException {
+        write(new IndexedLogcatSink(directory, resolver), 0).close();
+
+        LogcatStore store = LogcatStore.open(directory);
+        Assert.assertEquals(RECORDS, store.getIndexedRecords());
+
+        List<LogcatRecord> errors = store.query(new LogcatQuery().level('E'));
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals("E/Crash(  100): boom", errors.get(0).toString());
+        Assert.assertEquals(4000L, errors.get(0).getTimestamp());
+
+        List<LogcatRecord> warnings = store.query(new LogcatQuery().minLevel('W'));
+        Assert.assertEquals(1 + RECORDS / 100, warnings.size());
+
+        List<LogcatRecord> tagged = store.query(new LogcatQuery().tag("Tag7").limit(3));
+        Assert.assertEquals(3, tagged.size());
+        Assert.assertEquals("D/Tag7(  107): message 7", tagged.get(0).toString());
+        Assert.assertEquals("D/Tag7(  107): message 17", tagged.get(1).toString());
+    }
+
+    @Test
+    public void queryByPidProcessAndTimeTest() throws IOException {
+        write(new IndexedLogcatSink(directory, resolver), 0).close();
+
+        LogcatStore store = LogcatStore.open(directory);
+
+        Assert.assertEquals(RECORDS / 10, store.query(new LogcatQuery().pid(103)).size());
+
+        List<LogcatRecord> app = store.query(new LogcatQuery().process("com.example*"));
+        // pid 105 got its name at the time 105, the name of a process is known a moment after its first record
+        Assert.assertEquals(RECORDS / 10, app.size());
+        Assert.assertEquals("com.example.app", store.getProcessName(105, 5));
+        for (LogcatRecord record : app) {
+            Assert.assertEquals(105, record.getPid());
+        }
+
+        List<LogcatRecord> window = store.query(new LogcatQuery().from(1000).to(1009));
+        Assert.assertEquals(10, window.size());
+        Assert.assertEquals(1000L, window.get(0).getTimestamp());
+
+        Assert.assertTrue(store.query(new LogcatQuery().pid(999)).isEmpty());
+        Assert.assertTrue(store.query(new LogcatQuery().from(RECORDS + 1)).isEmpty());
+    }
+
+    @Test
+    public void recordsOutOfIndexAreReadTest() throws IOException {
+        IndexedLogcatSink sink = write(new IndexedLogcatSink(directory, null), 0);
+        LogcatRecord record = new LogcatRecord().setLevel('I').setTag("Late").setPid(1).setTid(1).setTimestamp(RECORDS);
+        sink.write(record.setMessage("not indexed"));
+        sink.close();
+
+        // the index entry of the last block is written when the block is full or the sink is closed, the writer may be
+        // killed before
+        File index = new File(directory, IndexedLogcatSink.INDEX_FILE);
+        truncate(index, index.length() - IndexedLogcatSink.INDEX_ENTRY_SIZE);
+
+        LogcatStore store = LogcatStore.open(directory);
+        Assert.assertTrue(store.getIndexedRecords() > 0);
+        Assert.assertTrue(store.getIndexedRecords() < RECORDS);
+        Assert.assertEquals(RECORDS + 1, store.query(new LogcatQuery()).size());
+
+        List<LogcatRecord> late = store.query(new LogcatQuery().tag("Late"));
+        Assert.assertEquals(1, late.size());
+        Assert.assertEquals("not indexed", late.get(0).getMessage());
+    }
+
+    @Test
+    public void flushDoesNotCloseBlockTest() throws IOException {
+        IndexedLogcatSink sink = new IndexedLogcatSink(directory, null);
+        LogcatRecord record = new LogcatRecord();
+        for (int i = 0; i < RECORDS; i++) {
+            sink.write(record.clear().setLevel('D').setTag("Tag").setPid(1).setTid(1).setTimestamp(i).setMessage("m" + i));
+            sink.flush();
+        }
+
+        // the open block is read as not indexed until the sink is closed
+        LogcatStore store = LogcatStore.open(directory);
+        Assert.assertEquals(RECORDS, store.query(new LogcatQuery()).size());
+        sink.close();
+
+        store = LogcatStore.open(directory);
+        Assert.assertEquals(RECORDS, store.getIndexedRecords());
+        long length = new File(directory, IndexedLogcatSink.RECORDS_FILE).length();
+        Assert.assertTrue(store.getBlocks() > 1);
+        Assert.assertTrue(store.getBlocks() <= length / IndexedLogcatSink.BLOCK_BYTES + 1);
+    }
+
+    @Test
+    public void recordsOfKilledWriterAreReadInChunksTest() throws IOException {
+        IndexedLogcatSink sink = write(new IndexedLogcatSink(directory, null), 0);
+        char[] large = new char[3 * LogcatStore.CHUNK_SIZE];
+        Arrays.fill(large, 'x');
+        sink.write(new LogcatRecord().setLevel('I').setTag("Large").setPid(1).setTid(1).setTimestamp(RECORDS)
+            .setMessage(new String(large)));
+        sink.close();
+
+        // nothing of the first writer is indexed, the second one appends its blocks after them
+        truncate(new File(directory, IndexedLogcatSink.INDEX_FILE), 0);
+        write(new IndexedLogcatSink(directory, null), RECORDS + 1).close();
+
+        LogcatStore store = LogcatStore.open(directory);
+        Assert.assertEquals(RECORDS, store.getIndexedRecords());
+
+        List<LogcatRecord> all = store.query(new LogcatQuery());
+        Assert.assertEquals(2 * RECORDS + 1, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(i, all.get(i).getTimestamp());
+        }
+        Assert.assertEquals(large.length, all.get(RECORDS).getMessage().length());
+        Assert.assertEquals(2, store.query(new LogcatQuery().level('E')).size());
+    }
+
+    @Test
+    public void storeIsAppendedAndUnparsedLinesAreKeptTest() throws IOException {
+        write(new IndexedLogcatSink(directory, null), 0).close();
+
+        IndexedLogcatSink sink = new IndexedLogcatSink(directory, null);
+        sink.write(new LogcatRecord().setLine("--------- beginning of main"));
+        write(sink, RECORDS).close();
+
+        LogcatStore store = LogcatStore.open(directory);
+        Assert.assertEquals(2 * RECORDS + 1, store.getIndexedRecords());
+
+        List<LogcatRecord> unknown = store.query(new LogcatQuery().level(LogcatRecord.UNKNOWN_LEVEL));
+        Assert.assertEquals(1, unknown.size());
+        Assert.assertEquals("--------- beginning of main", unknown.get(0).toString());
+
+        Assert.assertEquals(2, store.query(new LogcatQuery().level('E')).size());
+    }
+
+    private IndexedLogcatSink write(IndexedLogcatSink sink, long start) throws IOException {
+        LogcatRecord record = new LogcatRecord();
+        for (int i = 0; i < RECORDS; i++) {
+            record.clear().setPid(100 + i % 10).setTid(1).setTimestamp(start + i).setTag("Tag" + i % 10);
+            if (i == 4000) {
+                record.setLevel('E').setTag("Crash").setMessage("boom");
+            } else if (i % 100 == 50) {
+                record.setLevel('W').setMessage("warning " + i);
+            } else {
+                record.setLevel('D').setMessage("message " + i);
+            }
+            sink.write(record);
+
+            if (i == 100) {
+                resolver.hint(new LogcatRecord().setLevel('I').setTag("ActivityManager").setPid(1).setTid(1)
+                    .setMessage("Start proc 105:com.example.app/u0a55 for activity com.example.app/.Main"));
+            }
+        }
+        return sink;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.getChannel().truncate(length);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ */
+@RunWith(JUnit4.class)
+public class LogcatTestBufferTestCase {
+
+    @Test
+    public void segmentStartsAtResetTest() throws IOException {
+        LinesSink delegate = new LinesSink();
+        LogcatTestBuffer buffer = new LogcatTestBuffer(1024 * 1024, delegate);
+
+        write(buffer, "previous test", 3);
+        buffer.reset();
+        write(buffer, "current test", 2);
+
+        LinesSink segment = new LinesSink();
+        Assert.assertEquals(2, buffer.writeTo(segment));
+
+        Assert.assertEquals(Arrays.asList("D/Test(    1): current test 0", "D/Test(    1): current test 1"), segment.lines);
+        Assert.assertEquals(5, delegate.lines.size());
+    }
+
+    @Test
+    public void oldestRecordsAreEvictedTest() throws IOException {
+        LogcatTestBuffer buffer = new LogcatTestBuffer(1000, null);
+
+        write(buffer, "message", 100);
+
+        Assert.assertTrue(buffer.getSize() <= 1000);
+        Assert.assertEquals(100, buffer.getRecords() + buffer.getEvicted());
+
+        LinesSink segment = new LinesSink();
+        buffer.writeTo(segment);
+
+        Assert.assertEquals(buffer.getRecords() + 1, segment.lines.size());
+        Assert.assertTrue(segment.lines.get(0).startsWith("--------- droidium evicted " + buffer.getEvicted()));
+        Assert.assertEquals("D/Test(    1): message 99", segment.lines.get(segment.lines.size() - 1));
+
+        buffer.reset();
+
+        Assert.assertEquals(0, buffer.getRecords());
+        Assert.assertEquals(0, buffer.getEvicted());
+        Assert.assertEquals(0, buffer.getSize());
+    }
+
+    private static void write(LogcatTestBuffer buffer, String message, int count) throws IOException {
+        LogcatRecord record = new LogcatRecord();
+        for (int i = 0; i < count; i++) {
+            buffer.write(record.clear().setLevel('D').setTag("Test").setPid(1).setMessage(message + " " + i));
+        }
+    }
+
+    private static final class LinesSink implements LogcatSink {
+
+        private final List<String> lines = new ArrayList<String>();
+
+        @Override
+        public void write(LogcatRecord record) throws IOException {
+            lines.add(record.toString());
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -13,6 +13,8 @@ import org.arquillian.droidium.container.impl.AndroidBridgeConnector;
 import org.arquillian.droidium.container.impl.AndroidDeviceSelectorImpl;
 import org.arquillian.droidium.container.log.LogLevel;
 import org.arquillian.droidium.container.log.LogcatHelper;
+import org.arquillian.droidium.container.log.ProcessNameResolver;
+import org.arquillian.droidium.container.log.WriterLogcatSink;
 import org.arquillian.droidium.container.spi.event.AndroidContainerStart;
 import org.arquillian.droidium.container.spi.event.AndroidDeviceReady;
 import org.arquillian.droidium.container.utils.AndroidIdentifierGenerator;
@@ -85,7 +87,7 @@ public class AndroidLogInitializerTestCase extends AbstractContainerTestTestBase
 
         TestWriter testWriter = new TestWriter();
         LogcatHelper mockedLogcatHelper = Mockito.mock(LogcatHelper.class);
-        Mockito.when(mockedLogcatHelper.prepareWriter()).thenReturn(testWriter);
+        Mockito.when(mockedLogcatHelper.prepareSink(Mockito.any(ProcessNameResolver.class))).thenReturn(new WriterLogcatSink(testWriter));
 
         bind(ContainerScoped.class, LogcatHelper.class, mockedLogcatHelper);
 
@@ -0,0 +1,156 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.droidium.container.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link ZipAligner}.
+ *
+ * @author <a href="smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ZipAlignerTestCase {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // entry name -> content, only .dex and .xml entries are compressed
+    private final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+
+    private File apk;
+
+    @Before
+    public void setup() throws Exception {
+        contents.put("AndroidManifest.xml", random(1001));
+        contents.put("a", random(3));
+        contents.put("classes.dex", random(20000));
+        contents.put("res/raw/b.bin", random(7));
+        contents.put("lib/x86/libfoo.so", random(5000));
+        contents.put("resources.arsc", random(333));
+
+        apk = temporaryFolder.newFile("test.apk");
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk));
+        out.setComment("droidium");
+        for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+            ZipEntry entry = new ZipEntry(content.getKey());
+            if (!content.getKey().endsWith(".dex") && !content.getKey().endsWith(".xml")) {
+                CRC32 crc = new CRC32();
+                crc.update(content.getValue());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.getValue().length);
+                entry.setCompressedSize(content.getValue().length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(content.getValue());
+            out.closeEntry();
+        }
+        out.close();
+    }
+
+    @Test
+    public void alignTest() throws Exception {
+        Assert.assertTrue(ZipAligner.verify(apk).contains("lib/x86/libfoo.so"));
+
+        File aligned = new File(temporaryFolder.getRoot(), "aligned.apk");
+        ZipAligner.align(apk, aligned);
+
+        Assert.assertTrue(ZipAligner.verify(aligned).isEmpty());
+
+        ZipFile zip = new ZipFile(aligned);
+        try {
+            Assert.assertEquals(contents.size(), zip.size());
+            Assert.assertEquals("droidium", zip.getComment());
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                Assert.assertArrayEquals(content.getKey(), content.getValue(), read(zip, content.getKey()));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void alignAlignedTest() throws Exception {
+        File aligned = new File(temporaryFolder.getRoot(), "aligned.apk");
+        ZipAligner.align(apk, aligned);
+
+        File realigned = new File(temporaryFolder.getRoot(), "realigned.apk");
+        ZipAligner.align(aligned, realigned);
+
+        Assert.assertEquals(aligned.length(), realigned.length());
+    }
+
+    @Test
+    public void invalidZipTest() throws Exception {
+        expectedException.expect(ZipException.class);
+
+        File invalid = temporaryFolder.newFile("invalid.apk");
+        FileOutputStream out = new FileOutputStream(invalid);
+        out.write(random(1000));
+        out.close();
+
+        ZipAligner.verify(invalid);
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -19,6 +19,7 @@ package org.arquillian.droidium.native_.selendroid;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,15 +33,13 @@ import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.api.AndroidExecutionException;
 import org.arquillian.droidium.container.configuration.AndroidSDK;
 import org.arquillian.droidium.container.configuration.Validate;
+import org.arquillian.droidium.container.impl.ApkCache;
 import org.arquillian.droidium.container.utils.DroidiumFileUtils;
 import org.arquillian.droidium.container.utils.Monkey;
 import org.arquillian.droidium.native_.exception.InvalidSelendroidPortException;
 import org.arquillian.droidium.native_.spi.SelendroidDeployment;
-import org.arquillian.spacelift.Spacelift;
 import org.arquillian.spacelift.process.Command;
 import org.arquillian.spacelift.process.CommandBuilder;
-import org.arquillian.spacelift.process.ProcessResult;
-import org.arquillian.spacelift.task.os.CommandTool;
 
 /**
  * Manages deployment and undeployment of Selendroid servers which instrument Android packages. There is strict one-to-one
@@ -100,26 +99,17 @@ public class SelendroidServerManager {
         Validate.notNull(deployment, "Selendroid deployment to deploy can not be a null object!");
         Validate.notNull(deployment.getResigned(), "Resigned Selendroid application to deploy can not be a null object!");
 
-        Command selendroidInstallCommand = new CommandBuilder(sdk.getAdbPath())
-            .parameter("-s")
-            .parameter(device.getSerialNumber())
-            .parameter("install")
-            .parameter(deployment.getResigned().getAbsolutePath())
-            .build();
-
         if (device.isPackageInstalled(deployment.getInstrumenationTestPackageName())) {
             device.uninstallPackage(deployment.getInstrumenationTestPackageName());
         }
 
-        logger.fine("Selendroid server installation command: " + selendroidInstallCommand.toString());
-
-        ProcessResult processResult = Spacelift.task(CommandTool.class)
-            .addEnvironment(sdk.getPlatformConfiguration().getAndroidSystemEnvironmentProperties())
-            .command(selendroidInstallCommand).execute().await();
+        int apkCacheSize = sdk.getAndroidContainerConfiguration().getApkCacheSizeInMegabytes();
 
-        if (processResult.exitValue() != 0) {
-            throw new AndroidExecutionException("Unable to execute Selendroid installation process, exit value: " +
-                processResult.exitValue());
+        if (apkCacheSize > 0) {
+            new ApkCache(device, apkCacheSize * 1024L * 1024L, sdk.getPlatformConfiguration().getTmpDir())
+                .install(deployment.getResigned(), "-r");
+        } else {
+            device.installPackages(Collections.singletonList(deployment.getResigned()), true);
         }
 
         if (!device.isPackageInstalled(deployment.getInstrumenationTestPackageName())) {
@@ -66,6 +66,8 @@ public class DroidiumPlatformConfiguration {
 
     private String adbServerPort = "5037";
 
+    private String parallelEmulatorShutdown = "true";
+
     // by default null since its default value depends on androidSdkHome which
     // can be changed by user, when not set by user, it will be resolved in validate() in this class
     private String keystore = null;
@@ -148,6 +150,10 @@ public class DroidiumPlatformConfiguration {
         return getProperty("adbServerPort", adbServerPort);
     }
 
+    public boolean isParallelEmulatorShutdown() {
+        return Boolean.parseBoolean(getProperty("parallelEmulatorShutdown", parallelEmulatorShutdown));
+    }
+
     public String getKeystore() {
         return getProperty("keystore", keystore);
     }
@@ -418,7 +424,8 @@ public class DroidiumPlatformConfiguration {
         sb.append(String.format("%-40s %s\n", "tmpDir", getTmpDir()));
         sb.append(String.format("%-40s %s\n", "removeTmpDir", getRemoveTmpDir()));
         sb.append(String.format("%-40s %s\n", "ddmlibCommandTimeout", getDdmlibCommandTimeout()));
-        sb.append(String.format("%-40s %s", "forceNewBridge", getForceNewBridge()));
+        sb.append(String.format("%-40s %s\n", "forceNewBridge", getForceNewBridge()));
+        sb.append(String.format("%-40s %s", "parallelEmulatorShutdown", isParallelEmulatorShutdown()));
         return sb.toString();
     }
 }
@@ -18,6 +18,8 @@ package org.arquillian.extension.recorder.video.droidium;
 
 import org.arquillian.extension.recorder.video.droidium.configuration.DroidiumVideoRecorderConfigurator;
 import org.arquillian.extension.recorder.video.droidium.impl.DroidiumVideoRecorderCreator;
+import org.arquillian.extension.recorder.video.droidium.impl.DroidiumVideoResultDecider;
+import org.arquillian.extension.recorder.video.droidium.impl.DroidiumVideoSegmentReporter;
 import org.jboss.arquillian.core.spi.LoadableExtension;
 
 /**
@@ -30,6 +32,8 @@ public class DroidiumVideoRecorderExtension implements LoadableExtension {
     public void register(ExtensionBuilder builder) {
         builder.observer(DroidiumVideoRecorderConfigurator.class);
         builder.observer(DroidiumVideoRecorderCreator.class);
+        builder.observer(DroidiumVideoSegmentReporter.class);
+        builder.observer(DroidiumVideoResultDecider.class);
     }
 
 }
@@ -18,7 +18,9 @@ package org.arquillian.extension.recorder.video.droidium.configuration;
 
 import java.io.File;
 
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
 import org.arquillian.extension.recorder.video.VideoConfiguration;
+import org.arquillian.extension.recorder.video.VideoConfigurationException;
 import org.arquillian.extension.recorder.video.VideoType;
 import org.arquillian.recorder.reporter.ReporterConfiguration;
 
@@ -34,10 +36,28 @@ public class DroidiumVideoConfiguration extends VideoConfiguration {
 
     private static final long DEFAULT_BITRATE = 4000000; // 200Mbps
 
+    private static final int MIN_SEGMENT_LENGTH = 10;
+
+    private static final String SEGMENT_LENGTH = "segmentLength";
+
+    private static final String STITCH_SEGMENTS = "stitchSegments";
+
+    private static final String STREAM_VIDEO = "streamVideo";
+
+    private static final String RING_LENGTH = "ringLength";
+
     private String bitrate = "4000000"; // 4Mbps by default
 
     private String remoteVideoDir = "/sdcard/";
 
+    private String segmentLength = "170";
+
+    private String stitchSegments = "true";
+
+    private String streamVideo = "false";
+
+    private String ringLength = "0";
+
     public DroidiumVideoConfiguration(ReporterConfiguration reporterConfiguration) {
         super(reporterConfiguration);
     }
@@ -65,6 +85,58 @@ public class DroidiumVideoConfiguration extends VideoConfiguration {
         return new File(getProperty("remoteVideoDir", remoteVideoDir));
     }
 
+    /**
+     * A recording longer than this is split into segments, the next segment starts to be recorded as soon as the previous
+     * one ends. It can not exceed {@value ScreenrecordOptions#MAX_TIME_LIMIT} seconds which is the limit of
+     * {@code screenrecord}.
+     *
+     * @return length of one segment of a video in seconds, defaults to 170
+     */
+    public int getSegmentLength() {
+        return Integer.parseInt(getProperty(SEGMENT_LENGTH, segmentLength));
+    }
+
+    /**
+     *
+     * @return true if segments of a video are joined into one video, false if they are saved and reported one by one,
+     *         defaults to true
+     */
+    public boolean getStitchSegments() {
+        return Boolean.parseBoolean(getProperty(STITCH_SEGMENTS, stitchSegments));
+    }
+
+    /**
+     * Streamed video is sent to the host computer while it is recorded, it is neither saved on the device nor split into
+     * segments. It requires Android device of API level 21 and above, other devices fall back to segments.
+     *
+     * @return true if videos are streamed to the host computer, defaults to false
+     */
+    public boolean getStreamVideo() {
+        return Boolean.parseBoolean(getProperty(STREAM_VIDEO, streamVideo));
+    }
+
+    /**
+     * When videos are taken only on failure and this is greater than 0, segments of a video are kept on the device and
+     * only the last ones covering at least this many seconds are kept, older ones are removed right away. Segments are
+     * pulled and stitched only when the test fails, a video of a passed test is removed on the device without any
+     * transfer. Segments should be short in this mode, see {@link #getSegmentLength()}. Videos are not streamed in this
+     * mode.
+     *
+     * @return length of the end of a video in seconds which is kept in the ring of segments, defaults to 0 which records
+     *         whole videos
+     */
+    public int getRingLength() {
+        return Integer.parseInt(getProperty(RING_LENGTH, ringLength));
+    }
+
+    /**
+     *
+     * @return true if videos are recorded into the ring of segments, see {@link #getRingLength()}
+     */
+    public boolean isRingRecording() {
+        return getTakeOnlyOnFail() && getRingLength() > 0;
+    }
+
     @Override
     public String getVideoType() {
         return VideoType.MP4.toString().toUpperCase();
@@ -73,6 +145,24 @@ public class DroidiumVideoConfiguration extends VideoConfiguration {
     @Override
     public void validate() {
         super.validate();
+
+        try {
+            int segmentLength = getSegmentLength();
+            if (segmentLength < MIN_SEGMENT_LENGTH || segmentLength > ScreenrecordOptions.MAX_TIME_LIMIT) {
+                throw new VideoConfigurationException("Length of a video segment has to be between " + MIN_SEGMENT_LENGTH
+                    + " and " + ScreenrecordOptions.MAX_TIME_LIMIT + " seconds.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new VideoConfigurationException("Unable to parse " + SEGMENT_LENGTH + ".", ex);
+        }
+
+        try {
+            if (getRingLength() < 0) {
+                throw new VideoConfigurationException("Length of the ring of video segments can not be negative.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new VideoConfigurationException("Unable to parse " + RING_LENGTH + ".", ex);
+        }
     }
 
     @Override
@@ -81,6 +171,10 @@ public class DroidiumVideoConfiguration extends VideoConfiguration {
         sb.append(super.toString());
         sb.append(String.format("%-40s %s\n", "bitrate", getBitrate()));
         sb.append(String.format("%-40s %s\n", "remoteVideoDir", getRemoteVideoDir().getAbsolutePath()));
+        sb.append(String.format("%-40s %s\n", SEGMENT_LENGTH, getSegmentLength()));
+        sb.append(String.format("%-40s %s\n", STITCH_SEGMENTS, getStitchSegments()));
+        sb.append(String.format("%-40s %s\n", STREAM_VIDEO, getStreamVideo()));
+        sb.append(String.format("%-40s %s\n", RING_LENGTH, getRingLength()));
         return sb.toString();
     }
 
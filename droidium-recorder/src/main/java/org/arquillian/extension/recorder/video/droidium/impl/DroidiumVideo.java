@@ -24,4 +24,17 @@ import org.arquillian.extension.recorder.video.Video;
  */
 public class DroidiumVideo extends Video {
 
+    private boolean discarded = false;
+
+    /**
+     *
+     * @return true if the video was discarded when it was stopped, its file does not exist then
+     */
+    public boolean isDiscarded() {
+        return discarded;
+    }
+
+    public void setDiscarded(boolean discarded) {
+        this.discarded = discarded;
+    }
 }
@@ -17,6 +17,8 @@
 package org.arquillian.extension.recorder.video.droidium.impl;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,7 +56,9 @@ public class DroidiumVideoRecorder implements Recorder {
 
     private String message;
 
-    private Video timeoutedVideo = null;
+    private boolean keepVideo = true;
+
+    private final List<Video> unreportedSegments = new ArrayList<Video>();
 
     public DroidiumVideoRecorder(TakenResourceRegister takenResourceRegister) {
         Validate.notNull(takenResourceRegister, "Resource register can not be a null object!");
@@ -149,12 +153,8 @@ public class DroidiumVideoRecorder implements Recorder {
         toFile = new File(videoTargetDir, toFile.getPath());
         RecorderFileUtils.createDirectory(toFile.getParentFile());
 
-        timeoutedVideo = null;
-
         recorder.setAndroidDevice(androidDevice);
         recorder.startRecording(toFile);
-
-        logger.log(Level.INFO, "after starting recording");
     }
 
     @Override
@@ -186,16 +186,20 @@ public class DroidiumVideoRecorder implements Recorder {
     @Override
     public Video stopRecording() {
 
-        Video video = null;
-
-        if (timeoutedVideo != null) {
-            video = timeoutedVideo;
-        } else if (recorder != null && recorder.isRecording()) {
-            video = recorder.stopRecording();
-        } else {
+        if (recorder == null || !recorder.isRecording()) {
             throw new IllegalStateException("It seems you are not recording yet.");
         }
 
+        boolean keep = keepVideo;
+        keepVideo = true;
+        Video video = recorder.stopRecording(keep);
+        if (!keep) {
+            message = null;
+            logger.log(Level.INFO, "video {0} was discarded", video.getResource().getName());
+            return video;
+        }
+        addSegments(video, recorder.getUnstitchedSegments());
+
         if (message != null && !message.isEmpty()) {
             video.setMessage(message);
             message = null;
@@ -203,11 +207,37 @@ public class DroidiumVideoRecorder implements Recorder {
 
         takenResourceRegister.addTaken(video);
 
-        logger.log(Level.INFO, "after stop recording");
-
         return video;
     }
 
+    /**
+     * Decides whether the video which is being recorded is kept when it is stopped. A discarded video is neither pulled
+     * from the device nor taken, its file does not exist and {@link #stopRecording()} returns it marked as
+     * {@link DroidiumVideo#isDiscarded() discarded} so nobody links its file. Videos are kept by default, nothing is
+     * decided when no video is being recorded.
+     *
+     * @param keepVideo true if the video is kept, false if it is discarded
+     */
+    public void keepVideo(boolean keepVideo) {
+        if (recorder != null && recorder.isRecording()) {
+            this.keepVideo = keepVideo;
+        }
+    }
+
+    /**
+     * Segments of stopped videos are taken but not reported yet. This method hands them over to the caller which is
+     * responsible for reporting them.
+     *
+     * @return segments following the first one of videos stopped since the last call when segments were not stitched
+     */
+    public List<Video> drainUnreportedSegments() {
+        synchronized (unreportedSegments) {
+            List<Video> segments = new ArrayList<Video>(unreportedSegments);
+            unreportedSegments.clear();
+            return segments;
+        }
+    }
+
     @Override
     public Recorder setFrameRate(int framerate) {
         return this;
@@ -226,6 +256,29 @@ public class DroidiumVideoRecorder implements Recorder {
 
     // helpers
 
+    private void addSegments(Video video, List<File> segments) {
+        int count = segments.size() + 1;
+
+        for (int i = 0; i < segments.size(); i++) {
+            Video segment = new DroidiumVideo();
+            segment.setResource(segments.get(i));
+            segment.setResourceType(video.getResourceType());
+            segment.setWidth(video.getWidth());
+            segment.setHeight(video.getHeight());
+            segment.setMessage("segment " + (i + 2) + "/" + count + " of " + video.getResource().getName());
+
+            takenResourceRegister.addTaken(segment);
+
+            synchronized (unreportedSegments) {
+                unreportedSegments.add(segment);
+            }
+        }
+
+        if (count > 1) {
+            video.setMessage("segment 1/" + count);
+        }
+    }
+
     private String getAndroidContainerIdentifier(AndroidDevice androidDevice) {
 
         String id = null;
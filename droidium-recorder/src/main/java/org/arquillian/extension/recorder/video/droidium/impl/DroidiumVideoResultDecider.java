@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.video.droidium.impl;
+
+import org.arquillian.extension.recorder.video.Recorder;
+import org.arquillian.extension.recorder.video.VideoConfiguration;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.TestResult;
+import org.jboss.arquillian.test.spi.event.suite.After;
+
+/**
+ * Observes:
+ * <ul>
+ * <li>{@link After}</li>
+ * </ul>
+ * Tells {@link DroidiumVideoRecorder} whether the video of the test is kept before the video is stopped. When videos are
+ * taken only on failure, the video of a passed test is discarded on the device instead of being pulled to the host just
+ * to be deleted.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class DroidiumVideoResultDecider {
+
+    @Inject
+    private Instance<Recorder> recorder;
+
+    @Inject
+    private Instance<VideoConfiguration> configuration;
+
+    public void onAfter(@Observes(precedence = 100) After event, TestResult testResult) {
+        if (!(recorder.get() instanceof DroidiumVideoRecorder) || !configuration.get().getTakeOnlyOnFail()) {
+            return;
+        }
+
+        ((DroidiumVideoRecorder) recorder.get()).keepVideo(testResult.getStatus() == TestResult.Status.FAILED);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.video.droidium.impl;
+
+import java.io.File;
+import java.util.List;
+
+import org.arquillian.extension.recorder.When;
+import org.arquillian.extension.recorder.video.Recorder;
+import org.arquillian.extension.recorder.video.Video;
+import org.arquillian.extension.recorder.video.VideoConfiguration;
+import org.arquillian.recorder.reporter.event.PropertyReportEvent;
+import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
+import org.arquillian.recorder.reporter.model.entry.VideoEntry;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.TestResult;
+import org.jboss.arquillian.test.spi.event.suite.After;
+import org.jboss.arquillian.test.spi.event.suite.AfterClass;
+import org.jboss.arquillian.test.spi.event.suite.AfterSuite;
+
+/**
+ * Observes:
+ * <ul>
+ * <li>{@link After}</li>
+ * <li>{@link AfterClass}</li>
+ * <li>{@link AfterSuite}</li>
+ * </ul>
+ * Reports segments of videos which were not stitched into one video after the video itself was stopped. Segments of a
+ * video of a passed test are deleted instead when videos are taken only on failure.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class DroidiumVideoSegmentReporter {
+
+    @Inject
+    private Instance<Recorder> recorder;
+
+    @Inject
+    private Instance<VideoConfiguration> configuration;
+
+    @Inject
+    private Instance<TakenResourceRegister> takenResourceRegister;
+
+    @Inject
+    private Event<PropertyReportEvent> propertyReportEvent;
+
+    public void onAfter(@Observes(precedence = -100) After event, TestResult testResult) {
+        boolean passed = testResult.getStatus() != TestResult.Status.FAILED;
+        report(passed && configuration.get().getTakeOnlyOnFail());
+    }
+
+    public void onAfterClass(@Observes(precedence = -100) AfterClass event) {
+        report(false);
+    }
+
+    public void onAfterSuite(@Observes(precedence = -100) AfterSuite event) {
+        report(false);
+    }
+
+    private void report(boolean discard) {
+        if (!(recorder.get() instanceof DroidiumVideoRecorder)) {
+            return;
+        }
+
+        List<Video> segments = ((DroidiumVideoRecorder) recorder.get()).drainUnreportedSegments();
+
+        for (Video segment : segments) {
+            File file = segment.getResource();
+
+            if (discard) {
+                file.delete();
+                continue;
+            }
+
+            VideoEntry entry = new VideoEntry();
+            entry.setPath(file.getAbsolutePath());
+            entry.setType(segment.getResourceType().toString());
+            entry.setSize(Long.toString(file.length()));
+            entry.setMessage(segment.getMessage());
+            entry.setWidth(segment.getWidth());
+            entry.setHeight(segment.getHeight());
+            entry.setPhase(When.AFTER);
+
+            propertyReportEvent.fire(new PropertyReportEvent(entry));
+            takenResourceRegister.get().addReported(segment);
+        }
+    }
+}
@@ -0,0 +1,867 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.video.droidium.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Joins MP4 files recorded one after another by {@code screenrecord} into one MP4 file without re-encoding them.<br>
+ * <br>
+ * Sample tables of the video track of every segment are read from its {@code moov} box and merged into a new
+ * {@code moov} box which is written in front of the media data so the result can be played while it is still being
+ * downloaded. Media data are copied chunk by chunk as they are. Segments have to share their sample descriptions, a
+ * segment encoded differently, e.g. when the device was rotated before it was recorded, is rejected because players do
+ * not expect the decoder configuration to change in the middle of a track. Other tracks, edit lists and sample groups
+ * are dropped, {@code screenrecord} does not write any of them.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class Mp4Stitcher {
+
+    private static final Logger logger = Logger.getLogger(Mp4Stitcher.class.getName());
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final long MAX_UINT32 = 0xFFFFFFFFL;
+
+    /**
+     * Joins segments into one file.
+     *
+     * @param segments MP4 files in the order they were recorded
+     * @param startTimes host times in milliseconds the segments started to be recorded at, may be null; when set, the pause
+     *        between two segments is added to the last frame of the former one so the result keeps the wall clock
+     * @param target file to save the joined video to
+     * @return duration of the joined video in milliseconds
+     * @throws IOException if some segment can not be read, it is not a valid MP4 file or its sample descriptions differ
+     *         from those of the first segment
+     */
+    public long stitch(List<File> segments, List<Long> startTimes, File target) throws IOException {
+        if (segments == null || segments.isEmpty()) {
+            throw new IllegalArgumentException("There are no segments to stitch.");
+        }
+        if (startTimes != null && startTimes.size() != segments.size()) {
+            throw new IllegalArgumentException("There has to be one start time for every segment to stitch.");
+        }
+
+        List<Track> tracks = new ArrayList<Track>();
+        for (File segment : segments) {
+            tracks.add(Track.read(segment));
+        }
+
+        Stitched stitched = new Stitched(tracks, startTimes);
+
+        boolean co64 = false;
+        byte[] ftyp = tracks.get(0).ftyp != null ? tracks.get(0).ftyp : defaultFtyp();
+        byte[] mdatHeader = mdatHeader(stitched.dataLength);
+        byte[] moov = stitched.moov(0, co64);
+
+        if (ftyp.length + moov.length + mdatHeader.length + stitched.dataLength > MAX_UINT32) {
+            co64 = true;
+            moov = stitched.moov(0, co64);
+        }
+
+        moov = stitched.moov(ftyp.length + moov.length + mdatHeader.length, co64);
+
+        FileOutputStream out = new FileOutputStream(target);
+        boolean written = false;
+        try {
+            out.write(ftyp);
+            out.write(moov);
+            out.write(mdatHeader);
+            stitched.copyData(out.getChannel());
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                target.delete();
+            }
+        }
+
+        long duration = stitched.duration * 1000 / stitched.timescale;
+
+        logger.fine(String.format("Stitched %d segments of %d samples and %d ms to %s", tracks.size(), stitched.samples,
+            duration, target));
+
+        return duration;
+    }
+
+    private static byte[] defaultFtyp() {
+        return new BoxBuilder("ftyp").fourcc("mp42").u32(0).fourcc("isom").fourcc("mp42").build();
+    }
+
+    private static byte[] mdatHeader(long dataLength) {
+        ByteBuffer header;
+        if (dataLength + 8 > MAX_UINT32) {
+            header = ByteBuffer.allocate(16);
+            header.putInt(1).put("mdat".getBytes(ASCII)).putLong(dataLength + 16);
+        } else {
+            header = ByteBuffer.allocate(8);
+            header.putInt((int) (dataLength + 8)).put("mdat".getBytes(ASCII));
+        }
+        return header.array();
+    }
+
+    /**
+     * Sample tables of all segments merged together.
+     */
+    private static final class Stitched {
+
+        private final List<Track> tracks;
+
+        private final Track first;
+
+        private final long timescale;
+
+        private final int samples;
+
+        private final int[] sizes;
+
+        private final long[] durations;
+
+        private final int[] compositionOffsets;
+
+        private final boolean[] sync;
+
+        private final int[] chunkTrack;
+
+        private final long[] chunkOffsets;
+
+        private final long[] chunkLengths;
+
+        private final int[] chunkSamples;
+
+        private final int[] chunkDescriptions;
+
+        private final List<byte[]> descriptions;
+
+        private final long dataLength;
+
+        private final long duration;
+
+        Stitched(List<Track> tracks, List<Long> startTimes) throws IOException {
+            this.tracks = tracks;
+            this.first = tracks.get(0);
+            this.timescale = first.timescale;
+            this.descriptions = first.descriptions;
+
+            int samples = 0;
+            int chunks = 0;
+            boolean compositionOffsets = false;
+            boolean sync = false;
+            for (Track track : tracks) {
+                samples += track.sizes.length;
+                chunks += track.chunkOffsets.length;
+                compositionOffsets |= track.compositionOffsets != null;
+                sync |= track.sync != null;
+            }
+
+            this.samples = samples;
+            this.sizes = new int[samples];
+            this.durations = new long[samples];
+            this.compositionOffsets = compositionOffsets ? new int[samples] : null;
+            this.sync = sync ? new boolean[samples] : null;
+            this.chunkTrack = new int[chunks];
+            this.chunkOffsets = new long[chunks];
+            this.chunkLengths = new long[chunks];
+            this.chunkSamples = new int[chunks];
+            this.chunkDescriptions = new int[chunks];
+
+            int sample = 0;
+            int chunk = 0;
+            long dataLength = 0;
+            long duration = 0;
+
+            for (int t = 0; t < tracks.size(); t++) {
+                Track track = tracks.get(t);
+
+                if (!sameDescriptions(track)) {
+                    throw new IOException("Sample descriptions of " + track.file + " differ from those of " + first.file
+                        + ", segments can not be stitched without re-encoding them.");
+                }
+
+                int trackStart = sample;
+                long sourceTime = 0;
+                long trackDuration = 0;
+
+                for (int i = 0; i < track.sizes.length; i++, sample++) {
+                    sizes[sample] = track.sizes[i];
+
+                    long end = rescale(sourceTime + track.durations[i], track.timescale);
+                    durations[sample] = end - trackDuration;
+                    trackDuration = end;
+                    sourceTime += track.durations[i];
+
+                    if (this.compositionOffsets != null && track.compositionOffsets != null) {
+                        this.compositionOffsets[sample] = (int) rescale(track.compositionOffsets[i], track.timescale);
+                    }
+                    if (this.sync != null) {
+                        this.sync[sample] = track.sync == null || track.sync[i];
+                    }
+                }
+
+                if (startTimes != null && t + 1 < tracks.size() && sample > trackStart) {
+                    long wallClock = (startTimes.get(t + 1) - startTimes.get(t)) * timescale / 1000;
+                    if (wallClock > trackDuration) {
+                        durations[sample - 1] += wallClock - trackDuration;
+                        trackDuration = wallClock;
+                    }
+                }
+
+                duration += trackDuration;
+
+                int trackSample = 0;
+                for (int i = 0; i < track.chunkOffsets.length; i++, chunk++) {
+                    long length = 0;
+                    for (int j = 0; j < track.chunkSamples[i]; j++) {
+                        length += track.sizes[trackSample++];
+                    }
+                    if (track.chunkOffsets[i] + length > track.length) {
+                        throw new IOException("Chunk " + (i + 1) + " of " + track.file + " lies beyond the end of the file.");
+                    }
+                    chunkTrack[chunk] = t;
+                    chunkOffsets[chunk] = track.chunkOffsets[i];
+                    chunkLengths[chunk] = length;
+                    chunkSamples[chunk] = track.chunkSamples[i];
+                    chunkDescriptions[chunk] = track.chunkDescriptions[i];
+                    dataLength += length;
+                }
+            }
+
+            this.dataLength = dataLength;
+            this.duration = duration;
+        }
+
+        private boolean sameDescriptions(Track track) {
+            if (track.descriptions.size() != descriptions.size()) {
+                return false;
+            }
+            for (int i = 0; i < descriptions.size(); i++) {
+                if (!Arrays.equals(track.descriptions.get(i), descriptions.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long rescale(long time, long sourceTimescale) {
+            if (sourceTimescale == timescale) {
+                return time;
+            }
+            return (time * timescale + sourceTimescale / 2) / sourceTimescale;
+        }
+
+        /**
+         *
+         * @param dataOffset offset of the first byte of media data in the resulting file
+         * @param co64 true if chunk offsets do not fit to 32 bits
+         * @return {@code moov} box describing stitched media data
+         * @throws IOException if the duration does not fit to boxes of the first segment
+         */
+        byte[] moov(long dataOffset, boolean co64) throws IOException {
+            long movieDuration = duration * first.movieTimescale / timescale;
+
+            BoxBuilder moov = new BoxBuilder("moov");
+            for (Box box : first.moov.children()) {
+                if (box.is("mvhd")) {
+                    moov.bytes(box.withDuration(16, 24, movieDuration));
+                } else if (box.isSame(first.trak)) {
+                    moov.bytes(trak(dataOffset, co64, movieDuration));
+                } else if (!box.is("trak")) {
+                    moov.bytes(box.raw());
+                }
+            }
+            return moov.build();
+        }
+
+        private byte[] trak(long dataOffset, boolean co64, long movieDuration) throws IOException {
+            BoxBuilder trak = new BoxBuilder("trak");
+            for (Box box : first.trak.children()) {
+                if (box.is("tkhd")) {
+                    trak.bytes(box.withDuration(20, 28, movieDuration));
+                } else if (box.is("mdia")) {
+                    BoxBuilder mdia = new BoxBuilder("mdia");
+                    for (Box mdiaBox : box.children()) {
+                        if (mdiaBox.is("mdhd")) {
+                            mdia.bytes(mdiaBox.withDuration(16, 24, duration));
+                        } else if (mdiaBox.is("minf")) {
+                            BoxBuilder minf = new BoxBuilder("minf");
+                            for (Box minfBox : mdiaBox.children()) {
+                                minf.bytes(minfBox.is("stbl") ? stbl(dataOffset, co64) : minfBox.raw());
+                            }
+                            mdia.bytes(minf.build());
+                        } else {
+                            mdia.bytes(mdiaBox.raw());
+                        }
+                    }
+                    trak.bytes(mdia.build());
+                } else if (!box.is("edts")) {
+                    trak.bytes(box.raw());
+                }
+            }
+            return trak.build();
+        }
+
+        private byte[] stbl(long dataOffset, boolean co64) {
+            BoxBuilder stbl = new BoxBuilder("stbl");
+
+            BoxBuilder stsd = new BoxBuilder("stsd").u32(0).u32(descriptions.size());
+            for (byte[] description : descriptions) {
+                stsd.bytes(description);
+            }
+            stbl.bytes(stsd.build());
+
+            stbl.bytes(runs("stts", 0, durations));
+
+            if (compositionOffsets != null) {
+                long[] offsets = new long[samples];
+                boolean negative = false;
+                for (int i = 0; i < samples; i++) {
+                    offsets[i] = compositionOffsets[i];
+                    negative |= offsets[i] < 0;
+                }
+                stbl.bytes(runs("ctts", negative ? 1 : 0, offsets));
+            }
+
+            if (sync != null) {
+                int count = 0;
+                for (boolean s : sync) {
+                    count += s ? 1 : 0;
+                }
+                BoxBuilder stss = new BoxBuilder("stss").u32(0).u32(count);
+                for (int i = 0; i < samples; i++) {
+                    if (sync[i]) {
+                        stss.u32(i + 1);
+                    }
+                }
+                stbl.bytes(stss.build());
+            }
+
+            List<int[]> stscEntries = new ArrayList<int[]>();
+            for (int i = 0; i < chunkSamples.length; i++) {
+                int[] last = stscEntries.isEmpty() ? null : stscEntries.get(stscEntries.size() - 1);
+                if (last == null || last[1] != chunkSamples[i] || last[2] != chunkDescriptions[i]) {
+                    stscEntries.add(new int[] { i + 1, chunkSamples[i], chunkDescriptions[i] });
+                }
+            }
+            BoxBuilder stsc = new BoxBuilder("stsc").u32(0).u32(stscEntries.size());
+            for (int[] entry : stscEntries) {
+                stsc.u32(entry[0]).u32(entry[1]).u32(entry[2]);
+            }
+            stbl.bytes(stsc.build());
+
+            boolean constantSize = samples > 0;
+            for (int i = 1; i < samples && constantSize; i++) {
+                constantSize = sizes[i] == sizes[0];
+            }
+            BoxBuilder stsz = new BoxBuilder("stsz").u32(0);
+            if (constantSize) {
+                stsz.u32(sizes[0]).u32(samples);
+            } else {
+                stsz.u32(0).u32(samples);
+                for (int size : sizes) {
+                    stsz.u32(size);
+                }
+            }
+            stbl.bytes(stsz.build());
+
+            BoxBuilder stco = new BoxBuilder(co64 ? "co64" : "stco").u32(0).u32(chunkOffsets.length);
+            long offset = dataOffset;
+            for (long length : chunkLengths) {
+                if (co64) {
+                    stco.u64(offset);
+                } else {
+                    stco.u32(offset);
+                }
+                offset += length;
+            }
+            stbl.bytes(stco.build());
+
+            return stbl.build();
+        }
+
+        private static byte[] runs(String type, int version, long[] values) {
+            List<long[]> runs = new ArrayList<long[]>();
+            for (long value : values) {
+                long[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                if (last != null && last[1] == value) {
+                    last[0]++;
+                } else {
+                    runs.add(new long[] { 1, value });
+                }
+            }
+            BoxBuilder box = new BoxBuilder(type).u32((long) version << 24).u32(runs.size());
+            for (long[] run : runs) {
+                box.u32(run[0]).u32(run[1]);
+            }
+            return box.build();
+        }
+
+        /**
+         * Copies chunks of all segments one after another, neighbouring chunks are copied at once.
+         *
+         * @param out channel to copy media data to
+         * @throws IOException
+         */
+        void copyData(FileChannel out) throws IOException {
+            int chunk = 0;
+            for (int t = 0; t < tracks.size(); t++) {
+                FileInputStream in = new FileInputStream(tracks.get(t).file);
+                try {
+                    FileChannel channel = in.getChannel();
+                    while (chunk < chunkTrack.length && chunkTrack[chunk] == t) {
+                        long offset = chunkOffsets[chunk];
+                        long length = 0;
+                        do {
+                            length += chunkLengths[chunk++];
+                        } while (chunk < chunkTrack.length && chunkTrack[chunk] == t
+                            && chunkOffsets[chunk] == offset + length);
+
+                        while (length > 0) {
+                            long transferred = channel.transferTo(offset, length, out);
+                            if (transferred <= 0) {
+                                throw new IOException("Unable to copy media data of " + tracks.get(t).file);
+                            }
+                            offset += transferred;
+                            length -= transferred;
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The first video track of one segment with its sample tables expanded to one entry per sample and chunk.
+     */
+    private static final class Track {
+
+        private final File file;
+
+        private final long length;
+
+        private final byte[] ftyp;
+
+        private final Box moov;
+
+        private final Box trak;
+
+        private final long movieTimescale;
+
+        private final long timescale;
+
+        private final List<byte[]> descriptions = new ArrayList<byte[]>();
+
+        private int[] sizes;
+
+        private long[] durations;
+
+        private int[] compositionOffsets;
+
+        private boolean[] sync;
+
+        private long[] chunkOffsets;
+
+        private int[] chunkSamples;
+
+        private int[] chunkDescriptions;
+
+        private Track(File file, long length, byte[] ftyp, Box moov) throws IOException {
+            this.file = file;
+            this.length = length;
+            this.ftyp = ftyp;
+            this.moov = moov;
+
+            Box mvhd = required(moov.child("mvhd"), "mvhd");
+            this.movieTimescale = mvhd.version() == 1 ? mvhd.payload().getInt(20) & MAX_UINT32 : mvhd.payload().getInt(12) & MAX_UINT32;
+
+            Box videoTrak = null;
+            for (Box box : moov.children()) {
+                if (box.is("trak")) {
+                    Box hdlr = box.path("mdia", "hdlr");
+                    if (hdlr != null && hdlr.payload().getInt(8) == fourcc("vide")) {
+                        videoTrak = box;
+                        break;
+                    }
+                }
+            }
+            this.trak = required(videoTrak, "video trak");
+
+            Box mdhd = required(trak.path("mdia", "mdhd"), "mdhd");
+            this.timescale = mdhd.version() == 1 ? mdhd.payload().getInt(20) & MAX_UINT32 : mdhd.payload().getInt(12) & MAX_UINT32;
+
+            if (movieTimescale == 0 || timescale == 0) {
+                throw new IOException("Time scale of " + file + " is zero.");
+            }
+
+            Box stbl = required(trak.path("mdia", "minf", "stbl"), "stbl");
+
+            readDescriptions(required(stbl.child("stsd"), "stsd"));
+            readSizes(required(stbl.child("stsz"), "stsz"));
+            durations = readRuns(required(stbl.child("stts"), "stts"));
+            if (stbl.child("ctts") != null) {
+                long[] offsets = readRuns(stbl.child("ctts"));
+                compositionOffsets = new int[offsets.length];
+                for (int i = 0; i < offsets.length; i++) {
+                    compositionOffsets[i] = (int) offsets[i];
+                }
+            }
+            if (stbl.child("stss") != null) {
+                readSync(stbl.child("stss"));
+            }
+            readChunks(stbl);
+
+            if (durations.length != sizes.length
+                || (compositionOffsets != null && compositionOffsets.length != sizes.length)) {
+                throw new IOException("Sample tables of " + file + " do not describe the same number of samples.");
+            }
+        }
+
+        static Track read(File file) throws IOException {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                long length = in.length();
+                long position = 0;
+                byte[] ftyp = null;
+                Box moov = null;
+
+                while (position + 8 <= length) {
+                    in.seek(position);
+                    long size = in.readInt() & MAX_UINT32;
+                    int type = in.readInt();
+                    int header = 8;
+                    if (size == 1) {
+                        size = in.readLong();
+                        header = 16;
+                    } else if (size == 0) {
+                        size = length - position;
+                    }
+                    if (size < header) {
+                        throw new IOException("Box at offset " + position + " of " + file + " is broken.");
+                    }
+                    if (position + size > length) {
+                        // unfinished box at the end of the file, e.g. mdat of an interrupted recording
+                        break;
+                    }
+                    if (type == fourcc("ftyp") || type == fourcc("moov")) {
+                        if (size > Integer.MAX_VALUE) {
+                            throw new IOException("Box at offset " + position + " of " + file + " is too big.");
+                        }
+                        byte[] box = new byte[(int) size];
+                        in.seek(position);
+                        in.readFully(box);
+                        if (type == fourcc("ftyp")) {
+                            ftyp = box;
+                        } else {
+                            moov = new Box(box, 0, header, box.length);
+                        }
+                    }
+                    position += size;
+                }
+
+                if (moov == null) {
+                    throw new IOException(file + " has no moov box, the recording was not finished properly.");
+                }
+
+                return new Track(file, length, ftyp, moov);
+            } finally {
+                in.close();
+            }
+        }
+
+        private void readDescriptions(Box stsd) throws IOException {
+            ByteBuffer payload = stsd.payload();
+            int count = payload.getInt(4);
+            List<Box> entries = new Box(stsd.data, stsd.start, stsd.header + 8, stsd.end).children();
+            if (entries.size() != count || count == 0) {
+                throw new IOException("Sample descriptions of " + file + " are broken.");
+            }
+            for (Box entry : entries) {
+                descriptions.add(entry.raw());
+            }
+        }
+
+        private void readSizes(Box stsz) {
+            ByteBuffer payload = stsz.payload();
+            int size = payload.getInt(4);
+            int count = payload.getInt(8);
+            sizes = new int[count];
+            for (int i = 0; i < count; i++) {
+                sizes[i] = size != 0 ? size : payload.getInt(12 + 4 * i);
+            }
+        }
+
+        private long[] readRuns(Box box) throws IOException {
+            ByteBuffer payload = box.payload();
+            boolean signed = box.version() == 1 || box.is("ctts");
+            int count = payload.getInt(4);
+            long[] values = new long[sizes.length];
+            int sample = 0;
+            for (int i = 0; i < count; i++) {
+                long runLength = payload.getInt(8 + 8 * i) & MAX_UINT32;
+                long value = signed ? payload.getInt(12 + 8 * i) : payload.getInt(12 + 8 * i) & MAX_UINT32;
+                if (sample + runLength > values.length) {
+                    throw new IOException(box.type() + " of " + file + " describes more samples than stsz.");
+                }
+                for (long j = 0; j < runLength; j++) {
+                    values[sample++] = value;
+                }
+            }
+            return sample == values.length ? values : Arrays.copyOf(values, sample);
+        }
+
+        private void readSync(Box stss) throws IOException {
+            ByteBuffer payload = stss.payload();
+            int count = payload.getInt(4);
+            sync = new boolean[sizes.length];
+            for (int i = 0; i < count; i++) {
+                int sample = payload.getInt(8 + 4 * i);
+                if (sample < 1 || sample > sizes.length) {
+                    throw new IOException("stss of " + file + " refers to sample " + sample + " which does not exist.");
+                }
+                sync[sample - 1] = true;
+            }
+        }
+
+        private void readChunks(Box stbl) throws IOException {
+            Box stco = stbl.child("stco");
+            Box co64 = stbl.child("co64");
+            if (stco == null && co64 == null) {
+                throw new IOException(file + " has neither stco nor co64 box.");
+            }
+            ByteBuffer offsets = stco != null ? stco.payload() : co64.payload();
+            int chunks = offsets.getInt(4);
+            chunkOffsets = new long[chunks];
+            for (int i = 0; i < chunks; i++) {
+                chunkOffsets[i] = stco != null ? offsets.getInt(8 + 4 * i) & MAX_UINT32 : offsets.getLong(8 + 8 * i);
+            }
+
+            ByteBuffer stsc = required(stbl.child("stsc"), "stsc").payload();
+            int entries = stsc.getInt(4);
+            chunkSamples = new int[chunks];
+            chunkDescriptions = new int[chunks];
+            int samples = 0;
+            for (int i = 0; i < entries; i++) {
+                int firstChunk = stsc.getInt(8 + 12 * i);
+                int nextChunk = i + 1 < entries ? stsc.getInt(8 + 12 * (i + 1)) : chunks + 1;
+                int samplesPerChunk = stsc.getInt(12 + 12 * i);
+                int description = stsc.getInt(16 + 12 * i);
+                if (firstChunk < 1 || nextChunk > chunks + 1 || description < 1 || description > descriptions.size()) {
+                    throw new IOException("stsc of " + file + " is broken.");
+                }
+                for (int chunk = firstChunk; chunk < nextChunk; chunk++) {
+                    chunkSamples[chunk - 1] = samplesPerChunk;
+                    chunkDescriptions[chunk - 1] = description;
+                    samples += samplesPerChunk;
+                }
+            }
+            if (samples != sizes.length) {
+                throw new IOException("Chunks of " + file + " hold " + samples + " samples but there are " + sizes.length
+                    + " of them.");
+            }
+        }
+
+        private Box required(Box box, String name) throws IOException {
+            if (box == null) {
+                throw new IOException(file + " has no " + name + " box.");
+            }
+            return box;
+        }
+    }
+
+    /**
+     * Box read from a file, it is a view to the bytes of its parent.
+     */
+    private static final class Box {
+
+        private final byte[] data;
+
+        private final int start;
+
+        private final int header;
+
+        private final int end;
+
+        Box(byte[] data, int start, int header, int end) {
+            this.data = data;
+            this.start = start;
+            this.header = header;
+            this.end = end;
+        }
+
+        int typeCode() {
+            return ByteBuffer.wrap(data, start + 4, 4).getInt();
+        }
+
+        String type() {
+            return new String(data, start + 4, 4, ASCII);
+        }
+
+        boolean is(String type) {
+            return typeCode() == fourcc(type);
+        }
+
+        boolean isSame(Box box) {
+            return data == box.data && start == box.start;
+        }
+
+        int version() {
+            return data[start + header] & 0xFF;
+        }
+
+        ByteBuffer payload() {
+            return ByteBuffer.wrap(data, start + header, end - start - header).slice();
+        }
+
+        byte[] raw() {
+            return Arrays.copyOfRange(data, start, end);
+        }
+
+        List<Box> children() {
+            List<Box> children = new ArrayList<Box>();
+            int position = start + header;
+            while (position + 8 <= end) {
+                ByteBuffer buffer = ByteBuffer.wrap(data, position, end - position);
+                long size = buffer.getInt() & MAX_UINT32;
+                buffer.getInt();
+                int boxHeader = 8;
+                if (size == 1) {
+                    size = buffer.getLong();
+                    boxHeader = 16;
+                } else if (size == 0) {
+                    size = end - position;
+                }
+                if (size < boxHeader || position + size > end) {
+                    break;
+                }
+                children.add(new Box(data, position, boxHeader, (int) (position + size)));
+                position += size;
+            }
+            return children;
+        }
+
+        Box child(String type) {
+            for (Box child : children()) {
+                if (child.is(type)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Box path(String... types) {
+            Box box = this;
+            for (int i = 0; i < types.length && box != null; i++) {
+                box = box.child(types[i]);
+            }
+            return box;
+        }
+
+        /**
+         * Copies this full box with its duration field replaced.
+         *
+         * @param version0Offset offset of the duration in the payload of version 0 of the box
+         * @param version1Offset offset of the duration in the payload of version 1 of the box
+         * @param duration duration to set
+         * @return copy of this box
+         * @throws IOException if the duration does not fit to version 0 of the box
+         */
+        byte[] withDuration(int version0Offset, int version1Offset, long duration) throws IOException {
+            byte[] copy = raw();
+            ByteBuffer buffer = ByteBuffer.wrap(copy, header, copy.length - header);
+            if (version() == 1) {
+                buffer.putLong(header + version1Offset, duration);
+            } else if (duration <= MAX_UINT32) {
+                buffer.putInt(header + version0Offset, (int) duration);
+            } else {
+                throw new IOException("Duration " + duration + " does not fit to " + type() + " box.");
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Writes one box, its size is known once all its content is written.
+     */
+    private static final class BoxBuilder {
+
+        private final String type;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        BoxBuilder(String type) {
+            this.type = type;
+        }
+
+        BoxBuilder u32(long value) {
+            try {
+                out.writeInt((int) value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        BoxBuilder u64(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        BoxBuilder fourcc(String value) {
+            return u32(Mp4Stitcher.fourcc(value));
+        }
+
+        BoxBuilder bytes(byte[] value) {
+            bytes.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] build() {
+            byte[] payload = bytes.toByteArray();
+            return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .putInt(Mp4Stitcher.fourcc(type))
+                .put(payload)
+                .array();
+        }
+    }
+
+    private static int fourcc(String type) {
+        return ByteBuffer.wrap(type.getBytes(ASCII)).getInt();
+    }
+}
@@ -18,8 +18,25 @@ package org.arquillian.extension.recorder.video.droidium.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.AndroidExecutionException;
+import org.arquillian.droidium.container.api.FileTransferOptions;
 import org.arquillian.droidium.container.api.ScreenrecordOptions;
 import org.arquillian.extension.recorder.video.Video;
 import org.arquillian.extension.recorder.video.VideoType;
@@ -27,24 +44,54 @@ import org.arquillian.extension.recorder.video.droidium.configuration.DroidiumVi
 import org.jboss.arquillian.core.spi.Validate;
 
 /**
+ * Records a video of Android device in segments of {@link DroidiumVideoConfiguration#getSegmentLength()} seconds since
+ * {@code screenrecord} can not record more than {@value ScreenrecordOptions#MAX_TIME_LIMIT} seconds at once. When a
+ * segment ends, the next one starts to be recorded right away and the finished one is pulled from the device in the
+ * background. Segments are joined by {@link Mp4Stitcher} when the recording is stopped unless
+ * {@link DroidiumVideoConfiguration#getStitchSegments()} is false.<br>
+ * <br>
+ * When {@link DroidiumVideoConfiguration#getStreamVideo()} is true, the video is streamed to the host while it is
+ * recorded instead, so there are no segments and nothing is stored on the device. Devices which can not stream fall back
+ * to segments.<br>
+ * <br>
+ * When {@link DroidiumVideoConfiguration#isRingRecording()} is true, finished segments are not pulled but kept on the
+ * device in a ring which holds only the last {@link DroidiumVideoConfiguration#getRingLength()} seconds, older segments
+ * are removed on the device right away. The ring is pulled and stitched only when the video is kept, see
+ * {@link #stopRecording(boolean)}.
  *
  * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
  *
  */
 class VideoRecorder {
 
+    private static final Logger logger = Logger.getLogger(VideoRecorder.class.getName());
+
     private static final long DEFAULT_BITRATE = 4000000;
 
     private static final String RECORD_PREFIX = "droidium_record_";
 
     private static final String RECORD_EXTENSION = ".mp4";
 
+    private static final FileTransferOptions SEGMENT_TRANSFER = new FileTransferOptions.Builder().setConcurrency(1).build();
+
     private long bitrate = DEFAULT_BITRATE;
 
     private int recordHeight = 0;
 
     private int recordWidth = 0;
 
+    private final int segmentLength;
+
+    private final boolean stitchSegments;
+
+    private final boolean streamVideo;
+
+    private final boolean ring;
+
+    private final int ringCapacity;
+
+    private final Mp4Stitcher stitcher = new Mp4Stitcher();
+
     private AndroidDevice androidDevice;
 
     private DroidiumVideoConfiguration configuration;
@@ -53,19 +100,38 @@ class VideoRecorder {
 
     private volatile boolean running = false;
 
+    private boolean streaming = false;
+
+    private ScheduledExecutorService segmenter;
+
+    private ExecutorService puller;
+
+    private final List<Long> segmentStarts = new ArrayList<Long>();
+
+    private final List<Future<File>> pulledSegments = new ArrayList<Future<File>>();
+
+    private final LinkedList<String> ringSegments = new LinkedList<String>();
+
+    private List<File> unstitchedSegments = Collections.emptyList();
+
     public VideoRecorder(DroidiumVideoConfiguration configuration) {
         Validate.notNull(configuration, "Video configuration is null!");
         this.configuration = configuration;
         this.bitrate = configuration.getBitrate();
         this.recordHeight = configuration.getHeight();
         this.recordWidth = configuration.getWidth();
+        this.segmentLength = configuration.getSegmentLength();
+        this.stitchSegments = configuration.getStitchSegments();
+        this.streamVideo = configuration.getStreamVideo();
+        this.ring = configuration.isRingRecording();
+        this.ringCapacity = ring ? (configuration.getRingLength() + segmentLength - 1) / segmentLength : 0;
     }
 
     public void setAndroidDevice(AndroidDevice androidDevice) {
         this.androidDevice = androidDevice;
     }
 
-    public void startRecording(final File toFile) {
+    public synchronized void startRecording(final File toFile) {
         if (isRecording()) {
             throw new IllegalStateException("It seems you are already recording. Please call stopRecording() first.");
         }
@@ -78,31 +144,143 @@ class VideoRecorder {
             throw new RuntimeException("Unable to create file to which video will be saved: " + recordedVideo.getAbsolutePath());
         }
 
+        segmentStarts.clear();
+        pulledSegments.clear();
+        ringSegments.clear();
+        unstitchedSegments = Collections.emptyList();
+
         try {
-            androidDevice.startRecording(getRemoteVideoFile(), getScreenRecorderOptions());
+            streaming = streamVideo && !ring && startStreaming();
+            if (!streaming) {
+                startSegment();
+            }
             running = androidDevice.isRecording();
         } catch (Exception e) {
             throw new RuntimeException("Error while starting to record a video.", e);
         }
+
+        if (running && !streaming) {
+            segmenter = Executors.newSingleThreadScheduledExecutor(getThreadFactory("droidium-video-segmenter-"));
+            puller = Executors.newSingleThreadExecutor(getThreadFactory("droidium-video-puller-"));
+            segmenter.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    nextSegment();
+                }
+            }, segmentLength, segmentLength, TimeUnit.SECONDS);
+        }
     }
 
     public Video stopRecording() {
+        return stopRecording(true);
+    }
+
+    /**
+     *
+     * @param keep true if the video is pulled and stitched, false if it is only removed on the device and its file is
+     *        deleted
+     * @return stopped video, it is marked as discarded when it is not kept
+     */
+    public synchronized Video stopRecording(boolean keep) {
         if (!isRecording()) {
             throw new IllegalStateException("It seems you are not recording anything yet. Please call startRecording() first.");
         }
 
-        org.arquillian.droidium.container.api.Video video = null;
+        running = false;
+
+        if (streaming) {
+            streaming = false;
+            try {
+                androidDevice.stopRecording(recordedVideo.getAbsolutePath());
+            } catch (Exception e) {
+                throw new RuntimeException("Error while stopping video recording.", e);
+            }
+            if (!keep) {
+                recordedVideo.delete();
+                return getDiscardedVideo();
+            }
+            return getVideo();
+        }
+
+        segmenter.shutdown();
+
+        String lastSegment = null;
 
         try {
-            video = androidDevice.stopRecording(recordedVideo.getAbsolutePath());
+            if (androidDevice.isRecording()) {
+                lastSegment = androidDevice.stopRecordingOnDevice();
+            }
         } catch (Exception e) {
+            puller.shutdown();
             throw new RuntimeException("Error while stopping video recording.", e);
-        } finally {
-            running = false;
         }
 
-        Video droidiumVideo = new DroidiumVideo();
-        droidiumVideo.setResource(video.getVideo());
+        if (!keep) {
+            discard(lastSegment);
+            return getDiscardedVideo();
+        }
+
+        if (ring) {
+            if (lastSegment != null) {
+                ringSegments.add(lastSegment);
+            }
+            logger.log(Level.FINE, "Pulling last {0} segments of video {1}", new Object[] { ringSegments.size(), recordedVideo });
+            for (String remoteSegment : ringSegments) {
+                pullSegment(remoteSegment);
+            }
+            ringSegments.clear();
+        } else if (lastSegment != null) {
+            pullSegment(lastSegment);
+        }
+
+        puller.shutdown();
+
+        List<File> segments = new ArrayList<File>();
+        List<Long> starts = new ArrayList<Long>();
+
+        for (int i = 0; i < pulledSegments.size(); i++) {
+            try {
+                segments.add(pulledSegments.get(i).get());
+                starts.add(segmentStarts.get(i));
+            } catch (ExecutionException ex) {
+                logger.log(Level.WARNING, "Unable to pull segment " + (i + 1) + " of video " + recordedVideo + ", it is skipped.",
+                    ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while pulling segments of video " + recordedVideo, ex);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            throw new RuntimeException("None of " + pulledSegments.size() + " segments of video " + recordedVideo
+                + " could be pulled from Android device.");
+        }
+
+        if (segments.size() > 1 && stitchSegments) {
+            try {
+                long duration = stitcher.stitch(segments, starts, recordedVideo);
+                logger.log(Level.INFO, "Stitched {0} segments into {1} ms long video {2}",
+                    new Object[] { segments.size(), duration, recordedVideo });
+                for (File segment : segments) {
+                    segment.delete();
+                }
+                segments.clear();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Unable to stitch segments of video " + recordedVideo + ", they are kept apart.", ex);
+            }
+        }
+
+        if (!segments.isEmpty()) {
+            moveTo(segments.remove(0), recordedVideo);
+            unstitchedSegments = segments;
+        }
+
+        return getVideo();
+    }
+
+    private DroidiumVideo getVideo() {
+        DroidiumVideo droidiumVideo = new DroidiumVideo();
+        droidiumVideo.setResource(recordedVideo);
         droidiumVideo.setResourceType(VideoType.valueOf(configuration.getVideoType()));
         droidiumVideo.setWidth(recordWidth);
         droidiumVideo.setHeight(recordHeight);
@@ -110,6 +288,21 @@ class VideoRecorder {
         return droidiumVideo;
     }
 
+    private DroidiumVideo getDiscardedVideo() {
+        DroidiumVideo droidiumVideo = getVideo();
+        droidiumVideo.setDiscarded(true);
+        return droidiumVideo;
+    }
+
+    /**
+     *
+     * @return segments of the last video following its first one which were not stitched, the first segment is the
+     *         video itself
+     */
+    public List<File> getUnstitchedSegments() {
+        return unstitchedSegments;
+    }
+
     public long getBitrate() {
         return bitrate;
     }
@@ -130,6 +323,131 @@ class VideoRecorder {
 
     // utils
 
+    synchronized void nextSegment() {
+        if (!running) {
+            return;
+        }
+
+        try {
+            String finishedSegment = androidDevice.stopRecordingOnDevice();
+            try {
+                startSegment();
+            } finally {
+                if (ring) {
+                    keepSegment(finishedSegment);
+                } else {
+                    pullSegment(finishedSegment);
+                }
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Unable to start segment " + (segmentStarts.size() + 1) + " of video " + recordedVideo
+                + ", recording continues no more.", ex);
+            segmenter.shutdown();
+        }
+    }
+
+    private boolean startStreaming() throws Exception {
+        try {
+            androidDevice.startStreamedRecording(recordedVideo, getScreenRecorderOptions());
+            return true;
+        } catch (AndroidExecutionException ex) {
+            logger.log(Level.WARNING, "Unable to stream video " + recordedVideo + ", it is recorded on the device instead.", ex);
+            return false;
+        }
+    }
+
+    private void startSegment() throws Exception {
+        androidDevice.startRecording(getRemoteVideoFile(), getScreenRecorderOptions());
+        segmentStarts.add(System.currentTimeMillis());
+    }
+
+    private void pullSegment(final String remoteSegment) {
+        final File localSegment = getSegmentFile(pulledSegments.size());
+
+        pulledSegments.add(puller.submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                androidDevice.pull(remoteSegment, localSegment, SEGMENT_TRANSFER);
+                androidDevice.remove(remoteSegment);
+                return localSegment;
+            }
+        }));
+    }
+
+    private void keepSegment(String remoteSegment) {
+        ringSegments.add(remoteSegment);
+
+        while (ringSegments.size() > ringCapacity) {
+            removeSegment(ringSegments.removeFirst());
+            segmentStarts.remove(0);
+        }
+    }
+
+    private void discard(String lastSegment) {
+        List<String> remoteSegments = new ArrayList<String>(ringSegments);
+        ringSegments.clear();
+
+        if (lastSegment != null) {
+            remoteSegments.add(lastSegment);
+        }
+
+        for (String remoteSegment : remoteSegments) {
+            removeSegment(remoteSegment);
+        }
+
+        puller.shutdown();
+
+        for (Future<File> pulledSegment : pulledSegments) {
+            try {
+                pulledSegment.get().delete();
+            } catch (ExecutionException ex) {
+                // segment was not pulled, there is nothing to delete
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        recordedVideo.delete();
+
+        logger.log(Level.FINE, "Discarded video {0}, {1} segments were removed on the device without pulling them",
+            new Object[] { recordedVideo, remoteSegments.size() });
+    }
+
+    private void removeSegment(String remoteSegment) {
+        try {
+            androidDevice.remove(remoteSegment);
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "Unable to remove video segment " + remoteSegment + " on the device.", ex);
+        }
+    }
+
+    private File getSegmentFile(int index) {
+        String name = recordedVideo.getName();
+        if (name.endsWith(RECORD_EXTENSION)) {
+            name = name.substring(0, name.length() - RECORD_EXTENSION.length());
+        }
+        return new File(recordedVideo.getParentFile(), String.format("%s_%03d%s", name, index + 1, RECORD_EXTENSION));
+    }
+
+    private void moveTo(File from, File to) {
+        to.delete();
+        if (!from.renameTo(to)) {
+            throw new RuntimeException("Unable to move video segment " + from.getAbsolutePath() + " to " + to.getAbsolutePath());
+        }
+    }
+
+    private ThreadFactory getThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + androidDevice.getSerialNumber());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     private ScreenrecordOptions getScreenRecorderOptions() {
         ScreenrecordOptions.Builder builder = new ScreenrecordOptions.Builder();
 
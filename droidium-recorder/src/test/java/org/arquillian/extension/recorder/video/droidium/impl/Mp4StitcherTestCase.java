@@ -0,0 +1,530 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.video.droidium.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Stitches generated segments and checks sample tables, durations and media data of the result.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class Mp4StitcherTestCase {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int TIMESCALE = 90000;
+
+    private static final int MOVIE_TIMESCALE = 1000;
+
+    private static final int FRAME = 3000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final Mp4Stitcher stitcher = new Mp4Stitcher();
+
+    @Test
+    public void mergesSampleTablesTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10, 20, 30 };
+        first.compositionOffsets = new int[] { 0, 6000, 0 };
+        first.sync = new int[] { 1 };
+        first.samplesPerChunk = 2;
+
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 40, 50, 60, 70 };
+        second.compositionOffsets = new int[] { 0, 6000, 6000, 0 };
+        second.sync = new int[] { 1, 3 };
+        second.samplesPerChunk = 2;
+
+        File target = folder.newFile("stitched.mp4");
+        long duration = stitcher.stitch(files(first, second), null, target);
+
+        byte[] video = read(target);
+
+        Assert.assertArrayEquals(new int[] { 1, 7, FRAME }, ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stts"), 4));
+        Assert.assertArrayEquals(new int[] { 0, 7, 10, 20, 30, 40, 50, 60, 70 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stsz"), 4));
+        Assert.assertArrayEquals(new int[] { 3, 1, 2, 1, 2, 1, 1, 3, 2, 1 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stsc"), 4));
+        Assert.assertArrayEquals(new int[] { 3, 1, 4, 6 }, ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stss"), 4));
+        Assert.assertArrayEquals(new int[] { 5, 1, 0, 1, 6000, 2, 0, 2, 6000, 1, 0 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "ctts"), 4));
+
+        int[] stco = ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stco"), 4);
+        Assert.assertEquals(4, stco[0]);
+        assertSamples(video, stco[1], 1, 0, 10, 20);
+        assertSamples(video, stco[2], 1, 2, 30);
+        assertSamples(video, stco[3], 2, 0, 40, 50);
+        assertSamples(video, stco[4], 2, 2, 60, 70);
+        Assert.assertEquals("media data have to follow the last chunk", video.length, stco[4] + 60 + 70);
+
+        Assert.assertEquals(7 * FRAME, box(video, "moov", "trak", "mdia", "mdhd").getInt(16));
+        Assert.assertEquals(7 * FRAME * MOVIE_TIMESCALE / TIMESCALE, box(video, "moov", "mvhd").getInt(16));
+        Assert.assertEquals(7 * FRAME * MOVIE_TIMESCALE / TIMESCALE, box(video, "moov", "trak", "tkhd").getInt(20));
+        Assert.assertEquals(7 * FRAME * MOVIE_TIMESCALE / TIMESCALE, duration);
+
+        Assert.assertNull("edit lists are dropped", find(video, "moov", "trak", "edts"));
+        Assert.assertArrayEquals(first.description, entry(box(video, "moov", "trak", "mdia", "minf", "stbl", "stsd")));
+    }
+
+    @Test
+    public void extendsLastFrameOverPauseBetweenSegmentsTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10, 10, 10 };
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 10, 10 };
+
+        File target = folder.newFile("stitched.mp4");
+        long duration = stitcher.stitch(files(first, second), Arrays.asList(5000L, 6000L), target);
+
+        byte[] video = read(target);
+
+        // the second segment was started one second after the first one which holds only 100 ms of video
+        Assert.assertArrayEquals(new int[] { 3, 2, FRAME, 1, TIMESCALE - 2 * FRAME, 2, FRAME },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stts"), 4));
+        Assert.assertArrayEquals("constant sample size is kept", new int[] { 10, 5 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stsz"), 4));
+        Assert.assertNull("there is no stss when all samples are sync samples",
+            find(video, "moov", "trak", "mdia", "minf", "stbl", "stss"));
+
+        Assert.assertEquals(TIMESCALE + 2 * FRAME, box(video, "moov", "trak", "mdia", "mdhd").getInt(16));
+        Assert.assertEquals(1066, box(video, "moov", "mvhd").getInt(16));
+        Assert.assertEquals(1066, box(video, "moov", "trak", "tkhd").getInt(20));
+        Assert.assertEquals(1066, duration);
+    }
+
+    @Test
+    public void doesNotShortenSegmentLongerThanPauseTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10, 10, 10 };
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 10 };
+
+        File target = folder.newFile("stitched.mp4");
+        stitcher.stitch(files(first, second), Arrays.asList(0L, 50L), target);
+
+        Assert.assertArrayEquals(new int[] { 1, 4, FRAME },
+            ints(box(read(target), "moov", "trak", "mdia", "minf", "stbl", "stts"), 4));
+    }
+
+    @Test
+    public void rescalesSegmentsToTimescaleOfFirstOneTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10, 10 };
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 10, 10 };
+        second.timescale = 1000;
+        second.durations = new int[] { 40, 20 };
+        second.compositionOffsets = new int[] { 20, 0 };
+
+        File target = folder.newFile("stitched.mp4");
+        stitcher.stitch(files(first, second), null, target);
+
+        byte[] video = read(target);
+
+        Assert.assertArrayEquals(new int[] { 3, 2, FRAME, 1, 3600, 1, 1800 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stts"), 4));
+        Assert.assertArrayEquals(new int[] { 3, 2, 0, 1, 1800, 1, 0 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "ctts"), 4));
+        Assert.assertEquals(2 * FRAME + 5400, box(video, "moov", "trak", "mdia", "mdhd").getInt(16));
+    }
+
+    @Test
+    public void readsSegmentWithMoovFirstAndCo64Test() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10, 20 };
+        first.samplesPerChunk = 1;
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 30, 40 };
+        second.moovFirst = true;
+        second.co64 = true;
+
+        File target = folder.newFile("stitched.mp4");
+        stitcher.stitch(files(first, second), null, target);
+
+        byte[] video = read(target);
+
+        Assert.assertNull("co64 is written only for files over 4 GB",
+            find(video, "moov", "trak", "mdia", "minf", "stbl", "co64"));
+        Assert.assertArrayEquals(new int[] { 2, 1, 1, 1, 3, 2, 1 },
+            ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stsc"), 4));
+
+        int[] stco = ints(box(video, "moov", "trak", "mdia", "minf", "stbl", "stco"), 4);
+        Assert.assertEquals(3, stco[0]);
+        assertSamples(video, stco[1], 1, 0, 10);
+        assertSamples(video, stco[2], 1, 1, 20);
+        assertSamples(video, stco[3], 2, 0, 30, 40);
+    }
+
+    @Test
+    public void rejectsSegmentsWithDifferentSampleDescriptionsTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10 };
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 10 };
+        second.description = sampleEntry(1080, 1920);
+
+        File target = new File(folder.getRoot(), "stitched.mp4");
+
+        try {
+            stitcher.stitch(files(first, second), null, target);
+            Assert.fail("Segments with different sample descriptions can not be stitched.");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Sample descriptions"));
+        }
+
+        Assert.assertFalse(target.exists());
+    }
+
+    @Test
+    public void rejectsSegmentWithoutMoovTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10 };
+        Segment second = new Segment(2);
+        second.sizes = new int[] { 10 };
+
+        List<File> segments = files(first, second);
+        RandomAccessFile unfinished = new RandomAccessFile(segments.get(1), "rw");
+        try {
+            unfinished.setLength(unfinished.length() - 1);
+        } finally {
+            unfinished.close();
+        }
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage("has no moov box");
+
+        stitcher.stitch(segments, null, new File(folder.getRoot(), "stitched.mp4"));
+    }
+
+    @Test
+    public void rejectsMissingStartTimesTest() throws IOException {
+        Segment first = new Segment(1);
+        first.sizes = new int[] { 10 };
+
+        thrown.expect(IllegalArgumentException.class);
+
+        stitcher.stitch(files(first, first), Arrays.asList(0L), new File(folder.getRoot(), "stitched.mp4"));
+    }
+
+    private List<File> files(Segment... segments) throws IOException {
+        File[] files = new File[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            files[i] = folder.newFile();
+            FileOutputStream out = new FileOutputStream(files[i]);
+            try {
+                out.write(segments[i].build());
+            } finally {
+                out.close();
+            }
+        }
+        return Arrays.asList(files);
+    }
+
+    private static void assertSamples(byte[] video, int offset, int segment, int firstSample, int... sizes) {
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                Assert.assertEquals("sample " + (firstSample + i) + " of segment " + segment + " at offset " + offset,
+                    sampleByte(segment, firstSample + i), video[offset++]);
+            }
+        }
+    }
+
+    private static byte sampleByte(int segment, int sample) {
+        return (byte) (segment * 16 + sample);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ByteBuffer box(byte[] data, String... path) {
+        ByteBuffer box = find(data, path);
+        Assert.assertNotNull(Arrays.toString(path) + " box is missing", box);
+        return box;
+    }
+
+    /**
+     * @return payload of the first box on the given path or null if there is no such box
+     */
+    private static ByteBuffer find(byte[] data, String... path) {
+        int start = 0;
+        int end = data.length;
+        for (String type : path) {
+            int position = start;
+            start = -1;
+            while (position + 8 <= end) {
+                ByteBuffer header = ByteBuffer.wrap(data, position, 8);
+                int size = header.getInt();
+                if (new String(data, position + 4, 4, ASCII).equals(type)) {
+                    start = position + 8;
+                    end = position + size;
+                    break;
+                }
+                position += size;
+            }
+            if (start == -1) {
+                return null;
+            }
+        }
+        return ByteBuffer.wrap(data, start, end - start).slice();
+    }
+
+    private static int[] ints(ByteBuffer payload, int from) {
+        int[] ints = new int[(payload.limit() - from) / 4];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = payload.getInt(from + 4 * i);
+        }
+        return ints;
+    }
+
+    private static byte[] entry(ByteBuffer stsd) {
+        Assert.assertEquals(1, stsd.getInt(4));
+        byte[] entry = new byte[stsd.limit() - 8];
+        stsd.position(8);
+        stsd.get(entry);
+        return entry;
+    }
+
+    private static byte[] sampleEntry(int width, int height) {
+        return new Builder("avc1").bytes(new byte[6]).u16(1).bytes(new byte[16]).u16(width).u16(height)
+            .bytes(new Builder("avcC").bytes(new byte[] { 1, 66, 0, 30 }).build()).build();
+    }
+
+    /**
+     * Video track as {@code screenrecord} writes it, its media data are filled with bytes telling the segment and
+     * sample they belong to.
+     */
+    private static final class Segment {
+
+        private final int id;
+
+        private int timescale = TIMESCALE;
+
+        private int[] sizes;
+
+        private int[] durations;
+
+        private int[] compositionOffsets;
+
+        private int[] sync;
+
+        private int samplesPerChunk = 4;
+
+        private byte[] description = sampleEntry(720, 1280);
+
+        private boolean moovFirst;
+
+        private boolean co64;
+
+        Segment(int id) {
+            this.id = id;
+        }
+
+        byte[] build() {
+            if (durations == null) {
+                durations = new int[sizes.length];
+                Arrays.fill(durations, FRAME * timescale / TIMESCALE);
+            }
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int i = 0; i < sizes.length; i++) {
+                byte[] sample = new byte[sizes[i]];
+                Arrays.fill(sample, sampleByte(id, i));
+                data.write(sample, 0, sample.length);
+            }
+
+            byte[] ftyp = new Builder("ftyp").fourcc("mp42").u32(0).fourcc("isom").fourcc("mp42").build();
+            byte[] mdat = new Builder("mdat").bytes(data.toByteArray()).build();
+
+            byte[] moov = moov(0);
+            long dataOffset = ftyp.length + (moovFirst ? moov.length : 0) + 8;
+            moov = moov(dataOffset);
+
+            return moovFirst
+                ? new Builder("").bytes(ftyp).bytes(moov).bytes(mdat).raw()
+                : new Builder("").bytes(ftyp).bytes(mdat).bytes(moov).raw();
+        }
+
+        private byte[] moov(long dataOffset) {
+            long duration = 0;
+            for (int d : durations) {
+                duration += d;
+            }
+
+            byte[] mvhd = new Builder("mvhd").u32(0).u32(0).u32(0).u32(MOVIE_TIMESCALE)
+                .u32(duration * MOVIE_TIMESCALE / timescale).bytes(new byte[80]).build();
+            byte[] tkhd = new Builder("tkhd").u32(3).u32(0).u32(0).u32(1).u32(0)
+                .u32(duration * MOVIE_TIMESCALE / timescale).bytes(new byte[60]).build();
+            byte[] edts = new Builder("edts").bytes(new Builder("elst").u32(0).u32(0).build()).build();
+            byte[] mdhd = new Builder("mdhd").u32(0).u32(0).u32(0).u32(timescale).u32(duration).u32(0).build();
+            byte[] hdlr = new Builder("hdlr").u32(0).u32(0).fourcc("vide").bytes(new byte[13]).build();
+            byte[] vmhd = new Builder("vmhd").u32(1).bytes(new byte[8]).build();
+
+            Builder stbl = new Builder("stbl");
+            stbl.bytes(new Builder("stsd").u32(0).u32(1).bytes(description).build());
+
+            Builder stts = new Builder("stts").u32(0).u32(durations.length);
+            for (int d : durations) {
+                stts.u32(1).u32(d);
+            }
+            stbl.bytes(stts.build());
+
+            if (compositionOffsets != null) {
+                Builder ctts = new Builder("ctts").u32(0).u32(compositionOffsets.length);
+                for (int offset : compositionOffsets) {
+                    ctts.u32(1).u32(offset);
+                }
+                stbl.bytes(ctts.build());
+            }
+
+            if (sync != null) {
+                Builder stss = new Builder("stss").u32(0).u32(sync.length);
+                for (int s : sync) {
+                    stss.u32(s);
+                }
+                stbl.bytes(stss.build());
+            }
+
+            int chunks = (sizes.length + samplesPerChunk - 1) / samplesPerChunk;
+            int lastChunk = sizes.length - (chunks - 1) * samplesPerChunk;
+            Builder stsc = new Builder("stsc");
+            if (chunks > 1 && lastChunk != samplesPerChunk) {
+                stsc.u32(0).u32(2).u32(1).u32(samplesPerChunk).u32(1).u32(chunks).u32(lastChunk).u32(1);
+            } else {
+                stsc.u32(0).u32(1).u32(1).u32(Math.min(samplesPerChunk, sizes.length)).u32(1);
+            }
+            stbl.bytes(stsc.build());
+
+            Builder stsz = new Builder("stsz").u32(0).u32(0).u32(sizes.length);
+            for (int size : sizes) {
+                stsz.u32(size);
+            }
+            stbl.bytes(stsz.build());
+
+            Builder stco = new Builder(co64 ? "co64" : "stco").u32(0).u32(chunks);
+            long offset = dataOffset;
+            for (int i = 0; i < sizes.length; i++) {
+                if (i % samplesPerChunk == 0) {
+                    if (co64) {
+                        stco.u64(offset);
+                    } else {
+                        stco.u32(offset);
+                    }
+                }
+                offset += sizes[i];
+            }
+            stbl.bytes(stco.build());
+
+            byte[] minf = new Builder("minf").bytes(vmhd).bytes(stbl.build()).build();
+            byte[] mdia = new Builder("mdia").bytes(mdhd).bytes(hdlr).bytes(minf).build();
+            byte[] trak = new Builder("trak").bytes(tkhd).bytes(edts).bytes(mdia).build();
+
+            return new Builder("moov").bytes(mvhd).bytes(trak).build();
+        }
+    }
+
+    private static final class Builder {
+
+        private final String type;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Builder(String type) {
+            this.type = type;
+        }
+
+        Builder u16(int value) {
+            try {
+                out.writeShort(value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        Builder u32(long value) {
+            try {
+                out.writeInt((int) value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        Builder u64(long value) {
+            try {
+                out.writeLong(value);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        Builder fourcc(String value) {
+            return bytes(value.getBytes(ASCII));
+        }
+
+        Builder bytes(byte[] value) {
+            bytes.write(value, 0, value.length);
+            return this;
+        }
+
+        byte[] raw() {
+            return bytes.toByteArray();
+        }
+
+        byte[] build() {
+            byte[] payload = raw();
+            return ByteBuffer.allocate(8 + payload.length).putInt(8 + payload.length).put(type.getBytes(ASCII)).put(payload)
+                .array();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.video.droidium.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.FileTransferOptions;
+import org.arquillian.droidium.container.api.ScreenrecordOptions;
+import org.arquillian.extension.recorder.video.Video;
+import org.arquillian.extension.recorder.video.droidium.configuration.DroidiumVideoConfiguration;
+import org.arquillian.recorder.reporter.ReporterConfiguration;
+import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the ring of segments kept on the device and discarding of videos which are not kept.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class VideoRecorderTestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final FakeDevice device = new FakeDevice();
+
+    private AndroidDevice androidDevice;
+
+    @Before
+    public void setup() throws Exception {
+        androidDevice = device.mockDevice();
+    }
+
+    @Test
+    public void ringKeepsOnlyLastSegmentsOnDeviceTest() throws IOException {
+        VideoRecorder recorder = recorder(true, "340");
+        File file = new File(temporaryFolder.getRoot(), "video.mp4");
+
+        recorder.startRecording(file);
+        recorder.nextSegment();
+        recorder.nextSegment();
+        recorder.nextSegment();
+
+        // two segments of 170 seconds cover the ring of 340 seconds, the oldest one is removed right away
+        Assert.assertEquals(Collections.singletonList(device.started.get(0)), device.removed);
+        Assert.assertTrue(device.pulled.isEmpty());
+
+        Video video = recorder.stopRecording(true);
+
+        Assert.assertFalse(((DroidiumVideo) video).isDiscarded());
+        Assert.assertEquals(device.started.subList(1, 4), device.pulled);
+        Assert.assertTrue(device.onDevice.isEmpty());
+
+        Assert.assertEquals(file, video.getResource());
+        Assert.assertEquals(device.started.get(1), read(file));
+        Assert.assertEquals(2, recorder.getUnstitchedSegments().size());
+        Assert.assertEquals(device.started.get(2), read(recorder.getUnstitchedSegments().get(0)));
+        Assert.assertEquals(device.started.get(3), read(recorder.getUnstitchedSegments().get(1)));
+    }
+
+    @Test
+    public void discardedRingIsRemovedWithoutPullingTest() {
+        VideoRecorder recorder = recorder(true, "340");
+        File file = new File(temporaryFolder.getRoot(), "video.mp4");
+
+        recorder.startRecording(file);
+        recorder.nextSegment();
+        recorder.nextSegment();
+
+        Video video = recorder.stopRecording(false);
+
+        Assert.assertTrue(((DroidiumVideo) video).isDiscarded());
+        Assert.assertFalse(video.getResource().exists());
+        Assert.assertTrue(device.pulled.isEmpty());
+        Assert.assertEquals(3, device.removed.size());
+        Assert.assertTrue(device.onDevice.isEmpty());
+        Assert.assertFalse(recorder.isRecording());
+    }
+
+    @Test
+    public void discardedVideoDeletesPulledSegmentsTest() {
+        VideoRecorder recorder = recorder(false, "0");
+        File file = new File(temporaryFolder.getRoot(), "video.mp4");
+
+        recorder.startRecording(file);
+        recorder.nextSegment();
+        recorder.nextSegment();
+
+        Video video = recorder.stopRecording(false);
+
+        Assert.assertTrue(((DroidiumVideo) video).isDiscarded());
+        Assert.assertEquals("the last segment is not pulled", device.started.subList(0, 2), device.pulled);
+        Assert.assertTrue(device.onDevice.isEmpty());
+        Assert.assertEquals("no file is left on the host", 0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void discardedVideoIsNotTakenTest() {
+        TakenResourceRegister register = new TakenResourceRegister();
+        DroidiumVideoRecorder recorder = new DroidiumVideoRecorder(register);
+        recorder.init(configuration(true, "340"));
+        recorder.setAndroidDevice(androidDevice);
+
+        recorder.startRecording(new File("discarded"));
+        recorder.keepVideo(false);
+        Video discarded = recorder.stopRecording();
+
+        recorder.startRecording(new File("kept"));
+        Video kept = recorder.stopRecording();
+
+        Assert.assertTrue(((DroidiumVideo) discarded).isDiscarded());
+        Assert.assertFalse(((DroidiumVideo) kept).isDiscarded());
+        Assert.assertEquals(Collections.singletonList(kept), register.getTakenVideos());
+        Assert.assertTrue(kept.getResource().isFile());
+    }
+
+    private VideoRecorder recorder(boolean takeOnlyOnFail, String ringLength) {
+        VideoRecorder recorder = new VideoRecorder(configuration(takeOnlyOnFail, ringLength));
+        recorder.setAndroidDevice(androidDevice);
+        return recorder;
+    }
+
+    private DroidiumVideoConfiguration configuration(boolean takeOnlyOnFail, String ringLength) {
+        DroidiumVideoConfiguration configuration = new DroidiumVideoConfiguration(new ReporterConfiguration());
+        configuration.setProperty("rootDir", temporaryFolder.getRoot().getAbsolutePath());
+        configuration.setProperty("takeOnlyOnFail", Boolean.toString(takeOnlyOnFail));
+        configuration.setProperty("ringLength", ringLength);
+        configuration.setProperty("segmentLength", "170");
+        configuration.setProperty("stitchSegments", "false");
+        return configuration;
+    }
+
+    private static String read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Device which records segments to remote files and pulls a remote file as a local file holding its remote path.
+     */
+    private static final class FakeDevice {
+
+        private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+        private final List<String> pulled = Collections.synchronizedList(new ArrayList<String>());
+
+        private final List<String> removed = Collections.synchronizedList(new ArrayList<String>());
+
+        private final List<String> onDevice = Collections.synchronizedList(new ArrayList<String>());
+
+        private volatile String recording;
+
+        AndroidDevice mockDevice() throws Exception {
+            AndroidDevice device = mock(AndroidDevice.class);
+            when(device.isOnline()).thenReturn(true);
+            when(device.getSerialNumber()).thenReturn("emulator-5554");
+
+            when(device.isRecording()).thenAnswer(new Answer<Boolean>() {
+                @Override
+                public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                    return recording != null;
+                }
+            });
+
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    recording = ((File) invocation.getArguments()[0]).getPath();
+                    started.add(recording);
+                    onDevice.add(recording);
+                    return null;
+                }
+            }).when(device).startRecording(any(File.class), any(ScreenrecordOptions.class));
+
+            when(device.stopRecordingOnDevice()).thenAnswer(new Answer<String>() {
+                @Override
+                public String answer(InvocationOnMock invocation) throws Throwable {
+                    String stopped = recording;
+                    recording = null;
+                    return stopped;
+                }
+            });
+
+            when(device.pull(anyString(), any(File.class), any(FileTransferOptions.class))).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    String remote = (String) invocation.getArguments()[0];
+                    Assert.assertTrue(onDevice.contains(remote));
+                    FileOutputStream out = new FileOutputStream((File) invocation.getArguments()[1]);
+                    try {
+                        out.write(remote.getBytes(UTF_8));
+                    } finally {
+                        out.close();
+                    }
+                    pulled.add(remote);
+                    return null;
+                }
+            });
+
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    String remote = (String) invocation.getArguments()[0];
+                    Assert.assertTrue(onDevice.remove(remote));
+                    removed.add(remote);
+                    return null;
+                }
+            }).when(device).remove(anyString());
+
+            return device;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.arquillian.extension.recorder.screenshooter.droidium;
 
 import org.arquillian.extension.recorder.screenshooter.droidium.configuration.DroidiumScreenshooterConfigurator;
 import org.arquillian.extension.recorder.screenshooter.droidium.impl.DroidiumScreenshooterCreator;
+import org.arquillian.extension.recorder.screenshooter.droidium.impl.DroidiumScreenshotBurster;
 import org.arquillian.extension.recorder.screenshooter.droidium.impl.DroidiumScreenshotTaker;
 import org.arquillian.extension.recorder.screenshooter.impl.ScreenshooterLifecycleObserver;
 import org.jboss.arquillian.core.spi.LoadableExtension;
@@ -34,6 +35,7 @@ public class DroidiumScreenshooterExtension implements LoadableExtension {
         builder.observer(DroidiumScreenshooterConfigurator.class);
         builder.observer(DroidiumScreenshooterCreator.class);
         builder.observer(DroidiumScreenshotTaker.class);
+        builder.observer(DroidiumScreenshotBurster.class);
     }
 
 }
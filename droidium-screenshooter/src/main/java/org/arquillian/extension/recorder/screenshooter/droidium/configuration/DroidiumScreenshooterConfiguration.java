@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.configuration;
+
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+import org.arquillian.extension.recorder.screenshooter.ScreenshooterConfiguration;
+import org.arquillian.extension.recorder.screenshooter.ScreenshooterConfigurationException;
+import org.arquillian.recorder.reporter.ReporterConfiguration;
+
+/**
+ * Screenshooter configuration extended by properties specific to Android devices.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class DroidiumScreenshooterConfiguration extends ScreenshooterConfiguration {
+
+    private static final String SCREENSHOT_CONVERSION_THREADS = "screenshotConversionThreads";
+
+    private static final String SCREENSHOT_BACKEND = "screenshotBackend";
+
+    private static final String SCREENSHOT_DEDUPLICATION = "screenshotDeduplication";
+
+    private static final String SCREENSHOT_BURST = "screenshotBurst";
+
+    private static final String SCREENSHOT_BURST_INTERVAL = "screenshotBurstInterval";
+
+    private static final String SCREENSHOT_BURST_MEMORY = "screenshotBurstMemory";
+
+    private static final String SCREENSHOT_ASYNC = "screenshotAsync";
+
+    private static final String SCREENSHOT_ENCODER_THREADS = "screenshotEncoderThreads";
+
+    private static final String SCREENSHOT_ENCODER_QUEUE_SIZE = "screenshotEncoderQueueSize";
+
+    private static final String SCREENSHOT_ENCODER_TIMEOUT = "screenshotEncoderTimeout";
+
+    public DroidiumScreenshooterConfiguration(ReporterConfiguration reporterConfiguration) {
+        super(reporterConfiguration);
+    }
+
+    /**
+     *
+     * @return number of threads converting one framebuffer of a device to an image
+     */
+    public int getScreenshotConversionThreads() {
+        return Integer.parseInt(getProperty(SCREENSHOT_CONVERSION_THREADS, "1"));
+    }
+
+    /**
+     *
+     * @return way of taking screenshots of a device
+     */
+    public ScreenshotBackend getScreenshotBackend() {
+        return ScreenshotBackend.fromString(getProperty(SCREENSHOT_BACKEND, ScreenshotBackend.AUTO.name()));
+    }
+
+    /**
+     *
+     * @return true if a screenshot identical to the previous one of the same test is copied instead of being encoded again
+     */
+    public boolean isScreenshotDeduplication() {
+        return Boolean.parseBoolean(getProperty(SCREENSHOT_DEDUPLICATION, "false"));
+    }
+
+    /**
+     *
+     * @return true if screenshots are taken in the background during a test and written when the test fails
+     */
+    public boolean isScreenshotBurst() {
+        return Boolean.parseBoolean(getProperty(SCREENSHOT_BURST, "false"));
+    }
+
+    /**
+     *
+     * @return interval between burst screenshots in milliseconds
+     */
+    public long getScreenshotBurstInterval() {
+        return Long.parseLong(getProperty(SCREENSHOT_BURST_INTERVAL, "500"));
+    }
+
+    /**
+     *
+     * @return maximal memory taken by burst screenshots of a device in megabytes
+     */
+    public long getScreenshotBurstMemory() {
+        return Long.parseLong(getProperty(SCREENSHOT_BURST_MEMORY, "64"));
+    }
+
+    /**
+     *
+     * @return true if screenshots are converted and written in background threads
+     */
+    public boolean isScreenshotAsync() {
+        return Boolean.parseBoolean(getProperty(SCREENSHOT_ASYNC, "false"));
+    }
+
+    /**
+     *
+     * @return number of threads converting and writing screenshots in the background
+     */
+    public int getScreenshotEncoderThreads() {
+        return Integer.parseInt(getProperty(SCREENSHOT_ENCODER_THREADS, "1"));
+    }
+
+    /**
+     *
+     * @return maximal number of captured screenshots waiting to be written
+     */
+    public int getScreenshotEncoderQueueSize() {
+        return Integer.parseInt(getProperty(SCREENSHOT_ENCODER_QUEUE_SIZE, "16"));
+    }
+
+    /**
+     *
+     * @return timeout in seconds to wait for screenshots to be written at the end of the suite
+     */
+    public long getScreenshotEncoderTimeout() {
+        return Long.parseLong(getProperty(SCREENSHOT_ENCODER_TIMEOUT, "60"));
+    }
+
+    @Override
+    public void validate() throws ScreenshooterConfigurationException {
+        super.validate();
+
+        try {
+            if (getScreenshotConversionThreads() < 1) {
+                throw new ScreenshooterConfigurationException("Number of threads converting screenshots has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_CONVERSION_THREADS + ".", ex);
+        }
+
+        try {
+            getScreenshotBackend();
+        } catch (IllegalArgumentException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_BACKEND + ".", ex);
+        }
+
+        try {
+            if (getScreenshotBurstInterval() < 1) {
+                throw new ScreenshooterConfigurationException("Interval between burst screenshots has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_BURST_INTERVAL + ".", ex);
+        }
+
+        try {
+            if (getScreenshotBurstMemory() < 1) {
+                throw new ScreenshooterConfigurationException("Memory for burst screenshots has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_BURST_MEMORY + ".", ex);
+        }
+
+        try {
+            if (getScreenshotEncoderThreads() < 1) {
+                throw new ScreenshooterConfigurationException("Number of threads writing screenshots has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_ENCODER_THREADS + ".", ex);
+        }
+
+        try {
+            if (getScreenshotEncoderQueueSize() < 1) {
+                throw new ScreenshooterConfigurationException("Size of the queue of screenshots to write has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_ENCODER_QUEUE_SIZE + ".", ex);
+        }
+
+        try {
+            if (getScreenshotEncoderTimeout() < 1) {
+                throw new ScreenshooterConfigurationException("Timeout to wait for screenshots to be written has to be bigger then 0.");
+            }
+        } catch (NumberFormatException ex) {
+            throw new ScreenshooterConfigurationException("Unable to parse " + SCREENSHOT_ENCODER_TIMEOUT + ".", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(super.toString());
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_CONVERSION_THREADS, getScreenshotConversionThreads()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_BACKEND, getScreenshotBackend()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_DEDUPLICATION, isScreenshotDeduplication()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_BURST, isScreenshotBurst()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_BURST_INTERVAL, getScreenshotBurstInterval()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_BURST_MEMORY, getScreenshotBurstMemory()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_ASYNC, isScreenshotAsync()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_ENCODER_THREADS, getScreenshotEncoderThreads()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_ENCODER_QUEUE_SIZE, getScreenshotEncoderQueueSize()));
+        sb.append(String.format("%-40s %s\n", SCREENSHOT_ENCODER_TIMEOUT, getScreenshotEncoderTimeout()));
+        return sb.toString();
+    }
+}
@@ -40,7 +40,7 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  * </ul>
  * Creates:
  * <ul>
- * <li>{@link ScreenshooterConfiguration}</li>
+ * <li>{@link ScreenshooterConfiguration}</li> as {@link DroidiumScreenshooterConfiguration}
  * </ul>
  * Fires:
  * <ul>
@@ -65,7 +65,7 @@ public class DroidiumScreenshooterConfigurator extends ScreenshooterConfigurator
     private Event<ScreenshooterExtensionConfigured> screenshooterExtensionConfigured;
 
     public void configureExtension(@Observes ReportingExtensionConfigured event, ArquillianDescriptor descriptor) {
-        ScreenshooterConfiguration configuration = new ScreenshooterConfiguration(reporterConfiguration.get());
+        ScreenshooterConfiguration configuration = new DroidiumScreenshooterConfiguration(reporterConfiguration.get());
 
         for (ExtensionDef extension : descriptor.getExtensions()) {
             if (extension.getExtensionName().equals(EXTENSION_NAME)) {
@@ -18,11 +18,11 @@ package org.arquillian.extension.recorder.screenshooter.droidium.impl;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.TimeUnit;
 
 import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.DeviceScreenshot;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
 import org.arquillian.extension.recorder.DefaultFileNameBuilder;
 import org.arquillian.extension.recorder.RecorderFileUtils;
 import org.arquillian.extension.recorder.screenshooter.Screenshooter;
@@ -30,6 +30,7 @@ import org.arquillian.extension.recorder.screenshooter.ScreenshooterConfiguratio
 import org.arquillian.extension.recorder.screenshooter.Screenshot;
 import org.arquillian.extension.recorder.screenshooter.ScreenshotMetaData;
 import org.arquillian.extension.recorder.screenshooter.ScreenshotType;
+import org.arquillian.extension.recorder.screenshooter.droidium.configuration.DroidiumScreenshooterConfiguration;
 import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
 import org.jboss.arquillian.core.spi.Validate;
 
@@ -55,6 +56,28 @@ public class DroidiumScreenshooter implements Screenshooter {
 
     private String message;
 
+    private RawImageConverter converter;
+
+    private ScreenshotEncoder encoder;
+
+    private ScreenshotBackend backend = ScreenshotBackend.FRAMEBUFFER;
+
+    private boolean deduplicate;
+
+    private File previousFile;
+
+    private ScreenshotType previousType;
+
+    private long previousHash;
+
+    private int duplicates;
+
+    private long burstInterval;
+
+    private long burstMemory;
+
+    private ScreenshotBurst burst;
+
     /**
      *
      * @param takenResourceRegister
@@ -73,6 +96,23 @@ public class DroidiumScreenshooter implements Screenshooter {
                 File root = this.configuration.getRootDir();
                 setScreenshotTargetDir(root);
                 setScreenshotType(ScreenshotType.valueOf(this.configuration.getScreenshotType()));
+                if (configuration instanceof DroidiumScreenshooterConfiguration) {
+                    DroidiumScreenshooterConfiguration droidiumConfiguration = (DroidiumScreenshooterConfiguration) configuration;
+                    converter = new RawImageConverter(droidiumConfiguration.getScreenshotConversionThreads());
+                    backend = droidiumConfiguration.getScreenshotBackend();
+                    deduplicate = droidiumConfiguration.isScreenshotDeduplication();
+                    if (droidiumConfiguration.isScreenshotBurst()) {
+                        burstInterval = droidiumConfiguration.getScreenshotBurstInterval();
+                        burstMemory = droidiumConfiguration.getScreenshotBurstMemory() * 1024 * 1024;
+                    }
+                    if (droidiumConfiguration.isScreenshotAsync()) {
+                        encoder = new ScreenshotEncoder(converter,
+                            droidiumConfiguration.getScreenshotEncoderThreads(),
+                            droidiumConfiguration.getScreenshotEncoderQueueSize());
+                    }
+                } else {
+                    converter = new RawImageConverter(1);
+                }
             }
         }
     }
@@ -84,6 +124,47 @@ public class DroidiumScreenshooter implements Screenshooter {
     public void setAndroidDevice(AndroidDevice androidDevice) {
         Validate.notNull(androidDevice, "Android device to set to take screenshots is a null object!");
         this.androidDevice = androidDevice;
+        if (burstInterval > 0) {
+            if (burst != null) {
+                burst.close();
+            }
+            burst = new ScreenshotBurst(androidDevice, backend, burstInterval, burstMemory);
+        }
+    }
+
+    /**
+     *
+     * @return ring of the last screenshots of the device or null if burst screenshots are not enabled
+     */
+    public ScreenshotBurst getBurst() {
+        return burst;
+    }
+
+    /**
+     * Writes a frame of burst to a file as any other screenshot.
+     *
+     * @param frame frame to write
+     * @param file file to write the frame to, relative to the screenshot target directory
+     * @param type type of the image
+     * @return written screenshot
+     */
+    public Screenshot takeScreenshot(ScreenshotBurst.Frame frame, File file, ScreenshotType type) {
+        Validate.notNull(frame, "Frame is a null object!");
+
+        file = new File(screenshotTargetDir, RecorderFileUtils.checkFileExtension(file, type).getPath());
+        RecorderFileUtils.createDirectory(file.getParentFile());
+
+        write(frame.getScreenshot(), type, file);
+
+        Screenshot screenshot = new DroidiumScreenshot();
+        screenshot.setResource(file);
+        screenshot.setHeight(frame.getScreenshot().getHeight());
+        screenshot.setWidth(frame.getScreenshot().getWidth());
+        screenshot.setResourceType(type);
+
+        takenResourceRegister.addTaken(screenshot);
+
+        return screenshot;
     }
 
     @Override
@@ -134,53 +215,175 @@ public class DroidiumScreenshooter implements Screenshooter {
         }
 
         file = new File(screenshotTargetDir, file.getPath());
-        RecorderFileUtils.createDirectory(file);
+        RecorderFileUtils.createDirectory(file.getParentFile());
+
+        DeviceScreenshot deviceScreenshot = capture();
+
+        if (deduplicate) {
+            byte[] png = deviceScreenshot.getPng();
+            long hash = png != null ? FrameHash.hash(png, png.length, 0) : FrameHash.hash(getRawImage(deviceScreenshot));
+            if (previousFile != null && previousHash == hash && previousType == type) {
+                // the screen has not changed since the previous screenshot, its file is copied instead of encoding
+                // the frame again, every screenshot keeps its own file as the files of a test may be deleted
+                duplicates++;
+                copy(previousFile, file);
+            } else {
+                write(deviceScreenshot, type, file);
+                previousFile = file;
+                previousType = type;
+                previousHash = hash;
+            }
+        } else {
+            write(deviceScreenshot, type, file);
+        }
 
-        RawImage rawImage = null;
+        Screenshot screenshot = new DroidiumScreenshot();
+        screenshot.setResource(file);
+        screenshot.setHeight(deviceScreenshot.getHeight());
+        screenshot.setWidth(deviceScreenshot.getWidth());
+        screenshot.setResourceType(screenshotType);
 
-        try {
-            rawImage = androidDevice.getScreenshot().getRawImage();
-        } catch (Exception e) {
-            throw new RuntimeException("Unable to get screenshot of underlying Android device.", e);
+        if (message != null && !message.isEmpty()) {
+            screenshot.setMessage(message);
+            message = null;
         }
 
-        if (rawImage == null) {
-            throw new RuntimeException("Unable to get screenshot of underlying Android device.");
+        takenResourceRegister.addTaken(screenshot);
+
+        return screenshot;
+
+    }
+
+    /**
+     * Takes a screenshot and compares it to {@code baseline} without writing the screenshot. When it does not match
+     * and the comparator draws diff images, the diff image is written to {@code diff} directory of the screenshot
+     * target directory under the name of the baseline.
+     *
+     * @param baseline file of the expected screenshot
+     * @param comparator comparator to compare the screenshot by
+     * @return result of the comparison
+     */
+    public ScreenshotComparison compareScreenshot(File baseline, ScreenshotComparator comparator) {
+        Validate.notNull(baseline, "Baseline is a null object!");
+        Validate.notNull(comparator, "Comparator is a null object!");
+
+        if (configuration == null) {
+            throw new IllegalStateException("Screenshooter was not initialized. Please call init() method first.");
+        }
+
+        if (!androidDevice.isOnline()) {
+            throw new RuntimeException("Android device is not online, can not take any screenshots.");
         }
 
-        BufferedImage bufferedImage = new BufferedImage(rawImage.width, rawImage.height, BufferedImage.TYPE_INT_RGB);
+        BufferedImage actual = converter.convert(getRawImage(capture()));
+
+        ScreenshotComparison comparison = comparator.compare(actual, baseline);
+
+        if (comparison.getDiffImage() != null) {
+            File diffFile = RecorderFileUtils.checkFileExtension(
+                new File(new File(screenshotTargetDir, "diff"), baseline.getName()), ScreenshotType.PNG);
+            RecorderFileUtils.createDirectory(diffFile.getParentFile());
+            ScreenshotEncoder.write(comparison.getDiffImage(), ScreenshotType.PNG, diffFile);
+            comparison.setDiffFile(diffFile);
+        }
+
+        return comparison;
+    }
+
+    /**
+     *
+     * @return number of screenshots which were copied from the previous screenshot as the screen did not change
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Forgets the previous screenshot so the next one is written even when the screen did not change. Called at the
+     * beginning of every test, screenshots are deduplicated only within one test.
+     */
+    public void forgetPreviousScreenshot() {
+        previousFile = null;
+        previousType = null;
+        previousHash = 0;
+    }
 
-        int index = 0;
+    /**
+     * Waits until all screenshots taken asynchronously are written to their files.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     * @return true if all screenshots were written, false if the time elapsed before
+     */
+    public boolean awaitPendingScreenshots(long timeout, TimeUnit unit) {
+        return encoder == null || encoder.awaitPending(timeout, unit);
+    }
 
-        int indexInc = rawImage.bpp >> 3;
-        for (int y = 0; y < rawImage.height; y++) {
-            for (int x = 0; x < rawImage.width; x++, index += indexInc) {
-                int value = rawImage.getARGB(index);
-                bufferedImage.setRGB(x, y, value);
+    /**
+     *
+     * @return encoder writing screenshots asynchronously or null if screenshots are written synchronously
+     */
+    public ScreenshotEncoder getEncoder() {
+        return encoder;
+    }
+
+    private void write(DeviceScreenshot deviceScreenshot, ScreenshotType type, File file) {
+        byte[] png = deviceScreenshot.getPng();
+
+        if (png != null && type == ScreenshotType.PNG) {
+            // already encoded by the device
+            if (encoder != null) {
+                encoder.submit(png, file);
+            } else {
+                ScreenshotEncoder.write(png, file);
+            }
+        } else {
+            RawImage rawImage = getRawImage(deviceScreenshot);
+
+            if (encoder != null) {
+                // the file is written later, the screenshot is complete once the encoder is done with it
+                encoder.submit(rawImage, type, file);
+            } else {
+                ScreenshotEncoder.write(converter.convert(rawImage), type, file);
             }
         }
+    }
 
-        try {
-            ImageIO.write(bufferedImage, type.toString(), file);
-        } catch (IOException ex) {
-            throw new RuntimeException("Could not write an image", ex);
+    private void copy(File source, File file) {
+        if (source.equals(file)) {
+            return;
+        }
+        if (encoder != null) {
+            encoder.submitCopy(source, file);
+        } else {
+            ScreenshotEncoder.copy(source, file);
         }
+    }
 
-        Screenshot screenshot = new DroidiumScreenshot();
-        screenshot.setResource(file);
-        screenshot.setHeight(rawImage.height);
-        screenshot.setWidth(rawImage.width);
-        screenshot.setResourceType(screenshotType);
+    private DeviceScreenshot capture() {
+        DeviceScreenshot deviceScreenshot = null;
 
-        if (message != null && !message.isEmpty()) {
-            screenshot.setMessage(message);
-            message = null;
+        try {
+            deviceScreenshot = androidDevice.getScreenshot(backend);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to get screenshot of underlying Android device.", e);
         }
 
-        takenResourceRegister.addTaken(screenshot);
+        if (deviceScreenshot == null) {
+            throw new RuntimeException("Unable to get screenshot of underlying Android device.");
+        }
 
-        return screenshot;
+        return deviceScreenshot;
+    }
+
+    private RawImage getRawImage(DeviceScreenshot deviceScreenshot) {
+        RawImage rawImage = deviceScreenshot.getRawImage();
+
+        if (rawImage == null) {
+            throw new RuntimeException("Unable to get screenshot of underlying Android device.");
+        }
 
+        return rawImage;
     }
 
     @Override
@@ -16,22 +16,32 @@
  */
 package org.arquillian.extension.recorder.screenshooter.droidium.impl;
 
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
 import org.arquillian.droidium.container.api.AndroidDevice;
 import org.arquillian.droidium.container.spi.event.AndroidDeviceReady;
 import org.arquillian.extension.recorder.screenshooter.Screenshooter;
 import org.arquillian.extension.recorder.screenshooter.ScreenshooterConfiguration;
+import org.arquillian.extension.recorder.screenshooter.droidium.configuration.DroidiumScreenshooterConfiguration;
 import org.arquillian.extension.recorder.screenshooter.event.ScreenshooterExtensionConfigured;
+import org.arquillian.recorder.reporter.event.PropertyReportEvent;
 import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
+import org.arquillian.recorder.reporter.model.entry.KeyValueEntry;
+import org.jboss.arquillian.core.api.Event;
 import org.jboss.arquillian.core.api.Instance;
 import org.jboss.arquillian.core.api.InstanceProducer;
 import org.jboss.arquillian.core.api.annotation.ApplicationScoped;
 import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.event.suite.AfterSuite;
 
 /**
  * Observes:
  * <ul>
  * <li>{@link ScreenshooterExtensionConfigured}</li>
+ * <li>{@link AndroidDeviceReady}</li>
+ * <li>{@link AfterSuite}</li>
  * </ul>
  * Creates {@link ApplicationScoped}:
  * <ul>
@@ -44,6 +54,8 @@ import org.jboss.arquillian.core.api.annotation.Observes;
  */
 public class DroidiumScreenshooterCreator {
 
+    private static final Logger logger = Logger.getLogger(DroidiumScreenshooterCreator.class.getName());
+
     @Inject
     @ApplicationScoped
     private InstanceProducer<Screenshooter> screenshooter;
@@ -55,6 +67,9 @@ public class DroidiumScreenshooterCreator {
     @Inject
     private Instance<ScreenshooterConfiguration> configuration;
 
+    @Inject
+    private Event<PropertyReportEvent> propertyReportEvent;
+
     /**
      * Creates {@link Screenshooter} instance.
      *
@@ -80,4 +95,40 @@ public class DroidiumScreenshooterCreator {
     public void onAndroidDeviceAvailable(@Observes AndroidDeviceReady event) {
         ((DroidiumScreenshooter) screenshooter.get()).setAndroidDevice(event.getDevice());
     }
+
+    /**
+     * Stops burst screenshots, waits for screenshots which are still being written and reports statistics of their
+     * encoding. It is executed before the reporter writes its report so every reported screenshot exists by then.
+     *
+     * @param event
+     */
+    public void onAfterSuite(@Observes(precedence = 100) AfterSuite event) {
+        if (!(screenshooter.get() instanceof DroidiumScreenshooter)) {
+            return;
+        }
+
+        DroidiumScreenshooter droidiumScreenshooter = (DroidiumScreenshooter) screenshooter.get();
+
+        if (droidiumScreenshooter.getBurst() != null) {
+            droidiumScreenshooter.getBurst().close();
+        }
+
+        ScreenshotEncoder encoder = droidiumScreenshooter.getEncoder();
+
+        if (encoder == null) {
+            return;
+        }
+
+        long timeout = ((DroidiumScreenshooterConfiguration) configuration.get()).getScreenshotEncoderTimeout();
+
+        if (!droidiumScreenshooter.awaitPendingScreenshots(timeout, TimeUnit.SECONDS)) {
+            logger.warning(String.format("%d screenshots were not written in %d seconds.", encoder.getPending(), timeout));
+        }
+
+        String statistics = encoder.getStatistics();
+        logger.info("Droidium screenshot encoding: " + statistics);
+        propertyReportEvent.fire(new PropertyReportEvent(new KeyValueEntry("Droidium screenshot encoding", statistics)));
+
+        encoder.close();
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.io.File;
+import java.util.List;
+
+import org.arquillian.extension.recorder.When;
+import org.arquillian.extension.recorder.screenshooter.Screenshooter;
+import org.arquillian.extension.recorder.screenshooter.Screenshot;
+import org.arquillian.extension.recorder.screenshooter.ScreenshotMetaData;
+import org.arquillian.extension.recorder.screenshooter.ScreenshotType;
+import org.arquillian.extension.recorder.screenshooter.impl.ScreenshotReportEntryBuilder;
+import org.arquillian.recorder.reporter.PropertyEntry;
+import org.arquillian.recorder.reporter.event.PropertyReportEvent;
+import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
+import org.jboss.arquillian.core.api.Event;
+import org.jboss.arquillian.core.api.Instance;
+import org.jboss.arquillian.core.api.annotation.Inject;
+import org.jboss.arquillian.core.api.annotation.Observes;
+import org.jboss.arquillian.test.spi.TestResult;
+import org.jboss.arquillian.test.spi.event.suite.After;
+import org.jboss.arquillian.test.spi.event.suite.Before;
+
+/**
+ * Observes:
+ * <ul>
+ * <li>{@link Before}</li>
+ * <li>{@link After}</li>
+ * </ul>
+ * Starts {@link ScreenshotBurst} of the device before every test. When the test fails, kept frames are written to
+ * {@code burst} directory of the test and reported, otherwise they are dropped.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class DroidiumScreenshotBurster {
+
+    private static final String BURST_DIRECTORY = "burst";
+
+    @Inject
+    private Instance<Screenshooter> screenshooter;
+
+    @Inject
+    private Instance<TakenResourceRegister> takenResourceRegister;
+
+    @Inject
+    private Event<PropertyReportEvent> propertyReportEvent;
+
+    public void onBefore(@Observes Before event) {
+        ScreenshotBurst burst = getBurst();
+        if (burst != null) {
+            burst.start();
+        }
+    }
+
+    public void onAfter(@Observes After event, TestResult testResult) {
+        ScreenshotBurst burst = getBurst();
+
+        if (burst == null) {
+            return;
+        }
+
+        if (testResult.getStatus() != TestResult.Status.FAILED) {
+            burst.discard();
+            return;
+        }
+
+        List<ScreenshotBurst.Frame> frames = burst.drain();
+
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        DroidiumScreenshooter droidiumScreenshooter = (DroidiumScreenshooter) screenshooter.get();
+        ScreenshotType type = droidiumScreenshooter.getScreenshotType();
+        long end = frames.get(frames.size() - 1).getTime();
+
+        for (int i = 0; i < frames.size(); i++) {
+            ScreenshotBurst.Frame frame = frames.get(i);
+
+            ScreenshotMetaData metaData = new ScreenshotMetaData();
+            metaData.setTestClass(event.getTestClass());
+            metaData.setTestMethod(event.getTestMethod());
+            metaData.setTestResult(testResult);
+            metaData.setTimeStamp(frame.getTime());
+            metaData.setResourceType(type);
+
+            File file = new File(new File(new File(metaData.getTestClassName(), metaData.getTestMethodName()), BURST_DIRECTORY),
+                String.format("%03d.%s", i + 1, type.toString().toLowerCase()));
+
+            Screenshot screenshot = droidiumScreenshooter.takeScreenshot(frame, file, type);
+            screenshot.setMessage(String.format("burst %d/%d, %d ms before the end of the test", i + 1, frames.size(),
+                end - frame.getTime()));
+
+            metaData.setFilename(screenshot.getResource());
+            metaData.setWidth(screenshot.getWidth());
+            metaData.setHeight(screenshot.getHeight());
+
+            PropertyEntry propertyEntry = new ScreenshotReportEntryBuilder()
+                .withWhen(When.FAILED)
+                .withMetadata(metaData)
+                .withScreenshot(screenshot)
+                .build();
+
+            takenResourceRegister.get().addReported(screenshot);
+            propertyReportEvent.fire(new PropertyReportEvent(propertyEntry));
+        }
+    }
+
+    private ScreenshotBurst getBurst() {
+        if (screenshooter.get() instanceof DroidiumScreenshooter) {
+            return ((DroidiumScreenshooter) screenshooter.get()).getBurst();
+        }
+        return null;
+    }
+}
@@ -31,8 +31,17 @@ import org.jboss.arquillian.core.api.Instance;
 import org.jboss.arquillian.core.api.annotation.Inject;
 import org.jboss.arquillian.core.api.annotation.Observes;
 import org.jboss.arquillian.core.spi.ServiceLoader;
+import org.jboss.arquillian.test.spi.event.suite.Before;
 
 /**
+ * Observes:
+ * <ul>
+ * <li>{@link Before}</li>
+ * <li>{@link TakeScreenshot}</li>
+ * </ul>
+ * Screenshots are deduplicated within one test only, the previous screenshot is forgotten before screenshots of a test
+ * are taken.
+ *
  * @author <a href="mailto:pmensik@redhat.com">Stefan Miklosovic</a>
  */
 public class DroidiumScreenshotTaker {
@@ -49,6 +58,12 @@ public class DroidiumScreenshotTaker {
     @Inject
     private Instance<TakenResourceRegister> takenScreenshotsRegister;
 
+    public void onBefore(@Observes Before event) {
+        if (screenshooter.get() instanceof DroidiumScreenshooter) {
+            ((DroidiumScreenshooter) screenshooter.get()).forgetPreviousScreenshot();
+        }
+    }
+
     public void onTakeScreenshot(@Observes TakeScreenshot event) {
 
         ScreenshotType type = screenshooter.get().getScreenshotType();
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Computes 64 bit hash of a frame to recognize frames identical to the previous one.<br>
+ * <br>
+ * Every byte of the frame is hashed, a sampled hash would miss small changes like a blinking cursor. Four independent
+ * lanes of the xxHash64 round function are used so the pass over the frame runs at memory speed and costs a fraction
+ * of converting the frame.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public final class FrameHash {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+
+    private FrameHash() {
+    }
+
+    /**
+     *
+     * @param rawImage frame to hash
+     * @return hash of pixels and the layout of {@code rawImage}
+     */
+    public static long hash(RawImage rawImage) {
+        long seed = ((long) rawImage.width << 32 | rawImage.height) * PRIME_3 + rawImage.bpp;
+        seed = seed * PRIME_3 + (rawImage.red_offset << 16 | rawImage.green_offset << 8 | rawImage.blue_offset);
+        int length = Math.min(rawImage.data.length, rawImage.width * rawImage.height * (rawImage.bpp >> 3));
+        return hash(rawImage.data, length, seed);
+    }
+
+    /**
+     *
+     * @param data bytes to hash
+     * @param length number of bytes from the beginning of {@code data} to hash
+     * @param seed initial value of the hash
+     * @return hash of {@code length} bytes of {@code data}
+     */
+    public static long hash(byte[] data, int length, long seed) {
+        LongBuffer longs = ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+        long lane1 = seed + PRIME_1 + PRIME_2;
+        long lane2 = seed + PRIME_2;
+        long lane3 = seed;
+        long lane4 = seed - PRIME_1;
+
+        int blocks = longs.remaining() & ~3;
+        for (int i = 0; i < blocks; i += 4) {
+            lane1 = round(lane1, longs.get(i));
+            lane2 = round(lane2, longs.get(i + 1));
+            lane3 = round(lane3, longs.get(i + 2));
+            lane4 = round(lane4, longs.get(i + 3));
+        }
+
+        long hash = Long.rotateLeft(lane1, 1) + Long.rotateLeft(lane2, 7) + Long.rotateLeft(lane3, 12)
+            + Long.rotateLeft(lane4, 18) + length;
+
+        for (int i = blocks * 8; i < length; i++) {
+            hash = Long.rotateLeft(hash ^ (data[i] & 0xff) * PRIME_3, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+
+        return hash;
+    }
+
+    private static long round(long lane, long input) {
+        return Long.rotateLeft(lane + input * PRIME_2, 31) * PRIME_1;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Converts a framebuffer of an Android device to a {@link BufferedImage} of type {@link BufferedImage#TYPE_INT_RGB}.<br>
+ * <br>
+ * Pixels are written directly into the {@link DataBufferInt} of the image. Common layouts, RGB565, RGBA8888 and
+ * BGRA8888, are converted by specialized loops, other 32 bit layouts by masks taken from the header of the frame. Big
+ * frames are optionally converted in parallel by bands of rows. The last image is reused for the next frame of the
+ * same size.<br>
+ * <br>
+ * {@link #convert(RawImage, BufferedImage)} can be called by several threads at once, {@link #convert(RawImage)} can
+ * not as it reuses one image.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class RawImageConverter {
+
+    // frames with fewer pixels are not worth splitting to bands
+    private static final int MIN_PARALLEL_PIXELS = 256 * 1024;
+
+    private static final int[] SCALE_5 = new int[32];
+
+    private static final int[] SCALE_6 = new int[64];
+
+    static {
+        // the same rounding as RawImage#getARGB
+        for (int i = 0; i < SCALE_5.length; i++) {
+            SCALE_5[i] = i * 255 / 31;
+        }
+        for (int i = 0; i < SCALE_6.length; i++) {
+            SCALE_6[i] = i * 255 / 63;
+        }
+    }
+
+    enum Layout {
+        RGB565,
+        RGBA8888,
+        BGRA8888,
+        MASKED_32,
+        GENERIC
+    }
+
+    private final int threads;
+
+    private ExecutorService executor;
+
+    private BufferedImage image;
+
+    /**
+     *
+     * @param threads number of threads converting one frame, 1 converts frames in the calling thread only
+     * @throws IllegalArgumentException if {@code threads} is lower than 1
+     */
+    public RawImageConverter(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads converting screenshots has to be bigger then 0.");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Converts {@code rawImage} to an image which is reused by the next call when the frame has the same size.
+     *
+     * @param rawImage frame of a device
+     * @return converted image
+     */
+    public BufferedImage convert(RawImage rawImage) {
+        if (image == null || image.getWidth() != rawImage.width || image.getHeight() != rawImage.height) {
+            image = new BufferedImage(rawImage.width, rawImage.height, BufferedImage.TYPE_INT_RGB);
+        }
+        return convert(rawImage, image);
+    }
+
+    /**
+     * Converts {@code rawImage} to {@code target}.
+     *
+     * @param rawImage frame of a device
+     * @param target image of type {@link BufferedImage#TYPE_INT_RGB} of the same size as {@code rawImage}
+     * @return {@code target}
+     * @throws IllegalArgumentException if {@code target} is not of the expected type or size
+     */
+    public BufferedImage convert(final RawImage rawImage, BufferedImage target) {
+        if (target.getType() != BufferedImage.TYPE_INT_RGB || target.getWidth() != rawImage.width
+            || target.getHeight() != rawImage.height) {
+            throw new IllegalArgumentException("Target image has to be of type TYPE_INT_RGB and of the same size as the frame.");
+        }
+
+        final int[] pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        final Layout layout = layoutOf(rawImage);
+
+        int bands = threads;
+        if (bands > 1 && rawImage.width * rawImage.height >= MIN_PARALLEL_PIXELS) {
+            bands = Math.min(bands, rawImage.height);
+        } else {
+            bands = 1;
+        }
+
+        if (bands == 1) {
+            convert(rawImage, layout, pixels, 0, rawImage.height);
+            return target;
+        }
+
+        int rowsPerBand = (rawImage.height + bands - 1) / bands;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(bands);
+        for (int band = 0; band < bands; band++) {
+            final int fromRow = band * rowsPerBand;
+            final int toRow = Math.min(rawImage.height, fromRow + rowsPerBand);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    convert(rawImage, layout, pixels, fromRow, toRow);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : getExecutor().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while converting a screenshot.", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Unable to convert a screenshot.", ex.getCause());
+        }
+
+        return target;
+    }
+
+    /**
+     * Stops threads converting frames in parallel.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    static Layout layoutOf(RawImage rawImage) {
+        if (rawImage.bpp == 16) {
+            return Layout.RGB565;
+        }
+        if (rawImage.bpp != 32) {
+            return Layout.GENERIC;
+        }
+        if (rawImage.red_length == 8 && rawImage.green_length == 8 && rawImage.blue_length == 8 && rawImage.green_offset == 8) {
+            if (rawImage.red_offset == 0 && rawImage.blue_offset == 16) {
+                return Layout.RGBA8888;
+            }
+            if (rawImage.red_offset == 16 && rawImage.blue_offset == 0) {
+                return Layout.BGRA8888;
+            }
+        }
+        return Layout.MASKED_32;
+    }
+
+    private static void convert(RawImage rawImage, Layout layout, int[] pixels, int fromRow, int toRow) {
+        byte[] data = rawImage.data;
+        int from = fromRow * rawImage.width;
+        int to = toRow * rawImage.width;
+
+        switch (layout) {
+            case RGB565:
+                for (int p = from, i = from << 1; p < to; p++, i += 2) {
+                    int value = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8);
+                    pixels[p] = (SCALE_5[value >>> 11] << 16) | (SCALE_6[(value >>> 5) & 0x3f] << 8) | SCALE_5[value & 0x1f];
+                }
+                break;
+            case RGBA8888:
+                for (int p = from, i = from << 2; p < to; p++, i += 4) {
+                    pixels[p] = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+                }
+                break;
+            case BGRA8888:
+                for (int p = from, i = from << 2; p < to; p++, i += 4) {
+                    pixels[p] = ((data[i + 2] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i] & 0xff);
+                }
+                break;
+            case MASKED_32:
+                convertMasked(rawImage, pixels, from, to);
+                break;
+            default:
+                int step = rawImage.bpp >> 3;
+                for (int p = from, i = from * step; p < to; p++, i += step) {
+                    pixels[p] = rawImage.getARGB(i) & 0xffffff;
+                }
+        }
+    }
+
+    private static void convertMasked(RawImage rawImage, int[] pixels, int from, int to) {
+        byte[] data = rawImage.data;
+
+        int redOffset = rawImage.red_offset;
+        int redMask = mask(rawImage.red_length);
+        int redShift = 8 - rawImage.red_length;
+        int greenOffset = rawImage.green_offset;
+        int greenMask = mask(rawImage.green_length);
+        int greenShift = 8 - rawImage.green_length;
+        int blueOffset = rawImage.blue_offset;
+        int blueMask = mask(rawImage.blue_length);
+        int blueShift = 8 - rawImage.blue_length;
+
+        for (int p = from, i = from << 2; p < to; p++, i += 4) {
+            int value = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | ((data[i + 3] & 0xff) << 24);
+            int r = ((value >>> redOffset) & redMask) << redShift;
+            int g = ((value >>> greenOffset) & greenMask) << greenShift;
+            int b = ((value >>> blueOffset) & blueMask) << blueShift;
+            pixels[p] = ((r & 0xff) << 16) | ((g & 0xff) << 8) | (b & 0xff);
+        }
+    }
+
+    private static int mask(int length) {
+        return length >= 32 ? -1 : (1 << length) - 1;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int counter;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "droidium-screenshot-converter-" + counter++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
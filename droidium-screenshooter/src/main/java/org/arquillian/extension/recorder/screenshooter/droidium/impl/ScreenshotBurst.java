@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.DeviceScreenshot;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Keeps the last screenshots of a device in memory so they can be written when a test fails.<br>
+ * <br>
+ * While started, a background thread takes a screenshot every interval and appends it to a ring. Frames are kept as
+ * the device returned them, uncompressed or PNG encoded by the device, and the oldest frames are dropped once the
+ * frames exceed the memory limit. A frame bigger than the memory limit on its own is dropped. A frame identical to the
+ * last one in the ring is not stored again, only the time of the last frame is updated.<br>
+ * <br>
+ * Every start and stop begins a new generation, a screenshot which was being taken meanwhile belongs to the previous
+ * one and it is not stored.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotBurst {
+
+    private static final Logger logger = Logger.getLogger(ScreenshotBurst.class.getName());
+
+    private final AndroidDevice androidDevice;
+
+    private final ScreenshotBackend backend;
+
+    private final long interval;
+
+    private final long memoryLimit;
+
+    private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+    private long memory;
+
+    private long lastHash;
+
+    private long generation;
+
+    private boolean oversizedLogged;
+
+    private ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> capturing;
+
+    /**
+     *
+     * @param androidDevice device to take screenshots of
+     * @param backend way of taking screenshots
+     * @param interval interval between screenshots in milliseconds
+     * @param memoryLimit maximal size of kept frames in bytes
+     */
+    public ScreenshotBurst(AndroidDevice androidDevice, ScreenshotBackend backend, long interval, long memoryLimit) {
+        this.androidDevice = androidDevice;
+        this.backend = backend;
+        this.interval = interval;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Drops kept frames and starts taking screenshots.
+     */
+    public synchronized void start() {
+        stop();
+        clear();
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "droidium-screenshot-burst-" + androidDevice.getSerialNumber());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        final long started = ++generation;
+
+        capturing = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                capture(started);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops taking screenshots and returns kept frames, the ring is empty afterwards.
+     *
+     * @return kept frames from the oldest to the newest
+     */
+    public synchronized List<Frame> drain() {
+        stop();
+        List<Frame> drained = new ArrayList<Frame>(frames);
+        clear();
+        return drained;
+    }
+
+    /**
+     * Stops taking screenshots and drops kept frames.
+     */
+    public synchronized void discard() {
+        stop();
+        clear();
+    }
+
+    /**
+     * Stops taking screenshots and the thread taking them.
+     */
+    public synchronized void close() {
+        discard();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     *
+     * @return size of kept frames in bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    private void capture(long started) {
+        DeviceScreenshot screenshot;
+        try {
+            screenshot = androidDevice.getScreenshot(backend);
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "Unable to take a screenshot of burst.", ex);
+            return;
+        }
+
+        long time = System.currentTimeMillis();
+        byte[] png = screenshot.getPng();
+        RawImage rawImage = png == null ? screenshot.getRawImage() : null;
+
+        if (rawImage == null && png == null) {
+            return;
+        }
+
+        long hash = png != null ? FrameHash.hash(png, png.length, 0) : FrameHash.hash(rawImage);
+        long size = png != null ? png.length : rawImage.data.length;
+
+        synchronized (this) {
+            if (generation != started) {
+                // stopped or started again meanwhile
+                return;
+            }
+            if (!frames.isEmpty() && hash == lastHash) {
+                frames.getLast().time = time;
+                return;
+            }
+            if (size > memoryLimit) {
+                if (!oversizedLogged) {
+                    logger.log(Level.WARNING, "Screenshot of {0} bytes does not fit into the memory limit of burst of {1} "
+                        + "bytes, such screenshots are dropped.",
+                        new Object[] { String.valueOf(size), String.valueOf(memoryLimit) });
+                    oversizedLogged = true;
+                }
+                return;
+            }
+            while (!frames.isEmpty() && memory + size > memoryLimit) {
+                memory -= frames.removeFirst().size;
+            }
+            frames.addLast(new Frame(screenshot, time, size));
+            memory += size;
+            lastHash = hash;
+        }
+    }
+
+    private void stop() {
+        generation++;
+        if (capturing != null) {
+            capturing.cancel(false);
+            capturing = null;
+        }
+    }
+
+    private void clear() {
+        frames.clear();
+        memory = 0;
+    }
+
+    /**
+     * Screenshot kept in the ring.
+     */
+    public static final class Frame {
+
+        private final DeviceScreenshot screenshot;
+
+        private final long size;
+
+        private volatile long time;
+
+        Frame(DeviceScreenshot screenshot, long time, long size) {
+            this.screenshot = screenshot;
+            this.time = time;
+            this.size = size;
+        }
+
+        public DeviceScreenshot getScreenshot() {
+            return screenshot;
+        }
+
+        /**
+         *
+         * @return time the screen was last seen in this state
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares screenshots to baselines pixel by pixel.<br>
+ * <br>
+ * Both images are compared directly on their {@code int} rasters of type {@link BufferedImage#TYPE_INT_RGB}, which is
+ * what {@link RawImageConverter} produces, so a captured frame is never encoded nor decoded for a comparison. Pixels
+ * differ when any of their channels differs by more than the tolerance of the channel. Ignored regions are compiled
+ * to spans of rows once per image size and skipped. Counting stops as soon as the number of different pixels exceeds
+ * the threshold, the diff image is drawn by a second pass only when the images do not match.<br>
+ * <br>
+ * Decoded baselines are cached until their files change or the memory is needed. Entries of baselines reclaimed by the
+ * garbage collector are removed on the next load. A configured comparator can be used by several threads at once.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotComparator {
+
+    private static final int DIFF_COLOR = 0xff0000;
+
+    static final ConcurrentMap<File, CachedBaseline> BASELINES = new ConcurrentHashMap<File, CachedBaseline>();
+
+    // cached baselines whose images were reclaimed
+    private static final ReferenceQueue<BufferedImage> RECLAIMED_BASELINES = new ReferenceQueue<BufferedImage>();
+
+    private int redTolerance;
+
+    private int greenTolerance;
+
+    private int blueTolerance;
+
+    private double threshold;
+
+    private boolean diffImage = true;
+
+    private final List<Rectangle> ignoredRegions = new ArrayList<Rectangle>();
+
+    private BufferedImage ignoredMask;
+
+    private volatile IgnoredSpans ignoredSpans;
+
+    /**
+     *
+     * @param tolerance maximal difference of any channel of pixels considered equal, 0 - 255
+     * @return this
+     */
+    public ScreenshotComparator tolerance(int tolerance) {
+        return tolerance(tolerance, tolerance, tolerance);
+    }
+
+    /**
+     *
+     * @param red maximal difference of red channel of pixels considered equal, 0 - 255
+     * @param green maximal difference of green channel of pixels considered equal, 0 - 255
+     * @param blue maximal difference of blue channel of pixels considered equal, 0 - 255
+     * @return this
+     */
+    public ScreenshotComparator tolerance(int red, int green, int blue) {
+        checkTolerance(red);
+        checkTolerance(green);
+        checkTolerance(blue);
+        this.redTolerance = red;
+        this.greenTolerance = green;
+        this.blueTolerance = blue;
+        return this;
+    }
+
+    /**
+     *
+     * @param threshold maximal ratio of different pixels to compared pixels of images considered equal, 0 - 1
+     * @return this
+     */
+    public ScreenshotComparator threshold(double threshold) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("Threshold of different pixels has to be in range [0, 1], it is " + threshold);
+        }
+        this.threshold = threshold;
+        return this;
+    }
+
+    /**
+     * Ignores a region of images, e.g. a clock in the status bar.
+     *
+     * @param x left edge of the region
+     * @param y top edge of the region
+     * @param width width of the region
+     * @param height height of the region
+     * @return this
+     */
+    public ScreenshotComparator ignore(int x, int y, int width, int height) {
+        ignoredRegions.add(new Rectangle(x, y, width, height));
+        ignoredSpans = null;
+        return this;
+    }
+
+    /**
+     * Ignores pixels where {@code mask} is not black.
+     *
+     * @param mask mask of the size of compared images
+     * @return this
+     */
+    public ScreenshotComparator ignore(BufferedImage mask) {
+        this.ignoredMask = mask;
+        ignoredSpans = null;
+        return this;
+    }
+
+    /**
+     *
+     * @param diffImage true if the diff image should be drawn when images do not match, true by default
+     * @return this
+     */
+    public ScreenshotComparator diffImage(boolean diffImage) {
+        this.diffImage = diffImage;
+        return this;
+    }
+
+    /**
+     * Compares {@code actual} image to {@code baseline} file.
+     *
+     * @param actual compared image
+     * @param baseline file of the expected image
+     * @return result of the comparison
+     * @throws IllegalArgumentException if the baseline can not be read
+     */
+    public ScreenshotComparison compare(BufferedImage actual, File baseline) {
+        return compare(actual, loadBaseline(baseline));
+    }
+
+    /**
+     * Compares {@code actual} image to {@code baseline} image.
+     *
+     * @param actual compared image
+     * @param baseline expected image
+     * @return result of the comparison
+     */
+    public ScreenshotComparison compare(BufferedImage actual, BufferedImage baseline) {
+        int width = actual.getWidth();
+        int height = actual.getHeight();
+
+        if (width != baseline.getWidth() || height != baseline.getHeight()) {
+            return new ScreenshotComparison(false, true, 0, 0, false, null, null);
+        }
+
+        int[] actualPixels = getPixels(actual);
+        int[] baselinePixels = getPixels(baseline);
+        int[][] spans = getSpans(width, height);
+
+        long compared = 0;
+        for (int y = 0; y < height; y++) {
+            int[] row = spans[y];
+            for (int i = 0; i < row.length; i += 2) {
+                compared += row[i + 1] - row[i];
+            }
+        }
+
+        long allowed = (long) (compared * threshold);
+
+        long different = count(actualPixels, baselinePixels, width, spans, allowed);
+        boolean matches = different <= allowed;
+
+        if (matches) {
+            return new ScreenshotComparison(true, false, different, compared, false, null, null);
+        }
+
+        Rectangle bounds = new Rectangle();
+        BufferedImage diff = null;
+
+        if (diffImage) {
+            diff = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            different = draw(actualPixels, baselinePixels, getPixels(diff), width, spans, bounds);
+        }
+
+        return new ScreenshotComparison(false, false, different, compared, !diffImage, diffImage ? bounds : null, diff);
+    }
+
+    /**
+     * Drops all cached baselines.
+     */
+    public static void clearBaselines() {
+        BASELINES.clear();
+    }
+
+    static BufferedImage loadBaseline(File baseline) {
+        removeReclaimedBaselines();
+
+        File key = baseline.getAbsoluteFile();
+        long lastModified = key.lastModified();
+
+        CachedBaseline cached = BASELINES.get(key);
+        if (cached != null && cached.lastModified == lastModified) {
+            BufferedImage image = cached.get();
+            if (image != null) {
+                return image;
+            }
+        }
+
+        BufferedImage image;
+        try {
+            image = ImageIO.read(key);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Unable to read baseline " + key, ex);
+        }
+        if (image == null) {
+            throw new IllegalArgumentException("Baseline " + key + " is not a readable image.");
+        }
+
+        image = toIntRgb(image);
+        BASELINES.put(key, new CachedBaseline(key, image, lastModified));
+        return image;
+    }
+
+    private static void removeReclaimedBaselines() {
+        Reference<? extends BufferedImage> reclaimed;
+        while ((reclaimed = RECLAIMED_BASELINES.poll()) != null) {
+            CachedBaseline cached = (CachedBaseline) reclaimed;
+            // the baseline could have been loaded again in the meantime
+            BASELINES.remove(cached.file, cached);
+        }
+    }
+
+    private long count(int[] actual, int[] baseline, int width, int[][] spans, long allowed) {
+        int redTolerance = this.redTolerance;
+        int greenTolerance = this.greenTolerance;
+        int blueTolerance = this.blueTolerance;
+        long different = 0;
+
+        for (int y = 0; y < spans.length; y++) {
+            int[] row = spans[y];
+            int offset = y * width;
+            for (int s = 0; s < row.length; s += 2) {
+                for (int i = offset + row[s], end = offset + row[s + 1]; i < end; i++) {
+                    int a = actual[i];
+                    int b = baseline[i];
+                    if (a == b) {
+                        continue;
+                    }
+                    // a channel over its tolerance makes the sign bit set, without a branch per channel
+                    int red = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+                    int green = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+                    int blue = (a & 0xff) - (b & 0xff);
+                    different += ((redTolerance - ((red ^ (red >> 31)) - (red >> 31)))
+                        | (greenTolerance - ((green ^ (green >> 31)) - (green >> 31)))
+                        | (blueTolerance - ((blue ^ (blue >> 31)) - (blue >> 31)))) >>> 31;
+                }
+            }
+            if (different > allowed) {
+                // the result is known already, the count is a lower bound
+                return different;
+            }
+        }
+
+        return different;
+    }
+
+    private long draw(int[] actual, int[] baseline, int[] diff, int width, int[][] spans, Rectangle bounds) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        long different = 0;
+
+        // unchanged and ignored pixels are drawn dimmed so the differences stand out
+        for (int i = 0; i < baseline.length; i++) {
+            diff[i] = (baseline[i] >> 2) & 0x3f3f3f;
+        }
+
+        for (int y = 0; y < spans.length; y++) {
+            int[] row = spans[y];
+            int offset = y * width;
+            for (int s = 0; s < row.length; s += 2) {
+                for (int x = row[s], end = row[s + 1]; x < end; x++) {
+                    int i = offset + x;
+                    int a = actual[i];
+                    int b = baseline[i];
+                    if (a != b && differs(a, b, redTolerance, greenTolerance, blueTolerance)) {
+                        diff[i] = DIFF_COLOR;
+                        different++;
+                        if (x < minX) {
+                            minX = x;
+                        }
+                        if (x > maxX) {
+                            maxX = x;
+                        }
+                        if (y < minY) {
+                            minY = y;
+                        }
+                        maxY = y;
+                    }
+                }
+            }
+        }
+
+        if (maxX >= 0) {
+            bounds.setBounds(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+
+        return different;
+    }
+
+    private static boolean differs(int a, int b, int redTolerance, int greenTolerance, int blueTolerance) {
+        int red = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+        int green = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+        int blue = (a & 0xff) - (b & 0xff);
+        return (red < 0 ? -red : red) > redTolerance
+            || (green < 0 ? -green : green) > greenTolerance
+            || (blue < 0 ? -blue : blue) > blueTolerance;
+    }
+
+    /**
+     * Compiles ignored regions to compared spans of every row, {@code [start, end)} pairs of columns.
+     */
+    private int[][] getSpans(int width, int height) {
+        IgnoredSpans cached = ignoredSpans;
+        if (cached != null && cached.width == width && cached.height == height) {
+            return cached.spans;
+        }
+
+        boolean[] ignored = new boolean[width];
+        int[][] spans = new int[height][];
+        int[] full = new int[] { 0, width };
+        int[] mask = ignoredMask != null && ignoredMask.getWidth() == width && ignoredMask.getHeight() == height
+            ? new int[width] : null;
+
+        for (int y = 0; y < height; y++) {
+            boolean any = false;
+            Arrays.fill(ignored, false);
+
+            for (Rectangle region : ignoredRegions) {
+                if (y >= region.y && y < region.y + region.height) {
+                    for (int x = Math.max(0, region.x), end = Math.min(width, region.x + region.width); x < end; x++) {
+                        ignored[x] = true;
+                        any = true;
+                    }
+                }
+            }
+
+            if (mask != null) {
+                ignoredMask.getRGB(0, y, width, 1, mask, 0, width);
+                for (int x = 0; x < width; x++) {
+                    if ((mask[x] & 0xffffff) != 0) {
+                        ignored[x] = true;
+                        any = true;
+                    }
+                }
+            }
+
+            if (!any) {
+                spans[y] = full;
+                continue;
+            }
+
+            int[] row = new int[width + 1];
+            int length = 0;
+            int x = 0;
+            while (x < width) {
+                while (x < width && ignored[x]) {
+                    x++;
+                }
+                if (x == width) {
+                    break;
+                }
+                row[length++] = x;
+                while (x < width && !ignored[x]) {
+                    x++;
+                }
+                row[length++] = x;
+            }
+            spans[y] = Arrays.copyOf(row, length);
+        }
+
+        ignoredSpans = new IgnoredSpans(width, height, spans);
+        return spans;
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Compared images have to be of type TYPE_INT_RGB or TYPE_INT_ARGB.");
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage toIntRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics graphics = converted.getGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return converted;
+    }
+
+    private static void checkTolerance(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Tolerance of a channel has to be in range [0, 255], it is " + tolerance);
+        }
+    }
+
+    private static final class IgnoredSpans {
+
+        private final int width;
+
+        private final int height;
+
+        private final int[][] spans;
+
+        IgnoredSpans(int width, int height, int[][] spans) {
+            this.width = width;
+            this.height = height;
+            this.spans = spans;
+        }
+    }
+
+    static final class CachedBaseline extends SoftReference<BufferedImage> {
+
+        private final File file;
+
+        private final long lastModified;
+
+        CachedBaseline(File file, BufferedImage image, long lastModified) {
+            super(image, RECLAIMED_BASELINES);
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+    }
+}
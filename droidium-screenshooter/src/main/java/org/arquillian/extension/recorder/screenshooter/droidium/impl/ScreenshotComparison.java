@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Result of a comparison of a screenshot to its baseline by {@link ScreenshotComparator}.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotComparison {
+
+    private final boolean matches;
+
+    private final boolean sizeMismatch;
+
+    private final long differentPixels;
+
+    private final long comparedPixels;
+
+    private final boolean lowerBound;
+
+    private final Rectangle bounds;
+
+    private final BufferedImage diffImage;
+
+    private File diffFile;
+
+    ScreenshotComparison(boolean matches, boolean sizeMismatch, long differentPixels, long comparedPixels,
+        boolean lowerBound, Rectangle bounds, BufferedImage diffImage) {
+        this.matches = matches;
+        this.sizeMismatch = sizeMismatch;
+        this.differentPixels = differentPixels;
+        this.comparedPixels = comparedPixels;
+        this.lowerBound = lowerBound;
+        this.bounds = bounds;
+        this.diffImage = diffImage;
+    }
+
+    /**
+     *
+     * @return true if the screenshot matches its baseline within the tolerance and the threshold
+     */
+    public boolean matches() {
+        return matches;
+    }
+
+    /**
+     *
+     * @return true if the screenshot and its baseline are not of the same size, nothing is compared then
+     */
+    public boolean isSizeMismatch() {
+        return sizeMismatch;
+    }
+
+    /**
+     *
+     * @return number of different pixels, see {@link #isLowerBound()}
+     */
+    public long getDifferentPixels() {
+        return differentPixels;
+    }
+
+    /**
+     *
+     * @return number of pixels which were not ignored
+     */
+    public long getComparedPixels() {
+        return comparedPixels;
+    }
+
+    /**
+     *
+     * @return true if the comparison stopped once the threshold was exceeded so the number of different pixels is not
+     *         complete
+     */
+    public boolean isLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     *
+     * @return the smallest rectangle holding all different pixels or null if it was not computed
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     *
+     * @return baseline dimmed with different pixels in red or null if the screenshot matches or the image was not
+     *         requested
+     */
+    public BufferedImage getDiffImage() {
+        return diffImage;
+    }
+
+    /**
+     *
+     * @return file the diff image was written to or null
+     */
+    public File getDiffFile() {
+        return diffFile;
+    }
+
+    void setDiffFile(File diffFile) {
+        this.diffFile = diffFile;
+    }
+
+    @Override
+    public String toString() {
+        if (sizeMismatch) {
+            return "screenshot and baseline differ in size";
+        }
+        return String.format("%s, %s%d of %d pixels differ%s", matches ? "matches" : "does not match",
+            lowerBound ? "at least " : "", differentPixels, comparedPixels, diffFile == null ? "" : ", diff " + diffFile);
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.arquillian.extension.recorder.screenshooter.ScreenshotType;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Converts and encodes screenshots in background threads so taking a screenshot returns as soon as the framebuffer is
+ * captured.<br>
+ * <br>
+ * Captured frames wait in a bounded queue. When the queue is full, the frame is converted and encoded by the thread
+ * taking the screenshot, so memory held by waiting frames stays bounded. Every encoder thread reuses its image for
+ * frames of the same size. Frames submitted after the encoder is closed are not written, they are logged and counted
+ * as failed.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotEncoder {
+
+    private static final Logger logger = Logger.getLogger(ScreenshotEncoder.class.getName());
+
+    private final RawImageConverter converter;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadLocal<BufferedImage> images = new ThreadLocal<BufferedImage>();
+
+    private final AtomicLong encoded = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private volatile long maxLatencyNanos;
+
+    private volatile int maxQueueDepth;
+
+    private int pending;
+
+    // file -> number of its tasks which did not finish yet, the same file can be submitted again before it is written
+    private final Map<File, Integer> writing = new HashMap<File, Integer>();
+
+    /**
+     *
+     * @param converter converter of frames, shared by all encoder threads
+     * @param threads number of encoder threads
+     * @param queueCapacity maximal number of frames waiting for an encoder thread
+     */
+    public ScreenshotEncoder(RawImageConverter converter, int threads, int queueCapacity) {
+        this.converter = converter;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity),
+            new ThreadFactory() {
+                private int counter;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "droidium-screenshot-encoder-" + counter++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Screenshot encoder is closed.");
+                    }
+                    task.run();
+                }
+            });
+    }
+
+    /**
+     * Converts and writes {@code rawImage} to {@code file} asynchronously.
+     *
+     * @param rawImage captured frame, it must not be modified afterwards
+     * @param type type of the image
+     * @param file file to write the image to
+     */
+    public void submit(final RawImage rawImage, final ScreenshotType type, final File file) {
+        execute(file, new Runnable() {
+            @Override
+            public void run() {
+                write(converter.convert(rawImage, getImage(rawImage)), type, file);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code png} already encoded by the device to {@code file} asynchronously.
+     *
+     * @param png encoded image
+     * @param file file to write the image to
+     */
+    public void submit(final byte[] png, final File file) {
+        execute(file, new Runnable() {
+            @Override
+            public void run() {
+                write(png, file);
+            }
+        });
+    }
+
+    /**
+     * Copies {@code source} to {@code file} asynchronously, once a screenshot submitted to {@code source} before is
+     * written.
+     *
+     * @param source file of a screenshot submitted before
+     * @param file file to copy the screenshot to
+     */
+    public void submitCopy(final File source, final File file) {
+        execute(file, new Runnable() {
+            @Override
+            public void run() {
+                awaitWritten(source);
+                copy(source, file);
+            }
+        });
+    }
+
+    private void execute(final File file, final Runnable task) {
+        final long submitted = System.nanoTime();
+
+        synchronized (this) {
+            pending++;
+            Integer tasks = writing.get(file);
+            writing.put(file, tasks == null ? 1 : tasks + 1);
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        encoded.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        failed.incrementAndGet();
+                        logger.log(Level.SEVERE, "Unable to write screenshot " + file.getPath(), ex);
+                    } finally {
+                        long latency = System.nanoTime() - submitted;
+                        totalLatencyNanos.addAndGet(latency);
+                        if (latency > maxLatencyNanos) {
+                            maxLatencyNanos = latency;
+                        }
+                        done(file);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            failed.incrementAndGet();
+            logger.log(Level.SEVERE, "Screenshot " + file.getPath() + " was not written, the encoder is closed.");
+            done(file);
+            return;
+        }
+
+        int depth = executor.getQueue().size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Waits until all submitted screenshots are written.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of {@code timeout}
+     * @return true if all screenshots were written, false if the time elapsed before
+     */
+    public synchronized boolean awaitPending(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (pending > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    /**
+     *
+     * @return human readable statistics of this encoder
+     */
+    public String getStatistics() {
+        long done = encoded.get() + failed.get();
+        return String.format("encoded %d, failed %d, average latency %d ms, max latency %d ms, max queue depth %d/%d",
+            encoded.get(), failed.get(),
+            done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / done),
+            TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos), maxQueueDepth,
+            executor.getQueue().size() + executor.getQueue().remainingCapacity());
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Encodes {@code image} to {@code file}.
+     *
+     * @param image image to write
+     * @param type type of the image
+     * @param file file to write the image to
+     * @throws RuntimeException if the image can not be written
+     */
+    static void write(BufferedImage image, ScreenshotType type, File file) {
+        try {
+            ImageIO.write(image, type.toString(), file);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not write an image", ex);
+        }
+    }
+
+    /**
+     * Writes {@code png} to {@code file} as it is.
+     *
+     * @param png encoded image
+     * @param file file to write the image to
+     * @throws RuntimeException if the image can not be written
+     */
+    static void write(byte[] png, File file) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(png);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not write an image", ex);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies {@code source} to {@code file}.
+     *
+     * @param source file to copy
+     * @param file file to copy {@code source} to
+     * @throws RuntimeException if the file can not be copied
+     */
+    static void copy(File source, File file) {
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(file);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not copy an image", ex);
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    private synchronized void awaitWritten(File file) {
+        try {
+            while (writing.containsKey(file)) {
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for screenshot " + file.getPath());
+        }
+    }
+
+    private BufferedImage getImage(RawImage rawImage) {
+        BufferedImage image = images.get();
+        if (image == null || image.getWidth() != rawImage.width || image.getHeight() != rawImage.height) {
+            image = new BufferedImage(rawImage.width, rawImage.height, BufferedImage.TYPE_INT_RGB);
+            images.set(image);
+        }
+        return image;
+    }
+
+    private synchronized void done(File file) {
+        pending--;
+        int tasks = writing.get(file);
+        if (tasks == 1) {
+            writing.remove(file);
+        } else {
+            writing.put(file, tasks - 1);
+        }
+        // wakes up waiting for all screenshots as well as copies waiting for their source
+        notifyAll();
+    }
+}
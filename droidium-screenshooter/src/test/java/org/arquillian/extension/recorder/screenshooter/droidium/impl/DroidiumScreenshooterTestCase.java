@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.DeviceScreenshot;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+import org.arquillian.extension.recorder.screenshooter.Screenshot;
+import org.arquillian.extension.recorder.screenshooter.droidium.configuration.DroidiumScreenshooterConfiguration;
+import org.arquillian.recorder.reporter.ReporterConfiguration;
+import org.arquillian.recorder.reporter.impl.TakenResourceRegister;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Tests deduplication of screenshots of a device whose screen does not change.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class DroidiumScreenshooterTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // frame shown by the device until a test changes it
+    private final RawImage frame = new RawImage();
+
+    private AndroidDevice device;
+
+    private DroidiumScreenshooter screenshooter;
+
+    @Before
+    public void setup() throws Exception {
+        frame.bpp = 16;
+        frame.width = 32;
+        frame.height = 24;
+        frame.size = 32 * 24 * 2;
+        frame.red_offset = 11;
+        frame.red_length = 5;
+        frame.green_offset = 5;
+        frame.green_length = 6;
+        frame.blue_length = 5;
+        frame.data = new byte[frame.size];
+        for (int i = 0; i < frame.data.length; i++) {
+            frame.data[i] = (byte) i;
+        }
+
+        device = mock(AndroidDevice.class);
+        when(device.isOnline()).thenReturn(true);
+        when(device.getScreenshot(any(ScreenshotBackend.class))).thenAnswer(new Answer<DeviceScreenshot>() {
+            @Override
+            public DeviceScreenshot answer(InvocationOnMock invocation) throws Throwable {
+                DeviceScreenshot screenshot = mock(DeviceScreenshot.class);
+                when(screenshot.getRawImage()).thenReturn(copy(frame));
+                when(screenshot.getWidth()).thenReturn(frame.width);
+                when(screenshot.getHeight()).thenReturn(frame.height);
+                return screenshot;
+            }
+        });
+    }
+
+    @After
+    public void close() {
+        if (screenshooter != null && screenshooter.getEncoder() != null) {
+            screenshooter.getEncoder().close();
+        }
+    }
+
+    @Test
+    public void duplicateIsCopiedToRequestedFileTest() throws IOException {
+        screenshooter = screenshooter(false);
+
+        Screenshot first = screenshooter.takeScreenshot("first");
+        Screenshot second = screenshooter.takeScreenshot("second");
+
+        Assert.assertEquals(1, screenshooter.getDuplicates());
+        Assert.assertEquals(new File(temporaryFolder.getRoot(), "second.png"), second.getResource());
+        Assert.assertArrayEquals(read(first.getResource()), read(second.getResource()));
+
+        // the copy does not depend on the file of the previous screenshot
+        Assert.assertTrue(first.getResource().delete());
+        Assert.assertTrue(second.getResource().isFile());
+    }
+
+    @Test
+    public void changedScreenIsWrittenTest() throws IOException {
+        screenshooter = screenshooter(false);
+
+        Screenshot first = screenshooter.takeScreenshot("first");
+        frame.data[0] ^= 1;
+        Screenshot second = screenshooter.takeScreenshot("second");
+
+        Assert.assertEquals(0, screenshooter.getDuplicates());
+        Assert.assertFalse(Arrays.equals(read(first.getResource()), read(second.getResource())));
+    }
+
+    @Test
+    public void previousScreenshotIsForgottenBetweenTestsTest() throws IOException {
+        screenshooter = screenshooter(false);
+
+        screenshooter.takeScreenshot(new File("FirstTest/test/after"));
+        screenshooter.forgetPreviousScreenshot();
+        Screenshot screenshot = screenshooter.takeScreenshot(new File("SecondTest/test/before"));
+
+        Assert.assertEquals(0, screenshooter.getDuplicates());
+        Assert.assertEquals(new File(temporaryFolder.getRoot(), "SecondTest/test/before.png"), screenshot.getResource());
+        Assert.assertTrue(screenshot.getResource().isFile());
+    }
+
+    @Test
+    public void asynchronousCopyWaitsForPreviousScreenshotTest() throws IOException {
+        screenshooter = screenshooter(true);
+
+        Screenshot first = screenshooter.takeScreenshot("first");
+        Screenshot second = screenshooter.takeScreenshot("second");
+        Screenshot third = screenshooter.takeScreenshot("third");
+
+        Assert.assertTrue(screenshooter.awaitPendingScreenshots(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, screenshooter.getDuplicates());
+        Assert.assertTrue(read(first.getResource()).length > 0);
+        Assert.assertArrayEquals(read(first.getResource()), read(second.getResource()));
+        Assert.assertArrayEquals(read(first.getResource()), read(third.getResource()));
+    }
+
+    private DroidiumScreenshooter screenshooter(boolean async) {
+        DroidiumScreenshooterConfiguration configuration = new DroidiumScreenshooterConfiguration(new ReporterConfiguration());
+        configuration.setProperty("rootDir", temporaryFolder.getRoot().getAbsolutePath());
+        configuration.setProperty("screenshotType", "PNG");
+        configuration.setProperty("screenshotBackend", "framebuffer");
+        configuration.setProperty("screenshotDeduplication", "true");
+        configuration.setProperty("screenshotAsync", Boolean.toString(async));
+        configuration.setProperty("screenshotEncoderThreads", "4");
+
+        DroidiumScreenshooter screenshooter = new DroidiumScreenshooter(new TakenResourceRegister());
+        screenshooter.init(configuration);
+        screenshooter.setAndroidDevice(device);
+        return screenshooter;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static RawImage copy(RawImage frame) {
+        RawImage copy = new RawImage();
+        copy.bpp = frame.bpp;
+        copy.width = frame.width;
+        copy.height = frame.height;
+        copy.size = frame.size;
+        copy.red_offset = frame.red_offset;
+        copy.red_length = frame.red_length;
+        copy.green_offset = frame.green_offset;
+        copy.green_length = frame.green_length;
+        copy.blue_length = frame.blue_length;
+        copy.data = frame.data.clone();
+        return copy;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class FrameHashTestCase {
+
+    @Test
+    public void identicalFramesHaveEqualHashTest() {
+        Assert.assertEquals(FrameHash.hash(rawImage(64, 48)), FrameHash.hash(rawImage(64, 48)));
+    }
+
+    @Test
+    public void everyByteChangesHashTest() {
+        RawImage rawImage = rawImage(64, 48);
+        long hash = FrameHash.hash(rawImage);
+
+        // the first and the last byte of the lanes as well as bytes after the last block of four longs
+        for (int i : new int[] { 0, 7, 8, 31, 32, rawImage.data.length / 2, rawImage.data.length - 1 }) {
+            RawImage changed = rawImage(64, 48);
+            changed.data[i] ^= 1;
+            Assert.assertFalse("Change of byte " + i + " is not recognized", hash == FrameHash.hash(changed));
+        }
+
+        byte[] data = Arrays.copyOf(rawImage.data, 37);
+        long tailHash = FrameHash.hash(data, data.length, 0);
+        data[36] ^= 1;
+        Assert.assertFalse(tailHash == FrameHash.hash(data, data.length, 0));
+    }
+
+    @Test
+    public void layoutIsHashedTest() {
+        RawImage rawImage = rawImage(64, 48);
+        RawImage rotated = rawImage(48, 64);
+        Assert.assertFalse(FrameHash.hash(rawImage) == FrameHash.hash(rotated));
+
+        RawImage bgra = rawImage(64, 48);
+        bgra.red_offset = 16;
+        bgra.blue_offset = 0;
+        Assert.assertFalse(FrameHash.hash(rawImage) == FrameHash.hash(bgra));
+    }
+
+    @Test
+    public void bytesAfterFrameAreIgnoredTest() {
+        RawImage rawImage = rawImage(64, 48);
+        RawImage padded = rawImage(64, 48);
+        padded.data = Arrays.copyOf(padded.data, padded.data.length + 100);
+        padded.data[padded.data.length - 1] = 1;
+
+        Assert.assertEquals(FrameHash.hash(rawImage), FrameHash.hash(padded));
+    }
+
+    private static RawImage rawImage(int width, int height) {
+        RawImage rawImage = new RawImage();
+        rawImage.bpp = 32;
+        rawImage.width = width;
+        rawImage.height = height;
+        rawImage.size = width * height * 4;
+        rawImage.red_offset = 0;
+        rawImage.red_length = 8;
+        rawImage.green_offset = 8;
+        rawImage.green_length = 8;
+        rawImage.blue_offset = 16;
+        rawImage.blue_length = 8;
+        rawImage.data = new byte[rawImage.size];
+        new Random(7).nextBytes(rawImage.data);
+        return rawImage;
+    }
+}
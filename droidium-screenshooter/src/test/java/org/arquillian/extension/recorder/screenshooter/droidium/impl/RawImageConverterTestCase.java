@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import org.arquillian.extension.recorder.screenshooter.droidium.impl.RawImageConverter.Layout;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Compares images converted by {@link RawImageConverter} to pixels read one by one by {@link RawImage#getARGB(int)}.
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class RawImageConverterTestCase {
+
+    private RawImageConverter converter;
+
+    @After
+    public void close() {
+        if (converter != null) {
+            converter.close();
+        }
+    }
+
+    @Test
+    public void rgb565Test() {
+        RawImage rawImage = rawImage(16, 64, 48, 11, 5, 5, 6, 0, 5, 0, 0);
+        Assert.assertEquals(Layout.RGB565, RawImageConverter.layoutOf(rawImage));
+        assertConverted(rawImage, 1);
+    }
+
+    @Test
+    public void rgba8888Test() {
+        RawImage rawImage = rawImage(32, 64, 48, 0, 8, 8, 8, 16, 8, 24, 8);
+        Assert.assertEquals(Layout.RGBA8888, RawImageConverter.layoutOf(rawImage));
+        assertConverted(rawImage, 1);
+    }
+
+    @Test
+    public void bgra8888Test() {
+        RawImage rawImage = rawImage(32, 64, 48, 16, 8, 8, 8, 0, 8, 24, 8);
+        Assert.assertEquals(Layout.BGRA8888, RawImageConverter.layoutOf(rawImage));
+        assertConverted(rawImage, 1);
+    }
+
+    @Test
+    public void maskedLayoutTest() {
+        // ABGR
+        RawImage rawImage = rawImage(32, 64, 48, 24, 8, 16, 8, 8, 8, 0, 8);
+        Assert.assertEquals(Layout.MASKED_32, RawImageConverter.layoutOf(rawImage));
+        assertConverted(rawImage, 1);
+
+        // RGB666 in 32 bits
+        rawImage = rawImage(32, 64, 48, 12, 6, 6, 6, 0, 6, 0, 0);
+        Assert.assertEquals(Layout.MASKED_32, RawImageConverter.layoutOf(rawImage));
+        assertConverted(rawImage, 1);
+    }
+
+    @Test
+    public void parallelBandsTest() {
+        // 512 x 600 is above the size frames are split to bands from and its rows are not divisible by the threads
+        assertConverted(rawImage(16, 512, 600, 11, 5, 5, 6, 0, 5, 0, 0), 7);
+        assertConverted(rawImage(32, 512, 600, 0, 8, 8, 8, 16, 8, 24, 8), 7);
+        assertConverted(rawImage(32, 512, 600, 16, 8, 8, 8, 0, 8, 24, 8), 7);
+        assertConverted(rawImage(32, 512, 600, 24, 8, 16, 8, 8, 8, 0, 8), 7);
+    }
+
+    @Test
+    public void imageIsReusedForFramesOfTheSameSizeTest() {
+        converter = new RawImageConverter(1);
+
+        BufferedImage first = converter.convert(rawImage(16, 64, 48, 11, 5, 5, 6, 0, 5, 0, 0));
+        BufferedImage second = converter.convert(rawImage(16, 64, 48, 11, 5, 5, 6, 0, 5, 0, 0));
+        BufferedImage third = converter.convert(rawImage(16, 48, 64, 11, 5, 5, 6, 0, 5, 0, 0));
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(second, third);
+        Assert.assertEquals(48, third.getWidth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void targetOfOtherSizeIsRejectedTest() {
+        new RawImageConverter(1).convert(rawImage(16, 64, 48, 11, 5, 5, 6, 0, 5, 0, 0),
+            new BufferedImage(48, 64, BufferedImage.TYPE_INT_RGB));
+    }
+
+    private void assertConverted(RawImage rawImage, int threads) {
+        close();
+        converter = new RawImageConverter(threads);
+
+        BufferedImage image = converter.convert(rawImage);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int step = rawImage.bpp >> 3;
+        for (int p = 0; p < rawImage.width * rawImage.height; p++) {
+            int expected = rawImage.getARGB(p * step) & 0xffffff;
+            if (pixels[p] != expected) {
+                Assert.fail("Pixel " + p + " of a frame with " + rawImage.bpp + " bits per pixel is "
+                    + Integer.toHexString(pixels[p]) + " instead of " + Integer.toHexString(expected));
+            }
+        }
+    }
+
+    private static RawImage rawImage(int bpp, int width, int height, int redOffset, int redLength, int greenOffset,
+        int greenLength, int blueOffset, int blueLength, int alphaOffset, int alphaLength) {
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.bpp = bpp;
+        rawImage.width = width;
+        rawImage.height = height;
+        rawImage.size = width * height * (bpp >> 3);
+        rawImage.red_offset = redOffset;
+        rawImage.red_length = redLength;
+        rawImage.green_offset = greenOffset;
+        rawImage.green_length = greenLength;
+        rawImage.blue_offset = blueOffset;
+        rawImage.blue_length = blueLength;
+        rawImage.alpha_offset = alphaOffset;
+        rawImage.alpha_length = alphaLength;
+        rawImage.data = new byte[rawImage.size];
+        new Random(width * 31 + bpp).nextBytes(rawImage.data);
+        return rawImage;
+    }
+}
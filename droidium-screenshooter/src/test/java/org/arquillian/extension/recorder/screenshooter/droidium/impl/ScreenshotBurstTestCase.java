@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.arquillian.droidium.container.api.AndroidDevice;
+import org.arquillian.droidium.container.api.DeviceScreenshot;
+import org.arquillian.droidium.container.api.ScreenshotBackend;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenshotBurstTestCase {
+
+    private static final int FRAME_SIZE = 1000;
+
+    private final AtomicInteger screenshots = new AtomicInteger();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    // screenshot being taken blocks until it is released
+    private volatile boolean block;
+
+    private AndroidDevice device;
+
+    private ScreenshotBurst burst;
+
+    @Before
+    public void setup() throws Exception {
+        // every screenshot is a different PNG of FRAME_SIZE bytes, numbered from 1 by its first byte
+        device = mock(AndroidDevice.class);
+        when(device.getSerialNumber()).thenReturn("emulator-5554");
+        when(device.getScreenshot(any(ScreenshotBackend.class))).thenAnswer(new Answer<DeviceScreenshot>() {
+            @Override
+            public DeviceScreenshot answer(InvocationOnMock invocation) throws Throwable {
+                boolean blocked = block;
+                byte[] png = new byte[FRAME_SIZE];
+                png[0] = (byte) screenshots.incrementAndGet();
+                if (blocked) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                DeviceScreenshot screenshot = mock(DeviceScreenshot.class);
+                when(screenshot.getPng()).thenReturn(png);
+                return screenshot;
+            }
+        });
+    }
+
+    @After
+    public void close() {
+        release.countDown();
+        if (burst != null) {
+            burst.close();
+        }
+    }
+
+    @Test
+    public void oldestFramesAreEvictedByMemoryLimitTest() throws Exception {
+        burst = new ScreenshotBurst(device, ScreenshotBackend.SCREENCAP_PNG, 1, 5 * FRAME_SIZE / 2);
+        burst.start();
+        awaitScreenshots(6);
+
+        List<ScreenshotBurst.Frame> frames = burst.drain();
+        int taken = screenshots.get();
+
+        Assert.assertEquals(2, frames.size());
+        int first = id(frames.get(0));
+        Assert.assertEquals(first + 1, id(frames.get(1)));
+        Assert.assertTrue(first >= 4);
+        Assert.assertTrue(frames.get(0).getTime() <= frames.get(1).getTime());
+        Assert.assertEquals(0, burst.getMemory());
+
+        // draining stops taking screenshots
+        Thread.sleep(50);
+        Assert.assertTrue(screenshots.get() <= taken + 1);
+        Assert.assertTrue(burst.drain().isEmpty());
+    }
+
+    @Test
+    public void drainReturnsFramesOfFailedTestTest() throws Exception {
+        burst = new ScreenshotBurst(device, ScreenshotBackend.SCREENCAP_PNG, 60000, 10 * FRAME_SIZE);
+
+        burst.start();
+        awaitScreenshots(1);
+        awaitMemory(FRAME_SIZE);
+        burst.discard();
+        Assert.assertEquals(0, burst.getMemory());
+
+        burst.start();
+        awaitScreenshots(2);
+        awaitMemory(FRAME_SIZE);
+
+        List<ScreenshotBurst.Frame> frames = burst.drain();
+        Assert.assertEquals(1, frames.size());
+        Assert.assertEquals(2, id(frames.get(0)));
+    }
+
+    @Test
+    public void screenshotOfPreviousTestIsNotKeptTest() throws Exception {
+        burst = new ScreenshotBurst(device, ScreenshotBackend.SCREENCAP_PNG, 60000, 10 * FRAME_SIZE);
+
+        // the screenshot of the previous test is still being taken when the next test starts
+        block = true;
+        burst.start();
+        awaitScreenshots(1);
+        block = false;
+        burst.start();
+        release.countDown();
+
+        awaitScreenshots(2);
+        awaitMemory(FRAME_SIZE);
+
+        List<ScreenshotBurst.Frame> frames = burst.drain();
+        Assert.assertEquals(1, frames.size());
+        Assert.assertEquals(2, id(frames.get(0)));
+    }
+
+    @Test
+    public void frameBiggerThanMemoryLimitIsDroppedTest() throws Exception {
+        burst = new ScreenshotBurst(device, ScreenshotBackend.SCREENCAP_PNG, 1, FRAME_SIZE / 2);
+        burst.start();
+        awaitScreenshots(3);
+
+        Assert.assertTrue(burst.drain().isEmpty());
+        Assert.assertEquals(0, burst.getMemory());
+    }
+
+    private void awaitMemory(long memory) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (burst.getMemory() != memory) {
+            Assert.assertTrue("Memory of burst is " + burst.getMemory(), System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitScreenshots(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (screenshots.get() < count) {
+            Assert.assertTrue("Only " + screenshots.get() + " screenshots were taken", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static int id(ScreenshotBurst.Frame frame) {
+        return frame.getScreenshot().getPng()[0];
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+/**
+ * Measures {@link ScreenshotComparator} on typical phone resolutions. It is not a test, run it by
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.arquillian.extension.recorder.screenshooter.droidium.impl.ScreenshotComparatorBenchmark
+ * </pre>
+ *
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+public class ScreenshotComparatorBenchmark {
+
+    private static final int[][] RESOLUTIONS = new int[][] {
+        { 720, 1280 },
+        { 1080, 1920 },
+        { 1080, 2340 },
+        { 1440, 3040 }
+    };
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 100;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%-12s %-32s %10s %12s", "resolution", "case", "ms/op", "Mpixels/s"));
+
+        for (int[] resolution : RESOLUTIONS) {
+            int width = resolution[0];
+            int height = resolution[1];
+
+            BufferedImage baseline = random(width, height, 42);
+            BufferedImage identical = copy(baseline);
+            BufferedImage noisy = copy(baseline);
+            BufferedImage changed = copy(baseline);
+
+            Random random = new Random(7);
+            int[] noisyPixels = pixels(noisy);
+            for (int i = 0; i < noisyPixels.length; i++) {
+                // encoder noise of +-2 in every channel
+                noisyPixels[i] = (noisyPixels[i] & 0xfefefe) + (random.nextInt(2) * 0x010101);
+            }
+            int[] changedPixels = pixels(changed);
+            for (int y = height / 2; y < height / 2 + height / 10; y++) {
+                for (int x = 0; x < width; x++) {
+                    changedPixels[y * width + x] ^= 0xffffff;
+                }
+            }
+
+            run(width, height, "identical", new ScreenshotComparator(), identical, baseline);
+            run(width, height, "noise, tolerance 2", new ScreenshotComparator().tolerance(2), noisy, baseline);
+            run(width, height, "noise, tolerance 2, status bar", new ScreenshotComparator().tolerance(2)
+                .ignore(0, 0, width, height / 30), noisy, baseline);
+            run(width, height, "10% changed, early exit", new ScreenshotComparator().diffImage(false), changed, baseline);
+            run(width, height, "10% changed, diff image", new ScreenshotComparator(), changed, baseline);
+        }
+    }
+
+    private static void run(int width, int height, String name, ScreenshotComparator comparator, BufferedImage actual,
+        BufferedImage baseline) {
+        for (int i = 0; i < WARMUP; i++) {
+            comparator.compare(actual, baseline);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            comparator.compare(actual, baseline);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+        System.out.println(String.format("%-12s %-32s %10.2f %12.0f", width + "x" + height, name, millis,
+            (double) width * height / millis / 1000));
+    }
+
+    private static BufferedImage random(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = pixels(image);
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() & 0xffffff;
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(pixels(image), 0, pixels(copy), 0, pixels(image).length);
+        return copy;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
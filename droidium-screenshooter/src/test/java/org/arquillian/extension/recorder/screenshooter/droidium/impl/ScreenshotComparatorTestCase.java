@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenshotComparatorTestCase {
+
+    private static final int WIDTH = 20;
+
+    private static final int HEIGHT = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void clearBaselines() {
+        ScreenshotComparator.clearBaselines();
+    }
+
+    @Test
+    public void identicalImagesMatchTest() {
+        ScreenshotComparison comparison = new ScreenshotComparator().compare(image(), image());
+
+        Assert.assertTrue(comparison.matches());
+        Assert.assertEquals(0, comparison.getDifferentPixels());
+        Assert.assertEquals(WIDTH * HEIGHT, comparison.getComparedPixels());
+        Assert.assertNull(comparison.getDiffImage());
+    }
+
+    @Test
+    public void sizeMismatchTest() {
+        ScreenshotComparison comparison = new ScreenshotComparator().compare(image(),
+            new BufferedImage(HEIGHT, WIDTH, BufferedImage.TYPE_INT_RGB));
+
+        Assert.assertFalse(comparison.matches());
+        Assert.assertTrue(comparison.isSizeMismatch());
+    }
+
+    @Test
+    public void toleranceTest() {
+        BufferedImage actual = image();
+        actual.setRGB(5, 5, actual.getRGB(5, 5) + 0x030000);
+
+        Assert.assertFalse(new ScreenshotComparator().tolerance(2).compare(actual, image()).matches());
+        Assert.assertTrue(new ScreenshotComparator().tolerance(3).compare(actual, image()).matches());
+
+        // darker as well as brighter pixels are within the tolerance of their channel only
+        actual = image();
+        actual.setRGB(1, 1, actual.getRGB(1, 1) - 0x000500);
+        Assert.assertTrue(new ScreenshotComparator().tolerance(0, 5, 0).compare(actual, image()).matches());
+        actual.setRGB(2, 1, actual.getRGB(2, 1) - 0x000001);
+        ScreenshotComparison comparison = new ScreenshotComparator().tolerance(0, 5, 0).compare(actual, image());
+        Assert.assertFalse(comparison.matches());
+        Assert.assertEquals(1, comparison.getDifferentPixels());
+    }
+
+    @Test
+    public void ignoredRegionTest() {
+        BufferedImage actual = image();
+        actual.setRGB(0, 0, 0xffffff);
+        actual.setRGB(WIDTH - 1, 1, 0xffffff);
+
+        // the second region reaches out of the image, only its part in the image is ignored
+        ScreenshotComparator comparator = new ScreenshotComparator().ignore(0, 0, 2, 2).ignore(WIDTH - 3, 1, 10, 1);
+        ScreenshotComparison comparison = comparator.compare(actual, image());
+
+        Assert.assertTrue(comparison.matches());
+        Assert.assertEquals(WIDTH * HEIGHT - 4 - 3, comparison.getComparedPixels());
+
+        actual.setRGB(2, 0, 0xffffff);
+        Assert.assertEquals(1, comparator.compare(actual, image()).getDifferentPixels());
+    }
+
+    @Test
+    public void ignoredMaskTest() {
+        BufferedImage mask = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        mask.setRGB(3, 4, 0xffffff);
+        mask.setRGB(4, 4, 0x000001);
+
+        BufferedImage actual = image();
+        actual.setRGB(3, 4, 0xffffff);
+        actual.setRGB(4, 4, 0xffffff);
+
+        ScreenshotComparison comparison = new ScreenshotComparator().ignore(mask).compare(actual, image());
+        Assert.assertTrue(comparison.matches());
+        Assert.assertEquals(WIDTH * HEIGHT - 2, comparison.getComparedPixels());
+
+        // a mask of other size is not applied
+        mask = new BufferedImage(WIDTH, HEIGHT + 1, BufferedImage.TYPE_INT_RGB);
+        mask.setRGB(3, 4, 0xffffff);
+        Assert.assertFalse(new ScreenshotComparator().ignore(mask).compare(actual, image()).matches());
+    }
+
+    @Test
+    public void thresholdTest() {
+        BufferedImage actual = image();
+        for (int x = 0; x < 10; x++) {
+            actual.setRGB(x, 3, 0xffffff);
+        }
+
+        // 10 of 200 pixels differ
+        Assert.assertTrue(new ScreenshotComparator().threshold(0.05).compare(actual, image()).matches());
+        ScreenshotComparison comparison = new ScreenshotComparator().threshold(0.04).compare(actual, image());
+        Assert.assertFalse(comparison.matches());
+        Assert.assertEquals(10, comparison.getDifferentPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdOutOfRangeTest() {
+        new ScreenshotComparator().threshold(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toleranceOutOfRangeTest() {
+        new ScreenshotComparator().tolerance(0, 256, 0);
+    }
+
+    @Test
+    public void countingStopsOnceThresholdIsExceededTest() {
+        BufferedImage actual = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                actual.setRGB(x, y, 0xffffff);
+            }
+        }
+
+        ScreenshotComparison comparison = new ScreenshotComparator().diffImage(false).compare(actual, image());
+
+        Assert.assertFalse(comparison.matches());
+        Assert.assertTrue(comparison.isLowerBound());
+        // the first row already exceeds the threshold
+        Assert.assertEquals(WIDTH, comparison.getDifferentPixels());
+        Assert.assertNull(comparison.getBounds());
+        Assert.assertNull(comparison.getDiffImage());
+    }
+
+    @Test
+    public void diffImageAndBoundsTest() {
+        BufferedImage actual = image();
+        actual.setRGB(3, 2, 0xffffff);
+        actual.setRGB(7, 5, 0xffffff);
+        actual.setRGB(5, 8, 0xffffff);
+
+        ScreenshotComparison comparison = new ScreenshotComparator().compare(actual, image());
+
+        Assert.assertFalse(comparison.matches());
+        Assert.assertFalse(comparison.isLowerBound());
+        Assert.assertEquals(3, comparison.getDifferentPixels());
+        Assert.assertEquals(new Rectangle(3, 2, 5, 7), comparison.getBounds());
+
+        BufferedImage diff = comparison.getDiffImage();
+        Assert.assertEquals(0xff0000, diff.getRGB(3, 2) & 0xffffff);
+        Assert.assertEquals(0xff0000, diff.getRGB(5, 8) & 0xffffff);
+        // other pixels are the dimmed baseline
+        Assert.assertEquals((image().getRGB(4, 2) >> 2) & 0x3f3f3f, diff.getRGB(4, 2) & 0xffffff);
+    }
+
+    @Test
+    public void baselineFileOfOtherTypeTest() throws IOException {
+        BufferedImage baseline = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics graphics = baseline.getGraphics();
+        graphics.drawImage(image(), 0, 0, null);
+        graphics.dispose();
+        File file = temporaryFolder.newFile("baseline.png");
+        ImageIO.write(baseline, "png", file);
+
+        Assert.assertTrue(new ScreenshotComparator().compare(image(), file).matches());
+        // cached baseline
+        Assert.assertSame(ScreenshotComparator.loadBaseline(file), ScreenshotComparator.loadBaseline(file));
+    }
+
+    @Test
+    public void reclaimedBaselineIsRemovedTest() throws IOException {
+        File first = temporaryFolder.newFile("first.png");
+        File second = temporaryFolder.newFile("second.png");
+        ImageIO.write(image(), "png", first);
+        ImageIO.write(image(), "png", second);
+
+        ScreenshotComparator.loadBaseline(first);
+        Assert.assertEquals(1, ScreenshotComparator.BASELINES.size());
+
+        // as the garbage collector does when it reclaims the image
+        ScreenshotComparator.BASELINES.get(first.getAbsoluteFile()).enqueue();
+
+        ScreenshotComparator.loadBaseline(second);
+        Assert.assertEquals(1, ScreenshotComparator.BASELINES.size());
+        Assert.assertTrue(ScreenshotComparator.BASELINES.containsKey(second.getAbsoluteFile()));
+    }
+
+    /**
+     *
+     * @return image whose every pixel has a different color
+     */
+    private static BufferedImage image() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 10) << 16 | (y * 20) << 8 | 0x40);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.arquillian.extension.recorder.screenshooter.droidium.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.arquillian.extension.recorder.screenshooter.ScreenshotType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * @author <a href="mailto:smikloso@redhat.com">Stefan Miklosovic</a>
+ *
+ */
+@RunWith(JUnit4.class)
+public class ScreenshotEncoderTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final BlockingConverter converter = new BlockingConverter();
+
+    private ScreenshotEncoder encoder;
+
+    @After
+    public void close() {
+        converter.release.countDown();
+        if (encoder != null) {
+            encoder.close();
+        }
+    }
+
+    @Test
+    public void awaitPendingTest() throws IOException {
+        encoder = new ScreenshotEncoder(converter, 2, 4);
+
+        File first = temporaryFolder.newFile("first.png");
+        File second = temporaryFolder.newFile("second.png");
+        encoder.submit(rawImage(), ScreenshotType.PNG, first);
+        encoder.submit(rawImage(), ScreenshotType.PNG, second);
+
+        Assert.assertEquals(2, encoder.getPending());
+        Assert.assertFalse(encoder.awaitPending(50, TimeUnit.MILLISECONDS));
+
+        converter.release.countDown();
+
+        Assert.assertTrue(encoder.awaitPending(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, encoder.getPending());
+        Assert.assertEquals(16, ImageIO.read(first).getWidth());
+        Assert.assertEquals(16, ImageIO.read(second).getWidth());
+        Assert.assertTrue(encoder.getStatistics(), encoder.getStatistics().startsWith("encoded 2, failed 0"));
+    }
+
+    @Test
+    public void callerRunsWhenQueueIsFullTest() throws Exception {
+        encoder = new ScreenshotEncoder(converter, 1, 1);
+
+        // the first frame occupies the only encoder thread, the second one waits in the queue
+        encoder.submit(rawImage(), ScreenshotType.PNG, temporaryFolder.newFile("first.png"));
+        converter.started.await(5, TimeUnit.SECONDS);
+        encoder.submit(rawImage(), ScreenshotType.PNG, temporaryFolder.newFile("second.png"));
+
+        File third = temporaryFolder.newFile("third.png");
+        encoder.submit(rawImage(), ScreenshotType.PNG, third);
+
+        Assert.assertSame(Thread.currentThread(), converter.lastThread);
+        Assert.assertEquals(16, ImageIO.read(third).getWidth());
+        Assert.assertEquals(2, encoder.getPending());
+
+        converter.release.countDown();
+        Assert.assertTrue(encoder.awaitPending(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void copyWaitsForAllWritesOfSourceTest() throws IOException {
+        encoder = new ScreenshotEncoder(converter, 2, 4);
+
+        // the same file is submitted twice, the second write blocks until the converter is released
+        File source = temporaryFolder.newFile("source.png");
+        File copy = new File(temporaryFolder.getRoot(), "copy.png");
+        encoder.submit(new byte[] { 1, 2, 3 }, source);
+        encoder.submit(rawImage(), ScreenshotType.PNG, source);
+        encoder.submitCopy(source, copy);
+
+        Assert.assertFalse(encoder.awaitPending(100, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(copy.exists());
+
+        converter.release.countDown();
+
+        Assert.assertTrue(encoder.awaitPending(5, TimeUnit.SECONDS));
+        Assert.assertEquals(16, ImageIO.read(copy).getWidth());
+    }
+
+    @Test
+    public void submitAfterCloseIsNotPendingTest() throws IOException {
+        encoder = new ScreenshotEncoder(converter, 1, 1);
+        encoder.close();
+
+        File file = new File(temporaryFolder.getRoot(), "closed.png");
+        encoder.submit(rawImage(), ScreenshotType.PNG, file);
+
+        Assert.assertEquals(0, encoder.getPending());
+        Assert.assertTrue(encoder.awaitPending(0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(file.exists());
+        Assert.assertTrue(encoder.getStatistics(), encoder.getStatistics().startsWith("encoded 0, failed 1"));
+    }
+
+    private static RawImage rawImage() {
+        RawImage rawImage = new RawImage();
+        rawImage.bpp = 16;
+        rawImage.width = 16;
+        rawImage.height = 16;
+        rawImage.size = 16 * 16 * 2;
+        rawImage.red_offset = 11;
+        rawImage.red_length = 5;
+        rawImage.green_offset = 5;
+        rawImage.green_length = 6;
+        rawImage.blue_length = 5;
+        rawImage.data = new byte[rawImage.size];
+        return rawImage;
+    }
+
+    /**
+     * Blocks encoder threads until it is released, frames converted by other threads are not blocked.
+     */
+    private static final class BlockingConverter extends RawImageConverter {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile Thread lastThread;
+
+        private BlockingConverter() {
+            super(1);
+        }
+
+        @Override
+        public BufferedImage convert(RawImage rawImage, BufferedImage target) {
+            lastThread = Thread.currentThread();
+            if (lastThread.getName().startsWith("droidium-screenshot-encoder-")) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.convert(rawImage, target);
+        }
+    }
+}